@@ -0,0 +1,89 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import com.tingyun.benchmark.RedisBenchmarkClient;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Response;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 以{@link JedisPoolRedisClientImpl}实现{@link RedisBenchmarkClient}，供基准测试通过反射创建
+ *
+ * @author BurningIce
+ *
+ */
+public class JedisPoolBenchmarkClient implements RedisBenchmarkClient {
+	private JedisPoolRedisClientImpl redisClient;
+
+	@Override
+	public void init(String host, int port, int poolSize) {
+		JedisPoolConfig poolConfig = new JedisPoolConfig();
+		poolConfig.setMaxTotal(poolSize);
+		poolConfig.setMaxIdle(poolSize);
+		poolConfig.setMinIdle(poolSize);
+
+		this.redisClient = new JedisPoolRedisClientImpl();
+		this.redisClient.setHost(host);
+		this.redisClient.setPort(port);
+		this.redisClient.setPoolConfig(poolConfig);
+		this.redisClient.setWarmUpEnabled(true);
+		this.redisClient.init();
+	}
+
+	@Override
+	public void destroy() {
+		this.redisClient.destroy();
+	}
+
+	@Override
+	public String get(String key) {
+		return this.redisClient.get(key);
+	}
+
+	@Override
+	public List<String> mget(String... keys) {
+		return this.redisClient.mget(keys);
+	}
+
+	@Override
+	public void mset(String... keyValues) {
+		this.redisClient.mset(keyValues);
+	}
+
+	@Override
+	public void hmset(String key, Map<String, String> fieldAndValues) {
+		this.redisClient.hmset(key, fieldAndValues);
+	}
+
+	@Override
+	public Long pfAdd(String key, String... elements) {
+		return this.redisClient.pfAdd(key, elements);
+	}
+
+	@Override
+	public int pipelinedGet(final String... keys) {
+		Integer found = this.redisClient.executePipelined(new PipelineCallback<Integer>() {
+			@Override
+			public Integer doInPipeline(RedisPipeline pipeline) {
+				List<Response<String>> responses = new ArrayList<Response<String>>(keys.length);
+				for(String key : keys) {
+					responses.add(pipeline.get(key));
+				}
+				pipeline.sync();
+
+				int found = 0;
+				for(Response<String> response : responses) {
+					if(response.get() != null) {
+						found++;
+					}
+				}
+				return found;
+			}
+		});
+		return found == null ? -1 : found.intValue();
+	}
+}
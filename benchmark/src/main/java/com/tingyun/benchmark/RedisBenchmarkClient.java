@@ -0,0 +1,39 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+package com.tingyun.benchmark;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 被测客户端的桥接接口：RedisClient等类在默认包中，有包名的JMH基准类无法直接引用，
+ * 由默认包中的实现类（{@link #JEDIS_POOL_CLIENT}）适配，基准类只在初始化时通过反射创建一次实例，
+ * 之后都是普通的接口调用，不影响测量结果
+ *
+ * @author BurningIce
+ *
+ */
+public interface RedisBenchmarkClient {
+	String JEDIS_POOL_CLIENT = "JedisPoolBenchmarkClient";
+
+	void init(String host, int port, int poolSize);
+
+	void destroy();
+
+	String get(String key);
+
+	List<String> mget(String... keys);
+
+	void mset(String... keyValues);
+
+	void hmset(String key, Map<String, String> fieldAndValues);
+
+	Long pfAdd(String key, String... elements);
+
+	/**
+	 * 在一个pipeline中get所有key
+	 * @return 读取到的value数量
+	 */
+	int pipelinedGet(String... keys);
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+package com.tingyun.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * 按多个线程数依次运行{@link RedisClientBenchmark}，每个线程数的结果写入一个JSON文件
+ * （results/redis-client-t{线程数}.json），可直接用于比较不同构建之间的结果：
+ * <pre>
+ * java -Dbench.threads=1,8,32 -Dbench.results=results -cp target/benchmarks.jar com.tingyun.benchmark.RedisBenchmarkRunner [JMH参数，如 -p valueSize=100 -f 2]
+ * </pre>
+ * 其他JMH命令行参数原样传给每一次运行。
+ *
+ * @author BurningIce
+ *
+ */
+public class RedisBenchmarkRunner {
+	private final static String DEFAULT_THREADS = "1,8,32";
+	private final static String DEFAULT_RESULTS_DIR = "results";
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		File resultsDir = new File(System.getProperty("bench.results", DEFAULT_RESULTS_DIR));
+		if(!resultsDir.isDirectory() && !resultsDir.mkdirs())
+			throw new IllegalStateException("failed to create " + resultsDir);
+
+		for(String threads : System.getProperty("bench.threads", DEFAULT_THREADS).split(",")) {
+			threads = threads.trim();
+			if(threads.length() == 0)
+				continue;
+
+			Options options = new OptionsBuilder()
+					.parent(commandLine)
+					.include(RedisClientBenchmark.class.getName())
+					.threads(Integer.parseInt(threads))
+					.resultFormat(ResultFormatType.JSON)
+					.result(new File(resultsDir, "redis-client-t" + threads + ".json").getPath())
+					.build();
+			new Runner(options).run();
+		}
+	}
+}
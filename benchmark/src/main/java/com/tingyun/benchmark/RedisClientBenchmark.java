@@ -0,0 +1,181 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+package com.tingyun.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RedisClient主要操作的吞吐量（Throughput）和延迟分布（SampleTime，含p50/p90/p99...），
+ * 服务端为进程内的{@link RespStubServer}，测量的是客户端（连接池、序列化、协议解析）与本机回环网络的开销。
+ * 线程数通过JMH的-t参数或{@link RedisBenchmarkRunner}设置。
+ *
+ * @author BurningIce
+ *
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RedisClientBenchmark {
+	private final static String HASH_KEY_PREFIX = "bench:hash:";
+	private final static String HLL_KEY = "bench:hll";
+
+	/**
+	 * 预先写入的key数量，读写随机选择其中的key
+	 */
+	@Param({ "10000" })
+	public int keyCount;
+
+	/**
+	 * value长度（字节）
+	 */
+	@Param({ "100", "4096" })
+	public int valueSize;
+
+	/**
+	 * 连接池大小
+	 */
+	@Param({ "8", "64" })
+	public int poolSize;
+
+	/**
+	 * mget/mset/hmset/pipeline每次操作的key（field）数量
+	 */
+	@Param({ "100" })
+	public int batchSize;
+
+	private RespStubServer server;
+	private RedisBenchmarkClient client;
+	private String[] keys;
+	private String value;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		this.server = new RespStubServer();
+		this.server.start(0);
+
+		this.client = (RedisBenchmarkClient)Class.forName(RedisBenchmarkClient.JEDIS_POOL_CLIENT).newInstance();
+		this.client.init("127.0.0.1", this.server.getPort(), this.poolSize);
+
+		char[] chars = new char[this.valueSize];
+		Arrays.fill(chars, 'v');
+		this.value = new String(chars);
+		this.keys = new String[this.keyCount];
+		for(int i = 0; i < this.keyCount; ++i) {
+			this.keys[i] = "bench:key:" + i;
+		}
+
+		for(int i = 0; i < this.keyCount; i += this.batchSize) {
+			int end = Math.min(this.keyCount, i + this.batchSize);
+			String[] keyValues = new String[(end - i) * 2];
+			for(int j = i; j < end; ++j) {
+				keyValues[(j - i) * 2] = this.keys[j];
+				keyValues[(j - i) * 2 + 1] = this.value;
+			}
+			this.client.mset(keyValues);
+		}
+
+		if(this.client.get(this.keys[this.keyCount - 1]) == null)
+			throw new IllegalStateException("failed to preload keys");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.client.destroy();
+		this.server.stop();
+	}
+
+	/**
+	 * 每个线程独立的随机数和批量参数，避免线程间竞争影响测量
+	 */
+	@State(Scope.Thread)
+	public static class ThreadState {
+		private SplittableRandom random;
+		private String[] batchKeys;
+		private String[] batchKeyValues;
+		private Map<String, String> fields;
+
+		@Setup(Level.Trial)
+		public void setUp(RedisClientBenchmark benchmark) {
+			this.random = new SplittableRandom(ThreadLocalRandom.current().nextLong());
+			this.batchKeys = new String[benchmark.batchSize];
+			this.batchKeyValues = new String[benchmark.batchSize * 2];
+			this.fields = new HashMap<String, String>();
+			for(int i = 0; i < benchmark.batchSize; ++i) {
+				this.fields.put("field:" + i, benchmark.value);
+			}
+		}
+
+		String randomKey(String[] keys) {
+			return keys[this.random.nextInt(keys.length)];
+		}
+
+		String[] randomKeys(String[] keys) {
+			for(int i = 0; i < this.batchKeys.length; ++i) {
+				this.batchKeys[i] = this.randomKey(keys);
+			}
+			return this.batchKeys;
+		}
+
+		String[] randomKeyValues(String[] keys, String value) {
+			for(int i = 0; i < this.batchKeyValues.length; i += 2) {
+				this.batchKeyValues[i] = this.randomKey(keys);
+				this.batchKeyValues[i + 1] = value;
+			}
+			return this.batchKeyValues;
+		}
+	}
+
+	@Benchmark
+	public String get(ThreadState state) {
+		return this.client.get(state.randomKey(this.keys));
+	}
+
+	@Benchmark
+	public List<String> mget(ThreadState state) {
+		return this.client.mget(state.randomKeys(this.keys));
+	}
+
+	@Benchmark
+	public void mset(ThreadState state) {
+		this.client.mset(state.randomKeyValues(this.keys, this.value));
+	}
+
+	@Benchmark
+	public void hmset(ThreadState state) {
+		this.client.hmset(HASH_KEY_PREFIX + state.random.nextInt(this.keyCount), state.fields);
+	}
+
+	@Benchmark
+	public Long pfAdd(ThreadState state) {
+		return this.client.pfAdd(HLL_KEY, state.randomKey(this.keys));
+	}
+
+	@Benchmark
+	public int pipelinedGet(ThreadState state) {
+		return this.client.pipelinedGet(state.randomKeys(this.keys));
+	}
+}
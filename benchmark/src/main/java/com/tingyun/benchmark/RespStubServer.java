@@ -0,0 +1,408 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+package com.tingyun.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 进程内的RESP协议桩服务器，用于基准测试：只监听127.0.0.1，每个连接一个线程，
+ * 数据保存在ConcurrentHashMap中，不实现过期（EXPIRE/SETEX只返回成功）。
+ * 支持PING/ECHO/AUTH/SELECT/QUIT/FLUSHALL/DBSIZE、GET/SET/SETEX/MGET/MSET/DEL/EXPIRE/INCR/INCRBY、
+ * HGET/HSET/HMSET/HMGET/HGETALL以及PFADD/PFCOUNT（按精确集合计数），其他命令返回错误。
+ * 一批pipeline命令读完（输入缓冲区中没有更多数据）后才flush响应，与Redis的行为一致。
+ *
+ * @author BurningIce
+ *
+ */
+public class RespStubServer {
+	private final static byte[] OK = "+OK\r\n".getBytes(StandardCharsets.US_ASCII);
+	private final static byte[] PONG = "+PONG\r\n".getBytes(StandardCharsets.US_ASCII);
+	private final static byte[] NULL_BULK = "$-1\r\n".getBytes(StandardCharsets.US_ASCII);
+	private final static byte[] CRLF = "\r\n".getBytes(StandardCharsets.US_ASCII);
+	private final ConcurrentHashMap<Key, byte[]> strings = new ConcurrentHashMap<Key, byte[]>();
+	private final ConcurrentHashMap<Key, ConcurrentHashMap<Key, byte[]>> hashes = new ConcurrentHashMap<Key, ConcurrentHashMap<Key, byte[]>>();
+	private final ConcurrentHashMap<Key, Set<Key>> hyperLogLogs = new ConcurrentHashMap<Key, Set<Key>>();
+	private final AtomicInteger connections = new AtomicInteger();
+	private ServerSocket serverSocket;
+	private volatile boolean running;
+
+	/**
+	 * @param port 为0时使用随机端口，见{@link #getPort()}
+	 */
+	public void start(int port) throws IOException {
+		this.serverSocket = new ServerSocket();
+		this.serverSocket.setReuseAddress(true);
+		this.serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+		this.running = true;
+
+		Thread acceptor = new Thread("resp-stub-acceptor") {
+			@Override
+			public void run() {
+				accept();
+			}
+		};
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	public int getPort() {
+		return this.serverSocket.getLocalPort();
+	}
+
+	public void stop() {
+		this.running = false;
+		try {
+			this.serverSocket.close();
+		} catch(IOException ex) {
+			// ignore
+		}
+	}
+
+	private void accept() {
+		while(this.running) {
+			final Socket socket;
+			try {
+				socket = this.serverSocket.accept();
+				socket.setTcpNoDelay(true);
+			} catch(IOException ex) {
+				// stop()关闭了ServerSocket
+				return;
+			}
+
+			Thread handler = new Thread("resp-stub-connection-" + this.connections.incrementAndGet()) {
+				@Override
+				public void run() {
+					serve(socket);
+				}
+			};
+			handler.setDaemon(true);
+			handler.start();
+		}
+	}
+
+	private void serve(Socket socket) {
+		try {
+			InputStream in = new BufferedInputStream(socket.getInputStream(), 64 * 1024);
+			OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+			byte[][] command;
+			while((command = readCommand(in)) != null) {
+				boolean quit = this.execute(command, out);
+				if(quit || in.available() == 0) {
+					out.flush();
+				}
+				if(quit) {
+					break;
+				}
+			}
+		} catch(IOException ex) {
+			// 客户端断开
+		} finally {
+			try {
+				socket.close();
+			} catch(IOException ex) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * @return 是否关闭连接（QUIT）
+	 */
+	private boolean execute(byte[][] command, OutputStream out) throws IOException {
+		if(command.length == 0) {
+			writeError(out, "ERR empty command");
+			return false;
+		}
+
+		String name = new String(command[0], StandardCharsets.US_ASCII).toUpperCase();
+		switch(name) {
+		case "PING":
+			out.write(PONG);
+			break;
+		case "ECHO":
+			writeBulk(out, command[1]);
+			break;
+		case "AUTH":
+		case "SELECT":
+		case "FLUSHDB":
+			out.write(OK);
+			break;
+		case "FLUSHALL":
+			this.strings.clear();
+			this.hashes.clear();
+			this.hyperLogLogs.clear();
+			out.write(OK);
+			break;
+		case "QUIT":
+			out.write(OK);
+			return true;
+		case "DBSIZE":
+			writeInteger(out, this.strings.size() + this.hashes.size() + this.hyperLogLogs.size());
+			break;
+		case "GET":
+			writeBulk(out, this.strings.get(new Key(command[1])));
+			break;
+		case "SET":
+			this.strings.put(new Key(command[1]), command[2]);
+			out.write(OK);
+			break;
+		case "SETEX":
+			this.strings.put(new Key(command[1]), command[3]);
+			out.write(OK);
+			break;
+		case "MGET":
+			writeArrayHeader(out, command.length - 1);
+			for(int i = 1; i < command.length; ++i) {
+				writeBulk(out, this.strings.get(new Key(command[i])));
+			}
+			break;
+		case "MSET":
+			for(int i = 1; i + 1 < command.length; i += 2) {
+				this.strings.put(new Key(command[i]), command[i + 1]);
+			}
+			out.write(OK);
+			break;
+		case "DEL": {
+			int deleted = 0;
+			for(int i = 1; i < command.length; ++i) {
+				Key key = new Key(command[i]);
+				if(this.strings.remove(key) != null | this.hashes.remove(key) != null | this.hyperLogLogs.remove(key) != null) {
+					deleted++;
+				}
+			}
+			writeInteger(out, deleted);
+			break;
+		}
+		case "EXPIRE": {
+			Key key = new Key(command[1]);
+			boolean exists = this.strings.containsKey(key) || this.hashes.containsKey(key) || this.hyperLogLogs.containsKey(key);
+			writeInteger(out, exists ? 1L : 0L);
+			break;
+		}
+		case "INCR":
+			writeInteger(out, this.incrBy(new Key(command[1]), 1L));
+			break;
+		case "INCRBY":
+			writeInteger(out, this.incrBy(new Key(command[1]), Long.parseLong(new String(command[2], StandardCharsets.US_ASCII))));
+			break;
+		case "HGET": {
+			Map<Key, byte[]> hash = this.hashes.get(new Key(command[1]));
+			writeBulk(out, hash == null ? null : hash.get(new Key(command[2])));
+			break;
+		}
+		case "HMGET": {
+			Map<Key, byte[]> hash = this.hashes.get(new Key(command[1]));
+			writeArrayHeader(out, command.length - 2);
+			for(int i = 2; i < command.length; ++i) {
+				writeBulk(out, hash == null ? null : hash.get(new Key(command[i])));
+			}
+			break;
+		}
+		case "HSET":
+		case "HMSET": {
+			Map<Key, byte[]> hash = this.hash(new Key(command[1]));
+			int added = 0;
+			for(int i = 2; i + 1 < command.length; i += 2) {
+				if(hash.put(new Key(command[i]), command[i + 1]) == null) {
+					added++;
+				}
+			}
+			if(name.equals("HSET")) {
+				writeInteger(out, added);
+			} else {
+				out.write(OK);
+			}
+			break;
+		}
+		case "HGETALL": {
+			Map<Key, byte[]> hash = this.hashes.get(new Key(command[1]));
+			if(hash == null) {
+				writeArrayHeader(out, 0);
+				break;
+			}
+
+			// 并发写入时数量可能变化，先复制
+			Object[] entries = hash.entrySet().toArray();
+			writeArrayHeader(out, entries.length * 2);
+			for(Object o : entries) {
+				@SuppressWarnings("unchecked")
+				Map.Entry<Key, byte[]> e = (Map.Entry<Key, byte[]>)o;
+				writeBulk(out, e.getKey().bytes);
+				writeBulk(out, e.getValue());
+			}
+			break;
+		}
+		case "PFADD": {
+			Set<Key> set = this.hyperLogLogs.get(new Key(command[1]));
+			if(set == null) {
+				Set<Key> created = ConcurrentHashMap.newKeySet();
+				set = this.hyperLogLogs.putIfAbsent(new Key(command[1]), created);
+				if(set == null) {
+					set = created;
+				}
+			}
+
+			boolean changed = false;
+			for(int i = 2; i < command.length; ++i) {
+				changed |= set.add(new Key(command[i]));
+			}
+			writeInteger(out, changed ? 1L : 0L);
+			break;
+		}
+		case "PFCOUNT": {
+			Set<Key> set = this.hyperLogLogs.get(new Key(command[1]));
+			writeInteger(out, set == null ? 0L : set.size());
+			break;
+		}
+		default:
+			writeError(out, "ERR unknown command '" + name + "'");
+		}
+		return false;
+	}
+
+	private ConcurrentHashMap<Key, byte[]> hash(Key key) {
+		ConcurrentHashMap<Key, byte[]> hash = this.hashes.get(key);
+		if(hash == null) {
+			ConcurrentHashMap<Key, byte[]> created = new ConcurrentHashMap<Key, byte[]>();
+			hash = this.hashes.putIfAbsent(key, created);
+			if(hash == null) {
+				hash = created;
+			}
+		}
+		return hash;
+	}
+
+	private long incrBy(Key key, long increment) {
+		while(true) {
+			byte[] current = this.strings.get(key);
+			long value = (current == null ? 0L : Long.parseLong(new String(current, StandardCharsets.US_ASCII))) + increment;
+			byte[] updated = Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+			if(current == null ? this.strings.putIfAbsent(key, updated) == null : this.strings.replace(key, current, updated)) {
+				return value;
+			}
+		}
+	}
+
+	/**
+	 * 读取一条multibulk命令（*N\r\n$len\r\n...），连接关闭时返回null
+	 */
+	private static byte[][] readCommand(InputStream in) throws IOException {
+		int b = in.read();
+		if(b == -1)
+			return null;
+
+		if(b != '*')
+			throw new IOException("unsupported inline command");
+
+		byte[][] args = new byte[(int)readLong(in)][];
+		for(int i = 0; i < args.length; ++i) {
+			if(in.read() != '$')
+				throw new IOException("bulk string expected");
+
+			byte[] arg = new byte[(int)readLong(in)];
+			int offset = 0;
+			while(offset < arg.length) {
+				int n = in.read(arg, offset, arg.length - offset);
+				if(n == -1)
+					throw new EOFException();
+				offset += n;
+			}
+			in.read();
+			in.read();
+			args[i] = arg;
+		}
+		return args;
+	}
+
+	/**
+	 * 读取以\r\n结尾的整数
+	 */
+	private static long readLong(InputStream in) throws IOException {
+		long value = 0L;
+		boolean negative = false;
+		int b;
+		while((b = in.read()) != '\r') {
+			if(b == -1)
+				throw new EOFException();
+			if(b == '-') {
+				negative = true;
+			} else {
+				value = value * 10 + (b - '0');
+			}
+		}
+		in.read();
+		return negative ? -value : value;
+	}
+
+	private static void writeBulk(OutputStream out, byte[] value) throws IOException {
+		if(value == null) {
+			out.write(NULL_BULK);
+			return;
+		}
+
+		out.write('$');
+		writeDecimal(out, value.length);
+		out.write(value);
+		out.write(CRLF);
+	}
+
+	private static void writeArrayHeader(OutputStream out, int length) throws IOException {
+		out.write('*');
+		writeDecimal(out, length);
+	}
+
+	private static void writeInteger(OutputStream out, long value) throws IOException {
+		out.write(':');
+		writeDecimal(out, value);
+	}
+
+	private static void writeError(OutputStream out, String message) throws IOException {
+		out.write('-');
+		out.write(message.getBytes(StandardCharsets.UTF_8));
+		out.write(CRLF);
+	}
+
+	private static void writeDecimal(OutputStream out, long value) throws IOException {
+		out.write(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+		out.write(CRLF);
+	}
+
+	/**
+	 * byte[]作为map的key
+	 */
+	private static final class Key {
+		private final byte[] bytes;
+		private final int hash;
+
+		Key(byte[] bytes) {
+			this.bytes = bytes;
+			this.hash = Arrays.hashCode(bytes);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Key && Arrays.equals(this.bytes, ((Key)obj).bytes);
+		}
+	}
+}
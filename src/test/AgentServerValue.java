@@ -48,6 +48,14 @@ public class AgentServerValue implements Serializable, Comparable<AgentServerVal
 		this.latestActivity = latestActivity;
 	}
 
+	public int getMinDelayTime() {
+		return MIN_DELAY_TIME;
+	}
+
+	public void setMinDelayTime(int minDelayTime) {
+		this.MIN_DELAY_TIME = minDelayTime;
+	}
+
 	public int getInstanceId() {
 		return instanceId;
 	}
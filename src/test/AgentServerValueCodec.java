@@ -0,0 +1,47 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+/**
+ * AgentServerValue的二进制编码，替代Java序列化：同一个对象Java序列化约230字节，编码后约50字节（主要为hostName）。
+ * 格式：版本号(1) hostName initAgentTime latestActivity-initAgentTime(zigzag) minDelayTime instanceId serverId ctime applicationId
+ *
+ * @author BurningIce
+ *
+ */
+public class AgentServerValueCodec implements RedisCodec<AgentServerValue> {
+	public final static AgentServerValueCodec INSTANCE = new AgentServerValueCodec();
+	private final static int VERSION = 1;
+
+	@Override
+	public void encode(AgentServerValue value, CodecWriter writer) {
+		writer.writeByte(VERSION);
+		writer.writeString(value.getHostName());
+		writer.writeVarLong(value.getInitAgentTime());
+		// 最新活动时间通常略大于初始化时间，保存差值可节省4~5个字节
+		writer.writeSignedVarLong(value.getLatestActivity() - value.getInitAgentTime());
+		writer.writeVarInt(value.getMinDelayTime());
+		writer.writeVarInt(value.getInstanceId());
+		writer.writeVarInt(value.getServerId());
+		writer.writeVarLong(value.getCtime());
+		writer.writeVarInt(value.getApplicationId());
+	}
+
+	@Override
+	public AgentServerValue decode(CodecReader reader) {
+		int version = reader.readByte();
+		if(version != VERSION)
+			throw new IllegalArgumentException("unsupported AgentServerValue version: " + version);
+
+		AgentServerValue value = new AgentServerValue();
+		value.setHostName(reader.readString());
+		value.setInitAgentTime(reader.readVarLong());
+		value.setLatestActivity(value.getInitAgentTime() + reader.readSignedVarLong());
+		value.setMinDelayTime(reader.readVarInt());
+		value.setInstanceId(reader.readVarInt());
+		value.setServerId(reader.readVarInt());
+		value.setCtime(reader.readVarLong());
+		value.setApplicationId(reader.readVarInt());
+		return value;
+	}
+}
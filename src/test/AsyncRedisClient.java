@@ -0,0 +1,207 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Redis异步客户端封装，与{@link RedisClient}一一对应，所有操作均返回{@link CompletableFuture}
+ *
+ * @author BurningIce
+ *
+ */
+public interface AsyncRedisClient {
+	/**
+	 * get
+	 * @param key
+	 * @return
+	 */
+	public CompletableFuture<String> get(String key);
+
+	/**
+	 * get
+	 * @param key
+	 * @return
+	 */
+	public CompletableFuture<byte[]> get(byte[] key);
+
+	/**
+	 * mget
+	 * @param key
+	 * @return
+	 */
+	public CompletableFuture<List<String>> mget(String... key);
+
+	/**
+	 * mget
+	 * @param key
+	 * @return
+	 */
+	public CompletableFuture<List<byte[]>> mget(byte[]... key);
+
+	/**
+	 * del
+	 * @param key
+	 * @return
+	 */
+	public CompletableFuture<Long> del(String key);
+
+	/**
+	 * del
+	 * @param key
+	 * @return
+	 */
+	public CompletableFuture<Long> del(byte[] key);
+
+	/**
+	 * set
+	 * @param key
+	 * @param value
+	 */
+	public CompletableFuture<String> set(String key, String value);
+
+	/**
+	 * set
+	 * @param key
+	 * @param value
+	 */
+	public CompletableFuture<String> set(byte[] key, byte[] value);
+
+	/**
+	 * set and expire (setex)
+	 * @param key
+	 * @param value
+	 * @param expirationInSeconds expiration in seconds
+	 */
+	public CompletableFuture<String> set(String key, String value, int expirationInSeconds);
+
+	/**
+	 * set and expire (setex)
+	 * @param key
+	 * @param value
+	 * @param expirationInSeconds expiration in seconds
+	 */
+	public CompletableFuture<String> set(byte[] key, byte[] value, int expirationInSeconds);
+
+	public CompletableFuture<String> mset(String... keyValues);
+
+	public CompletableFuture<String> mset(byte[]... keyValues);
+
+	/**
+	 * 设置过期时间
+	 * @param key
+	 * @param expirationInSeconds 过期时间（单位：秒）
+	 */
+	public CompletableFuture<Long> expire(String key, int expirationInSeconds);
+
+	/**
+	 * 设置过期时间
+	 * @param key
+	 * @param expirationInSeconds 过期时间（单位：秒）
+	 */
+	public CompletableFuture<Long> expire(byte[] key, int expirationInSeconds);
+
+	/**
+	 * 指定Key自增
+	 * @param key
+	 * @return 自增后的值
+	 */
+	public CompletableFuture<Long> incr(String key);
+
+	public CompletableFuture<Long> incr(byte[] key);
+
+	public CompletableFuture<Long> incrBy(String key, long increment);
+
+	public CompletableFuture<Long> incrBy(byte[] key, long increment);
+
+	/**
+	 * 指定Key自减
+	 * @param key
+	 * @return 自减后的值
+	 */
+	public CompletableFuture<Long> decr(String key);
+
+	public CompletableFuture<Long> decr(byte[] key);
+
+	public CompletableFuture<Long> decrBy(String key, long decrement);
+
+	public CompletableFuture<Long> decrBy(byte[] key, long decrement);
+
+	/**
+	 * hget
+	 * @param key
+	 * @return
+	 */
+	public CompletableFuture<String> hget(String key, String field);
+
+	public CompletableFuture<byte[]> hget(byte[] key, byte[] field);
+
+	public CompletableFuture<List<String>> hmget(String key, String... field);
+
+	public CompletableFuture<List<byte[]>> hmget(byte[] key, byte[]... field);
+
+	/**
+	 * hset
+	 * @param key
+	 * @param value
+	 */
+	public CompletableFuture<Long> hset(String key, String field, String value);
+
+	public CompletableFuture<Long> hset(byte[] key, byte[] field, byte[] value);
+
+	public CompletableFuture<String> hmset(String key, Map<String, String> fieldAndValues);
+
+	public CompletableFuture<String> hmset(byte[] key, Map<byte[], byte[]> fieldAndValues);
+
+	public CompletableFuture<Map<String, String>> hgetAll(String key);
+
+	public CompletableFuture<Long> hincrBy(String key, String field, long increment);
+
+	public CompletableFuture<Long> hincrBy(byte[] key, byte[] field, long increment);
+
+	public CompletableFuture<Long> pfAdd(String key, String... elements);
+
+	/**
+	 * pfadd后设置过期时间，两条命令在同一批次中发送
+	 * @param key
+	 * @param expirationInSeconds 过期时间（单位：秒）
+	 * @param elements
+	 * @return
+	 */
+	public CompletableFuture<Long> pfAdd(String key, int expirationInSeconds, String... elements);
+
+	public CompletableFuture<Long> pfCount(String key);
+
+	/**
+	 *
+	 * @param destkey 将其他key的值meger到此key
+	 * @param sourcekeys
+	 * @return
+	 */
+	public CompletableFuture<String> pfmerge(String destkey, String... sourcekeys);
+
+	/**
+	 * redis set集合
+	 * @param key
+	 * @param members
+	 * @return
+	 */
+	public CompletableFuture<Long> sadd(String key, String... members);
+
+	/**
+	 * key查询
+	 * @param pattern
+	 * @return
+	 */
+	public CompletableFuture<Set<String>> keys(String pattern);
+
+	/**
+	 * 返回key集合所有的元素.
+	 * @param key
+	 * @return
+	 */
+	public CompletableFuture<Set<String>> smembers(String key);
+}
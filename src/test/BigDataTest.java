@@ -1,7 +1,7 @@
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.junit.Test;
 import redis.clients.jedis.JedisPoolConfig;
-import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 
 import java.io.*;
 import java.sql.*;
@@ -128,7 +128,7 @@ public class BigDataTest {
 //        }
 //
 ////        outputFile(result, writer, timeStamps, fieldCount);
-//        outputFileFromRedis(appKeys, timeStamps, headers, startMetricIndex, pipeline, writer, fieldCount);
+//        outputFileFromRedis(appKeys, timeStamps, headers, startMetricIndex, initRedisClient(), writer, fieldCount);
 //        System.out.println("final fieldCount: " + fieldCount);
 //
 //        if(writer != null){
@@ -141,15 +141,14 @@ public class BigDataTest {
 
     }
 
-    private Pipeline initRedisPipline(){
+    private RedisClient initRedisClient(){
         JedisPoolRedisClientImpl redisClient = new JedisPoolRedisClientImpl();
         GenericObjectPoolConfig poolConfig = new JedisPoolConfig();
         redisClient.setHost("dev-redis.tingyun.com");
         redisClient.setPassword("nbs!@#123");
         redisClient.setPoolConfig(poolConfig);
         redisClient.init();
-        Pipeline pipeline = redisClient.pipelined();
-        return pipeline;
+        return redisClient;
     }
 
     private Connection getMysqlConn() {
@@ -228,12 +227,32 @@ public class BigDataTest {
 
 
     private void outputFileFromRedis(Set<String> appKeys, List<String> timeStamps, String[] headers, int startMetricIndex,
-                                     Pipeline pipeline, FileWriter writer, Integer fieldCount){
-
-        Map<String, String> metricValues = pipeline.hgetAll("BIG_DATA").get();
+                                     RedisClient redisClient, FileWriter writer, Integer fieldCount){
 
+        // 不再hgetAll整个BIG_DATA：每行只hmget该行需要的field，同一个appKey的所有行在一次pipeline中读取，
+        // 内存占用与一个appKey的数据量相当
         int fieldNum = 0;
         for(String appKey : appKeys) {
+            final List<String[]> rows = new ArrayList<>();
+            for (int i = startMetricIndex; i < headers.length; i++) {
+                String[] rowFields = new String[timeStamps.size()];
+                for (int t = 0; t < rowFields.length; t++) {
+                    rowFields[t] = headers[i] + ":" + timeStamps.get(t).replace(":", "-").replace(" ", "_") + ":" + appKey;
+                }
+                rows.add(rowFields);
+            }
+
+            List<Response<List<String>>> responses = redisClient.executePipelined(new PipelineCallback<List<Response<List<String>>>>() {
+                @Override
+                public List<Response<List<String>>> doInPipeline(RedisPipeline pipeline) {
+                    List<Response<List<String>>> responses = new ArrayList<>(rows.size());
+                    for (String[] rowFields : rows) {
+                        responses.add(pipeline.hmget("BIG_DATA", rowFields));
+                    }
+                    return responses;
+                }
+            });
+
             for (int i = startMetricIndex; i < headers.length; i++) {
                 try {
                     writeFileMetricHeader(appKey + "|" + headers[i] + "\t", writer);
@@ -241,10 +260,11 @@ public class BigDataTest {
                     e.printStackTrace();
                 }
 
+                List<String> rowValues = responses == null ? null : responses.get(i - startMetricIndex).get();
+
                 int num = 0;
                 for(String timeStamp : timeStamps) {
-                    String field = headers[i];
-                    String metricValue = metricValues.get(field + ":" + timeStamp.replace(":", "-").replace(" ", "_") + ":" + appKey);
+                    String metricValue = rowValues == null ? null : rowValues.get(num);
 
                     if(metricValue == null){
                         metricValue = "0";
@@ -0,0 +1,109 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 读取{@link CodecWriter}写入的数据，格式错误或数据不完整时抛出IllegalArgumentException
+ *
+ * @author BurningIce
+ *
+ */
+public final class CodecReader {
+	private final byte[] buffer;
+	private final int limit;
+	private int position;
+
+	public CodecReader(byte[] buffer) {
+		this(buffer, 0, buffer.length);
+	}
+
+	public CodecReader(byte[] buffer, int offset, int length) {
+		this.buffer = buffer;
+		this.position = offset;
+		this.limit = offset + length;
+	}
+
+	/**
+	 * @return 是否还有未读取的数据，用于兼容旧版本编码中不存在的追加字段
+	 */
+	public boolean hasRemaining() {
+		return this.position < this.limit;
+	}
+
+	public int readByte() {
+		if(this.position >= this.limit)
+			throw new IllegalArgumentException("truncated data at " + this.position);
+
+		return this.buffer[this.position++];
+	}
+
+	public boolean readBoolean() {
+		return this.readByte() != 0;
+	}
+
+	public int readVarInt() {
+		int value = 0;
+		for(int shift = 0; shift < 35; shift += 7) {
+			int b = this.readByte();
+			value |= (b & 0x7F) << shift;
+			if((b & 0x80) == 0)
+				return value;
+		}
+		throw new IllegalArgumentException("malformed varint at " + this.position);
+	}
+
+	public int readSignedVarInt() {
+		int value = this.readVarInt();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	public long readVarLong() {
+		long value = 0L;
+		for(int shift = 0; shift < 70; shift += 7) {
+			int b = this.readByte();
+			value |= (long)(b & 0x7F) << shift;
+			if((b & 0x80) == 0)
+				return value;
+		}
+		throw new IllegalArgumentException("malformed varlong at " + this.position);
+	}
+
+	public long readSignedVarLong() {
+		long value = this.readVarLong();
+		return (value >>> 1) ^ -(value & 1L);
+	}
+
+	public String readString() {
+		int length = this.readLength();
+		if(length < 0)
+			return null;
+
+		String value = new String(this.buffer, this.position, length, StandardCharsets.UTF_8);
+		this.position += length;
+		return value;
+	}
+
+	public byte[] readBytes() {
+		int length = this.readLength();
+		if(length < 0)
+			return null;
+
+		byte[] value = Arrays.copyOfRange(this.buffer, this.position, this.position + length);
+		this.position += length;
+		return value;
+	}
+
+	/**
+	 * @return 长度，null时返回-1
+	 */
+	private int readLength() {
+		int length = this.readVarInt() - 1;
+		if(length < -1 || length > this.limit - this.position)
+			throw new IllegalArgumentException("truncated data at " + this.position + ", length: " + length);
+
+		return length;
+	}
+}
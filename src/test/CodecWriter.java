@@ -0,0 +1,152 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 紧凑二进制编码：int/long使用varint（每字节7位，小数值只占1~2个字节），可能为负的值使用zigzag varint，
+ * 字符串为varint长度+UTF-8。
+ * 每个线程复用一个writer（见{@link #get()}），编码时除最终结果外不分配内存。
+ *
+ * @author BurningIce
+ *
+ */
+public final class CodecWriter {
+	private final static int INITIAL_CAPACITY = 256;
+	private final static int MAX_RETAINED_CAPACITY = 64 * 1024;	// 超过该大小的缓冲区不保留，避免偶发的大对象长期占用内存
+	private final static ThreadLocal<CodecWriter> WRITERS = new ThreadLocal<CodecWriter>() {
+		@Override
+		protected CodecWriter initialValue() {
+			return new CodecWriter(INITIAL_CAPACITY);
+		}
+	};
+	private byte[] buffer;
+	private int position;
+
+	CodecWriter(int capacity) {
+		this.buffer = new byte[capacity];
+	}
+
+	/**
+	 * @return 当前线程复用的writer（已复位），不能跨线程使用，也不能在编码过程中嵌套获取
+	 */
+	static CodecWriter get() {
+		CodecWriter writer = WRITERS.get();
+		if(writer.buffer.length > MAX_RETAINED_CAPACITY) {
+			writer.buffer = new byte[INITIAL_CAPACITY];
+		}
+		writer.position = 0;
+		return writer;
+	}
+
+	public CodecWriter writeByte(int value) {
+		this.ensureCapacity(1);
+		this.buffer[this.position++] = (byte)value;
+		return this;
+	}
+
+	public CodecWriter writeBoolean(boolean value) {
+		return this.writeByte(value ? 1 : 0);
+	}
+
+	/**
+	 * 无符号varint，负数固定占5个字节，可能为负时使用{@link #writeSignedVarInt(int)}
+	 */
+	public CodecWriter writeVarInt(int value) {
+		this.ensureCapacity(5);
+		while((value & ~0x7F) != 0) {
+			this.buffer[this.position++] = (byte)((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		this.buffer[this.position++] = (byte)value;
+		return this;
+	}
+
+	public CodecWriter writeSignedVarInt(int value) {
+		return this.writeVarInt((value << 1) ^ (value >> 31));
+	}
+
+	/**
+	 * 无符号varint，负数固定占10个字节，可能为负时使用{@link #writeSignedVarLong(long)}
+	 */
+	public CodecWriter writeVarLong(long value) {
+		this.ensureCapacity(10);
+		while((value & ~0x7FL) != 0L) {
+			this.buffer[this.position++] = (byte)((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		this.buffer[this.position++] = (byte)value;
+		return this;
+	}
+
+	public CodecWriter writeSignedVarLong(long value) {
+		return this.writeVarLong((value << 1) ^ (value >> 63));
+	}
+
+	/**
+	 * varint(字节长度 + 1)，0表示null，之后为UTF-8内容
+	 */
+	public CodecWriter writeString(String value) {
+		if(value == null) {
+			return this.writeVarInt(0);
+		}
+
+		int length = value.length();
+		int i = 0;
+		// ASCII字符串（最常见）直接写入缓冲区，不经过String.getBytes
+		while(i < length && value.charAt(i) < 0x80) {
+			++i;
+		}
+
+		if(i == length) {
+			this.writeVarInt(length + 1);
+			this.ensureCapacity(length);
+			for(i = 0; i < length; ++i) {
+				this.buffer[this.position++] = (byte)value.charAt(i);
+			}
+			return this;
+		}
+
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		this.writeVarInt(bytes.length + 1);
+		return this.writeRawBytes(bytes);
+	}
+
+	/**
+	 * varint(长度 + 1)，0表示null，之后为原始内容
+	 */
+	public CodecWriter writeBytes(byte[] value) {
+		if(value == null) {
+			return this.writeVarInt(0);
+		}
+
+		this.writeVarInt(value.length + 1);
+		return this.writeRawBytes(value);
+	}
+
+	private CodecWriter writeRawBytes(byte[] value) {
+		this.ensureCapacity(value.length);
+		System.arraycopy(value, 0, this.buffer, this.position, value.length);
+		this.position += value.length;
+		return this;
+	}
+
+	public int size() {
+		return this.position;
+	}
+
+	/**
+	 * @return 已写入内容的拷贝
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOf(this.buffer, this.position);
+	}
+
+	private void ensureCapacity(int length) {
+		if(this.position + length > this.buffer.length) {
+			this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length << 1, this.position + length));
+		}
+	}
+}
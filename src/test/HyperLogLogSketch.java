@@ -0,0 +1,181 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 与Redis兼容的HyperLogLog：16384个6位寄存器，元素哈希与Redis相同（MurmurHash64A，seed为0xadc83b19），
+ * 因此本地添加元素后得到的寄存器与在Redis中PFADD相同元素的结果一致。
+ * {@link #toRedisDense()}输出Redis的dense编码（"HYLL"头 + 12288字节寄存器），
+ * 可以SET到临时key后PFMERGE到目标key。非线程安全。
+ *
+ * @author BurningIce
+ *
+ */
+class HyperLogLogSketch {
+	final static int P = 14;
+	final static int REGISTERS = 1 << P;				// 16384
+	private final static int Q = 64 - P;
+	private final static int BITS = 6;
+	private final static int HEADER_SIZE = 16;
+	final static int DENSE_SIZE = HEADER_SIZE + (REGISTERS * BITS + 7) / 8;	// 12304
+	private final static long SEED = 0xadc83b19L;
+	private final byte[] registers = new byte[REGISTERS];
+
+	/**
+	 * @return 寄存器是否发生变化（与PFADD的返回值含义相同）
+	 */
+	boolean add(String element) {
+		return this.add(element.getBytes(StandardCharsets.UTF_8));
+	}
+
+	boolean add(byte[] element) {
+		long hash = murmurHash64A(element, SEED);
+		int index = (int)(hash & (REGISTERS - 1));
+		hash >>>= P;
+		hash |= 1L << Q;
+		int count = Long.numberOfTrailingZeros(hash) + 1;
+		if(count > this.registers[index]) {
+			this.registers[index] = (byte)count;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 合并另一个sketch（取每个寄存器的最大值）
+	 */
+	void merge(HyperLogLogSketch other) {
+		for(int i = 0; i < REGISTERS; ++i) {
+			if(other.registers[i] > this.registers[i]) {
+				this.registers[i] = other.registers[i];
+			}
+		}
+	}
+
+	int getRegister(int index) {
+		return this.registers[index];
+	}
+
+	/**
+	 * @return 基数估算（原始HyperLogLog算法，小基数时使用线性计数），仅供本地参考，与PFCOUNT的结果可能略有差异
+	 */
+	long count() {
+		double sum = 0.0;
+		int zeros = 0;
+		for(int i = 0; i < REGISTERS; ++i) {
+			sum += 1.0 / (1L << this.registers[i]);
+			if(this.registers[i] == 0) {
+				zeros++;
+			}
+		}
+
+		double alpha = 0.7213 / (1.0 + 1.079 / REGISTERS);
+		double estimate = alpha * REGISTERS * REGISTERS / sum;
+		if(estimate <= 2.5 * REGISTERS && zeros > 0) {
+			estimate = REGISTERS * Math.log((double)REGISTERS / zeros);
+		}
+		return Math.round(estimate);
+	}
+
+	/**
+	 * @return Redis dense编码；基数缓存标记为无效，由Redis在PFCOUNT时重新计算
+	 */
+	byte[] toRedisDense() {
+		byte[] dense = new byte[DENSE_SIZE];
+		dense[0] = 'H';
+		dense[1] = 'Y';
+		dense[2] = 'L';
+		dense[3] = 'L';
+		dense[4] = 0;						// HLL_DENSE
+		dense[HEADER_SIZE - 1] = (byte)0x80;	// card[7]的最高位：缓存无效
+
+		for(int i = 0; i < REGISTERS; ++i) {
+			int value = this.registers[i];
+			if(value == 0)
+				continue;
+
+			int bit = i * BITS;
+			int b = HEADER_SIZE + (bit >>> 3);
+			int fb = bit & 7;
+			dense[b] |= (byte)(value << fb);
+			if(fb > 8 - BITS) {
+				dense[b + 1] |= (byte)(value >>> (8 - fb));
+			}
+		}
+		return dense;
+	}
+
+	/**
+	 * 从Redis dense编码读取寄存器
+	 * @throws IllegalArgumentException 不是dense编码
+	 */
+	static HyperLogLogSketch fromRedisDense(byte[] dense) {
+		if(dense == null || dense.length != DENSE_SIZE || dense[0] != 'H' || dense[1] != 'Y' || dense[2] != 'L' || dense[3] != 'L' || dense[4] != 0)
+			throw new IllegalArgumentException("not a dense HyperLogLog");
+
+		HyperLogLogSketch sketch = new HyperLogLogSketch();
+		for(int i = 0; i < REGISTERS; ++i) {
+			int bit = i * BITS;
+			int b = HEADER_SIZE + (bit >>> 3);
+			int fb = bit & 7;
+			int value = (dense[b] & 0xFF) >>> fb;
+			if(fb > 8 - BITS) {
+				value |= (dense[b + 1] & 0xFF) << (8 - fb);
+			}
+			sketch.registers[i] = (byte)(value & 0x3F);
+		}
+		return sketch;
+	}
+
+	/**
+	 * MurmurHash64A（小端），与Redis hyperloglog.c中的实现一致
+	 */
+	@SuppressWarnings("fallthrough")
+	static long murmurHash64A(byte[] data, long seed) {
+		final long m = 0xc6a4a7935bd1e995L;
+		final int r = 47;
+		int length = data.length;
+		long h = seed ^ (length * m);
+
+		int end = length & ~7;
+		for(int i = 0; i < end; i += 8) {
+			long k = (data[i] & 0xFFL)
+					| (data[i + 1] & 0xFFL) << 8
+					| (data[i + 2] & 0xFFL) << 16
+					| (data[i + 3] & 0xFFL) << 24
+					| (data[i + 4] & 0xFFL) << 32
+					| (data[i + 5] & 0xFFL) << 40
+					| (data[i + 6] & 0xFFL) << 48
+					| (data[i + 7] & 0xFFL) << 56;
+			k *= m;
+			k ^= k >>> r;
+			k *= m;
+			h ^= k;
+			h *= m;
+		}
+
+		switch(length & 7) {
+		case 7: h ^= (data[end + 6] & 0xFFL) << 48;
+				// fall through
+		case 6: h ^= (data[end + 5] & 0xFFL) << 40;
+				// fall through
+		case 5: h ^= (data[end + 4] & 0xFFL) << 32;
+				// fall through
+		case 4: h ^= (data[end + 3] & 0xFFL) << 24;
+				// fall through
+		case 3: h ^= (data[end + 2] & 0xFFL) << 16;
+				// fall through
+		case 2: h ^= (data[end + 1] & 0xFFL) << 8;
+				// fall through
+		case 1: h ^= (data[end] & 0xFFL);
+				h *= m;
+		}
+
+		h ^= h >>> r;
+		h *= m;
+		h ^= h >>> r;
+		return h;
+	}
+}
@@ -0,0 +1,72 @@
+import org.junit.Test;
+import redis.clients.util.MurmurHash;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * HyperLogLogSketch：哈希与Jedis一致、dense编码与Redis互通、计数误差与合并
+ */
+public class HyperLogLogSketchTest {
+
+    @Test
+    public void testMurmurHashMatchesJedis() {
+        // 正数seed时与Jedis的MurmurHash64A一致（Jedis的int seed会符号扩展，Redis的seed为无符号数）
+        for (int length = 0; length < 40; ++length) {
+            byte[] data = new byte[length];
+            for (int i = 0; i < length; ++i) {
+                data[i] = (byte) (i * 37 + 200);
+            }
+            assertEquals(MurmurHash.hash64A(data, 0x1234ABCD), HyperLogLogSketch.murmurHash64A(data, 0x1234ABCDL));
+        }
+    }
+
+    @Test
+    public void testDenseEncodingRoundTrip() {
+        HyperLogLogSketch sketch = new HyperLogLogSketch();
+        for (int i = 0; i < 50000; ++i) {
+            sketch.add("user-" + i);
+        }
+
+        byte[] dense = sketch.toRedisDense();
+        assertEquals(HyperLogLogSketch.DENSE_SIZE, dense.length);
+        assertEquals("HYLL", new String(dense, 0, 4, StandardCharsets.US_ASCII));
+        assertEquals(0, dense[4]);
+        assertTrue((dense[15] & 0x80) != 0);
+
+        HyperLogLogSketch decoded = HyperLogLogSketch.fromRedisDense(dense);
+        for (int i = 0; i < HyperLogLogSketch.REGISTERS; ++i) {
+            assertEquals(sketch.getRegister(i), decoded.getRegister(i));
+        }
+    }
+
+    @Test
+    public void testCountAndMerge() {
+        HyperLogLogSketch a = new HyperLogLogSketch();
+        HyperLogLogSketch b = new HyperLogLogSketch();
+        for (int i = 0; i < 100000; ++i) {
+            a.add("uv-" + i);
+            b.add("uv-" + (i + 50000));
+        }
+        assertFalse(a.add("uv-1"));
+
+        // 标准误差约0.81%
+        assertEquals(100000.0, a.count(), 3000.0);
+        a.merge(b);
+        assertEquals(150000.0, a.count(), 4500.0);
+
+        HyperLogLogSketch small = new HyperLogLogSketch();
+        for (int i = 0; i < 100; ++i) {
+            small.add("uv-" + i);
+        }
+        assertEquals(100.0, small.count(), 3.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsSparseEncoding() {
+        byte[] sparse = new HyperLogLogSketch().toRedisDense();
+        sparse[4] = 1;
+        HyperLogLogSketch.fromRedisDense(sparse);
+    }
+}
@@ -0,0 +1,1016 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import redis.clients.jedis.Pipeline;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * 进程内的RedisClient实现，可作为嵌入式缓存层或测试替身：
+ * <ul>
+ * <li>所有key保存在一个ConcurrentHashMap中（按bin加锁），string/hash/set的读写不需要全局锁，
+ * incr/hincrBy/expire等读改写操作以及对hash/set/HyperLogLog的写入通过compute在单个key上原子执行，
+ * 不会写入已被并发的del/set替换的容器；</li>
+ * <li>hash和set使用ConcurrentHashMap，HyperLogLog使用与Redis兼容的{@link HyperLogLogSketch}（在单个key上加锁）；</li>
+ * <li>过期key由{@link RedisTimerWheel}在后台线程中按tick删除，读取时只检查该key自身的过期时间，
+ * 不会在访问时扫描；过期时间精确到纳秒，后台删除最多延迟一个tick；</li>
+ * <li>key与field按字节比较：String按UTF-8编码，与byte[]版本的接口访问同一个key；</li>
+ * <li>incrByDeferred/pfAddDeferred等延迟接口直接同步执行；executePipelined中的命令立即执行，Response在返回前已完成；
+ * 不支持{@link #pipelined()}。</li>
+ * </ul>
+ * 错误（如对hash执行incr、对非数字执行incr）与JedisPoolRedisClientImpl一样不抛出异常，返回null/0或忽略。
+ *
+ * @author BurningIce
+ *
+ */
+public class InMemoryRedisClient implements RedisClient {
+	private final static long DEFAULT_TICK_MILLIS = 10L;
+	private final static int DEFAULT_INITIAL_CAPACITY = 1024;
+	private final static int DEFAULT_CONCURRENCY_LEVEL = 64;
+	private final static String OK = "OK";
+	private final static int HASH = 0;
+	private final static int SET = 1;
+	private final static int HLL = 2;
+	private long tickMillis = DEFAULT_TICK_MILLIS;
+	private int initialCapacity = DEFAULT_INITIAL_CAPACITY;
+	private int concurrencyLevel = DEFAULT_CONCURRENCY_LEVEL;
+	private ConcurrentHashMap<String, Entry> data;
+	private RedisTimerWheel<Entry> timerWheel;
+	private final LongAdder expiredKeys = new LongAdder();
+
+	/**
+	 * @param tickMillis 过期时间轮的tick（单位：毫秒），即后台删除过期key的最大延迟
+	 */
+	public void setTickMillis(long tickMillis) {
+		this.tickMillis = tickMillis;
+	}
+
+	/**
+	 * @param initialCapacity 预计的key数量
+	 */
+	public void setInitialCapacity(int initialCapacity) {
+		this.initialCapacity = initialCapacity;
+	}
+
+	/**
+	 * @param concurrencyLevel 预计同时写入的线程数量
+	 */
+	public void setConcurrencyLevel(int concurrencyLevel) {
+		this.concurrencyLevel = concurrencyLevel;
+	}
+
+	public void init() {
+		this.data = new ConcurrentHashMap<String, Entry>(this.initialCapacity, 0.75f, this.concurrencyLevel);
+		this.timerWheel = new RedisTimerWheel<Entry>(this.tickMillis, new RedisTimerWheel.ExpiryListener<Entry>() {
+			@Override
+			public void onExpire(Entry entry) {
+				// key已被覆盖或重新设置过期时间时entry不同，不会误删
+				if(data.remove(entry.key, entry)) {
+					expiredKeys.increment();
+				}
+			}
+		});
+		this.timerWheel.start("in-memory-redis-expirer");
+	}
+
+	public void destroy() {
+		if(this.timerWheel != null) {
+			this.timerWheel.shutdown();
+			this.timerWheel = null;
+		}
+	}
+
+	/**
+	 * @return key数量（包括已过期但还没有被后台删除的key）
+	 */
+	public int size() {
+		return this.data.size();
+	}
+
+	/**
+	 * @return 后台删除的过期key数量
+	 */
+	public long getExpiredCount() {
+		return this.expiredKeys.sum();
+	}
+
+	@Override
+	public String get(String key) {
+		Entry entry = this.live(key(key));
+		return entry == null ? null : stringOf(entry.value);
+	}
+
+	@Override
+	public byte[] get(byte[] key) {
+		Entry entry = this.live(key(key));
+		return entry == null ? null : bytesOf(entry.value);
+	}
+
+	@Override
+	public int get(byte[] key, ByteBuffer target) {
+		Entry entry = this.live(key(key));
+		byte[] value = entry == null ? null : rawBytesOf(entry.value);
+		return value == null ? -1 : RedisValueCompressor.decompress(value, target);
+	}
+
+	@Override
+	public List<String> mget(String... key) {
+		if(key == null)
+			return null;
+
+		List<String> values = new ArrayList<String>(key.length);
+		for(String k : key) {
+			values.add(this.get(k));
+		}
+		return values;
+	}
+
+	@Override
+	public List<byte[]> mget(byte[]... key) {
+		if(key == null)
+			return null;
+
+		List<byte[]> values = new ArrayList<byte[]>(key.length);
+		for(byte[] k : key) {
+			values.add(this.get(k));
+		}
+		return values;
+	}
+
+	@Override
+	public long del(String key) {
+		return this.remove(key(key));
+	}
+
+	@Override
+	public long del(byte[] key) {
+		return this.remove(key(key));
+	}
+
+	@Override
+	public long del(String... keys) {
+		long deleted = 0L;
+		for(String key : keys) {
+			deleted += this.remove(key(key));
+		}
+		return deleted;
+	}
+
+	@Override
+	public long del(byte[]... keys) {
+		long deleted = 0L;
+		for(byte[] key : keys) {
+			deleted += this.remove(key(key));
+		}
+		return deleted;
+	}
+
+	@Override
+	public long unlink(String... keys) {
+		return this.del(keys);
+	}
+
+	@Override
+	public long expire(String[] keys, int expirationInSeconds) {
+		long expired = 0L;
+		for(String key : keys) {
+			if(this.expireKey(key(key), expirationInSeconds)) {
+				expired++;
+			}
+		}
+		return expired;
+	}
+
+	@Override
+	public long delByPattern(String pattern, int count, int maxKeysPerSecond) {
+		return new RedisKeyCleaner(this, count, maxKeysPerSecond).delete(pattern);
+	}
+
+	@Override
+	public long expireByPattern(String pattern, int expirationInSeconds, int count, int maxKeysPerSecond) {
+		return new RedisKeyCleaner(this, count, maxKeysPerSecond).expire(pattern, expirationInSeconds);
+	}
+
+	@Override
+	public void set(String key, String value) {
+		this.put(key(key), value, 0);
+	}
+
+	@Override
+	public void set(byte[] key, byte[] value) {
+		this.put(key(key), value.clone(), 0);
+	}
+
+	@Override
+	public void set(String key, String value, int expirationInSeconds) {
+		this.put(key(key), value, expirationInSeconds);
+	}
+
+	@Override
+	public void set(byte[] key, byte[] value, int expirationInSeconds) {
+		this.put(key(key), value.clone(), expirationInSeconds);
+	}
+
+	@Override
+	public void set(byte[] key, ByteBuffer value, int expirationInSeconds) {
+		// 调用方可能复用缓冲区，总是复制
+		byte[] bytes = new byte[value.remaining()];
+		value.get(bytes);
+		this.put(key(key), bytes, expirationInSeconds);
+	}
+
+	@Override
+	public void mset(String... keyValues) {
+		for(int i = 0; i + 1 < keyValues.length; i += 2) {
+			this.set(keyValues[i], keyValues[i + 1]);
+		}
+	}
+
+	@Override
+	public void mset(byte[]... keyValues) {
+		for(int i = 0; i + 1 < keyValues.length; i += 2) {
+			this.set(keyValues[i], keyValues[i + 1]);
+		}
+	}
+
+	@Override
+	public void msetWithTtl(int expirationInSeconds, String... keyValues) {
+		if(expirationInSeconds <= 0) {
+			this.mset(keyValues);
+			return;
+		}
+
+		for(int i = 0; i + 1 < keyValues.length; i += 2) {
+			this.set(keyValues[i], keyValues[i + 1], expirationInSeconds);
+		}
+	}
+
+	@Override
+	public void expire(String key, int expirationInSeconds) {
+		this.expireKey(key(key), expirationInSeconds);
+	}
+
+	@Override
+	public void expire(byte[] key, int expirationInSeconds) {
+		this.expireKey(key(key), expirationInSeconds);
+	}
+
+	@Override
+	public long incr(String key) {
+		return this.incrBy(key, 1L);
+	}
+
+	@Override
+	public long incr(byte[] key) {
+		return this.incrBy(key, 1L);
+	}
+
+	@Override
+	public long incrBy(String key, long increment) {
+		return this.increment(key(key), increment);
+	}
+
+	@Override
+	public long incrBy(byte[] key, long increment) {
+		return this.increment(key(key), increment);
+	}
+
+	@Override
+	public long incrByWithTtl(String key, long increment, int expirationInSeconds) {
+		long value = this.incrBy(key, increment);
+		if(expirationInSeconds > 0) {
+			this.expireKey(key(key), expirationInSeconds);
+		}
+		return value;
+	}
+
+	@Override
+	public long decr(String key) {
+		return this.incrBy(key, -1L);
+	}
+
+	@Override
+	public long decr(byte[] key) {
+		return this.incrBy(key, -1L);
+	}
+
+	@Override
+	public long decrBy(String key, long decrement) {
+		return this.incrBy(key, -decrement);
+	}
+
+	@Override
+	public long decrBy(byte[] key, long decrement) {
+		return this.incrBy(key, -decrement);
+	}
+
+	@Override
+	public void incrByDeferred(String key, long increment) {
+		this.incrBy(key, increment);
+	}
+
+	@Override
+	public String hget(String key, String field) {
+		Map<String, Object> hash = this.hash(key(key));
+		return hash == null ? null : stringOf(hash.get(key(field)));
+	}
+
+	@Override
+	public byte[] hget(byte[] key, byte[] field) {
+		Map<String, Object> hash = this.hash(key(key));
+		return hash == null ? null : bytesOf(hash.get(key(field)));
+	}
+
+	@Override
+	public int hget(byte[] key, byte[] field, ByteBuffer target) {
+		Map<String, Object> hash = this.hash(key(key));
+		byte[] value = hash == null ? null : rawBytesOf(hash.get(key(field)));
+		return value == null ? -1 : RedisValueCompressor.decompress(value, target);
+	}
+
+	@Override
+	public List<String> hmget(String key, String... field) {
+		Map<String, Object> hash = this.hash(key(key));
+		List<String> values = new ArrayList<String>(field.length);
+		for(String f : field) {
+			values.add(hash == null ? null : stringOf(hash.get(key(f))));
+		}
+		return values;
+	}
+
+	@Override
+	public List<byte[]> hmget(byte[] key, byte[]... field) {
+		Map<String, Object> hash = this.hash(key(key));
+		List<byte[]> values = new ArrayList<byte[]>(field.length);
+		for(byte[] f : field) {
+			values.add(hash == null ? null : bytesOf(hash.get(key(f))));
+		}
+		return values;
+	}
+
+	@Override
+	public void hset(String key, String field, String value) {
+		this.hsetField(key(key), key(field), value);
+	}
+
+	@Override
+	public void hset(byte[] key, byte[] field, byte[] value) {
+		this.hsetField(key(key), key(field), value.clone());
+	}
+
+	@Override
+	public Long hsetWithTtl(String key, String field, String value, int expirationInSeconds) {
+		long added = this.hsetField(key(key), key(field), value);
+		if(expirationInSeconds > 0) {
+			this.expireKey(key(key), expirationInSeconds);
+		}
+		return added;
+	}
+
+	@Override
+	public void hmset(String key, final Map<String, String> fieldAndValues) {
+		this.writeContainer(key(key), HASH, new ContainerWriter<Map<String, Object>, Void>() {
+			@Override
+			public Void write(Map<String, Object> hash) {
+				for(Map.Entry<String, String> e : fieldAndValues.entrySet()) {
+					hash.put(key(e.getKey()), e.getValue());
+				}
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public void hmset(byte[] key, final Map<byte[], byte[]> fieldAndValues) {
+		this.writeContainer(key(key), HASH, new ContainerWriter<Map<String, Object>, Void>() {
+			@Override
+			public Void write(Map<String, Object> hash) {
+				for(Map.Entry<byte[], byte[]> e : fieldAndValues.entrySet()) {
+					hash.put(key(e.getKey()), e.getValue().clone());
+				}
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public Map<String, String> hgetAll(String key) {
+		Map<String, Object> hash = this.hash(key(key));
+		Map<String, String> values = new HashMap<String, String>();
+		if(hash != null) {
+			for(Map.Entry<String, Object> e : hash.entrySet()) {
+				values.put(external(e.getKey()), stringOf(e.getValue()));
+			}
+		}
+		return values;
+	}
+
+	@Override
+	public long hincrBy(String key, String field, long increment) {
+		return this.hincrement(key(key), key(field), increment);
+	}
+
+	@Override
+	public long hincrBy(byte[] key, byte[] field, long increment) {
+		return this.hincrement(key(key), key(field), increment);
+	}
+
+	@Override
+	public void hincrByDeferred(String key, String field, long increment) {
+		this.hincrBy(key, field, increment);
+	}
+
+	@Override
+	public Long pfAdd(String key, final String... elements) {
+		Boolean changed = this.writeContainer(key(key), HLL, new ContainerWriter<HyperLogLogSketch, Boolean>() {
+			@Override
+			public Boolean write(HyperLogLogSketch sketch) {
+				boolean changed = false;
+				if(elements == null)
+					return Boolean.FALSE;
+
+				synchronized(sketch) {
+					for(String element : elements) {
+						changed |= sketch.add(element);
+					}
+				}
+				return Boolean.valueOf(changed);
+			}
+		});
+		return changed != null && changed.booleanValue() ? 1L : 0L;
+	}
+
+	@Override
+	public Long pfAdd(String key, int expirationInSeconds, String... elements) {
+		return this.pfAddWithTtl(key, expirationInSeconds, elements);
+	}
+
+	@Override
+	public Long pfAddWithTtl(String key, int expirationInSeconds, String... elements) {
+		Long value = this.pfAdd(key, elements);
+		if(expirationInSeconds > 0) {
+			this.expire(key, expirationInSeconds);
+		}
+		return value;
+	}
+
+	@Override
+	public void pfAddDeferred(String key, int expirationInSeconds, String... elements) {
+		this.pfAdd(key, expirationInSeconds, elements);
+	}
+
+	@Override
+	public long pfCount(String key) {
+		HyperLogLogSketch sketch = this.hll(key(key));
+		if(sketch == null)
+			return 0L;
+
+		synchronized(sketch) {
+			return sketch.count();
+		}
+	}
+
+	@Override
+	public String pfmerge(String destkey, String... sourcekeys) {
+		// 先复制所有源寄存器，避免同时持有两个sketch的锁
+		final HyperLogLogSketch merged = new HyperLogLogSketch();
+		for(String sourcekey : sourcekeys) {
+			String source = key(sourcekey);
+			Entry entry = this.live(source);
+			if(entry == null)
+				continue;
+
+			HyperLogLogSketch sketch = this.hll(source);
+			if(sketch == null)
+				return null;
+
+			synchronized(sketch) {
+				merged.merge(sketch);
+			}
+		}
+
+		return this.writeContainer(key(destkey), HLL, new ContainerWriter<HyperLogLogSketch, String>() {
+			@Override
+			public String write(HyperLogLogSketch dest) {
+				synchronized(dest) {
+					dest.merge(merged);
+				}
+				return OK;
+			}
+		});
+	}
+
+	@Override
+	public Long sadd(String key, final String... members) {
+		Long added = this.writeContainer(key(key), SET, new ContainerWriter<Set<String>, Long>() {
+			@Override
+			public Long write(Set<String> set) {
+				long added = 0L;
+				for(String member : members) {
+					if(set.add(key(member))) {
+						added++;
+					}
+				}
+				return Long.valueOf(added);
+			}
+		});
+		return added == null ? 0L : added;
+	}
+
+	@Override
+	public Set<String> smembers(String key) {
+		Set<String> set = this.set(key(key));
+		Set<String> members = new HashSet<String>();
+		if(set != null) {
+			for(String member : set) {
+				members.add(external(member));
+			}
+		}
+		return members;
+	}
+
+	@Override
+	public Set<String> keys(String pattern) {
+		Set<String> keys = new HashSet<String>();
+		Iterator<String> iterator = this.scanIterator(pattern, 0);
+		while(iterator.hasNext()) {
+			keys.add(iterator.next());
+		}
+		return keys;
+	}
+
+	@Override
+	public long scan(String pattern, int count, ScanCallback<String> callback) {
+		return drain(this.scanIterator(pattern, count), count, callback);
+	}
+
+	/**
+	 * 与JedisPoolRedisClientImpl一致只遍历一次，匹配任一pattern的key只回调一次；内存中扫描不需要并行，parallelism被忽略
+	 */
+	@Override
+	public long scan(String[] patterns, int count, int parallelism, ScanCallback<String> callback) {
+		List<String> matched = new ArrayList<String>();
+		Iterator<String> iterator = this.scanIterator(null, 0);
+		while(iterator.hasNext()) {
+			String key = iterator.next();
+			for(String pattern : patterns) {
+				if(globMatch(key(pattern), 0, key(key), 0)) {
+					matched.add(key);
+					break;
+				}
+			}
+		}
+		return drain(matched.iterator(), count, callback);
+	}
+
+	/**
+	 * 弱一致性迭代：迭代期间写入的key可能返回也可能不返回，但不会重复返回同一个key
+	 */
+	@Override
+	public Iterator<String> scanIterator(String pattern, int count) {
+		final String canonicalPattern = pattern == null || pattern.equals("*") ? null : key(pattern);
+		final Iterator<Entry> entries = this.data.values().iterator();
+		final long now = System.nanoTime();
+		return new Iterator<String>() {
+			private String next;
+
+			@Override
+			public boolean hasNext() {
+				while(this.next == null && entries.hasNext()) {
+					Entry entry = entries.next();
+					if(!entry.isExpired(now) && (canonicalPattern == null || globMatch(canonicalPattern, 0, entry.key, 0))) {
+						this.next = external(entry.key);
+					}
+				}
+				return this.next != null;
+			}
+
+			@Override
+			public String next() {
+				if(!this.hasNext())
+					throw new NoSuchElementException();
+
+				String key = this.next;
+				this.next = null;
+				return key;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	@Override
+	public long hscan(String key, int count, ScanCallback<Map.Entry<String, String>> callback) {
+		Map<String, Object> hash = this.hash(key(key));
+		if(hash == null)
+			return 0L;
+
+		final Iterator<Map.Entry<String, Object>> fields = hash.entrySet().iterator();
+		return drain(new Iterator<Map.Entry<String, String>>() {
+			@Override
+			public boolean hasNext() {
+				return fields.hasNext();
+			}
+
+			@Override
+			public Map.Entry<String, String> next() {
+				Map.Entry<String, Object> e = fields.next();
+				return new AbstractMap.SimpleImmutableEntry<String, String>(external(e.getKey()), stringOf(e.getValue()));
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		}, count, callback);
+	}
+
+	/**
+	 * 各key在调用方线程中依次读取，parallelism被忽略
+	 */
+	@Override
+	public long hscan(String[] keys, int count, int parallelism, ScanCallback<Map.Entry<String, String>> callback) {
+		long scanned = 0L;
+		for(String key : keys) {
+			scanned += this.hscan(key, count, callback);
+		}
+		return scanned;
+	}
+
+	private static <T> long drain(Iterator<T> iterator, int count, ScanCallback<T> callback) {
+		int batchSize = Math.max(1, count);
+		long scanned = 0L;
+		List<T> batch = new ArrayList<T>(Math.min(batchSize, 1024));
+		while(iterator.hasNext()) {
+			batch.add(iterator.next());
+			if(batch.size() >= batchSize || !iterator.hasNext()) {
+				scanned += batch.size();
+				if(!callback.onBatch(batch)) {
+					break;
+				}
+				batch = new ArrayList<T>(Math.min(batchSize, 1024));
+			}
+		}
+
+		return scanned;
+	}
+
+	/**
+	 * 没有可以返回的Jedis连接，调用时抛出UnsupportedOperationException，请使用executePipelined
+	 */
+	@Override
+	@Deprecated
+	public Pipeline pipelined() {
+		throw new UnsupportedOperationException("pipelined() is not supported by InMemoryRedisClient, use executePipelined() instead");
+	}
+
+	@Override
+	public <T> T executePipelined(PipelineCallback<T> callback) {
+		try {
+			return callback.doInPipeline(new InMemoryRedisPipeline(this));
+		} catch(Throwable t) {
+//			logger.error("failed to execute pipeline: " + t.getMessage(), t);
+			return null;
+		}
+	}
+
+	@Override
+	public <T> T executePipelined(int flushSize, PipelineCallback<T> callback) {
+		return this.executePipelined(callback);
+	}
+
+	@Override
+	public boolean isReady() {
+		return this.data != null;
+	}
+
+	/**
+	 * @return 未过期的entry
+	 */
+	private Entry live(String key) {
+		Entry entry = this.data.get(key);
+		if(entry != null && entry.isExpired(System.nanoTime())) {
+			// 还没有被时间轮删除
+			this.data.remove(key, entry);
+			return null;
+		}
+		return entry;
+	}
+
+	private Entry newEntry(String key, Object value, long expirationNanos) {
+		if(expirationNanos <= 0L)
+			return new Entry(key, value, false, 0L);
+
+		Entry entry = new Entry(key, value, true, System.nanoTime() + expirationNanos);
+		this.timerWheel.schedule(entry, entry.expireAt);
+		return entry;
+	}
+
+	private void put(String key, Object value, int expirationInSeconds) {
+		this.data.put(key, this.newEntry(key, value, TimeUnit.SECONDS.toNanos(Math.max(0, expirationInSeconds))));
+	}
+
+	/**
+	 * @return 删除了未过期的key时返回1
+	 */
+	private long remove(String key) {
+		Entry entry = this.data.remove(key);
+		return entry == null || entry.isExpired(System.nanoTime()) ? 0L : 1L;
+	}
+
+	long hsetField(String key, final String field, final Object value) {
+		Long added = this.writeContainer(key, HASH, new ContainerWriter<Map<String, Object>, Long>() {
+			@Override
+			public Long write(Map<String, Object> hash) {
+				return hash.put(field, value) == null ? 1L : 0L;
+			}
+		});
+		return added == null ? 0L : added.longValue();
+	}
+
+	/**
+	 * @return 该key是否存在
+	 */
+	boolean expireKey(String key, final int expirationInSeconds) {
+		final boolean[] existed = new boolean[1];
+		this.data.computeIfPresent(key, new BiFunction<String, Entry, Entry>() {
+			@Override
+			public Entry apply(String k, Entry current) {
+				if(current.isExpired(System.nanoTime()))
+					return null;
+
+				existed[0] = true;
+				// 与Redis相同，过期时间小于等于0时删除
+				return expirationInSeconds <= 0 ? null : newEntry(k, current.value, TimeUnit.SECONDS.toNanos(expirationInSeconds));
+			}
+		});
+		return existed[0];
+	}
+
+	private long increment(String key, final long increment) {
+		final long[] result = new long[1];
+		try {
+			this.data.compute(key, new BiFunction<String, Entry, Entry>() {
+				@Override
+				public Entry apply(String k, Entry current) {
+					if(current == null || current.isExpired(System.nanoTime())) {
+						result[0] = increment;
+						return new Entry(k, Long.valueOf(increment), false, 0L);
+					}
+
+					// 保留原entry（及其过期时间），只替换值
+					result[0] = Math.addExact(parseLong(current.value), increment);
+					current.value = Long.valueOf(result[0]);
+					return current;
+				}
+			});
+			return result[0];
+		} catch(RuntimeException ex) {
+			// 不是整数或溢出
+			return 0L;
+		}
+	}
+
+	private long hincrement(String key, final String field, final long increment) {
+		try {
+			Long value = this.writeContainer(key, HASH, new ContainerWriter<Map<String, Object>, Long>() {
+				@Override
+				public Long write(Map<String, Object> hash) {
+					return (Long)hash.compute(field, new BiFunction<String, Object, Object>() {
+						@Override
+						public Object apply(String f, Object current) {
+							return Long.valueOf(current == null ? increment : Math.addExact(parseLong(current), increment));
+						}
+					});
+				}
+			});
+			return value == null ? 0L : value.longValue();
+		} catch(RuntimeException ex) {
+			return 0L;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> hash(String key) {
+		Object value = this.container(key, HASH);
+		return value instanceof ConcurrentHashMap ? (Map<String, Object>)value : null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Set<String> set(String key) {
+		Object value = this.container(key, SET);
+		return value instanceof Set ? (Set<String>)value : null;
+	}
+
+	private HyperLogLogSketch hll(String key) {
+		Object value = this.container(key, HLL);
+		return value instanceof HyperLogLogSketch ? (HyperLogLogSketch)value : null;
+	}
+
+	/**
+	 * 读取用：返回时容器可能已被并发的del/set替换，读到的是替换前的内容，与Redis中读写交错的结果相同
+	 * @return key对应的hash/set/HyperLogLog，不存在时返回null，类型不同时返回其他类型的值
+	 */
+	private Object container(String key, final int type) {
+		Entry entry = this.live(key);
+		if(entry == null || type != HLL || entry.value instanceof HyperLogLogSketch)
+			return entry == null ? null : entry.value;
+
+		// 需要转换编码
+		entry = this.data.computeIfPresent(key, new BiFunction<String, Entry, Entry>() {
+			@Override
+			public Entry apply(String k, Entry current) {
+				return containerEntry(k, current, type);
+			}
+		});
+		return entry == null ? null : entry.value;
+	}
+
+	/**
+	 * 在compute中（持有该key所在bin的锁）取得或创建hash/set/HyperLogLog并修改，
+	 * 与del/set等替换整个entry的写入互斥，不会写入已被删除或覆盖的容器
+	 * @return writer的返回值，类型不同（WRONGTYPE）时返回null
+	 */
+	@SuppressWarnings("unchecked")
+	private <C, R> R writeContainer(String key, final int type, final ContainerWriter<C, R> writer) {
+		final List<R> result = new ArrayList<R>(1);
+		this.data.compute(key, new BiFunction<String, Entry, Entry>() {
+			@Override
+			public Entry apply(String k, Entry current) {
+				Entry entry = containerEntry(k, current, type);
+				if(isContainer(entry.value, type)) {
+					result.add(writer.write((C)entry.value));
+				}
+				return entry;
+			}
+		});
+		return result.isEmpty() ? null : result.get(0);
+	}
+
+	/**
+	 * 在compute中调用：不存在或已过期时创建新的容器，通过SET写入的HyperLogLog转换为sketch
+	 */
+	private static Entry containerEntry(String key, Entry current, int type) {
+		if(current == null || current.isExpired(System.nanoTime()))
+			return new Entry(key, newContainer(type), false, 0L);
+
+		if(type == HLL && (current.value instanceof byte[] || current.value instanceof String)) {
+			// 通过SET写入的dense编码（如RedisHyperLogLogAggregator的临时key），与Redis相同按HyperLogLog使用
+			try {
+				current.value = HyperLogLogSketch.fromRedisDense(rawBytesOf(current.value));
+			} catch(IllegalArgumentException ex) {
+				// WRONGTYPE
+			}
+		}
+		return current;
+	}
+
+	private static boolean isContainer(Object value, int type) {
+		switch(type) {
+		case HASH:
+			return value instanceof ConcurrentHashMap;
+		case SET:
+			return value instanceof Set;
+		default:
+			return value instanceof HyperLogLogSketch;
+		}
+	}
+
+	private static Object newContainer(int type) {
+		switch(type) {
+		case HASH:
+			return new ConcurrentHashMap<String, Object>(8, 0.75f, 4);
+		case SET:
+			return ConcurrentHashMap.<String>newKeySet();
+		default:
+			return new HyperLogLogSketch();
+		}
+	}
+
+	/**
+	 * @return String/byte[]/Long/HyperLogLogSketch以外的类型（hash/set）返回null
+	 */
+	private static String stringOf(Object value) {
+		if(value instanceof String)
+			return (String)value;
+
+		byte[] bytes = rawBytesOf(value);
+		return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return 复制后的值，调用方可以修改
+	 */
+	private static byte[] bytesOf(Object value) {
+		return value instanceof byte[] ? ((byte[])value).clone() : rawBytesOf(value);
+	}
+
+	/**
+	 * @return byte[]类型的值直接返回，调用方不能修改
+	 */
+	private static byte[] rawBytesOf(Object value) {
+		if(value instanceof byte[])
+			return (byte[])value;
+
+		if(value instanceof String || value instanceof Long)
+			return value.toString().getBytes(StandardCharsets.UTF_8);
+
+		if(value instanceof HyperLogLogSketch) {
+			synchronized(value) {
+				return ((HyperLogLogSketch)value).toRedisDense();
+			}
+		}
+		return null;
+	}
+
+	private static long parseLong(Object value) {
+		if(value instanceof Long)
+			return ((Long)value).longValue();
+
+		String s = stringOf(value);
+		if(s == null)
+			throw new IllegalStateException("WRONGTYPE");
+		return Long.parseLong(s);
+	}
+
+	/**
+	 * key与field统一按字节比较：String按UTF-8编码后，每个字节对应一个char（ISO-8859-1），与byte[]版本一致；
+	 * 纯ASCII的String（最常见的情况）直接使用，不复制
+	 */
+	static String key(String key) {
+		for(int i = 0; i < key.length(); ++i) {
+			if(key.charAt(i) >= 0x80)
+				return new String(key.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+		}
+		return key;
+	}
+
+	static String key(byte[] key) {
+		return new String(key, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * {@link #key(String)}的逆操作
+	 */
+	static String external(String key) {
+		for(int i = 0; i < key.length(); ++i) {
+			if(key.charAt(i) >= 0x80)
+				return new String(key.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8);
+		}
+		return key;
+	}
+
+	/**
+	 * Redis的glob匹配，见{@link RedisScanIterator#globMatch(String, int, String, int)}
+	 */
+	static boolean globMatch(String pattern, int p, String string, int s) {
+		return RedisScanIterator.globMatch(pattern, p, string, s);
+	}
+
+	/**
+	 * 在compute中修改hash/set/HyperLogLog
+	 */
+	private interface ContainerWriter<C, R> {
+		R write(C container);
+	}
+
+	/**
+	 * 一个key的值与过期时间；覆盖写入或重新设置过期时间时替换为新的Entry，
+	 * 只修改值（incr、HyperLogLog编码转换）时在compute中原地修改，保留过期时间
+	 */
+	private static final class Entry {
+		private final String key;
+		private volatile Object value;
+		private final boolean expires;
+		private final long expireAt;
+
+		Entry(String key, Object value, boolean expires, long expireAt) {
+			this.key = key;
+			this.value = value;
+			this.expires = expires;
+			this.expireAt = expireAt;
+		}
+
+		boolean isExpired(long now) {
+			return this.expires && now - this.expireAt >= 0L;
+		}
+	}
+}
@@ -0,0 +1,344 @@
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * InMemoryRedisClient的各类命令、过期与pipeline，语义与Redis对照
+ */
+public class InMemoryRedisClientTest {
+
+    private static InMemoryRedisClient newClient() {
+        InMemoryRedisClient client = new InMemoryRedisClient();
+        client.setTickMillis(5L);
+        client.init();
+        return client;
+    }
+
+    @Test
+    public void testStrings() {
+        InMemoryRedisClient client = newClient();
+        try {
+            client.set("a", "1");
+            assertEquals("1", client.get("a"));
+            assertArrayEquals("1".getBytes(), client.get("a".getBytes()));
+
+            // String与byte[]版本访问同一个key，非ASCII按UTF-8编码
+            client.set("键".getBytes(StandardCharsets.UTF_8), "值".getBytes(StandardCharsets.UTF_8));
+            assertEquals("值", client.get("键"));
+            assertEquals(Arrays.asList("1", null, "值"), client.mget("a", "b", "键"));
+
+            ByteBuffer buffer = ByteBuffer.allocate(16);
+            assertEquals(1, client.get("a".getBytes(), buffer));
+            assertEquals(-1, client.get("b".getBytes(), buffer));
+
+            assertEquals(2L, client.incrBy("n", 2L));
+            assertEquals(1L, client.decr("n"));
+            client.set("s", "10");
+            assertEquals(11L, client.incr("s"));
+            assertEquals("11", client.get("s"));
+
+            // 不是整数时与Redis客户端一样返回0，不修改原值
+            assertEquals(0L, client.incr("键".getBytes(StandardCharsets.UTF_8)));
+            client.set("x", "abc");
+            assertEquals(0L, client.incr("x"));
+            assertEquals("abc", client.get("x"));
+
+            assertEquals(1L, client.del("a"));
+            assertEquals(0L, client.del("a"));
+            assertNull(client.get("a"));
+        } finally {
+            client.destroy();
+        }
+    }
+
+    @Test
+    public void testExpiration() throws Exception {
+        InMemoryRedisClient client = newClient();
+        try {
+            client.set("k1", "v", 1);
+            client.set("k2", "v", 1);
+            client.incr("k2");
+            client.set("k3", "v", 1);
+            client.set("k3", "v");
+            client.hset("h", "f", "v");
+            client.expire("h", 1);
+            client.set("k4", "v", 1);
+            client.expire("k4", 60);
+            assertEquals("v", client.get("k1"));
+
+            Thread.sleep(1200L);
+            assertNull(client.get("k1"));
+            assertNull(client.get("k2"));
+            assertNull(client.hget("h", "f"));
+            // 覆盖写入或重新设置过期时间后不受原过期时间影响
+            assertEquals("v", client.get("k3"));
+            assertEquals("v", client.get("k4"));
+
+            // 未访问的过期key也由后台删除
+            client.set("k5", "v", 1);
+            Thread.sleep(1200L);
+            assertEquals(2, client.size());
+            assertTrue(client.getExpiredCount() >= 1L);
+        } finally {
+            client.destroy();
+        }
+    }
+
+    @Test
+    public void testWithTtl() throws Exception {
+        InMemoryRedisClient client = newClient();
+        try {
+            assertEquals(3L, client.incrByWithTtl("c", 3L, 1));
+            assertEquals(Long.valueOf(1L), client.hsetWithTtl("h", "f", "v", 1));
+            assertEquals(Long.valueOf(0L), client.hsetWithTtl("h", "f", "w", 1));
+            assertEquals(Long.valueOf(1L), client.pfAddWithTtl("p", 1, "a", "b"));
+            client.msetWithTtl(1, "m1", "v1", "m2", "v2");
+            // 过期时间小于等于0时与不带过期时间的命令相同
+            assertEquals(Long.valueOf(1L), client.hsetWithTtl("h0", "f", "v", 0));
+            assertEquals("w", client.hget("h", "f"));
+            assertEquals(Arrays.asList("v1", "v2"), client.mget("m1", "m2"));
+
+            Thread.sleep(1200L);
+            assertNull(client.get("c"));
+            assertNull(client.hget("h", "f"));
+            assertEquals(0L, client.pfCount("p"));
+            assertEquals(Arrays.asList(null, null), client.mget("m1", "m2"));
+            assertEquals("v", client.hget("h0", "f"));
+        } finally {
+            client.destroy();
+        }
+    }
+
+    @Test
+    public void testConcurrentIncrements() throws Exception {
+        final InMemoryRedisClient client = newClient();
+        try {
+            final int threads = 8;
+            final int increments = 10000;
+            final CountDownLatch done = new CountDownLatch(threads);
+            for (int t = 0; t < threads; ++t) {
+                new Thread() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < increments; ++i) {
+                            client.incr("counter:" + (i % 10));
+                            client.hincrBy("hash", "f" + (i % 3), 2L);
+                            client.sadd("set", "m" + (i % 100));
+                        }
+                        done.countDown();
+                    }
+                }.start();
+            }
+            done.await();
+
+            for (int i = 0; i < 10; ++i) {
+                assertEquals(String.valueOf(threads * increments / 10), client.get("counter:" + i));
+            }
+            long total = 0L;
+            for (String value : client.hgetAll("hash").values()) {
+                total += Long.parseLong(value);
+            }
+            assertEquals(2L * threads * increments, total);
+            assertEquals(100, client.smembers("set").size());
+        } finally {
+            client.destroy();
+        }
+    }
+
+    @Test
+    public void testHashes() {
+        InMemoryRedisClient client = newClient();
+        try {
+            Map<String, String> fields = new HashMap<String, String>();
+            for (int i = 0; i < 250; ++i) {
+                fields.put("f" + i, "v" + i);
+            }
+            client.hmset("h", fields);
+            client.hset("h".getBytes(), "f0".getBytes(), "x".getBytes());
+            assertEquals("x", client.hget("h", "f0"));
+            assertEquals(Arrays.asList("v1", null), client.hmget("h", "f1", "none"));
+            assertEquals(250, client.hgetAll("h").size());
+            assertTrue(client.hgetAll("none").isEmpty());
+
+            final List<Integer> batches = new ArrayList<Integer>();
+            assertEquals(250L, client.hscan("h", 100, new ScanCallback<Map.Entry<String, String>>() {
+                @Override
+                public boolean onBatch(List<Map.Entry<String, String>> batch) {
+                    batches.add(batch.size());
+                    return true;
+                }
+            }));
+            assertEquals(Arrays.asList(100, 100, 50), batches);
+
+            // 类型不同时不修改原值
+            client.set("s", "v");
+            client.hset("s", "f", "v");
+            assertNull(client.hget("s", "f"));
+            assertEquals("v", client.get("s"));
+            assertNull(client.get("h"));
+        } finally {
+            client.destroy();
+        }
+    }
+
+    @Test
+    public void testHscanBatches() {
+        InMemoryRedisClient client = newClient();
+        try {
+            Map<String, String> fields = new HashMap<String, String>();
+            for (int i = 0; i < 200; ++i) {
+                fields.put("f" + i, "v" + i);
+            }
+            client.hmset("h", fields);
+
+            final List<Integer> batches = new ArrayList<Integer>();
+            ScanCallback<Map.Entry<String, String>> all = new ScanCallback<Map.Entry<String, String>>() {
+                @Override
+                public boolean onBatch(List<Map.Entry<String, String>> batch) {
+                    batches.add(batch.size());
+                    return true;
+                }
+            };
+
+            // 数量恰好是count的整数倍时没有空的批次
+            assertEquals(200L, client.hscan("h", 100, all));
+            assertEquals(Arrays.asList(100, 100), batches);
+
+            // count小于1时按1处理；不存在的key不回调
+            batches.clear();
+            client.hset("one", "f", "v");
+            assertEquals(1L, client.hscan("one", 0, all));
+            assertEquals(0L, client.hscan("none", 100, all));
+            assertEquals(Arrays.asList(1), batches);
+
+            // 回调返回false后停止，只计入已回调的批次
+            batches.clear();
+            assertEquals(30L, client.hscan("h", 30, new ScanCallback<Map.Entry<String, String>>() {
+                @Override
+                public boolean onBatch(List<Map.Entry<String, String>> batch) {
+                    batches.add(batch.size());
+                    return false;
+                }
+            }));
+            assertEquals(Arrays.asList(30), batches);
+
+            // 多个key依次读取
+            batches.clear();
+            assertEquals(201L, client.hscan(new String[] { "h", "one" }, 150, 4, all));
+            assertEquals(Arrays.asList(150, 50, 1), batches);
+        } finally {
+            client.destroy();
+        }
+    }
+
+    @Test
+    public void testKeysAndScan() {
+        InMemoryRedisClient client = newClient();
+        try {
+            for (int i = 0; i < 30; ++i) {
+                client.set("user:" + i, "v");
+            }
+            client.set("order:1", "v");
+            client.set("user:x", "v", 1);
+
+            assertEquals(31, client.keys("user:*").size());
+            assertEquals(10, client.keys("user:1?").size());
+            assertEquals(20, client.keys("user:[1-2]?").size());
+            assertEquals(1, client.keys("order:[^2]").size());
+            assertEquals(32, client.keys("*").size());
+
+            final int[] scanned = new int[1];
+            assertEquals(10L, client.scan("user:*", 10, new ScanCallback<String>() {
+                @Override
+                public boolean onBatch(List<String> batch) {
+                    scanned[0] += batch.size();
+                    return false;
+                }
+            }));
+            assertEquals(10, scanned[0]);
+        } finally {
+            client.destroy();
+        }
+    }
+
+    @Test
+    public void testGlobMatch() {
+        assertTrue(InMemoryRedisClient.globMatch("h?llo", 0, "hello", 0));
+        assertTrue(InMemoryRedisClient.globMatch("h*llo", 0, "heeeello", 0));
+        assertTrue(InMemoryRedisClient.globMatch("h[ae]llo", 0, "hallo", 0));
+        assertFalse(InMemoryRedisClient.globMatch("h[^e]llo", 0, "hello", 0));
+        assertTrue(InMemoryRedisClient.globMatch("h[a-b]llo", 0, "hbllo", 0));
+        assertTrue(InMemoryRedisClient.globMatch("a\\*b", 0, "a*b", 0));
+        assertFalse(InMemoryRedisClient.globMatch("a\\*b", 0, "axb", 0));
+        assertFalse(InMemoryRedisClient.globMatch("*a", 0, "bbb", 0));
+    }
+
+    @Test
+    public void testHyperLogLog() {
+        InMemoryRedisClient client = newClient();
+        try {
+            for (int i = 0; i < 10000; ++i) {
+                client.pfAdd("hll1", "e" + i);
+                client.pfAdd("hll2", "e" + (i + 5000));
+            }
+            assertEquals(0L, client.pfAdd("hll1", "e0").longValue());
+            assertEquals(10000.0, client.pfCount("hll1"), 200.0);
+
+            // 与Redis相同，SET写入的dense编码可以作为HyperLogLog合并（RedisHyperLogLogAggregator的写法）
+            HyperLogLogSketch sketch = new HyperLogLogSketch();
+            for (int i = 0; i < 1000; ++i) {
+                sketch.add("x" + i);
+            }
+            client.set("tmp".getBytes(), sketch.toRedisDense());
+
+            assertEquals("OK", client.pfmerge("hll1", "hll2", "tmp", "none"));
+            assertEquals(16000.0, client.pfCount("hll1"), 320.0);
+            assertArrayEquals(sketch.toRedisDense(), client.get("tmp".getBytes()));
+
+            client.set("s", "v");
+            assertNull(client.pfmerge("hll1", "s"));
+            assertEquals(0L, client.pfCount("s"));
+        } finally {
+            client.destroy();
+        }
+    }
+
+    @Test
+    public void testPipeline() {
+        InMemoryRedisClient client = newClient();
+        try {
+            List<Object> results = client.executePipelined(new PipelineCallback<List<Object>>() {
+                @Override
+                public List<Object> doInPipeline(RedisPipeline pipeline) {
+                    List<Object> results = new ArrayList<Object>();
+                    results.add(pipeline.set("a", "1"));
+                    results.add(pipeline.incrBy("a", 2L));
+                    results.add(pipeline.hset("h", "f", "v"));
+                    results.add(pipeline.hset("h", "f", "w"));
+                    results.add(pipeline.expire("a", 60));
+                    results.add(pipeline.expire("none", 60));
+                    results.add(pipeline.get("a"));
+                    pipeline.sync();
+                    return results;
+                }
+            });
+
+            List<Object> values = new ArrayList<Object>();
+            for (Object response : results) {
+                values.add(((redis.clients.jedis.Response<?>) response).get());
+            }
+            assertEquals(Arrays.<Object>asList("OK", 3L, 1L, 0L, 1L, 0L, "3"), values);
+        } finally {
+            client.destroy();
+        }
+    }
+}
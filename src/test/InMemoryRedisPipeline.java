@@ -0,0 +1,204 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import redis.clients.jedis.Builder;
+import redis.clients.jedis.Response;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link InMemoryRedisClient}的pipeline：命令立即执行，返回的Response已经完成，sync不做任何事
+ *
+ * @author BurningIce
+ *
+ */
+class InMemoryRedisPipeline implements RedisPipeline {
+	private final static Builder<Object> PASS_THROUGH = new Builder<Object>() {
+		@Override
+		public Object build(Object data) {
+			return data;
+		}
+	};
+	private final static String OK = "OK";
+	private final InMemoryRedisClient client;
+
+	InMemoryRedisPipeline(InMemoryRedisClient client) {
+		this.client = client;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> Response<T> done(T value) {
+		Response<T> response = new Response<T>((Builder<T>)(Builder<?>)PASS_THROUGH);
+		response.set(value);
+		return response;
+	}
+
+	@Override
+	public Response<String> get(String key) {
+		return done(this.client.get(key));
+	}
+
+	@Override
+	public Response<byte[]> get(byte[] key) {
+		return done(this.client.get(key));
+	}
+
+	@Override
+	public Response<List<String>> mget(String... key) {
+		return done(this.client.mget(key));
+	}
+
+	@Override
+	public Response<List<byte[]>> mget(byte[]... key) {
+		return done(this.client.mget(key));
+	}
+
+	@Override
+	public Response<String> set(String key, String value) {
+		this.client.set(key, value);
+		return done(OK);
+	}
+
+	@Override
+	public Response<String> set(byte[] key, byte[] value) {
+		this.client.set(key, value);
+		return done(OK);
+	}
+
+	@Override
+	public Response<String> set(String key, String value, int expirationInSeconds) {
+		this.client.set(key, value, expirationInSeconds);
+		return done(OK);
+	}
+
+	@Override
+	public Response<String> set(byte[] key, byte[] value, int expirationInSeconds) {
+		this.client.set(key, value, expirationInSeconds);
+		return done(OK);
+	}
+
+	@Override
+	public Response<String> mset(String... keyValues) {
+		this.client.mset(keyValues);
+		return done(OK);
+	}
+
+	@Override
+	public Response<Long> del(String key) {
+		return done(this.client.del(key));
+	}
+
+	@Override
+	public Response<Long> del(byte[] key) {
+		return done(this.client.del(key));
+	}
+
+	@Override
+	public Response<Long> expire(String key, int expirationInSeconds) {
+		return done(this.client.expireKey(InMemoryRedisClient.key(key), expirationInSeconds) ? 1L : 0L);
+	}
+
+	@Override
+	public Response<Long> expire(byte[] key, int expirationInSeconds) {
+		return done(this.client.expireKey(InMemoryRedisClient.key(key), expirationInSeconds) ? 1L : 0L);
+	}
+
+	@Override
+	public Response<Long> incr(String key) {
+		return done(this.client.incr(key));
+	}
+
+	@Override
+	public Response<Long> incrBy(String key, long increment) {
+		return done(this.client.incrBy(key, increment));
+	}
+
+	@Override
+	public Response<Long> decrBy(String key, long decrement) {
+		return done(this.client.decrBy(key, decrement));
+	}
+
+	@Override
+	public Response<String> hget(String key, String field) {
+		return done(this.client.hget(key, field));
+	}
+
+	@Override
+	public Response<byte[]> hget(byte[] key, byte[] field) {
+		return done(this.client.hget(key, field));
+	}
+
+	@Override
+	public Response<List<String>> hmget(String key, String... field) {
+		return done(this.client.hmget(key, field));
+	}
+
+	@Override
+	public Response<Long> hset(String key, String field, String value) {
+		return done(this.client.hsetField(InMemoryRedisClient.key(key), InMemoryRedisClient.key(field), value));
+	}
+
+	@Override
+	public Response<Long> hset(byte[] key, byte[] field, byte[] value) {
+		return done(this.client.hsetField(InMemoryRedisClient.key(key), InMemoryRedisClient.key(field), value.clone()));
+	}
+
+	@Override
+	public Response<String> hmset(String key, Map<String, String> fieldAndValues) {
+		this.client.hmset(key, fieldAndValues);
+		return done(OK);
+	}
+
+	@Override
+	public Response<String> hmset(byte[] key, Map<byte[], byte[]> fieldAndValues) {
+		this.client.hmset(key, fieldAndValues);
+		return done(OK);
+	}
+
+	@Override
+	public Response<Map<String, String>> hgetAll(String key) {
+		return done(this.client.hgetAll(key));
+	}
+
+	@Override
+	public Response<Long> hincrBy(String key, String field, long increment) {
+		return done(this.client.hincrBy(key, field, increment));
+	}
+
+	@Override
+	public Response<Long> hincrBy(byte[] key, byte[] field, long increment) {
+		return done(this.client.hincrBy(key, field, increment));
+	}
+
+	@Override
+	public Response<Long> pfAdd(String key, String... elements) {
+		return done(this.client.pfAdd(key, elements));
+	}
+
+	@Override
+	public Response<Long> pfCount(String key) {
+		return done(this.client.pfCount(key));
+	}
+
+	@Override
+	public Response<String> pfmerge(String destkey, String... sourcekeys) {
+		return done(this.client.pfmerge(destkey, sourcekeys));
+	}
+
+	@Override
+	public Response<Long> sadd(String key, String... members) {
+		return done(this.client.sadd(key, members));
+	}
+
+	@Override
+	public Response<Set<String>> smembers(String key) {
+		return done(this.client.smembers(key));
+	}
+
+	@Override
+	public void sync() {
+	}
+}
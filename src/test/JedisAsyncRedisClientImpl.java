@@ -0,0 +1,760 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.Response;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 基于pipeline的异步Redis客户端：
+ * 启动固定数量的IO线程，每个IO线程在第一次发送时从连接池中借出一个连接并长期持有（连接出错时归还，下一批重新借出），
+ * 调用方提交的命令进入该连接的队列，IO线程批量取出后一次性pipeline发送，再按顺序完成各自的Future。
+ * 同一个key的命令总是路由到同一个连接，保证单key上的命令顺序。
+ *
+ * 注意：Future在IO线程中完成，耗时的回调请使用thenXxxAsync系列方法，避免阻塞IO线程。
+ *
+ * @author BurningIce
+ *
+ */
+public class JedisAsyncRedisClientImpl implements AsyncRedisClient {
+	private final static int DEFAULT_CONNECTIONS = 4;
+	private final static int DEFAULT_MAX_BATCH_SIZE = 512;			// 单次pipeline最多命令数量
+	private final static int DEFAULT_MAX_PENDING_COMMANDS = 65536;	// 单个连接最多排队命令数量，超出时调用方阻塞等待
+	private JedisPool jedisPool;
+	private GenericObjectPoolConfig poolConfig;
+	private String host;
+	private int port = Protocol.DEFAULT_PORT;
+	private String password;
+	private int timeout = Protocol.DEFAULT_TIMEOUT;
+	private int database = Protocol.DEFAULT_DATABASE;
+	private int connections = DEFAULT_CONNECTIONS;
+	private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+	private int maxPendingCommands = DEFAULT_MAX_PENDING_COMMANDS;
+	private PipelinedConnection[] pipelinedConnections;
+
+	/**
+	 * @param poolConfig the poolConfig to set
+	 */
+	public void setPoolConfig(GenericObjectPoolConfig poolConfig) {
+		this.poolConfig = poolConfig;
+	}
+
+	/**
+	 * @param host the host to set
+	 */
+	public void setHost(String host) {
+		this.host = host;
+	}
+
+	/**
+	 * @param port the port to set
+	 */
+	public void setPort(int port) {
+		this.port = port;
+	}
+
+	/**
+	 * @param password the password to set
+	 */
+	public void setPassword(String password) {
+		if(password != null && password.trim().length() > 0){
+			this.password = password.trim();
+		} else {
+			this.password = null;
+		}
+	}
+
+	/**
+	 * @param timeout the timeout to set
+	 */
+	public void setTimeout(int timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @param database the database to set
+	 */
+	public void setDatabase(int database) {
+		this.database = database;
+	}
+
+	/**
+	 * @param connections 复用的连接数量（即IO线程数量），需不大于连接池的maxTotal
+	 */
+	public void setConnections(int connections) {
+		this.connections = connections;
+	}
+
+	/**
+	 * @param maxBatchSize 单次pipeline最多发送的命令数量
+	 */
+	public void setMaxBatchSize(int maxBatchSize) {
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * @param maxPendingCommands 单个连接最多排队的命令数量
+	 */
+	public void setMaxPendingCommands(int maxPendingCommands) {
+		this.maxPendingCommands = maxPendingCommands;
+	}
+
+	public void init() {
+		this.jedisPool = new JedisPool(poolConfig, host, port, timeout, password, database);
+
+		int count = Math.max(1, this.connections);
+		PipelinedConnection[] pipelinedConnections = new PipelinedConnection[count];
+		for(int i = 0; i < count; ++i) {
+			pipelinedConnections[i] = new PipelinedConnection(i);
+			pipelinedConnections[i].start();
+		}
+
+		this.pipelinedConnections = pipelinedConnections;
+	}
+
+	@Override
+	public CompletableFuture<String> get(final String key) {
+		return this.submit(key, new PipelineAction<String>() {
+			@Override
+			public Response<String> execute(Pipeline pipeline) {
+				return pipeline.get(key);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<byte[]> get(final byte[] key) {
+		return this.submit(key, new PipelineAction<byte[]>() {
+			@Override
+			public Response<byte[]> execute(Pipeline pipeline) {
+				return pipeline.get(key);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<List<String>> mget(final String... key) {
+		if(key == null || key.length == 0) {
+			return CompletableFuture.completedFuture((List<String>)new ArrayList<String>(1));
+		}
+
+		return this.submit(key[0], new PipelineAction<List<String>>() {
+			@Override
+			public Response<List<String>> execute(Pipeline pipeline) {
+				return pipeline.mget(key);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<List<byte[]>> mget(final byte[]... key) {
+		if(key == null || key.length == 0) {
+			return CompletableFuture.completedFuture((List<byte[]>)new ArrayList<byte[]>(1));
+		}
+
+		return this.submit(key[0], new PipelineAction<List<byte[]>>() {
+			@Override
+			public Response<List<byte[]>> execute(Pipeline pipeline) {
+				return pipeline.mget(key);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Long> del(final String key) {
+		return this.submit(key, new PipelineAction<Long>() {
+			@Override
+			public Response<Long> execute(Pipeline pipeline) {
+				return pipeline.del(key);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Long> del(final byte[] key) {
+		return this.submit(key, new PipelineAction<Long>() {
+			@Override
+			public Response<Long> execute(Pipeline pipeline) {
+				return pipeline.del(key);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<String> set(final String key, final String value) {
+		return this.submit(key, new PipelineAction<String>() {
+			@Override
+			public Response<String> execute(Pipeline pipeline) {
+				return pipeline.set(key, value);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<String> set(final byte[] key, final byte[] value) {
+		return this.submit(key, new PipelineAction<String>() {
+			@Override
+			public Response<String> execute(Pipeline pipeline) {
+				return pipeline.set(key, value);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<String> set(final String key, final String value, final int expirationInSeconds) {
+		if(expirationInSeconds <= 0) {
+			// 0 for never expiring
+			return this.set(key, value);
+		}
+
+		return this.submit(key, new PipelineAction<String>() {
+			@Override
+			public Response<String> execute(Pipeline pipeline) {
+				return pipeline.setex(key, expirationInSeconds, value);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<String> set(final byte[] key, final byte[] value, final int expirationInSeconds) {
+		if(expirationInSeconds <= 0) {
+			// 0 for never expiring
+			return this.set(key, value);
+		}
+
+		return this.submit(key, new PipelineAction<String>() {
+			@Override
+			public Response<String> execute(Pipeline pipeline) {
+				return pipeline.setex(key, expirationInSeconds, value);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<String> mset(final String... keyValues) {
+		if(keyValues == null || keyValues.length == 0) {
+			return CompletableFuture.completedFuture(null);
+		}
+
+		return this.submit(keyValues[0], new PipelineAction<String>() {
+			@Override
+			public Response<String> execute(Pipeline pipeline) {
+				return pipeline.mset(keyValues);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<String> mset(final byte[]... keyValues) {
+		if(keyValues == null || keyValues.length == 0) {
+			return CompletableFuture.completedFuture(null);
+		}
+
+		return this.submit(keyValues[0], new PipelineAction<String>() {
+			@Override
+			public Response<String> execute(Pipeline pipeline) {
+				return pipeline.mset(keyValues);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Long> expire(final String key, final int expirationInSeconds) {
+		return this.submit(key, new PipelineAction<Long>() {
+			@Override
+			public Response<Long> execute(Pipeline pipeline) {
+				return pipeline.expire(key, expirationInSeconds);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Long> expire(final byte[] key, final int expirationInSeconds) {
+		return this.submit(key, new PipelineAction<Long>() {
+			@Override
+			public Response<Long> execute(Pipeline pipeline) {
+				return pipeline.expire(key, expirationInSeconds);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Long> incr(final String key) {
+		return this.submit(key, new PipelineAction<Long>() {
+			@Override
+			public Response<Long> execute(Pipeline pipeline) {
+				return pipeline.incr(key);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Long> incr(final byte[] key) {
+		return this.submit(key, new PipelineAction<Long>() {
+			@Override
+			public Response<Long> execute(Pipeline pipeline) {
+				return pipeline.incr(key);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Long> incrBy(final String key, final long increment) {
+		return this.submit(key, new PipelineAction<Long>() {
+			@Override
+			public Response<Long> execute(Pipeline pipeline) {
+				return pipeline.incrBy(key, increment);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Long> incrBy(final byte[] key, final long increment) {
+		return this.submit(key, new PipelineAction<Long>() {
+			@Override
+			public Response<Long> execute(Pipeline pipeline) {
+				return pipeline.incrBy(key, increment);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Long> decr(final String key) {
+		return this.submit(key, new PipelineAction<Long>() {
+			@Override
+			public Response<Long> execute(Pipeline pipeline) {
+				return pipeline.decr(key);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Long> decr(final byte[] key) {
+		return this.submit(key, new PipelineAction<Long>() {
+			@Override
+			public Response<Long> execute(Pipeline pipeline) {
+				return pipeline.decr(key);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Long> decrBy(final String key, final long decrement) {
+		return this.submit(key, new PipelineAction<Long>() {
+			@Override
+			public Response<Long> execute(Pipeline pipeline) {
+				return pipeline.decrBy(key, decrement);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Long> decrBy(final byte[] key, final long decrement) {
+		return this.submit(key, new PipelineAction<Long>() {
+			@Override
+			public Response<Long> execute(Pipeline pipeline) {
+				return pipeline.decrBy(key, decrement);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<String> hget(final String key, final String field) {
+		return this.submit(key, new PipelineAction<String>() {
+			@Override
+			public Response<String> execute(Pipeline pipeline) {
+				return pipeline.hget(key, field);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<byte[]> hget(final byte[] key, final byte[] field) {
+		return this.submit(key, new PipelineAction<byte[]>() {
+			@Override
+			public Response<byte[]> execute(Pipeline pipeline) {
+				return pipeline.hget(key, field);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<List<String>> hmget(final String key, final String... field) {
+		return this.submit(key, new PipelineAction<List<String>>() {
+			@Override
+			public Response<List<String>> execute(Pipeline pipeline) {
+				return pipeline.hmget(key, field);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<List<byte[]>> hmget(final byte[] key, final byte[]... field) {
+		return this.submit(key, new PipelineAction<List<byte[]>>() {
+			@Override
+			public Response<List<byte[]>> execute(Pipeline pipeline) {
+				return pipeline.hmget(key, field);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Long> hset(final String key, final String field, final String value) {
+		return this.submit(key, new PipelineAction<Long>() {
+			@Override
+			public Response<Long> execute(Pipeline pipeline) {
+				return pipeline.hset(key, field, value);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Long> hset(final byte[] key, final byte[] field, final byte[] value) {
+		return this.submit(key, new PipelineAction<Long>() {
+			@Override
+			public Response<Long> execute(Pipeline pipeline) {
+				return pipeline.hset(key, field, value);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<String> hmset(final String key, final Map<String, String> fieldAndValues) {
+		if(fieldAndValues == null || fieldAndValues.isEmpty()) {
+			return CompletableFuture.completedFuture(null);
+		}
+
+		return this.submit(key, new PipelineAction<String>() {
+			@Override
+			public Response<String> execute(Pipeline pipeline) {
+				return pipeline.hmset(key, fieldAndValues);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<String> hmset(final byte[] key, final Map<byte[], byte[]> fieldAndValues) {
+		if(fieldAndValues == null || fieldAndValues.isEmpty()) {
+			return CompletableFuture.completedFuture(null);
+		}
+
+		return this.submit(key, new PipelineAction<String>() {
+			@Override
+			public Response<String> execute(Pipeline pipeline) {
+				return pipeline.hmset(key, fieldAndValues);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Map<String, String>> hgetAll(final String key) {
+		return this.submit(key, new PipelineAction<Map<String, String>>() {
+			@Override
+			public Response<Map<String, String>> execute(Pipeline pipeline) {
+				return pipeline.hgetAll(key);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Long> hincrBy(final String key, final String field, final long increment) {
+		return this.submit(key, new PipelineAction<Long>() {
+			@Override
+			public Response<Long> execute(Pipeline pipeline) {
+				return pipeline.hincrBy(key, field, increment);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Long> hincrBy(final byte[] key, final byte[] field, final long increment) {
+		return this.submit(key, new PipelineAction<Long>() {
+			@Override
+			public Response<Long> execute(Pipeline pipeline) {
+				return pipeline.hincrBy(key, field, increment);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Long> pfAdd(final String key, final String... elements) {
+		return this.submit(key, new PipelineAction<Long>() {
+			@Override
+			public Response<Long> execute(Pipeline pipeline) {
+				return pipeline.pfadd(key, elements);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Long> pfAdd(final String key, final int expirationInSeconds, final String... elements) {
+		return this.submit(key, new PipelineAction<Long>() {
+			@Override
+			public Response<Long> execute(Pipeline pipeline) {
+				Response<Long> response = pipeline.pfadd(key, elements);
+				pipeline.expire(key, expirationInSeconds);
+				return response;
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Long> pfCount(final String key) {
+		return this.submit(key, new PipelineAction<Long>() {
+			@Override
+			public Response<Long> execute(Pipeline pipeline) {
+				return pipeline.pfcount(key);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<String> pfmerge(final String destkey, final String... sourcekeys) {
+		return this.submit(destkey, new PipelineAction<String>() {
+			@Override
+			public Response<String> execute(Pipeline pipeline) {
+				return pipeline.pfmerge(destkey, sourcekeys);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Long> sadd(final String key, final String... members) {
+		return this.submit(key, new PipelineAction<Long>() {
+			@Override
+			public Response<Long> execute(Pipeline pipeline) {
+				return pipeline.sadd(key, members);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Set<String>> keys(final String pattern) {
+		return this.submit(pattern, new PipelineAction<Set<String>>() {
+			@Override
+			public Response<Set<String>> execute(Pipeline pipeline) {
+				return pipeline.keys(pattern);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Set<String>> smembers(final String key) {
+		return this.submit(key, new PipelineAction<Set<String>>() {
+			@Override
+			public Response<Set<String>> execute(Pipeline pipeline) {
+				return pipeline.smembers(key);
+			}
+		});
+	}
+
+	public void destroy() {
+		PipelinedConnection[] pipelinedConnections = this.pipelinedConnections;
+		this.pipelinedConnections = null;
+		if(pipelinedConnections != null) {
+			for(PipelinedConnection connection : pipelinedConnections) {
+				connection.shutdown();
+			}
+
+			// IO线程归还各自的连接后才能关闭连接池
+			for(PipelinedConnection connection : pipelinedConnections) {
+				connection.awaitTermination();
+			}
+		}
+
+		if(this.jedisPool != null) {
+			this.jedisPool.destroy();
+		}
+	}
+
+	private <T> CompletableFuture<T> submit(Object routingKey, PipelineAction<T> action) {
+		PipelinedConnection[] pipelinedConnections = this.pipelinedConnections;
+		if(pipelinedConnections == null) {
+			return CompletableFuture.completedFuture(null);
+		}
+
+		int hash;
+		if(routingKey instanceof byte[]) {
+			hash = Arrays.hashCode((byte[])routingKey);
+		} else {
+			hash = routingKey == null ? 0 : routingKey.hashCode();
+		}
+
+		// 同一个key总是路由到同一个连接，保证单key上的命令顺序
+		PipelinedConnection connection = pipelinedConnections[(hash & Integer.MAX_VALUE) % pipelinedConnections.length];
+		PendingCommand<T> command = new PendingCommand<T>(action);
+		connection.enqueue(command);
+		return command.future;
+	}
+
+	/**
+	 * 将命令写入pipeline，返回其响应
+	 */
+	private interface PipelineAction<T> {
+		Response<T> execute(Pipeline pipeline);
+	}
+
+	private static class PendingCommand<T> {
+		private final PipelineAction<T> action;
+		private final CompletableFuture<T> future = new CompletableFuture<T>();
+		private Response<T> response;
+
+		PendingCommand(PipelineAction<T> action) {
+			this.action = action;
+		}
+
+		void write(Pipeline pipeline) {
+			try {
+				this.response = this.action.execute(pipeline);
+			} catch(Throwable t) {
+				this.future.completeExceptionally(t);
+			}
+		}
+
+		void complete() {
+			if(this.response == null || this.future.isDone()) {
+				return;
+			}
+
+			try {
+				this.future.complete(this.response.get());
+			} catch(Throwable t) {
+				// 命令级错误（如WRONGTYPE），只影响当前命令
+				this.future.completeExceptionally(t);
+			}
+		}
+
+		void fail(Throwable t) {
+			this.future.completeExceptionally(t);
+		}
+	}
+
+	/**
+	 * 长期持有的一个连接及其IO线程
+	 */
+	private class PipelinedConnection implements Runnable {
+		private final BlockingQueue<PendingCommand<?>> queue;
+		private final Thread thread;
+		private volatile boolean running = true;
+		private Jedis jedis;
+
+		PipelinedConnection(int index) {
+			this.queue = new LinkedBlockingQueue<PendingCommand<?>>(Math.max(1, maxPendingCommands));
+			this.thread = new Thread(this, "redis-async-io-" + index);
+			this.thread.setDaemon(true);
+		}
+
+		void start() {
+			this.thread.start();
+		}
+
+		void enqueue(PendingCommand<?> command) {
+			if(!this.running) {
+				command.fail(new RejectedExecutionException("redis client has been destroyed"));
+				return;
+			}
+
+			try {
+				// 队列满时阻塞调用方，形成背压
+				this.queue.put(command);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				command.fail(e);
+				return;
+			}
+
+			// 与shutdown并发：IO线程可能已经取消了队列中的命令并退出，此时由调用方取回并取消
+			if(!this.running && this.queue.remove(command)) {
+				command.fail(new RejectedExecutionException("redis client has been destroyed"));
+			}
+		}
+
+		@Override
+		public void run() {
+			int batchSize = Math.max(1, maxBatchSize);
+			List<PendingCommand<?>> batch = new ArrayList<PendingCommand<?>>(batchSize);
+			while(this.running) {
+				try {
+					batch.add(this.queue.take());
+				} catch(InterruptedException e) {
+					break;
+				}
+
+				this.queue.drainTo(batch, batchSize - 1);
+				this.flush(batch);
+				batch.clear();
+			}
+
+			// 关闭时仍未发送的命令全部取消
+			this.queue.drainTo(batch);
+			for(PendingCommand<?> command : batch) {
+				command.fail(new CancellationException("redis client has been destroyed"));
+			}
+
+			this.releaseConnection();
+		}
+
+		void shutdown() {
+			this.running = false;
+			this.thread.interrupt();
+		}
+
+		void awaitTermination() {
+			try {
+				this.thread.join();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		private void flush(List<PendingCommand<?>> batch) {
+			try {
+				if(this.jedis == null) {
+					this.jedis = jedisPool.getResource();
+				}
+
+				Pipeline pipeline = this.jedis.pipelined();
+				for(PendingCommand<?> command : batch) {
+					command.write(pipeline);
+				}
+
+				pipeline.sync();
+			} catch(Throwable ex) {
+				// 连接级错误，整批失败，并归还（损坏的）连接，下一批重新借用
+//				logger.error("failed to flush pipeline to redis: " + ex.getMessage(), ex);
+				for(PendingCommand<?> command : batch) {
+					command.fail(ex);
+				}
+
+				this.releaseConnection();
+				return;
+			}
+
+			for(PendingCommand<?> command : batch) {
+				command.complete();
+			}
+		}
+
+		private void releaseConnection() {
+			if(this.jedis != null) {
+				try {
+					this.jedis.close();
+				} catch(Throwable t) {
+//					logger.error("error to return redis resource to pool: " + t.getMessage(), t);
+				}
+				this.jedis = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,241 @@
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.Test;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * JedisAsyncRedisClientImpl测试：连接本地的RESP桩服务（只实现GET/SET/INCRBY/QUIT），检查pipeline发送、失败与关闭
+ */
+public class JedisAsyncRedisClientImplTest {
+
+    /**
+     * 每个连接一个线程，按收到的顺序逐条回复
+     */
+    private static class StubServer extends Thread {
+        private final ServerSocket serverSocket;
+        private final Map<String, String> values = new ConcurrentHashMap<String, String>();
+
+        StubServer() throws IOException {
+            super("redis-stub-server");
+            this.serverSocket = new ServerSocket(0);
+            setDaemon(true);
+            start();
+        }
+
+        int port() {
+            return serverSocket.getLocalPort();
+        }
+
+        void close() throws IOException {
+            serverSocket.close();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final Socket socket = serverSocket.accept();
+                    Thread thread = new Thread() {
+                        @Override
+                        public void run() {
+                            serve(socket);
+                        }
+                    };
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+            } catch (IOException ex) {
+                // 已关闭
+            }
+        }
+
+        private void serve(Socket socket) {
+            try {
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                OutputStream out = socket.getOutputStream();
+                while (true) {
+                    List<String> args = readCommand(in);
+                    if (args == null) {
+                        break;
+                    }
+
+                    String name = args.get(0).toUpperCase();
+                    String reply;
+                    if (name.equals("GET")) {
+                        String value = values.get(args.get(1));
+                        reply = value == null ? "$-1\r\n" : "$" + value.getBytes(StandardCharsets.UTF_8).length + "\r\n" + value + "\r\n";
+                    } else if (name.equals("SET")) {
+                        values.put(args.get(1), args.get(2));
+                        reply = "+OK\r\n";
+                    } else if (name.equals("INCRBY")) {
+                        synchronized (values) {
+                            String value = values.get(args.get(1));
+                            long result = (value == null ? 0L : Long.parseLong(value)) + Long.parseLong(args.get(2));
+                            values.put(args.get(1), String.valueOf(result));
+                            reply = ":" + result + "\r\n";
+                        }
+                    } else if (name.equals("QUIT")) {
+                        out.write("+OK\r\n".getBytes(StandardCharsets.UTF_8));
+                        break;
+                    } else {
+                        reply = "-ERR unknown command '" + name + "'\r\n";
+                    }
+                    out.write(reply.getBytes(StandardCharsets.UTF_8));
+                    if (in.available() == 0) {
+                        out.flush();
+                    }
+                }
+                socket.close();
+            } catch (IOException ex) {
+                // 客户端断开
+            }
+        }
+
+        private static List<String> readCommand(InputStream in) throws IOException {
+            String line = readLine(in);
+            if (line == null) {
+                return null;
+            }
+
+            int count = Integer.parseInt(line.substring(1));
+            List<String> args = new ArrayList<String>(count);
+            for (int i = 0; i < count; ++i) {
+                int length = Integer.parseInt(readLine(in).substring(1));
+                byte[] arg = new byte[length];
+                for (int read = 0; read < length; ) {
+                    read += in.read(arg, read, length - read);
+                }
+                in.read();
+                in.read();
+                args.add(new String(arg, StandardCharsets.UTF_8));
+            }
+            return args;
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            StringBuilder sb = new StringBuilder();
+            int b;
+            while ((b = in.read()) != '\r') {
+                if (b < 0) {
+                    return null;
+                }
+                sb.append((char) b);
+            }
+            in.read();
+            return sb.toString();
+        }
+    }
+
+    private static JedisAsyncRedisClientImpl newClient(int port) {
+        JedisAsyncRedisClientImpl client = new JedisAsyncRedisClientImpl();
+        client.setPoolConfig(new GenericObjectPoolConfig());
+        client.setHost("127.0.0.1");
+        client.setPort(port);
+        client.setTimeout(2000);
+        client.setConnections(2);
+        client.setMaxBatchSize(64);
+        return client;
+    }
+
+    @Test
+    public void testNotInitialized() throws Exception {
+        assertNull(new JedisAsyncRedisClientImpl().get("k").get());
+    }
+
+    @Test
+    public void testPipelinedCommands() throws Exception {
+        StubServer server = new StubServer();
+        JedisAsyncRedisClientImpl client = newClient(server.port());
+        client.init();
+        try {
+            List<CompletableFuture<Long>> increments = new ArrayList<CompletableFuture<Long>>();
+            for (int i = 0; i < 1000; ++i) {
+                increments.add(client.incrBy("counter", 1L));
+            }
+            assertEquals("OK", client.set("k", "v").get(5L, TimeUnit.SECONDS));
+            assertEquals("v", client.get("k").get(5L, TimeUnit.SECONDS));
+            assertNull(client.get("missing").get(5L, TimeUnit.SECONDS));
+
+            // 同一个key的命令按提交顺序执行
+            for (int i = 0; i < increments.size(); ++i) {
+                assertEquals(Long.valueOf(i + 1), increments.get(i).get(5L, TimeUnit.SECONDS));
+            }
+        } finally {
+            client.destroy();
+            server.close();
+        }
+    }
+
+    @Test
+    public void testConnectionFailure() throws Exception {
+        ServerSocket closed = new ServerSocket(0);
+        int port = closed.getLocalPort();
+        closed.close();
+
+        JedisAsyncRedisClientImpl client = newClient(port);
+        client.init();
+        try {
+            client.get("k").get(5L, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof JedisConnectionException);
+        } finally {
+            client.destroy();
+        }
+    }
+
+    @Test
+    public void testDestroyCompletesEveryFuture() throws Exception {
+        StubServer server = new StubServer();
+        final JedisAsyncRedisClientImpl client = newClient(server.port());
+        client.init();
+
+        final List<CompletableFuture<Long>> futures = new ArrayList<CompletableFuture<Long>>();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; ++t) {
+            final String key = "counter:" + t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 20000; ++i) {
+                        CompletableFuture<Long> future = client.incrBy(key, 1L);
+                        synchronized (futures) {
+                            futures.add(future);
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+
+        Thread.sleep(20L);
+        client.destroy();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        server.close();
+
+        // 与destroy并发提交的命令要么完成要么失败，不会一直挂起
+        synchronized (futures) {
+            for (CompletableFuture<Long> future : futures) {
+                assertTrue(future.isDone());
+            }
+        }
+    }
+}
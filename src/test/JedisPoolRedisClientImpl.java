@@ -9,12 +9,25 @@ import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.Pipeline;
 import redis.clients.jedis.Protocol;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
 
+import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
 
 /**
  * @author BurningIce
@@ -23,9 +36,46 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 public class JedisPoolRedisClientImpl implements RedisClient {
 //	private final static Logger logger = LoggerFactory.getLogger(JedisPoolRedisClientImpl.class);
 	private final static long STATS_SYNC_INTERVAL = 300000L;
-	private final static int MAX_MGET_SIZE = 256;		// mget/mset 单次限制最多key数量
-	private final static int MAX_MSET_SIZE = 128 * 2;	// mget/mset 单次限制最多keyvalue数量（mset为键值对，因此，MAX_MSET_SIZE必须为2的整数倍）
+	private final static int MAX_MGET_SIZE = 256;		// mget/mset 单次限制最多key数量（默认值）
+	private final static int MAX_MSET_SIZE = 128 * 2;	// mget/mset 单次限制最多keyvalue数量（默认值，mset为键值对，因此，MAX_MSET_SIZE必须为2的整数倍）
+	private final static int MAX_CHUNKS_IN_FLIGHT = 16;	// 超大mget/mset拆分后，同时在途（已发送未响应）的最多批次数量
+	private final static int PIPELINE_FLUSH_SIZE = 1000;	// executePipelined默认每1000条命令flush一次
+	private final static int MAX_HMSET_SIZE = 1000;		// hmset 单次限制最多field数量（默认值）
+	private final static RedisScript INCRBY_EXPIRE_SCRIPT = new RedisScript(
+			"local value = redis.call('INCRBY', KEYS[1], ARGV[1])\n" +
+			"redis.call('EXPIRE', KEYS[1], ARGV[2])\n" +
+			"return value");
+	private final static RedisScript HSET_EXPIRE_SCRIPT = new RedisScript(
+			"local added = redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])\n" +
+			"redis.call('EXPIRE', KEYS[1], ARGV[3])\n" +
+			"return added");
+	// ARGV[1]为过期时间，之后为元素；每次最多unpack 1000个元素，避免超出Lua栈大小
+	private final static RedisScript PFADD_EXPIRE_SCRIPT = new RedisScript(
+			"local changed = 0\n" +
+			"if #ARGV < 2 then\n" +
+			"  changed = redis.call('PFADD', KEYS[1])\n" +
+			"end\n" +
+			"for i = 2, #ARGV, 1000 do\n" +
+			"  changed = math.max(changed, redis.call('PFADD', KEYS[1], unpack(ARGV, i, math.min(i + 999, #ARGV))))\n" +
+			"end\n" +
+			"redis.call('EXPIRE', KEYS[1], ARGV[1])\n" +
+			"return changed");
+	// ARGV[1]为过期时间，ARGV[i + 1]为KEYS[i]的值
+	private final static RedisScript MSET_EXPIRE_SCRIPT = new RedisScript(
+			"for i = 1, #KEYS do\n" +
+			"  redis.call('SETEX', KEYS[i], ARGV[1], ARGV[i + 1])\n" +
+			"end\n" +
+			"return #KEYS");
+	// Jedis 2.8没有UNLINK命令，通过脚本发送；每次最多unpack 1000个key
+	private final static RedisScript UNLINK_SCRIPT = new RedisScript(
+			"local deleted = 0\n" +
+			"for i = 1, #KEYS, 1000 do\n" +
+			"  deleted = deleted + redis.call('UNLINK', unpack(KEYS, i, math.min(i + 999, #KEYS)))\n" +
+			"end\n" +
+			"return deleted");
 	private JedisPool jedisPool;
+	// 多个hash并行hscan共用的线程池，空闲时不保留线程
+	private ExecutorService scanExecutor;
 	private GenericObjectPoolConfig poolConfig;
 	private String host;
 	private int port = Protocol.DEFAULT_PORT;
@@ -33,9 +83,65 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 	private int timeout = Protocol.DEFAULT_TIMEOUT;
 	private int database = Protocol.DEFAULT_DATABASE;
 	private boolean statsEnabled = true;
-	private ConcurrentHashMap<String, AtomicLong> localStats = new ConcurrentHashMap<String, AtomicLong>();
-	private long lastStatSyncTime = System.currentTimeMillis();
-	private ReadWriteLock lock = new ReentrantReadWriteLock();
+	private int mgetBatchSize = MAX_MGET_SIZE;
+	private int msetBatchSize = MAX_MSET_SIZE;
+	private int hmsetBatchSize = MAX_HMSET_SIZE;
+	private boolean hmsetChunkingEnabled = false;
+	private int maxChunksInFlight = MAX_CHUNKS_IN_FLIGHT;
+	private int pipelineFlushSize = PIPELINE_FLUSH_SIZE;
+	private RedisClientStats stats;
+	private boolean coalescingEnabled = false;
+	private long coalescingWindowMicros = 50L;
+	private int coalescingMaxBatchSize = MAX_MGET_SIZE;
+	private int coalescingThreads = 1;
+	private RedisReadCoalescer readCoalescer;
+	private boolean metricsEnabled = false;
+	private RedisClientMetrics metrics;
+	private RedisMetricsListener metricsListener;
+	private long metricsReportIntervalMillis = 60000L;
+	private int compressionThreshold = 0;
+	private int compressionLevel = Deflater.BEST_SPEED;
+	private RedisValueCompressor compressor;
+	private boolean counterAggregationEnabled = false;
+	private long counterFlushIntervalMillis = 1000L;
+	private int counterMaxPendingKeys = 10000;
+	private volatile RedisCounterAggregator counterAggregator;
+	private boolean hllAggregationEnabled = false;
+	private long hllFlushIntervalMillis = 5000L;
+	private int hllMaxPendingKeys = 1000;
+	private volatile RedisHyperLogLogAggregator hllAggregator;
+	private boolean warmUpEnabled = false;
+	private long warmUpTimeoutMillis = 5000L;
+	private long warmUpRetryIntervalMillis = 1000L;
+	private long idleValidationIntervalMillis = 30000L;
+	private RedisPoolWarmer poolWarmer;
+	private String replicas;
+	private long replicaProbeIntervalMillis = 1000L;
+	private String[] masterReadKeyPrefixes;
+	private byte[][] rawMasterReadKeyPrefixes;
+	private RedisReplicaRouter replicaRouter;
+	private long maxWaitMillis = -1L;
+	private long readDeadlineMillis = 0L;
+	private boolean hedgedReadsEnabled = false;
+	private long minHedgeDelayMicros = 1000L;
+	private int hedgedReadThreads = 64;
+	private RedisHedgedReader hedgedReader;
+	private boolean scriptingEnabled = true;
+	private boolean hotKeyTrackingEnabled = false;
+	private int hotKeyTopK = 32;
+	private int hotKeySampleRate = 16;
+	private int bigValueThreshold = 10240;
+	private RedisHotKeyTracker hotKeyTracker;
+	private volatile boolean unlinkSupported = true;
+	private boolean connectionAffinityEnabled = false;
+	private int maxAffinityLeases = 0;
+	private long affinityIdleMillis = 1000L;
+	private final ThreadLocal<int[]> masterReads = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[1];
+		}
+	};
 	
 	/**
 	 * @param poolConfig the poolConfig to set
@@ -90,29 +196,581 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 		this.statsEnabled = statsEnabled;
 	}
 
+	/**
+	 * @param mgetBatchSize mget单次最多key数量，超出时拆分为多批pipeline发送
+	 */
+	public void setMgetBatchSize(int mgetBatchSize) {
+		this.mgetBatchSize = Math.max(1, mgetBatchSize);
+	}
+
+	/**
+	 * @param msetBatchSize mset单次最多keyvalue数量，必须为2的整数倍（奇数时向下取整）
+	 */
+	public void setMsetBatchSize(int msetBatchSize) {
+		this.msetBatchSize = Math.max(2, msetBatchSize & ~1);
+	}
+
+	/**
+	 * @param hmsetBatchSize 开启hmsetChunkingEnabled时hmset单次最多field数量，超出时通过{@link RedisHashBulkLoader}拆分为多批pipeline发送
+	 */
+	public void setHmsetBatchSize(int hmsetBatchSize) {
+		this.hmsetBatchSize = Math.max(1, hmsetBatchSize);
+	}
+
+	/**
+	 * @param hmsetChunkingEnabled field数量超过hmsetBatchSize的hmset是否拆分为多批发送，默认关闭；
+	 * 开启后这样的hmset不再是原子的一条HMSET，写入过程中可能读取到部分field，失败时已发送的批次不会回滚
+	 */
+	public void setHmsetChunkingEnabled(boolean hmsetChunkingEnabled) {
+		this.hmsetChunkingEnabled = hmsetChunkingEnabled;
+	}
+
+	/**
+	 * @param maxChunksInFlight 拆分后同时在途的最多批次数量
+	 */
+	public void setMaxChunksInFlight(int maxChunksInFlight) {
+		this.maxChunksInFlight = Math.max(1, maxChunksInFlight);
+	}
+
+	/**
+	 * @param pipelineFlushSize executePipelined默认每写入多少条命令自动flush一次
+	 */
+	public void setPipelineFlushSize(int pipelineFlushSize) {
+		this.pipelineFlushSize = Math.max(1, pipelineFlushSize);
+	}
+
+	/**
+	 * @param coalescingEnabled 是否合并并发的get(String)/hget(String, String)请求，默认关闭；
+	 * 合并后的批次与单独的读取相同，经由副本选择、截止时间与对冲请求执行，按COALESCED_READ统计，readFromMaster期间的读取不合并
+	 */
+	public void setCoalescingEnabled(boolean coalescingEnabled) {
+		this.coalescingEnabled = coalescingEnabled;
+	}
+
+	/**
+	 * @param coalescingWindowMicros 合并窗口（单位：微秒）
+	 */
+	public void setCoalescingWindowMicros(long coalescingWindowMicros) {
+		this.coalescingWindowMicros = coalescingWindowMicros;
+	}
+
+	/**
+	 * @param coalescingMaxBatchSize 单批最多合并的请求数量，达到后立即发送
+	 */
+	public void setCoalescingMaxBatchSize(int coalescingMaxBatchSize) {
+		this.coalescingMaxBatchSize = coalescingMaxBatchSize;
+	}
+
+	/**
+	 * @param coalescingThreads 合并发送线程数量
+	 */
+	public void setCoalescingThreads(int coalescingThreads) {
+		this.coalescingThreads = coalescingThreads;
+	}
+
+	/**
+	 * @param metricsEnabled 是否按命令统计连接等待时间、执行时间、数据大小与错误次数，默认关闭
+	 */
+	public void setMetricsEnabled(boolean metricsEnabled) {
+		this.metricsEnabled = metricsEnabled;
+	}
+
+	/**
+	 * @param metricsListener 定时接收区间指标的回调，需同时开启metricsEnabled
+	 * @param reportIntervalMillis 回调间隔（单位：毫秒）
+	 */
+	public void setMetricsListener(RedisMetricsListener metricsListener, long reportIntervalMillis) {
+		this.metricsListener = metricsListener;
+		this.metricsReportIntervalMillis = reportIntervalMillis;
+	}
+
+	/**
+	 * @param compressionThreshold byte[]值大于等于该长度（字节）时压缩后写入，0表示不压缩（默认）；
+	 * 读取时无论是否开启都会识别并解压压缩过的值
+	 */
+	public void setCompressionThreshold(int compressionThreshold) {
+		this.compressionThreshold = compressionThreshold;
+	}
+
+	/**
+	 * @param compressionLevel 压缩级别，1（最快，默认）~9（最小）
+	 */
+	public void setCompressionLevel(int compressionLevel) {
+		this.compressionLevel = compressionLevel;
+	}
+
+	/**
+	 * @param counterAggregationEnabled 是否开启incrByDeferred/hincrByDeferred的本地聚合，默认关闭（同步写入）
+	 */
+	public void setCounterAggregationEnabled(boolean counterAggregationEnabled) {
+		this.counterAggregationEnabled = counterAggregationEnabled;
+	}
+
+	/**
+	 * @param counterFlushIntervalMillis 聚合后的计数器最长写入延迟（单位：毫秒）
+	 */
+	public void setCounterFlushIntervalMillis(long counterFlushIntervalMillis) {
+		this.counterFlushIntervalMillis = counterFlushIntervalMillis;
+	}
+
+	/**
+	 * @param counterMaxPendingKeys 待写入的计数器数量达到该值时立即写入
+	 */
+	public void setCounterMaxPendingKeys(int counterMaxPendingKeys) {
+		this.counterMaxPendingKeys = counterMaxPendingKeys;
+	}
+
+	/**
+	 * @param hllAggregationEnabled 是否开启pfAddDeferred的本地预聚合，默认关闭（同步写入）
+	 */
+	public void setHllAggregationEnabled(boolean hllAggregationEnabled) {
+		this.hllAggregationEnabled = hllAggregationEnabled;
+	}
+
+	/**
+	 * @param hllFlushIntervalMillis 预聚合的HyperLogLog最长写入延迟（单位：毫秒）
+	 */
+	public void setHllFlushIntervalMillis(long hllFlushIntervalMillis) {
+		this.hllFlushIntervalMillis = hllFlushIntervalMillis;
+	}
+
+	/**
+	 * @param hllMaxPendingKeys 待写入的HyperLogLog数量达到该值时立即写入（每个key本地最多占用约16KB）
+	 */
+	public void setHllMaxPendingKeys(int hllMaxPendingKeys) {
+		this.hllMaxPendingKeys = hllMaxPendingKeys;
+	}
+
+	/**
+	 * @param warmUpEnabled init时是否并行建立minIdle个连接并PING验证（至少1个），默认关闭；
+	 * 开启后同时开启空闲连接的后台验证（testWhileIdle）
+	 */
+	public void setWarmUpEnabled(boolean warmUpEnabled) {
+		this.warmUpEnabled = warmUpEnabled;
+	}
+
+	/**
+	 * @param warmUpTimeoutMillis init中等待预热的最长时间（单位：毫秒），超时后在后台继续重试
+	 */
+	public void setWarmUpTimeoutMillis(long warmUpTimeoutMillis) {
+		this.warmUpTimeoutMillis = warmUpTimeoutMillis;
+	}
+
+	/**
+	 * @param warmUpRetryIntervalMillis 预热未成功时后台重试的间隔（单位：毫秒），默认1000
+	 */
+	public void setWarmUpRetryIntervalMillis(long warmUpRetryIntervalMillis) {
+		this.warmUpRetryIntervalMillis = Math.max(1L, warmUpRetryIntervalMillis);
+	}
+
+	/**
+	 * @param idleValidationIntervalMillis 开启预热且poolConfig未配置timeBetweenEvictionRunsMillis时，空闲连接的验证间隔（单位：毫秒）
+	 */
+	public void setIdleValidationIntervalMillis(long idleValidationIntervalMillis) {
+		this.idleValidationIntervalMillis = idleValidationIntervalMillis;
+	}
+
+	/**
+	 * @param maxWaitMillis 从连接池获取连接的最长等待时间（单位：毫秒），大于0时覆盖poolConfig的maxWaitMillis，
+	 * 避免某个连接卡住时调用方在getResource中无限排队
+	 */
+	public void setMaxWaitMillis(long maxWaitMillis) {
+		this.maxWaitMillis = maxWaitMillis;
+	}
+
+	/**
+	 * @param readDeadlineMillis 只读命令（get/mget/hget/hmget/hgetAll/pfCount/smembers）的最长等待时间（单位：毫秒），
+	 * 包括获取连接的时间，与socket timeout无关；超时返回null（pfCount返回0）。小于等于0时不限制（默认）
+	 */
+	public void setReadDeadlineMillis(long readDeadlineMillis) {
+		this.readDeadlineMillis = readDeadlineMillis;
+	}
+
+	/**
+	 * @param hedgedReadsEnabled 是否开启对冲读：只读命令在该命令最近的p95执行时间内没有返回时，在另一个连接上再发送一次，取先返回的结果；
+	 * 依赖metricsEnabled，默认关闭
+	 */
+	public void setHedgedReadsEnabled(boolean hedgedReadsEnabled) {
+		this.hedgedReadsEnabled = hedgedReadsEnabled;
+	}
+
+	/**
+	 * @param minHedgeDelayMicros 对冲延迟的下限（单位：微秒），默认1ms
+	 */
+	public void setMinHedgeDelayMicros(long minHedgeDelayMicros) {
+		this.minHedgeDelayMicros = minHedgeDelayMicros;
+	}
+
+	/**
+	 * @param hedgedReadThreads 开启截止时间或对冲读时，执行只读命令的最多线程数量，超出时在调用方线程中直接执行
+	 */
+	public void setHedgedReadThreads(int hedgedReadThreads) {
+		this.hedgedReadThreads = hedgedReadThreads;
+	}
+
+	/**
+	 * @param scriptingEnabled incrByWithTtl/hsetWithTtl/pfAddWithTtl/msetWithTtl是否使用服务端缓存的Lua脚本（默认开启）；
+	 * 关闭时（如服务端禁用了EVAL）改为在pipeline中发送MULTI/EXEC，同样只需要一次往返
+	 */
+	public void setScriptingEnabled(boolean scriptingEnabled) {
+		this.scriptingEnabled = scriptingEnabled;
+	}
+
+	/**
+	 * @param hotKeyTrackingEnabled 是否统计get/set/hget的热点key与大value（见{@link #getHotKeys()}、{@link #getBigValues()}），默认关闭
+	 */
+	public void setHotKeyTrackingEnabled(boolean hotKeyTrackingEnabled) {
+		this.hotKeyTrackingEnabled = hotKeyTrackingEnabled;
+	}
+
+	/**
+	 * @param hotKeyTopK 保留的热点key与大value数量
+	 */
+	public void setHotKeyTopK(int hotKeyTopK) {
+		this.hotKeyTopK = hotKeyTopK;
+	}
+
+	/**
+	 * @param hotKeySampleRate 每多少次读写采样一次key（向上取整为2的幂），默认16
+	 */
+	public void setHotKeySampleRate(int hotKeySampleRate) {
+		this.hotKeySampleRate = hotKeySampleRate;
+	}
+
+	/**
+	 * @param bigValueThreshold 大于等于该长度（字节）的值才统计为大value，默认10KB
+	 */
+	public void setBigValueThreshold(int bigValueThreshold) {
+		this.bigValueThreshold = bigValueThreshold;
+	}
+
+	/**
+	 * @param connectionAffinityEnabled 是否为调用线程保留专用连接（见{@link RedisAffinityPool}），默认关闭；
+	 * 适用于数量固定、持续调用的工作线程，省去每次命令从连接池借出/归还的开销
+	 */
+	public void setConnectionAffinityEnabled(boolean connectionAffinityEnabled) {
+		this.connectionAffinityEnabled = connectionAffinityEnabled;
+	}
+
+	/**
+	 * @param maxAffinityLeases 同时保留专用连接的最多线程数量，小于等于0时为poolConfig的maxTotal的一半（默认）
+	 */
+	public void setMaxAffinityLeases(int maxAffinityLeases) {
+		this.maxAffinityLeases = maxAffinityLeases;
+	}
+
+	/**
+	 * @param affinityIdleMillis 线程持有的专用连接空闲超过该时间（单位：毫秒）后归还连接池，默认1秒
+	 */
+	public void setAffinityIdleMillis(long affinityIdleMillis) {
+		this.affinityIdleMillis = affinityIdleMillis;
+	}
+
+	/**
+	 * @param replicas 只读副本地址，如"host1:6379,host2:6379"，与master使用相同的poolConfig/password/timeout/database；
+	 * 配置后get/mget/hget/hmget/hgetAll/pfCount/smembers按延迟加权路由到副本，写操作仍在master上执行
+	 */
+	public void setReplicas(String replicas) {
+		this.replicas = replicas;
+	}
+
+	/**
+	 * @param replicaProbeIntervalMillis 副本PING探测间隔（单位：毫秒），用于更新延迟和可用状态
+	 */
+	public void setReplicaProbeIntervalMillis(long replicaProbeIntervalMillis) {
+		this.replicaProbeIntervalMillis = replicaProbeIntervalMillis;
+	}
+
+	/**
+	 * @param masterReadKeyPrefixes 以这些前缀开始的key总是从master读取（read-your-writes），多个前缀以逗号分隔
+	 */
+	public void setMasterReadKeyPrefixes(String masterReadKeyPrefixes) {
+		List<String> prefixes = new ArrayList<String>();
+		if(masterReadKeyPrefixes != null) {
+			for(String prefix : masterReadKeyPrefixes.split(",")) {
+				prefix = prefix.trim();
+				if(prefix.length() > 0) {
+					prefixes.add(prefix);
+				}
+			}
+		}
+
+		if(prefixes.isEmpty()) {
+			this.masterReadKeyPrefixes = null;
+			this.rawMasterReadKeyPrefixes = null;
+		} else {
+			this.masterReadKeyPrefixes = prefixes.toArray(new String[prefixes.size()]);
+			this.rawMasterReadKeyPrefixes = SafeEncoder.encodeMany(this.masterReadKeyPrefixes);
+		}
+	}
+
 	public void init() {
-		this.jedisPool = new JedisPool(poolConfig, host, port, timeout, password, database);
+		GenericObjectPoolConfig poolConfig = this.poolConfig;
+		if((this.warmUpEnabled || this.maxWaitMillis > 0L) && poolConfig != null) {
+			// 不修改外部传入（可能被多个客户端共用）的配置
+			poolConfig = poolConfig.clone();
+		}
+
+		if(this.warmUpEnabled && poolConfig != null) {
+			poolConfig.setTestWhileIdle(true);
+			if(poolConfig.getTimeBetweenEvictionRunsMillis() <= 0L && this.idleValidationIntervalMillis > 0L) {
+				poolConfig.setTimeBetweenEvictionRunsMillis(this.idleValidationIntervalMillis);
+				// 每次验证全部空闲连接
+				poolConfig.setNumTestsPerEvictionRun(-1);
+			}
+		}
+
+		if(this.maxWaitMillis > 0L && poolConfig != null) {
+			poolConfig.setBlockWhenExhausted(true);
+			poolConfig.setMaxWaitMillis(this.maxWaitMillis);
+		}
+		this.jedisPool = this.newJedisPool(poolConfig, host, port);
+		final AtomicInteger scanThreadIndex = new AtomicInteger();
+		this.scanExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "redis-scan-" + scanThreadIndex.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		if(this.replicas != null && this.replicas.trim().length() > 0) {
+			String[] addresses = this.replicas.split(",");
+			List<JedisPool> pools = new ArrayList<JedisPool>(addresses.length);
+			List<String> names = new ArrayList<String>(addresses.length);
+			for(String address : addresses) {
+				address = address.trim();
+				if(address.length() == 0)
+					continue;
+
+				int index = address.lastIndexOf(':');
+				pools.add(this.newJedisPool(poolConfig, index > 0 ? address.substring(0, index) : address,
+						index > 0 ? Integer.parseInt(address.substring(index + 1)) : Protocol.DEFAULT_PORT));
+				names.add(address);
+			}
+
+			this.replicaRouter = new RedisReplicaRouter(pools.toArray(new JedisPool[pools.size()]), names.toArray(new String[names.size()]),
+					this.replicaProbeIntervalMillis);
+			this.replicaRouter.start();
+		}
+
+		if(this.compressionThreshold > 0) {
+			this.compressor = new RedisValueCompressor(this.compressionThreshold, this.compressionLevel);
+		}
+
+		if(this.metricsEnabled) {
+			this.metrics = new RedisClientMetrics();
+			if(this.metricsListener != null && this.metricsReportIntervalMillis > 0L) {
+				this.metrics.startReporting(this.metricsListener, this.metricsReportIntervalMillis);
+			}
+		}
+
+		if(this.readDeadlineMillis > 0L || this.hedgedReadsEnabled) {
+			this.hedgedReader = new RedisHedgedReader(this.metrics, this.readDeadlineMillis, this.hedgedReadsEnabled,
+					this.minHedgeDelayMicros, this.hedgedReadThreads);
+		}
+
+		if(this.statsEnabled) {
+			// 统计在后台每5分钟同步一次，不占用业务线程
+			this.stats = new RedisClientStats(this.jedisPool, STATS_SYNC_INTERVAL);
+			this.stats.start();
+		}
+
+		if(this.hotKeyTrackingEnabled) {
+			this.hotKeyTracker = new RedisHotKeyTracker(this.hotKeyTopK, this.hotKeySampleRate, this.bigValueThreshold);
+		}
+
+		if(this.counterAggregationEnabled) {
+			this.counterAggregator = new RedisCounterAggregator(this, this.counterFlushIntervalMillis, this.counterMaxPendingKeys);
+			this.counterAggregator.start();
+		}
+
+		if(this.hllAggregationEnabled) {
+			this.hllAggregator = new RedisHyperLogLogAggregator(this, this.hllFlushIntervalMillis, this.hllMaxPendingKeys);
+			this.hllAggregator.start();
+		}
+
+		if(this.warmUpEnabled) {
+			int connections = poolConfig == null ? 1 : Math.min(poolConfig.getMinIdle(), poolConfig.getMaxTotal());
+			this.poolWarmer = new RedisPoolWarmer(this.jedisPool, connections, this.warmUpTimeoutMillis, this.warmUpRetryIntervalMillis);
+			this.poolWarmer.start();
+		}
+
+		if(this.coalescingEnabled) {
+			this.readCoalescer = new RedisReadCoalescer(this.newCoalescedReader(), this.coalescingWindowMicros,
+					this.coalescingMaxBatchSize, this.coalescingThreads, this.timeout);
+			this.readCoalescer.start();
+		}
 	}
 
 	/* (non-Javadoc)
 	 * @see com.networkbench.newlens.datacollector.backend.service.RedisClient#get(java.lang.String)
 	 */
 	@Override
-	public String get(String key) {
+	public String get(final String key) {
 		if(this.jedisPool == null)
 			return null;
 		
+		RedisReadCoalescer readCoalescer = this.readCoalescer;
+		String value = readCoalescer != null && this.coalescable() ? readCoalescer.get(key) : this.readValue(key);
+		this.trackKey(key, value == null ? 0 : value.length());
+		
+		if(this.statsEnabled && key.length() > 0) {
+			this.statGet(key.charAt(0));
+		}
+		
+		return value;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.networkbench.newlens.datacollector.backend.service.RedisClient#get(byte[])
+	 */
+	@Override
+	public byte[] get(final byte[] key) {
+		if(this.jedisPool == null)
+			return null;
+		
+		byte[] value = this.read(RedisCommand.GET, this.readPool(key), new ReadCommand<byte[]>() {
+			@Override
+			public byte[] execute(Jedis jedis) {
+				return jedis.get(key);
+			}
+		});
+		this.recordPayload(RedisCommand.GET, value == null ? 0 : value.length);
+		this.trackKey(key, value == null ? 0 : value.length);
+		
+		if(this.statsEnabled && key.length > 0) {
+			this.statGet((char)key[0]);
+		}
+		
+		return RedisValueCompressor.decompress(value);
+	}
+
+	@Override
+	public int get(final byte[] key, ByteBuffer target) {
+		if(this.jedisPool == null)
+			return -1;
+		
+		// Jedis读取响应时总会分配byte[]，此处只省去解压和复制时的中间数组
+		byte[] value = this.read(RedisCommand.GET, this.readPool(key), new ReadCommand<byte[]>() {
+			@Override
+			public byte[] execute(Jedis jedis) {
+				return jedis.get(key);
+			}
+		});
+		this.recordPayload(RedisCommand.GET, value == null ? 0 : value.length);
+		this.trackKey(key, value == null ? 0 : value.length);
+		
+		if(this.statsEnabled && key.length > 0) {
+			this.statGet((char)key[0]);
+		}
+		
+		return value == null ? -1 : RedisValueCompressor.decompress(value, target);
+	}
+
+	
+	/* (non-Javadoc)
+	 * @see com.networkbench.newlens.datacollector.service.RedisClient#mget(java.lang.String[])
+	 */
+	@Override
+	public List<String> mget(final String... key) {
+		if(this.jedisPool == null)
+			return null;
+		
+		if(key == null) {
+			return null;
+		}
+		
+		if(key.length == 0) {
+			return new ArrayList<String>(1);
+		}
+		
+		if(key.length > this.mgetBatchSize) {
+			// 单次限制最多mget数量，防止key过多时超时；拆分后的批次通过pipeline并发发送
+			return this.mgetChunked(key);
+		}
+		
+		List<String> value = this.read(RedisCommand.MGET, this.readPool(key), new ReadCommand<List<String>>() {
+			@Override
+			public List<String> execute(Jedis jedis) {
+				return jedis.mget(key);
+			}
+		});
+		
+		if(this.statsEnabled && value != null) {
+			for(String k : key) {
+				if(k.length() > 0) {
+					this.statGet(k.charAt(0));
+				}
+			}
+		}
+		
+		return value;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.networkbench.newlens.datacollector.service.RedisClient#mget(byte[][])
+	 */
+	@Override
+	public List<byte[]> mget(final byte[]... key) {
+		if(this.jedisPool == null)
+			return null;
+		
+		if(key == null) {
+			return null;
+		}
+		
+		if(key.length == 0) {
+			return new ArrayList<byte[]>(1);
+		}
+		
+		if(key.length > this.mgetBatchSize) {
+			// 单次限制最多mget数量，防止key过多时超时；拆分后的批次通过pipeline并发发送
+			return decompress(this.mgetChunked(key));
+		}
+		
+		List<byte[]> value = this.read(RedisCommand.MGET, this.readPool(key), new ReadCommand<List<byte[]>>() {
+			@Override
+			public List<byte[]> execute(Jedis jedis) {
+				return jedis.mget(key);
+			}
+		});
+		
+		if(this.statsEnabled && value != null) {
+			for(byte[] k : key) {
+				if(k.length > 0) {
+					this.statGet((char)k[0]);
+				}
+			}
+		}
+		
+		return decompress(value);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.networkbench.newlens.datacollector.backend.service.RedisClient#set(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public void set(String key, String value) {
+		if(this.jedisPool == null)
+			return;
+		
 		Jedis jedis = null;
-		String value = null;
 		try {
-			jedis = jedisPool.getResource();
-			value = jedis.get(key);
+			jedis = this.getResource(RedisCommand.SET);
+			long startTime = System.nanoTime();
+			jedis.set(key, value);
+			this.recordExecute(RedisCommand.SET, startTime);
+			this.recordPayload(RedisCommand.SET, value.length());
+			this.trackKey(key, value.length());
 			
 			if(this.statsEnabled && key.length() > 0) {
-				this.statGet(key.substring(0, 1));
+				this.statSet(key.charAt(0), value.length());
 			}
 		} catch(Throwable ex) {
-//			logger.error("failed to get value from redis: " + ex.getMessage(), ex);
+			this.recordError(RedisCommand.SET);
+//			logger.error("failed to set value to redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
 				try {
@@ -122,29 +780,32 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 				}
 			}
 		}
-		
-		return value;
 	}
 
 	/* (non-Javadoc)
-	 * @see com.networkbench.newlens.datacollector.backend.service.RedisClient#get(byte[])
+	 * @see com.networkbench.newlens.datacollector.backend.service.RedisClient#set(byte[], byte[])
 	 */
 	@Override
-	public byte[] get(byte[] key) {
+	public void set(byte[] key, byte[] value) {
 		if(this.jedisPool == null)
-			return null;
+			return;
 		
+		byte[] storedValue = this.compress(value);
 		Jedis jedis = null;
-		byte[] value = null;
 		try {
-			jedis = jedisPool.getResource();
-			value = jedis.get(key);
+			jedis = this.getResource(RedisCommand.SET);
+			long startTime = System.nanoTime();
+			jedis.set(key, storedValue);
+			this.recordExecute(RedisCommand.SET, startTime);
+			this.recordPayload(RedisCommand.SET, storedValue.length);
+			this.trackKey(key, storedValue.length);
 			
 			if(this.statsEnabled && key.length > 0) {
-				this.statGet(String.valueOf((char)key[0]));
+				this.statSet((char)key[0], value.length, storedValue.length);
 			}
 		} catch(Throwable ex) {
-//			logger.error("failed to get value from redis: " + ex.getMessage(), ex);
+			this.recordError(RedisCommand.SET);
+//			logger.error("failed to set value to redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
 				try {
@@ -154,77 +815,37 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 				}
 			}
 		}
-		
-		return value;
 	}
 
-	
 	/* (non-Javadoc)
-	 * @see com.networkbench.newlens.datacollector.service.RedisClient#mget(java.lang.String[])
+	 * @see com.networkbench.newlens.datacollector.backend.service.RedisClient#set(java.lang.String, java.lang.String, int)
 	 */
 	@Override
-	public List<String> mget(String... key) {
+	public void set(String key, String value, int expirationInSeconds) {
 		if(this.jedisPool == null)
-			return null;
-		
-		if(key == null) {
-			return null;
-		}
-		
-		if(key.length == 0) {
-			return new ArrayList<String>(1);
-		}
+			return;
 		
-		if(key.length > MAX_MGET_SIZE) {
-			// 单次限制最多mget数量，防止key过多时超时
-			List<String> allValues = new ArrayList<String>(key.length);
-			int batchedCount = 0;
-			String[] batchedKeys = new String[MAX_MGET_SIZE];
-			for(String k : key) {
-				batchedKeys[batchedCount] = k;
-				++batchedCount;
-				
-				if(batchedCount == MAX_MGET_SIZE) {
-					List<String> values = mget(batchedKeys);
-					allValues.addAll(values);
-					
-					batchedCount = 0;
-					// 复用batchedKeys数组可适当提升性能，不需要重新初始化，自动覆盖即可
-				}
-			}
-			
-			// 剩余的key
-			if(batchedCount > 0) {
-				String[] remainedKeys;
-				if(batchedCount < MAX_MGET_SIZE) {
-					remainedKeys = new String[batchedCount];
-					System.arraycopy(batchedKeys, 0, remainedKeys, 0, batchedCount);
-				} else {
-					remainedKeys = batchedKeys;
-				}
-				
-				List<String> values = mget(remainedKeys);
-				allValues.addAll(values);
-			}
-			
-			return allValues;
+		if(expirationInSeconds <= 0) {
+			// 0 for never expiring
+			this.set(key, value);
+			return;
 		}
 		
 		Jedis jedis = null;
-		List<String> value = null;
 		try {
-			jedis = jedisPool.getResource();
-			value = jedis.mget(key);
+			jedis = this.getResource(RedisCommand.SETEX);
+			long startTime = System.nanoTime();
+			jedis.setex(key, expirationInSeconds, value);
+			this.recordExecute(RedisCommand.SETEX, startTime);
+			this.recordPayload(RedisCommand.SETEX, value.length());
+			this.trackKey(key, value.length());
 			
-			if(this.statsEnabled) {
-				if(key.length > 0) {
-					for(String k : key) {
-						this.statGet(k.substring(0, 1));
-					}
-				}
+			if(this.statsEnabled && key.length() > 0) {
+				this.statSet(key.charAt(0), value.length());
 			}
 		} catch(Throwable ex) {
-//			logger.error("failed to mget value from redis: " + ex.getMessage(), ex);
+			this.recordError(RedisCommand.SETEX);
+//			logger.error("failed to set value to redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
 				try {
@@ -234,76 +855,84 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 				}
 			}
 		}
-		
-		return value;
 	}
 
 	/* (non-Javadoc)
-	 * @see com.networkbench.newlens.datacollector.service.RedisClient#mget(byte[][])
+	 * @see com.networkbench.newlens.datacollector.service.RedisClient#mset(java.lang.String[])
 	 */
 	@Override
-	public List<byte[]> mget(byte[]... key) {
+	public void mset(String... keyValues) {
 		if(this.jedisPool == null)
-			return null;
+			return;
 		
-		if(key == null) {
-			return null;
+		if(keyValues == null || keyValues.length == 0) {
+			return;
 		}
 		
-		if(key.length == 0) {
-			return new ArrayList<byte[]>(1);
+		if(keyValues.length > this.msetBatchSize) {
+			// 单次限制最多mset数量，防止key过多时超时；拆分后的批次通过pipeline并发发送
+			this.msetChunked(keyValues);
+			return;
 		}
 		
-		if(key.length > MAX_MGET_SIZE) {
-			// 单次限制最多mget数量，防止key过多时超时
-			List<byte[]> allValues = new ArrayList<byte[]>(key.length);
-			int batchedCount = 0;
-			byte[][] batchedKeys = new byte[MAX_MGET_SIZE][];
-			for(byte[] k : key) {
-				batchedKeys[batchedCount] = k;
-				++batchedCount;
-				
-				if(batchedCount == MAX_MGET_SIZE) {
-					List<byte[]> values = mget(batchedKeys);
-					allValues.addAll(values);
-					
-					batchedCount = 0;
-					// 复用batchedKeys数组可适当提升性能，不需要重新初始化，自动覆盖即可
-				}
+		Jedis jedis = null;
+		try {
+			jedis = this.getResource(RedisCommand.MSET);
+			long startTime = System.nanoTime();
+			jedis.mset(keyValues);
+			this.recordExecute(RedisCommand.MSET, startTime);
+			/*
+			if(this.statsEnabled && key.length() > 0) {
+				this.statSet(key.charAt(0), value.length());
 			}
-			
-			// 剩余的key
-			if(batchedCount > 0) {
-				byte[][] remainedKeys;
-				if(batchedCount < MAX_MGET_SIZE) {
-					remainedKeys = new byte[batchedCount][];
-					System.arraycopy(batchedKeys, 0, remainedKeys, 0, batchedCount);
-				} else {
-					remainedKeys = batchedKeys;
+			*/
+		} catch(Throwable ex) {
+			this.recordError(RedisCommand.MSET);
+//			logger.error("failed to mset value to redis: " + ex.getMessage(), ex);
+		} finally {
+			if(jedis != null) {
+				try {
+					jedis.close();
+				} catch(Throwable t) {
+//					logger.error("error to return redis resource to pool: " + t.getMessage(), t);
 				}
-				
-				List<byte[]> values = mget(remainedKeys);
-				allValues.addAll(values);
 			}
-			
-			return allValues;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.networkbench.newlens.datacollector.service.RedisClient#mset(byte[][])
+	 */
+	@Override
+	public void mset(byte[]... keyValues) {
+		if(this.jedisPool == null)
+			return;
+		
+		if(keyValues == null || keyValues.length == 0) {
+			return;
+		}
+		
+		keyValues = this.compressValues(keyValues);
+		if(keyValues.length > this.msetBatchSize) {
+			// 单次限制最多mset数量，防止key过多时超时；拆分后的批次通过pipeline并发发送
+			this.msetChunked(keyValues);
+			return;
 		}
 		
 		Jedis jedis = null;
-		List<byte[]> value = null;
 		try {
-			jedis = jedisPool.getResource();
-			value = jedis.mget(key);
-			
-			if(this.statsEnabled) {
-				if(key.length > 0) {
-					for(byte[] k : key) {
-						this.statGet(String.valueOf((char)k[0]));
-					}
-				}
+			jedis = this.getResource(RedisCommand.MSET);
+			long startTime = System.nanoTime();
+			jedis.mset(keyValues);
+			this.recordExecute(RedisCommand.MSET, startTime);
+			/*
+			if(this.statsEnabled && key.length() > 0) {
+				this.statSet(key.charAt(0), value.length());
 			}
+			*/
 		} catch(Throwable ex) {
-//			logger.error("failed to mget value from redis: " + ex.getMessage(), ex);
+			this.recordError(RedisCommand.MSET);
+//			logger.error("failed to mset value to redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
 				try {
@@ -313,27 +942,37 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 				}
 			}
 		}
-		
-		return value;
 	}
 
 	/* (non-Javadoc)
-	 * @see com.networkbench.newlens.datacollector.backend.service.RedisClient#set(java.lang.String, java.lang.String)
+	 * @see com.networkbench.newlens.datacollector.backend.service.RedisClient#set(byte[], byte[], int)
 	 */
 	@Override
-	public void set(String key, String value) {
+	public void set(byte[] key, byte[] value, int expirationInSeconds) {
 		if(this.jedisPool == null)
 			return;
 		
+		if(expirationInSeconds <= 0) {
+			// 0 for never expiring
+			this.set(key, value);
+			return;
+		}
+		
+		byte[] storedValue = this.compress(value);
 		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();
-			jedis.set(key, value);
+			jedis = this.getResource(RedisCommand.SETEX);
+			long startTime = System.nanoTime();
+			jedis.setex(key, expirationInSeconds, storedValue);
+			this.recordExecute(RedisCommand.SETEX, startTime);
+			this.recordPayload(RedisCommand.SETEX, storedValue.length);
+			this.trackKey(key, storedValue.length);
 			
-			if(this.statsEnabled && key.length() > 0) {
-				this.statSet(key.substring(0, 1), value.length());
+			if(this.statsEnabled && key.length > 0) {
+				this.statSet((char)key[0], value.length, storedValue.length);
 			}
 		} catch(Throwable ex) {
+			this.recordError(RedisCommand.SETEX);
 //			logger.error("failed to set value to redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
@@ -346,24 +985,52 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 		}
 	}
 
-	/* (non-Javadoc)
-	 * @see com.networkbench.newlens.datacollector.backend.service.RedisClient#set(byte[], byte[])
-	 */
 	@Override
-	public void set(byte[] key, byte[] value) {
-		if(this.jedisPool == null)
-			return;
-		
+	public void set(byte[] key, ByteBuffer value, int expirationInSeconds) {
+		this.set(key, toByteArray(value), expirationInSeconds);
+	}
+
+	/**
+	 * 超大mget拆分为多批，在同一个连接上pipeline发送，最多maxChunksInFlight批同时在途，结果保持原key顺序
+	 */
+	private List<String> mgetChunked(String[] key) {
+		List<String> allValues = new ArrayList<String>(key.length);
+		List<Response<List<String>>> responses = new ArrayList<Response<List<String>>>(this.maxChunksInFlight);
 		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();
-			jedis.set(key, value);
-			
-			if(this.statsEnabled && key.length > 0) {
-				this.statSet(String.valueOf((char)key[0]), value.length);
+			jedis = this.getResource(this.readPool(key), RedisCommand.MGET);
+			long startTime = System.nanoTime();
+			Pipeline pipeline = jedis.pipelined();
+			for(int offset = 0; offset < key.length; offset += this.mgetBatchSize) {
+				String[] batchedKeys = Arrays.copyOfRange(key, offset, Math.min(offset + this.mgetBatchSize, key.length));
+				responses.add(pipeline.mget(batchedKeys));
+
+				if(responses.size() >= this.maxChunksInFlight) {
+					pipeline.sync();
+					for(Response<List<String>> response : responses) {
+						allValues.addAll(response.get());
+					}
+					responses.clear();
+				}
+			}
+
+			pipeline.sync();
+			for(Response<List<String>> response : responses) {
+				allValues.addAll(response.get());
+			}
+
+			if(this.statsEnabled) {
+				for(String k : key) {
+					if(k.length() > 0) {
+						this.statGet(k.charAt(0));
+					}
+				}
 			}
+			this.recordExecute(RedisCommand.MGET, startTime);
 		} catch(Throwable ex) {
-//			logger.error("failed to set value to redis: " + ex.getMessage(), ex);
+			this.recordError(RedisCommand.MGET);
+//			logger.error("failed to mget value from redis: " + ex.getMessage(), ex);
+			return null;
 		} finally {
 			if(jedis != null) {
 				try {
@@ -373,32 +1040,51 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 				}
 			}
 		}
+
+		return allValues;
 	}
 
-	/* (non-Javadoc)
-	 * @see com.networkbench.newlens.datacollector.backend.service.RedisClient#set(java.lang.String, java.lang.String, int)
+	/**
+	 * 超大mget拆分为多批，在同一个连接上pipeline发送，最多maxChunksInFlight批同时在途，结果保持原key顺序
 	 */
-	@Override
-	public void set(String key, String value, int expirationInSeconds) {
-		if(this.jedisPool == null)
-			return;
-		
-		if(expirationInSeconds <= 0) {
-			// 0 for never expiring
-			this.set(key, value);
-			return;
-		}
-		
+	private List<byte[]> mgetChunked(byte[][] key) {
+		List<byte[]> allValues = new ArrayList<byte[]>(key.length);
+		List<Response<List<byte[]>>> responses = new ArrayList<Response<List<byte[]>>>(this.maxChunksInFlight);
 		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();			
-			jedis.setex(key, expirationInSeconds, value);
-			
-			if(this.statsEnabled && key.length() > 0) {
-				this.statSet(key.substring(0, 1), value.length());
+			jedis = this.getResource(this.readPool(key), RedisCommand.MGET);
+			long startTime = System.nanoTime();
+			Pipeline pipeline = jedis.pipelined();
+			for(int offset = 0; offset < key.length; offset += this.mgetBatchSize) {
+				byte[][] batchedKeys = Arrays.copyOfRange(key, offset, Math.min(offset + this.mgetBatchSize, key.length));
+				responses.add(pipeline.mget(batchedKeys));
+
+				if(responses.size() >= this.maxChunksInFlight) {
+					pipeline.sync();
+					for(Response<List<byte[]>> response : responses) {
+						allValues.addAll(response.get());
+					}
+					responses.clear();
+				}
+			}
+
+			pipeline.sync();
+			for(Response<List<byte[]>> response : responses) {
+				allValues.addAll(response.get());
+			}
+
+			if(this.statsEnabled) {
+				for(byte[] k : key) {
+					if(k.length > 0) {
+						this.statGet((char)k[0]);
+					}
+				}
 			}
+			this.recordExecute(RedisCommand.MGET, startTime);
 		} catch(Throwable ex) {
-//			logger.error("failed to set value to redis: " + ex.getMessage(), ex);
+			this.recordError(RedisCommand.MGET);
+//			logger.error("failed to mget value from redis: " + ex.getMessage(), ex);
+			return null;
 		} finally {
 			if(jedis != null) {
 				try {
@@ -408,60 +1094,70 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 				}
 			}
 		}
+
+		return allValues;
 	}
 
-	/* (non-Javadoc)
-	 * @see com.networkbench.newlens.datacollector.service.RedisClient#mset(java.lang.String[])
+	/**
+	 * 超大mset拆分为多批，在同一个连接上pipeline发送，最多maxChunksInFlight批同时在途
 	 */
-	@Override
-	public void mset(String... keyValues) {
-		if(this.jedisPool == null)
-			return;
-		
-		if(keyValues == null || keyValues.length == 0) {
-			return;
-		}
-		
-		if(keyValues.length > MAX_MSET_SIZE) {
-			// 单次限制最多mset数量，防止key过多时超时
-			int batchedCount = 0;
-			String[] batchedKeyValues = new String[MAX_MSET_SIZE];
-			for(String kv : keyValues) {
-				batchedKeyValues[batchedCount] = kv;
-				++batchedCount;
-				
-				if(batchedCount == MAX_MSET_SIZE) {
-					mset(batchedKeyValues);
-					
-					batchedCount = 0;
-					// 复用batchedKeys数组可适当提升性能，不需要重新初始化，自动覆盖即可
+	private void msetChunked(String[] keyValues) {
+		Jedis jedis = null;
+		try {
+			jedis = this.getResource(RedisCommand.MSET);
+			long startTime = System.nanoTime();
+			Pipeline pipeline = jedis.pipelined();
+			int chunksInFlight = 0;
+			for(int offset = 0; offset < keyValues.length; offset += this.msetBatchSize) {
+				String[] batchedKeyValues = Arrays.copyOfRange(keyValues, offset, Math.min(offset + this.msetBatchSize, keyValues.length));
+				pipeline.mset(batchedKeyValues);
+
+				if(++chunksInFlight >= this.maxChunksInFlight) {
+					pipeline.sync();
+					chunksInFlight = 0;
 				}
 			}
-			
-			// 剩余的key
-			if(batchedCount > 0) {
-				String[] remainedKeyValues;
-				if(batchedCount < MAX_MSET_SIZE) {
-					remainedKeyValues = new String[batchedCount];
-					System.arraycopy(batchedKeyValues, 0, remainedKeyValues, 0, batchedCount);
-				} else {
-					remainedKeyValues = batchedKeyValues;
+
+			pipeline.sync();
+			this.recordExecute(RedisCommand.MSET, startTime);
+		} catch(Throwable ex) {
+			this.recordError(RedisCommand.MSET);
+//			logger.error("failed to mset value to redis: " + ex.getMessage(), ex);
+		} finally {
+			if(jedis != null) {
+				try {
+					jedis.close();
+				} catch(Throwable t) {
+//					logger.error("error to return redis resource to pool: " + t.getMessage(), t);
 				}
-				
-				mset(remainedKeyValues);
 			}
 		}
-		
+	}
+
+	/**
+	 * 超大mset拆分为多批，在同一个连接上pipeline发送，最多maxChunksInFlight批同时在途
+	 */
+	private void msetChunked(byte[][] keyValues) {
 		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();
-			jedis.mset(keyValues);
-			/*
-			if(this.statsEnabled && key.length() > 0) {
-				this.statSet(key.substring(0, 1), value.length());
+			jedis = this.getResource(RedisCommand.MSET);
+			long startTime = System.nanoTime();
+			Pipeline pipeline = jedis.pipelined();
+			int chunksInFlight = 0;
+			for(int offset = 0; offset < keyValues.length; offset += this.msetBatchSize) {
+				byte[][] batchedKeyValues = Arrays.copyOfRange(keyValues, offset, Math.min(offset + this.msetBatchSize, keyValues.length));
+				pipeline.mset(batchedKeyValues);
+
+				if(++chunksInFlight >= this.maxChunksInFlight) {
+					pipeline.sync();
+					chunksInFlight = 0;
+				}
 			}
-			*/
+
+			pipeline.sync();
+			this.recordExecute(RedisCommand.MSET, startTime);
 		} catch(Throwable ex) {
+			this.recordError(RedisCommand.MSET);
 //			logger.error("failed to mset value to redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
@@ -474,59 +1170,254 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 		}
 	}
 
-	/* (non-Javadoc)
-	 * @see com.networkbench.newlens.datacollector.service.RedisClient#mset(byte[][])
+	private void statHmset(String key, Map<String, String> fieldAndValues) {
+		if(this.statsEnabled && key.length() > 0) {
+			int valuesLength = 0;
+			for(String value : fieldAndValues.values()) {
+				valuesLength += value.length();
+			}
+			
+			this.statSet(key.charAt(0), valuesLength);
+		}
+	}
+
+	private void statHmset(byte[] key, Map<byte[], byte[]> fieldAndValues, Map<byte[], byte[]> storedFieldAndValues) {
+		if(this.statsEnabled && key.length > 0) {
+			int valuesLength = 0;
+			int storedValuesLength = 0;
+			for(byte[] value : fieldAndValues.values()) {
+				valuesLength += value.length;
+			}
+			for(byte[] value : storedFieldAndValues.values()) {
+				storedValuesLength += value.length;
+			}
+			
+			this.statSet((char)key[0], valuesLength, storedValuesLength);
+		}
+	}
+
+	private RedisHashBulkLoader newHashBulkLoader() {
+		RedisHashBulkLoader loader = new RedisHashBulkLoader(this);
+		loader.setMaxFieldsPerChunk(this.hmsetBatchSize);
+		loader.setChunksInFlight(this.maxChunksInFlight);
+		return loader;
+	}
+
+	private void statGet(char prefix) {
+		RedisClientStats stats = this.stats;
+		if(stats != null) {
+			stats.recordGet(prefix);
+		}
+	}
+	
+	private JedisPool newJedisPool(GenericObjectPoolConfig poolConfig, String host, int port) {
+		if(!this.connectionAffinityEnabled)
+			return new JedisPool(poolConfig, host, port, this.timeout, this.password, this.database);
+
+		int maxLeases = this.maxAffinityLeases;
+		if(maxLeases <= 0) {
+			maxLeases = (poolConfig == null ? GenericObjectPoolConfig.DEFAULT_MAX_TOTAL : poolConfig.getMaxTotal()) / 2;
+		}
+		RedisAffinityPool pool = new RedisAffinityPool(poolConfig, host, port, this.timeout, this.password, this.database,
+				maxLeases, this.affinityIdleMillis);
+		pool.start();
+		return pool;
+	}
+
+	private void trackKey(String key, int size) {
+		RedisHotKeyTracker hotKeyTracker = this.hotKeyTracker;
+		if(hotKeyTracker != null) {
+			hotKeyTracker.record(key, size);
+		}
+	}
+	
+	private void trackKey(byte[] key, int size) {
+		RedisHotKeyTracker hotKeyTracker = this.hotKeyTracker;
+		if(hotKeyTracker != null) {
+			hotKeyTracker.record(key, size);
+		}
+	}
+	
+	private void statSet(char prefix, int size) {
+		this.statSet(prefix, size, size);
+	}
+	
+	private void statSet(char prefix, int size, int storedSize) {
+		RedisClientStats stats = this.stats;
+		if(stats != null) {
+			stats.recordSet(prefix, size, storedSize);
+		}
+	}
+	
+	private byte[] compress(byte[] value) {
+		RedisValueCompressor compressor = this.compressor;
+		return compressor == null ? value : compressor.compress(value);
+	}
+	
+	/**
+	 * @return 压缩mset键值对中的值，没有需要压缩的值时返回原数组
 	 */
-	@Override
-	public void mset(byte[]... keyValues) {
-		if(this.jedisPool == null)
-			return;
-		
-		if(keyValues == null || keyValues.length == 0) {
-			return;
+	private byte[][] compressValues(byte[][] keyValues) {
+		if(this.compressor == null)
+			return keyValues;
+		
+		byte[][] storedKeyValues = keyValues;
+		for(int i = 1; i < keyValues.length; i += 2) {
+			byte[] storedValue = this.compressor.compress(keyValues[i]);
+			if(storedValue != keyValues[i]) {
+				if(storedKeyValues == keyValues) {
+					storedKeyValues = keyValues.clone();
+				}
+				storedKeyValues[i] = storedValue;
+			}
 		}
+		return storedKeyValues;
+	}
+	
+	private Map<byte[], byte[]> compressValues(Map<byte[], byte[]> fieldAndValues) {
+		if(this.compressor == null || fieldAndValues == null)
+			return fieldAndValues;
 		
-		if(keyValues.length > MAX_MSET_SIZE) {
-			// 单次限制最多mset数量，防止key过多时超时
-			int batchedCount = 0;
-			byte[][] batchedKeyValues = new byte[MAX_MSET_SIZE][];
-			for(byte[] kv : keyValues) {
-				batchedKeyValues[batchedCount] = kv;
-				++batchedCount;
-				
-				if(batchedCount == MAX_MSET_SIZE) {
-					mset(batchedKeyValues);
-					
-					batchedCount = 0;
-					// 复用batchedKeys数组可适当提升性能，不需要重新初始化，自动覆盖即可
+		Map<byte[], byte[]> storedFieldAndValues = new HashMap<byte[], byte[]>(fieldAndValues.size() * 4 / 3 + 1);
+		for(Map.Entry<byte[], byte[]> e : fieldAndValues.entrySet()) {
+			storedFieldAndValues.put(e.getKey(), this.compressor.compress(e.getValue()));
+		}
+		return storedFieldAndValues;
+	}
+	
+	/**
+	 * Jedis的命令参数只接受完整的byte[]：完整的heap buffer直接使用其数组，否则复制position到limit之间的数据
+	 */
+	private static byte[] toByteArray(ByteBuffer value) {
+		if(value.hasArray() && value.arrayOffset() == 0 && value.position() == 0 && value.limit() == value.array().length) {
+			value.position(value.limit());
+			return value.array();
+		}
+
+		byte[] bytes = new byte[value.remaining()];
+		value.get(bytes);
+		return bytes;
+	}
+
+	private static List<byte[]> decompress(List<byte[]> values) {
+		if(values != null) {
+			for(int i = 0; i < values.size(); ++i) {
+				byte[] value = values.get(i);
+				if(RedisValueCompressor.isCompressed(value)) {
+					values.set(i, RedisValueCompressor.decompress(value));
 				}
 			}
-			
-			// 剩余的key
-			if(batchedCount > 0) {
-				byte[][] remainedKeyValues;
-				if(batchedCount < MAX_MSET_SIZE) {
-					remainedKeyValues = new byte[batchedCount][];
-					System.arraycopy(batchedKeyValues, 0, remainedKeyValues, 0, batchedCount);
-				} else {
-					remainedKeyValues = batchedKeyValues;
+		}
+		return values;
+	}
+	
+	private Jedis getResource(RedisCommand command) {
+		return this.getResource(this.jedisPool, command);
+	}
+
+	private Jedis getResource(JedisPool pool, RedisCommand command) {
+		RedisClientMetrics metrics = this.metrics;
+		if(metrics == null) {
+			return pool.getResource();
+		}
+
+		long startTime = System.nanoTime();
+		Jedis jedis = pool.getResource();
+		metrics.recordAcquire(command, System.nanoTime() - startTime);
+		return jedis;
+	}
+
+	/**
+	 * 只读命令使用的连接池：配置了副本时选择一个副本，readFromMaster期间、key匹配masterReadKeyPrefixes或没有可用副本时使用master
+	 */
+	private JedisPool readPool(String... keys) {
+		RedisReplicaRouter replicaRouter = this.replicaRouter;
+		if(replicaRouter == null || this.masterReads.get()[0] > 0)
+			return this.jedisPool;
+
+		String[] prefixes = this.masterReadKeyPrefixes;
+		if(prefixes != null) {
+			for(String key : keys) {
+				for(String prefix : prefixes) {
+					if(key.startsWith(prefix))
+						return this.jedisPool;
 				}
-				
-				mset(remainedKeyValues);
 			}
 		}
-		
-		Jedis jedis = null;
-		try {
-			jedis = jedisPool.getResource();
-			jedis.mset(keyValues);
-			/*
-			if(this.statsEnabled && key.length() > 0) {
-				this.statSet(key.substring(0, 1), value.length());
+
+		JedisPool replica = replicaRouter.select();
+		return replica == null ? this.jedisPool : replica;
+	}
+
+	private JedisPool readPool(byte[]... keys) {
+		RedisReplicaRouter replicaRouter = this.replicaRouter;
+		if(replicaRouter == null || this.masterReads.get()[0] > 0)
+			return this.jedisPool;
+
+		byte[][] prefixes = this.rawMasterReadKeyPrefixes;
+		if(prefixes != null) {
+			for(byte[] key : keys) {
+				for(byte[] prefix : prefixes) {
+					if(startsWith(key, prefix))
+						return this.jedisPool;
+				}
 			}
-			*/
+		}
+
+		JedisPool replica = replicaRouter.select();
+		return replica == null ? this.jedisPool : replica;
+	}
+
+	/**
+	 * 对冲请求使用的连接池：第一次请求在master上时仍使用master，否则重新选择副本
+	 */
+	private JedisPool hedgePool(JedisPool pool) {
+		RedisReplicaRouter replicaRouter = this.replicaRouter;
+		if(replicaRouter == null || pool == this.jedisPool)
+			return this.jedisPool;
+
+		JedisPool replica = replicaRouter.select();
+		return replica == null ? this.jedisPool : replica;
+	}
+
+	/**
+	 * 执行只读命令：配置了截止时间或对冲请求时通过hedgedReader执行
+	 * @return 命令的返回值，失败或超过截止时间时返回null
+	 */
+	private <T> T read(final RedisCommand command, final JedisPool pool, final ReadCommand<T> reader) {
+		try {
+			RedisHedgedReader hedgedReader = this.hedgedReader;
+			if(hedgedReader == null)
+				return this.execute(command, pool, reader);
+
+			return hedgedReader.read(command, new Callable<T>() {
+				@Override
+				public T call() {
+					return execute(command, pool, reader);
+				}
+			}, new Callable<T>() {
+				@Override
+				public T call() {
+					return execute(command, hedgePool(pool), reader);
+				}
+			});
 		} catch(Throwable ex) {
-//			logger.error("failed to mset value to redis: " + ex.getMessage(), ex);
+//			logger.error("failed to " + command + " from redis: " + ex.getMessage(), ex);
+			return null;
+		}
+	}
+
+	private <T> T execute(RedisCommand command, JedisPool pool, ReadCommand<T> reader) {
+		Jedis jedis = null;
+		try {
+			jedis = this.getResource(pool, command);
+			long startTime = System.nanoTime();
+			T value = reader.execute(jedis);
+			this.recordExecute(command, startTime);
+			return value;
+		} catch(RuntimeException ex) {
+			this.recordError(command);
+			throw ex;
 		} finally {
 			if(jedis != null) {
 				try {
@@ -538,30 +1429,109 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 		}
 	}
 
-	/* (non-Javadoc)
-	 * @see com.networkbench.newlens.datacollector.backend.service.RedisClient#set(byte[], byte[], int)
+	private interface ReadCommand<T> {
+		T execute(Jedis jedis);
+	}
+
+	private String readValue(final String key) {
+		String value = this.read(RedisCommand.GET, this.readPool(key), new ReadCommand<String>() {
+			@Override
+			public String execute(Jedis jedis) {
+				return jedis.get(key);
+			}
+		});
+		this.recordPayload(RedisCommand.GET, value == null ? 0 : value.length());
+		return value;
+	}
+
+	private String readField(final String key, final String field) {
+		String value = this.read(RedisCommand.HGET, this.readPool(key), new ReadCommand<String>() {
+			@Override
+			public String execute(Jedis jedis) {
+				return jedis.hget(key, field);
+			}
+		});
+		this.recordPayload(RedisCommand.HGET, value == null ? 0 : value.length());
+		return value;
+	}
+
+	/**
+	 * 合并的读取在dispatcher线程中执行，看不到调用方线程的readFromMaster，这期间的读取不合并
 	 */
-	@Override
-	public void set(byte[] key, byte[] value, int expirationInSeconds) {
-		if(this.jedisPool == null)
-			return;
-		
-		if(expirationInSeconds <= 0) {
-			// 0 for never expiring
-			this.set(key, value);
-			return;
-		}
-		
+	private boolean coalescable() {
+		return this.replicaRouter == null || this.masterReads.get()[0] == 0;
+	}
+
+	/**
+	 * 合并后的批次与单独的读取一样经由readPool()与read()执行
+	 */
+	private RedisReadCoalescer.Reader newCoalescedReader() {
+		return new RedisReadCoalescer.Reader() {
+			@Override
+			public List<List<String>> read(final String[] keys, final Map<String, String[]> fields) {
+				List<String> allKeys = new ArrayList<String>(keys.length + fields.size());
+				Collections.addAll(allKeys, keys);
+				allKeys.addAll(fields.keySet());
+				return JedisPoolRedisClientImpl.this.read(RedisCommand.COALESCED_READ, readPool(allKeys.toArray(new String[allKeys.size()])),
+						new ReadCommand<List<List<String>>>() {
+					@Override
+					public List<List<String>> execute(Jedis jedis) {
+						Pipeline pipeline = jedis.pipelined();
+						Response<List<String>> getResponse = keys.length == 0 ? null : pipeline.mget(keys);
+						List<Response<List<String>>> hgetResponses = new ArrayList<Response<List<String>>>(fields.size());
+						for(Map.Entry<String, String[]> e : fields.entrySet()) {
+							hgetResponses.add(pipeline.hmget(e.getKey(), e.getValue()));
+						}
+						pipeline.sync();
+
+						List<List<String>> values = new ArrayList<List<String>>(fields.size() + 1);
+						values.add(getResponse == null ? null : getResponse.get());
+						for(Response<List<String>> hgetResponse : hgetResponses) {
+							values.add(hgetResponse.get());
+						}
+						return values;
+					}
+				});
+			}
+
+			@Override
+			public String get(String key) {
+				return readValue(key);
+			}
+
+			@Override
+			public String hget(String key, String field) {
+				return readField(key, field);
+			}
+		};
+	}
+
+	/**
+	 * 在一个连接上执行复合命令：scriptingEnabled时执行Lua脚本（EVALSHA，NOSCRIPT时EVAL），
+	 * 否则在pipeline中以MULTI/EXEC发送transaction中的命令，两种方式都只有一次往返
+	 * @return 脚本的返回值或transaction返回的Response的值，失败时返回null
+	 */
+	private Object executeCompound(RedisCommand command, RedisScript script, List<String> keys, List<String> args, CompoundCommand transaction) {
 		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();			
-			jedis.setex(key, expirationInSeconds, value);
-			
-			if(this.statsEnabled && key.length > 0) {
-				this.statSet(String.valueOf((char)key[0]), value.length);
-			}
+			jedis = this.getResource(command);
+			long startTime = System.nanoTime();
+			Object value;
+			if(this.scriptingEnabled) {
+				value = script.eval(jedis, keys, args);
+			} else {
+				Pipeline pipeline = jedis.pipelined();
+				pipeline.multi();
+				Response<?> response = transaction.execute(pipeline);
+				pipeline.exec();
+				pipeline.sync();
+				value = response.get();
+			}
+			this.recordExecute(command, startTime);
+			return value;
 		} catch(Throwable ex) {
-//			logger.error("failed to set value to redis: " + ex.getMessage(), ex);
+			this.recordError(command);
+//			logger.error("failed to execute " + command + " on redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
 				try {
@@ -571,113 +1541,132 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 				}
 			}
 		}
+
+		return null;
+	}
+
+	/**
+	 * 关闭脚本时复合命令在MULTI/EXEC中发送的命令
+	 */
+	private interface CompoundCommand {
+		/**
+		 * @return 作为复合命令结果的Response
+		 */
+		Response<?> execute(Pipeline pipeline);
+	}
+
+	private static boolean startsWith(byte[] key, byte[] prefix) {
+		if(key.length < prefix.length)
+			return false;
+
+		for(int i = 0; i < prefix.length; ++i) {
+			if(key[i] != prefix[i])
+				return false;
+		}
+		return true;
 	}
 
-	private void statGet(String key) {
-		this.lock.readLock().lock();
+	/**
+	 * 在当前线程中执行reads，期间的只读命令都从master读取，用于需要读到刚写入的值（read-your-writes）的场景；可以嵌套
+	 * @param reads
+	 * @return reads的返回值
+	 */
+	public <T> T readFromMaster(Callable<T> reads) throws Exception {
+		int[] depth = this.masterReads.get();
+		depth[0]++;
 		try {
-			this.statIncrLocal("getsof#" + key);
-			this.statIncrLocal("getsof#");
-		} catch(Throwable t) {
-			// ignore
+			return reads.call();
 		} finally {
-			this.lock.readLock().unlock();
-		}
-		
-		long now = System.currentTimeMillis();
-		if(this.lastStatSyncTime + STATS_SYNC_INTERVAL < now) {
-			// sync every 5 min
-			this.lastStatSyncTime = now;
-			this.syncStatWithRedis();
+			depth[0]--;
 		}
 	}
+
+	/**
+	 * @return 发出了对冲请求的只读命令次数
+	 */
+	public long getHedgedReadCount() {
+		RedisHedgedReader hedgedReader = this.hedgedReader;
+		return hedgedReader == null ? 0L : hedgedReader.getHedgedReads();
+	}
+
+	/**
+	 * @return 超过readDeadlineMillis而放弃的只读命令次数
+	 */
+	public long getReadDeadlineExceededCount() {
+		RedisHedgedReader hedgedReader = this.hedgedReader;
+		return hedgedReader == null ? 0L : hedgedReader.getDeadlineExceeded();
+	}
+
+	/**
+	 * @return 各只读副本的可用状态和延迟，未配置副本时返回null
+	 */
+	public String getReplicaStatus() {
+		RedisReplicaRouter replicaRouter = this.replicaRouter;
+		return replicaRouter == null ? null : replicaRouter.toString();
+	}
 	
-	private void statSet(String key, int size) {
-		this.lock.readLock().lock();
-		try {
-			this.statIncrLocal("sizeof#" + key, (long)size);
-			this.statIncrLocal("sizeof#", (long)size);
-			this.statIncrLocal("setsof#" + key);
-			this.statIncrLocal("setsof#");
-		} catch(Throwable t) {
-			// ignore
-		} finally {
-			this.lock.readLock().unlock();
+	private void recordExecute(RedisCommand command, long startTime) {
+		RedisClientMetrics metrics = this.metrics;
+		if(metrics != null) {
+			metrics.recordExecute(command, System.nanoTime() - startTime);
 		}
 	}
 	
-	private void statIncrLocal(String key) {
-		AtomicLong v = this.localStats.get(key);
-		if(v == null) {
-			v = new AtomicLong();
-			AtomicLong oldValue = this.localStats.putIfAbsent(key, v);
-			if(oldValue != null) {
-				v = oldValue;
-			}
+	private void recordPayload(RedisCommand command, long bytes) {
+		RedisClientMetrics metrics = this.metrics;
+		if(metrics != null) {
+			metrics.recordPayload(command, bytes);
 		}
-		
-		v.incrementAndGet();
 	}
 	
-	private void statIncrLocal(String key, long increment) {
-		AtomicLong v = this.localStats.get(key);
-		if(v == null) {
-			v = new AtomicLong();
-			AtomicLong oldValue = this.localStats.putIfAbsent(key, v);
-			if(oldValue != null) {
-				v = oldValue;
-			}
+	private void recordError(RedisCommand command) {
+		RedisClientMetrics metrics = this.metrics;
+		if(metrics != null) {
+			metrics.recordError(command);
 		}
-		
-		v.addAndGet(increment);
 	}
 	
-	private void syncStatWithRedis() {
-		// sync to redis
+	/**
+	 * 未开启预热时连接池创建后即就绪；开启预热时预热成功（minIdle个连接均已PING验证）后就绪
+	 */
+	@Override
+	public boolean isReady() {
 		if(this.jedisPool == null)
-			return;
-		
-		Map<String, Long> statsSync = new HashMap<String, Long>();
-		this.lock.writeLock().lock();
-		try {
-			for(Map.Entry<String, AtomicLong> e : this.localStats.entrySet()) {
-				statsSync.put(e.getKey(), Long.valueOf(e.getValue().longValue()));
-				e.getValue().set(0L);
-			}
-		} catch(Throwable t) {
-			// ignore
-		} finally {
-			this.lock.writeLock().unlock();
-		}
-		
-		Jedis jedis = null;
-		try {
-			jedis = jedisPool.getResource();
-			for(Map.Entry<String, Long> e : statsSync.entrySet()) {
-				long increment = e.getValue().longValue();
-				try {
-					jedis.incrBy(e.getKey(), increment);
-				} catch(Throwable t) {
-					// failed, set back to local
-					this.statIncrLocal(e.getKey(), increment);
-				}
-			}
-		} catch(Throwable ex) {
-			// failed to get resource
-//			logger.error("failed to sync stats to redis: " + ex.getMessage(), ex);
-			// set all values back to local
-			for(Map.Entry<String, Long> e : statsSync.entrySet()) {
-				this.statIncrLocal(e.getKey(), e.getValue().longValue());
-			}
-		} finally {
-			if(jedis != null) {
-				try {
-					jedis.close();
-				} catch(Throwable t) {
-//					logger.error("error to return redis resource to pool: " + t.getMessage(), t);
-				}
-			}
-		}
+			return false;
+
+		RedisPoolWarmer poolWarmer = this.poolWarmer;
+		return poolWarmer == null || poolWarmer.isReady();
+	}
+
+	/**
+	 * @return 按命令统计的指标，未开启时返回null
+	 */
+	public RedisClientMetrics getMetrics() {
+		return this.metrics;
+	}
+	
+	/**
+	 * @return 自启动以来各统计项的累计值，未开启统计时返回空
+	 */
+	public Map<String, Long> getStatsSnapshot() {
+		RedisClientStats stats = this.stats;
+		return stats == null ? Collections.<String, Long>emptyMap() : stats.snapshot();
+	}
+
+	/**
+	 * @return 最近访问最多的key及估计的访问次数，按次数从高到低排序；未开启hotKeyTrackingEnabled时返回空
+	 */
+	public Map<String, Long> getHotKeys() {
+		RedisHotKeyTracker hotKeyTracker = this.hotKeyTracker;
+		return hotKeyTracker == null ? Collections.<String, Long>emptyMap() : hotKeyTracker.hotKeys();
+	}
+
+	/**
+	 * @return 读写过的最大的值对应的key及值的长度（字节），按长度从大到小排序；未开启hotKeyTrackingEnabled时返回空
+	 */
+	public Map<String, Long> getBigValues() {
+		RedisHotKeyTracker hotKeyTracker = this.hotKeyTracker;
+		return hotKeyTracker == null ? Collections.<String, Long>emptyMap() : hotKeyTracker.bigValues();
 	}
 	
 	/* (non-Javadoc)
@@ -690,9 +1679,12 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 		
 		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();			
+			jedis = this.getResource(RedisCommand.EXPIRE);
+			long startTime = System.nanoTime();
 			jedis.expire(key, expirationInSeconds);
+			this.recordExecute(RedisCommand.EXPIRE, startTime);
 		} catch(Throwable ex) {
+			this.recordError(RedisCommand.EXPIRE);
 //			logger.error("failed to set value to redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
@@ -715,9 +1707,12 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 		
 		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();			
+			jedis = this.getResource(RedisCommand.EXPIRE);
+			long startTime = System.nanoTime();
 			jedis.expire(key, expirationInSeconds);
+			this.recordExecute(RedisCommand.EXPIRE, startTime);
 		} catch(Throwable ex) {
+			this.recordError(RedisCommand.EXPIRE);
 //			logger.error("failed to set value to redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
@@ -738,9 +1733,12 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 		
 		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();
+			jedis = this.getResource(RedisCommand.DEL);
+			long startTime = System.nanoTime();
 			flag = jedis.del(key);
+			this.recordExecute(RedisCommand.DEL, startTime);
 		} catch(Throwable ex) {
+			this.recordError(RedisCommand.DEL);
 //			logger.error("failed to del value to redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
@@ -762,9 +1760,12 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 		
 		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();
+			jedis = this.getResource(RedisCommand.DEL);
+			long startTime = System.nanoTime();
 			flag = jedis.del(key);
+			this.recordExecute(RedisCommand.DEL, startTime);
 		} catch(Throwable ex) {
+			this.recordError(RedisCommand.DEL);
 //			logger.error("failed to del value to redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
@@ -777,6 +1778,198 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 		}
 		return flag;
 	}
+
+	@Override
+	public long del(String... keys) {
+		if(this.jedisPool == null || keys == null || keys.length == 0)
+			return 0L;
+
+		if(keys.length == 1)
+			return this.del(keys[0]);
+
+		return this.deleteChunked(keys, false);
+	}
+
+	@Override
+	public long del(byte[]... keys) {
+		if(this.jedisPool == null || keys == null || keys.length == 0)
+			return 0L;
+
+		if(keys.length == 1)
+			return this.del(keys[0]);
+
+		return this.deleteChunked(keys, false);
+	}
+
+	/**
+	 * 关闭scriptingEnabled或Redis不支持UNLINK时使用DEL
+	 */
+	@Override
+	public long unlink(String... keys) {
+		if(this.jedisPool == null || keys == null || keys.length == 0)
+			return 0L;
+
+		return this.deleteChunked(keys, this.scriptingEnabled && this.unlinkSupported);
+	}
+
+	@Override
+	public long expire(String[] keys, int expirationInSeconds) {
+		if(this.jedisPool == null || keys == null || keys.length == 0)
+			return 0L;
+
+		long expired = 0L;
+		Jedis jedis = null;
+		try {
+			jedis = this.getResource(RedisCommand.EXPIRE);
+			long startTime = System.nanoTime();
+			Pipeline pipeline = jedis.pipelined();
+			// 与超大mget相同，最多mgetBatchSize * maxChunksInFlight条命令同时在途
+			int maxInFlight = this.mgetBatchSize * this.maxChunksInFlight;
+			List<Response<Long>> responses = new ArrayList<Response<Long>>(Math.min(keys.length, maxInFlight));
+			for(String key : keys) {
+				responses.add(pipeline.expire(key, expirationInSeconds));
+
+				if(responses.size() >= maxInFlight) {
+					pipeline.sync();
+					expired += sumOf(responses);
+					responses.clear();
+				}
+			}
+
+			pipeline.sync();
+			expired += sumOf(responses);
+			this.recordExecute(RedisCommand.EXPIRE, startTime);
+		} catch(Throwable ex) {
+			this.recordError(RedisCommand.EXPIRE);
+//			logger.error("failed to expire keys in redis: " + ex.getMessage(), ex);
+		} finally {
+			if(jedis != null) {
+				try {
+					jedis.close();
+				} catch(Throwable t) {
+//					logger.error("error to return redis resource to pool: " + t.getMessage(), t);
+				}
+			}
+		}
+		return expired;
+	}
+
+	@Override
+	public long delByPattern(String pattern, int count, int maxKeysPerSecond) {
+		if(this.jedisPool == null)
+			return 0L;
+
+		return new RedisKeyCleaner(this, count, maxKeysPerSecond).delete(pattern);
+	}
+
+	@Override
+	public long expireByPattern(String pattern, int expirationInSeconds, int count, int maxKeysPerSecond) {
+		if(this.jedisPool == null)
+			return 0L;
+
+		return new RedisKeyCleaner(this, count, maxKeysPerSecond).expire(pattern, expirationInSeconds);
+	}
+
+	/**
+	 * 按mgetBatchSize拆分为多批DEL（或UNLINK脚本），在同一个连接上pipeline发送，最多maxChunksInFlight批同时在途
+	 * @param keys String[]或byte[][]
+	 * @param unlink 是否使用UNLINK脚本，只用于String类型的key
+	 */
+	private <K> long deleteChunked(K[] keys, boolean unlink) {
+		RedisCommand command = unlink ? RedisCommand.UNLINK : RedisCommand.DEL;
+		long deleted = 0L;
+		Jedis jedis = null;
+		try {
+			jedis = this.getResource(command);
+			long startTime = System.nanoTime();
+			Pipeline pipeline = jedis.pipelined();
+			List<K[]> batches = new ArrayList<K[]>(this.maxChunksInFlight);
+			List<Response<?>> responses = new ArrayList<Response<?>>(this.maxChunksInFlight);
+			for(int offset = 0; offset < keys.length; offset += this.mgetBatchSize) {
+				K[] batch = Arrays.copyOfRange(keys, offset, Math.min(offset + this.mgetBatchSize, keys.length));
+				batches.add(batch);
+				responses.add(unlink ? pipeline.evalsha(UNLINK_SCRIPT.getSha1(), Arrays.asList((String[])batch), Collections.<String>emptyList())
+						: del(pipeline, batch));
+
+				if(responses.size() >= this.maxChunksInFlight) {
+					pipeline.sync();
+					deleted += this.sumDeleted(jedis, batches, responses);
+					batches.clear();
+					responses.clear();
+				}
+			}
+
+			pipeline.sync();
+			deleted += this.sumDeleted(jedis, batches, responses);
+			this.recordExecute(command, startTime);
+		} catch(Throwable ex) {
+			this.recordError(command);
+//			logger.error("failed to del value to redis: " + ex.getMessage(), ex);
+		} finally {
+			if(jedis != null) {
+				try {
+					jedis.close();
+				} catch(Throwable t) {
+//					logger.error("error to return redis resource to pool: " + t.getMessage(), t);
+				}
+			}
+		}
+		return deleted;
+	}
+
+	/**
+	 * 在pipeline.sync()之后调用：UNLINK脚本返回NOSCRIPT（服务端重启或SCRIPT FLUSH之后）时以EVAL重新执行该批，
+	 * 服务端不支持UNLINK时改用DEL，之后不再使用UNLINK
+	 */
+	private <K> long sumDeleted(Jedis jedis, List<K[]> batches, List<Response<?>> responses) {
+		long deleted = 0L;
+		for(int i = 0; i < responses.size(); ++i) {
+			Object value;
+			try {
+				value = responses.get(i).get();
+			} catch(JedisDataException ex) {
+				if(!(batches.get(i) instanceof String[]))
+					throw ex;
+
+				value = this.unlinkAgain(jedis, (String[])batches.get(i), ex);
+			}
+
+			if(value instanceof Long) {
+				deleted += ((Long)value).longValue();
+			}
+		}
+		return deleted;
+	}
+
+	private static Response<Long> del(Pipeline pipeline, Object[] keys) {
+		return keys instanceof byte[][] ? pipeline.del((byte[][])keys) : pipeline.del((String[])keys);
+	}
+
+	private Object unlinkAgain(Jedis jedis, String[] keys, JedisDataException ex) {
+		try {
+			if(ex.getMessage() != null && ex.getMessage().startsWith("NOSCRIPT"))
+				return UNLINK_SCRIPT.eval(jedis, Arrays.asList(keys), Collections.<String>emptyList());
+		} catch(JedisDataException e) {
+			ex = e;
+		}
+
+		if(ex.getMessage() == null || !ex.getMessage().contains("Unknown Redis command"))
+			throw ex;
+
+		this.unlinkSupported = false;
+		return jedis.del(keys);
+	}
+
+	private static long sumOf(List<Response<Long>> responses) {
+		long sum = 0L;
+		for(Response<Long> response : responses) {
+			Long value = response.get();
+			if(value != null) {
+				sum += value.longValue();
+			}
+		}
+		return sum;
+	}
 	
 	
 	/* (non-Javadoc)
@@ -789,10 +1982,13 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 		
 		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();
+			jedis = this.getResource(RedisCommand.INCR);
+			long startTime = System.nanoTime();
 			Long value = jedis.incr(key);
+			this.recordExecute(RedisCommand.INCR, startTime);
 			return value == null ? 0L : value.longValue();
 		} catch(Throwable ex) {
+			this.recordError(RedisCommand.INCR);
 //			logger.error("failed to set value to redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
@@ -817,10 +2013,13 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 		
 		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();
+			jedis = this.getResource(RedisCommand.INCR);
+			long startTime = System.nanoTime();
 			Long value = jedis.incr(key);
+			this.recordExecute(RedisCommand.INCR, startTime);
 			return value == null ? 0L : value.longValue();
 		} catch(Throwable ex) {
+			this.recordError(RedisCommand.INCR);
 //			logger.error("failed to set value to redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
@@ -845,10 +2044,13 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 		
 		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();
+			jedis = this.getResource(RedisCommand.INCRBY);
+			long startTime = System.nanoTime();
 			Long value = jedis.incrBy(key, increment);
+			this.recordExecute(RedisCommand.INCRBY, startTime);
 			return value == null ? 0L : value.longValue();
 		} catch(Throwable ex) {
+			this.recordError(RedisCommand.INCRBY);
 //			logger.error("failed to set value to redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
@@ -873,10 +2075,13 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 		
 		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();
+			jedis = this.getResource(RedisCommand.INCRBY);
+			long startTime = System.nanoTime();
 			Long value = jedis.incrBy(key, increment);
+			this.recordExecute(RedisCommand.INCRBY, startTime);
 			return value == null ? 0L : value.longValue();
 		} catch(Throwable ex) {
+			this.recordError(RedisCommand.INCRBY);
 //			logger.error("failed to set value to redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
@@ -901,10 +2106,13 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 		
 		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();
+			jedis = this.getResource(RedisCommand.DECR);
+			long startTime = System.nanoTime();
 			Long value = jedis.decr(key);
+			this.recordExecute(RedisCommand.DECR, startTime);
 			return value == null ? 0L : value.longValue();
 		} catch(Throwable ex) {
+			this.recordError(RedisCommand.DECR);
 //			logger.error("failed to set value to redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
@@ -929,10 +2137,13 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 		
 		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();
+			jedis = this.getResource(RedisCommand.DECR);
+			long startTime = System.nanoTime();
 			Long value = jedis.decr(key);
+			this.recordExecute(RedisCommand.DECR, startTime);
 			return value == null ? 0L : value.longValue();
 		} catch(Throwable ex) {
+			this.recordError(RedisCommand.DECR);
 //			logger.error("failed to set value to redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
@@ -957,10 +2168,13 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 		
 		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();
+			jedis = this.getResource(RedisCommand.DECRBY);
+			long startTime = System.nanoTime();
 			Long value = jedis.decrBy(key, decrement);
+			this.recordExecute(RedisCommand.DECRBY, startTime);
 			return value == null ? 0L : value.longValue();
 		} catch(Throwable ex) {
+			this.recordError(RedisCommand.DECRBY);
 //			logger.error("failed to set value to redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
@@ -985,10 +2199,13 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 		
 		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();
+			jedis = this.getResource(RedisCommand.DECRBY);
+			long startTime = System.nanoTime();
 			Long value = jedis.decrBy(key, decrement);
+			this.recordExecute(RedisCommand.DECRBY, startTime);
 			return value == null ? 0L : value.longValue();
 		} catch(Throwable ex) {
+			this.recordError(RedisCommand.DECRBY);
 //			logger.error("failed to set value to redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
@@ -1007,29 +2224,16 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 	 * @see com.networkbench.newlens.datacollector.backend.service.RedisClient#get(java.lang.String)
 	 */
 	@Override
-	public String hget(String key, String field) {
+	public String hget(final String key, final String field) {
 		if(this.jedisPool == null)
 			return null;
 
-		Jedis jedis = null;
-		String value = null;
-		try {
-			jedis = jedisPool.getResource();
-			value = jedis.hget(key, field);
+		RedisReadCoalescer readCoalescer = this.readCoalescer;
+		String value = readCoalescer != null && this.coalescable() ? readCoalescer.hget(key, field) : this.readField(key, field);
+		this.trackKey(key, value == null ? 0 : value.length());
 
-			if(this.statsEnabled && key.length() > 0) {
-				this.statGet(key.substring(0, 1));
-			}
-		} catch(Throwable ex) {
-//			logger.error("failed to hget value from redis: " + ex.getMessage(), ex);
-		} finally {
-			if(jedis != null) {
-				try {
-					jedis.close();
-				} catch(Throwable t) {
-//					logger.error("error to return redis resource to pool: " + t.getMessage(), t);
-				}
-			}
+		if(this.statsEnabled && key.length() > 0) {
+			this.statGet(key.charAt(0));
 		}
 
 		return value;
@@ -1039,61 +2243,64 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 	 * @see com.networkbench.newlens.datacollector.backend.service.RedisClient#get(byte[])
 	 */
 	@Override
-	public byte[] hget(byte[] key, byte[] field) {
+	public byte[] hget(final byte[] key, final byte[] field) {
 		if(this.jedisPool == null)
 			return null;
 		
-		Jedis jedis = null;
-		byte[] value = null;
-		try {
-			jedis = jedisPool.getResource();
-			value = jedis.hget(key, field);
-			
-			if(this.statsEnabled && key.length > 0) {
-				this.statGet(String.valueOf((char)key[0]));
+		byte[] value = this.read(RedisCommand.HGET, this.readPool(key), new ReadCommand<byte[]>() {
+			@Override
+			public byte[] execute(Jedis jedis) {
+				return jedis.hget(key, field);
 			}
-		} catch(Throwable ex) {
-//			logger.error("failed to hget value from redis: " + ex.getMessage(), ex);
-		} finally {
-			if(jedis != null) {
-				try {
-					jedis.close();
-				} catch(Throwable t) {
-//					logger.error("error to return redis resource to pool: " + t.getMessage(), t);
-				}
+		});
+		this.recordPayload(RedisCommand.HGET, value == null ? 0 : value.length);
+		this.trackKey(key, value == null ? 0 : value.length);
+		
+		if(this.statsEnabled && key.length > 0) {
+			this.statGet((char)key[0]);
+		}
+		
+		return RedisValueCompressor.decompress(value);
+	}
+
+	@Override
+	public int hget(final byte[] key, final byte[] field, ByteBuffer target) {
+		if(this.jedisPool == null)
+			return -1;
+		
+		byte[] value = this.read(RedisCommand.HGET, this.readPool(key), new ReadCommand<byte[]>() {
+			@Override
+			public byte[] execute(Jedis jedis) {
+				return jedis.hget(key, field);
 			}
+		});
+		this.recordPayload(RedisCommand.HGET, value == null ? 0 : value.length);
+		this.trackKey(key, value == null ? 0 : value.length);
+		
+		if(this.statsEnabled && key.length > 0) {
+			this.statGet((char)key[0]);
 		}
 		
-		return value;
+		return value == null ? -1 : RedisValueCompressor.decompress(value, target);
 	}
 
 	/* (non-Javadoc)
 	 * @see com.networkbench.newlens.datacollector.service.RedisClient#hmget(java.lang.String, java.lang.String[])
 	 */
 	@Override
-	public List<String> hmget(String key, String... field) {
+	public List<String> hmget(final String key, final String... field) {
 		if(this.jedisPool == null)
 			return null;
 		
-		Jedis jedis = null;
-		List<String> value = null;
-		try {
-			jedis = jedisPool.getResource();
-			value = jedis.hmget(key, field);
-			
-			if(this.statsEnabled && key.length() > 0) {
-				this.statGet(key.substring(0, 1));
-			}
-		} catch(Throwable ex) {
-//			logger.error("failed to hget value from redis: " + ex.getMessage(), ex);
-		} finally {
-			if(jedis != null) {
-				try {
-					jedis.close();
-				} catch(Throwable t) {
-//					logger.error("error to return redis resource to pool: " + t.getMessage(), t);
-				}
+		List<String> value = this.read(RedisCommand.HMGET, this.readPool(key), new ReadCommand<List<String>>() {
+			@Override
+			public List<String> execute(Jedis jedis) {
+				return jedis.hmget(key, field);
 			}
+		});
+		
+		if(this.statsEnabled && key.length() > 0) {
+			this.statGet(key.charAt(0));
 		}
 		
 		return value;
@@ -1103,32 +2310,22 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 	 * @see com.networkbench.newlens.datacollector.service.RedisClient#hmget(byte[], byte[][])
 	 */
 	@Override
-	public List<byte[]> hmget(byte[] key, byte[]... field) {
+	public List<byte[]> hmget(final byte[] key, final byte[]... field) {
 		if(this.jedisPool == null)
 			return null;
 		
-		Jedis jedis = null;
-		List<byte[]> value = null;
-		try {
-			jedis = jedisPool.getResource();
-			value = jedis.hmget(key, field);
-			
-			if(this.statsEnabled && key.length > 0) {
-				this.statGet(String.valueOf((char)key[0]));
-			}
-		} catch(Throwable ex) {
-//			logger.error("failed to hget value from redis: " + ex.getMessage(), ex);
-		} finally {
-			if(jedis != null) {
-				try {
-					jedis.close();
-				} catch(Throwable t) {
-//					logger.error("error to return redis resource to pool: " + t.getMessage(), t);
-				}
+		List<byte[]> value = this.read(RedisCommand.HMGET, this.readPool(key), new ReadCommand<List<byte[]>>() {
+			@Override
+			public List<byte[]> execute(Jedis jedis) {
+				return jedis.hmget(key, field);
 			}
+		});
+		
+		if(this.statsEnabled && key.length > 0) {
+			this.statGet((char)key[0]);
 		}
 		
-		return value;
+		return decompress(value);
 	}
 
 	/* (non-Javadoc)
@@ -1139,15 +2336,27 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 		if(this.jedisPool == null)
 			return;
 		
+		this.doHset(key, field, value);
+	}
+	
+	/**
+	 * @return 新增的field数量，失败时返回0
+	 */
+	private Long doHset(String key, String field, String value) {
 		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();
-			jedis.hset(key, field, value);
+			jedis = this.getResource(RedisCommand.HSET);
+			long startTime = System.nanoTime();
+			Long added = jedis.hset(key, field, value);
+			this.recordExecute(RedisCommand.HSET, startTime);
+			this.recordPayload(RedisCommand.HSET, value.length());
 			
 			if(this.statsEnabled && key.length() > 0) {
-				this.statSet(key.substring(0, 1), value.length());
+				this.statSet(key.charAt(0), value.length());
 			}
+			return added;
 		} catch(Throwable ex) {
+			this.recordError(RedisCommand.HSET);
 //			logger.error("failed to hset value to redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
@@ -1158,6 +2367,8 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 				}
 			}
 		}
+		
+		return 0L;
 	}
 
 	/* (non-Javadoc)
@@ -1168,15 +2379,20 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 		if(this.jedisPool == null)
 			return;
 		
+		byte[] storedValue = this.compress(value);
 		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();
-			jedis.hset(key, field, value);
+			jedis = this.getResource(RedisCommand.HSET);
+			long startTime = System.nanoTime();
+			jedis.hset(key, field, storedValue);
+			this.recordExecute(RedisCommand.HSET, startTime);
+			this.recordPayload(RedisCommand.HSET, storedValue.length);
 			
 			if(this.statsEnabled && key.length > 0) {
-				this.statSet(String.valueOf((char)key[0]), value.length);
+				this.statSet((char)key[0], value.length, storedValue.length);
 			}
 		} catch(Throwable ex) {
+			this.recordError(RedisCommand.HSET);
 //			logger.error("failed to hset value to redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
@@ -1198,20 +2414,23 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 		if(this.jedisPool == null || fieldAndValues == null)
 			return;
 		
+		if(this.hmsetChunkingEnabled && fieldAndValues.size() > this.hmsetBatchSize) {
+			// 单次限制最多hmset数量，防止单条命令过大阻塞Redis；拆分后的批次通过pipeline并发发送
+			if(this.newHashBulkLoader().load(key, fieldAndValues, 0).isSucceeded()) {
+				this.statHmset(key, fieldAndValues);
+			}
+			return;
+		}
+		
 		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();
+			jedis = this.getResource(RedisCommand.HMSET);
+			long startTime = System.nanoTime();
 			jedis.hmset(key, fieldAndValues);
-			
-			if(this.statsEnabled && key.length() > 0) {
-				int valuesLength = 0;
-				for(String value : fieldAndValues.values()) {
-					valuesLength += value.length();
-				}
-				
-				this.statSet(key.substring(0, 1), valuesLength);
-			}
+			this.recordExecute(RedisCommand.HMSET, startTime);
+			this.statHmset(key, fieldAndValues);
 		} catch(Throwable ex) {
+			this.recordError(RedisCommand.HMSET);
 //			logger.error("failed to hset value to redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
@@ -1232,20 +2451,25 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 		if(this.jedisPool == null)
 			return;
 		
+		if(this.hmsetChunkingEnabled && fieldAndValues != null && fieldAndValues.size() > this.hmsetBatchSize) {
+			// 单次限制最多hmset数量，防止单条命令过大阻塞Redis；拆分后的批次通过pipeline并发发送（pipeline中压缩）
+			if(this.newHashBulkLoader().load(key, fieldAndValues, 0).isSucceeded()) {
+				// 压缩后的长度在pipeline中，这里按未压缩的长度统计
+				this.statHmset(key, fieldAndValues, fieldAndValues);
+			}
+			return;
+		}
+		
+		Map<byte[], byte[]> storedFieldAndValues = this.compressValues(fieldAndValues);
 		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();
-			jedis.hmset(key, fieldAndValues);
-			
-			if(this.statsEnabled && key.length > 0) {
-				int valuesLength = 0;
-				for(byte[] value : fieldAndValues.values()) {
-					valuesLength += value.length;
-				}
-				
-				this.statSet(String.valueOf((char)key[0]), valuesLength);
-			}
+			jedis = this.getResource(RedisCommand.HMSET);
+			long startTime = System.nanoTime();
+			jedis.hmset(key, storedFieldAndValues);
+			this.recordExecute(RedisCommand.HMSET, startTime);
+			this.statHmset(key, fieldAndValues, storedFieldAndValues);
 		} catch(Throwable ex) {
+			this.recordError(RedisCommand.HMSET);
 //			logger.error("failed to hset value to redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
@@ -1259,29 +2483,19 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 	}
 
 	@Override
-	public Map<String, String> hgetAll(String key) {
+	public Map<String, String> hgetAll(final String key) {
 		if(this.jedisPool == null)
 			return null;
 
-		Jedis jedis = null;
-		Map<String, String> value = null;
-		try {
-			jedis = jedisPool.getResource();
-			value = jedis.hgetAll(key);
-
-			if(this.statsEnabled && key.length() > 0) {
-				this.statGet(key.substring(0, 1));
-			}
-		} catch(Throwable ex) {
-//			logger.error("failed to hget value from redis: " + ex.getMessage(), ex);
-		} finally {
-			if(jedis != null) {
-				try {
-					jedis.close();
-				} catch(Throwable t) {
-//					logger.error("error to return redis resource to pool: " + t.getMessage(), t);
-				}
+		Map<String, String> value = this.read(RedisCommand.HGETALL, this.readPool(key), new ReadCommand<Map<String, String>>() {
+			@Override
+			public Map<String, String> execute(Jedis jedis) {
+				return jedis.hgetAll(key);
 			}
+		});
+
+		if(this.statsEnabled && key.length() > 0) {
+			this.statGet(key.charAt(0));
 		}
 
 		return value;
@@ -1297,10 +2511,13 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 		
 		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();
+			jedis = this.getResource(RedisCommand.HINCRBY);
+			long startTime = System.nanoTime();
 			Long value = jedis.hincrBy(key, field, increment);
+			this.recordExecute(RedisCommand.HINCRBY, startTime);
 			return value == null ? 0L : value.longValue();
 		} catch(Throwable ex) {
+			this.recordError(RedisCommand.HINCRBY);
 //			logger.error("failed to hincrBy value to redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
@@ -1325,10 +2542,13 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 		
 		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();
+			jedis = this.getResource(RedisCommand.HINCRBY);
+			long startTime = System.nanoTime();
 			Long value = jedis.hincrBy(key, field, increment);
+			this.recordExecute(RedisCommand.HINCRBY, startTime);
 			return value == null ? 0L : value.longValue();
 		} catch(Throwable ex) {
+			this.recordError(RedisCommand.HINCRBY);
 //			logger.error("failed to hincrBy value to redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
@@ -1344,17 +2564,166 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 	}
 
 	@Override
-	public Long pfAdd(String key, String... elements) {
+	public void incrByDeferred(String key, long increment) {
+		RedisCounterAggregator counterAggregator = this.counterAggregator;
+		if(counterAggregator == null) {
+			this.incrBy(key, increment);
+			return;
+		}
+		
+		counterAggregator.incrBy(key, increment);
+	}
+
+	@Override
+	public void hincrByDeferred(String key, String field, long increment) {
+		RedisCounterAggregator counterAggregator = this.counterAggregator;
+		if(counterAggregator == null) {
+			this.hincrBy(key, field, increment);
+			return;
+		}
+		
+		counterAggregator.hincrBy(key, field, increment);
+	}
+
+	@Override
+	public long incrByWithTtl(final String key, final long increment, final int expirationInSeconds) {
+		if(this.jedisPool == null)
+			return 0L;
+
+		if(expirationInSeconds <= 0)
+			return this.incrBy(key, increment);
+
+		Object value = this.executeCompound(RedisCommand.INCRBY_EXPIRE, INCRBY_EXPIRE_SCRIPT, Collections.singletonList(key),
+				Arrays.asList(Long.toString(increment), Integer.toString(expirationInSeconds)), new CompoundCommand() {
+			@Override
+			public Response<?> execute(Pipeline pipeline) {
+				Response<Long> value = pipeline.incrBy(key, increment);
+				pipeline.expire(key, expirationInSeconds);
+				return value;
+			}
+		});
+		return value instanceof Long ? ((Long)value).longValue() : 0L;
+	}
+
+	@Override
+	public Long hsetWithTtl(final String key, final String field, final String value, final int expirationInSeconds) {
 		if(this.jedisPool == null)
 			return 0L;
+
+		if(expirationInSeconds <= 0)
+			return this.doHset(key, field, value);
+
+		Object added = this.executeCompound(RedisCommand.HSET_EXPIRE, HSET_EXPIRE_SCRIPT, Collections.singletonList(key),
+				Arrays.asList(field, value, Integer.toString(expirationInSeconds)), new CompoundCommand() {
+			@Override
+			public Response<?> execute(Pipeline pipeline) {
+				Response<Long> added = pipeline.hset(key, field, value);
+				pipeline.expire(key, expirationInSeconds);
+				return added;
+			}
+		});
+		if(!(added instanceof Long))
+			return 0L;
 		
+		if(this.statsEnabled && key.length() > 0) {
+			this.statSet(key.charAt(0), value.length());
+		}
+		return (Long)added;
+	}
+
+	@Override
+	public Long pfAddWithTtl(final String key, final int expirationInSeconds, final String... elements) {
+		if(this.jedisPool == null)
+			return 0L;
+
+		// 没有元素时与PFADD key相同：只创建（不存在的）key
+		final String[] values = elements == null ? new String[0] : elements;
+		if(expirationInSeconds <= 0)
+			return this.pfAdd(key, values);
+
+		List<String> args = new ArrayList<String>(values.length + 1);
+		args.add(Integer.toString(expirationInSeconds));
+		Collections.addAll(args, values);
+		Object changed = this.executeCompound(RedisCommand.PFADD_EXPIRE, PFADD_EXPIRE_SCRIPT, Collections.singletonList(key), args, new CompoundCommand() {
+			@Override
+			public Response<?> execute(Pipeline pipeline) {
+				Response<Long> changed = pipeline.pfadd(key, values);
+				pipeline.expire(key, expirationInSeconds);
+				return changed;
+			}
+		});
+		return changed instanceof Long ? (Long)changed : 0L;
+	}
+
+	@Override
+	public void msetWithTtl(final int expirationInSeconds, final String... keyValues) {
+		if(this.jedisPool == null)
+			return;
+
+		if(keyValues == null || keyValues.length < 2) {
+			return;
+		}
+
+		if(expirationInSeconds <= 0) {
+			this.mset(keyValues);
+			return;
+		}
+
+		if(keyValues.length > this.msetBatchSize) {
+			this.setexChunked(expirationInSeconds, keyValues);
+			return;
+		}
+
+		List<String> keys = new ArrayList<String>(keyValues.length / 2);
+		List<String> args = new ArrayList<String>(keyValues.length / 2 + 1);
+		args.add(Integer.toString(expirationInSeconds));
+		for(int i = 0; i + 1 < keyValues.length; i += 2) {
+			keys.add(keyValues[i]);
+			args.add(keyValues[i + 1]);
+		}
+
+		this.executeCompound(RedisCommand.MSET_EXPIRE, MSET_EXPIRE_SCRIPT, keys, args, new CompoundCommand() {
+			@Override
+			public Response<?> execute(Pipeline pipeline) {
+				Response<String> first = null;
+				for(int i = 0; i + 1 < keyValues.length; i += 2) {
+					Response<String> response = pipeline.setex(keyValues[i], expirationInSeconds, keyValues[i + 1]);
+					if(first == null) {
+						first = response;
+					}
+				}
+				return first;
+			}
+		});
+	}
+
+	/**
+	 * 超大msetWithTtl拆分为多批SETEX，在同一个连接上pipeline发送，最多maxChunksInFlight批同时在途
+	 */
+	private void setexChunked(int expirationInSeconds, String[] keyValues) {
 		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();
-			Long value = jedis.pfadd(key, elements);
-			return value == null ? 0L : value.longValue();
+			jedis = this.getResource(RedisCommand.MSET_EXPIRE);
+			long startTime = System.nanoTime();
+			Pipeline pipeline = jedis.pipelined();
+			int chunksInFlight = 0;
+			for(int offset = 0; offset < keyValues.length; offset += this.msetBatchSize) {
+				int end = Math.min(offset + this.msetBatchSize, keyValues.length);
+				for(int i = offset; i + 1 < end; i += 2) {
+					pipeline.setex(keyValues[i], expirationInSeconds, keyValues[i + 1]);
+				}
+
+				if(++chunksInFlight >= this.maxChunksInFlight) {
+					pipeline.sync();
+					chunksInFlight = 0;
+				}
+			}
+
+			pipeline.sync();
+			this.recordExecute(RedisCommand.MSET_EXPIRE, startTime);
 		} catch(Throwable ex) {
-//			logger.error("failed to pfAdd value to redis: " + ex.getMessage(), ex);
+			this.recordError(RedisCommand.MSET_EXPIRE);
+//			logger.error("failed to mset value to redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
 				try {
@@ -1364,22 +2733,22 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 				}
 			}
 		}
-		
-		return 0L;
 	}
 
 	@Override
-	public Long pfAdd(String key, int expirationInSeconds, String... elements) {
+	public Long pfAdd(String key, String... elements) {
 		if(this.jedisPool == null)
 			return 0L;
 		
 		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();
+			jedis = this.getResource(RedisCommand.PFADD);
+			long startTime = System.nanoTime();
 			Long value = jedis.pfadd(key, elements);
-			jedis.expire(key, expirationInSeconds);
+			this.recordExecute(RedisCommand.PFADD, startTime);
 			return value == null ? 0L : value.longValue();
 		} catch(Throwable ex) {
+			this.recordError(RedisCommand.PFADD);
 //			logger.error("failed to pfAdd value to redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
@@ -1395,28 +2764,37 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 	}
 
 	@Override
-	public long pfCount(String key) {
+	public Long pfAdd(String key, int expirationInSeconds, String... elements) {
+		return this.pfAddWithTtl(key, expirationInSeconds, elements);
+	}
+
+	@Override
+	public void pfAddDeferred(String key, int expirationInSeconds, String... elements) {
+		RedisHyperLogLogAggregator hllAggregator = this.hllAggregator;
+		if(hllAggregator == null) {
+			if(expirationInSeconds > 0) {
+				this.pfAdd(key, expirationInSeconds, elements);
+			} else {
+				this.pfAdd(key, elements);
+			}
+			return;
+		}
+		
+		hllAggregator.pfAdd(key, expirationInSeconds, elements);
+	}
+
+	@Override
+	public long pfCount(final String key) {
 		if(this.jedisPool == null)
 			return 0L;
 		
-		Jedis jedis = null;
-		try {
-			jedis = jedisPool.getResource();
-			Long value = jedis.pfcount(key);
-			return value == null ? 0L : value.longValue();
-		} catch(Throwable ex) {
-//			logger.error("failed to pfCount value to redis: " + ex.getMessage(), ex);
-		} finally {
-			if(jedis != null) {
-				try {
-					jedis.close();
-				} catch(Throwable t) {
-//					logger.error("error to return redis resource to pool: " + t.getMessage(), t);
-				}
+		Long value = this.read(RedisCommand.PFCOUNT, this.readPool(key), new ReadCommand<Long>() {
+			@Override
+			public Long execute(Jedis jedis) {
+				return jedis.pfcount(key);
 			}
-		}
-		
-		return 0L;
+		});
+		return value == null ? 0L : value.longValue();
 	}
 	
 	@Override
@@ -1426,9 +2804,13 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 		
 		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();
-			return jedis.pfmerge(destkey, sourcekeys);
+			jedis = this.getResource(RedisCommand.PFMERGE);
+			long startTime = System.nanoTime();
+			String value = jedis.pfmerge(destkey, sourcekeys);
+			this.recordExecute(RedisCommand.PFMERGE, startTime);
+			return value;
 		} catch(Throwable ex) {
+			this.recordError(RedisCommand.PFMERGE);
 //			logger.error("failed to pfmerge value to redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
@@ -1450,9 +2832,13 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 		
 		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();
-			return jedis.sadd(key, members);
+			jedis = this.getResource(RedisCommand.SADD);
+			long startTime = System.nanoTime();
+			Long value = jedis.sadd(key, members);
+			this.recordExecute(RedisCommand.SADD, startTime);
+			return value;
 		} catch(Throwable ex) {
+			this.recordError(RedisCommand.SADD);
 //			logger.error("failed to sadd value to redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
@@ -1474,9 +2860,13 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 		
 		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();
-			return jedis.keys(pattern);
+			jedis = this.getResource(RedisCommand.KEYS);
+			long startTime = System.nanoTime();
+			Set<String> value = jedis.keys(pattern);
+			this.recordExecute(RedisCommand.KEYS, startTime);
+			return value;
 		} catch(Throwable ex) {
+			this.recordError(RedisCommand.KEYS);
 //			logger.error("failed to keys for redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
@@ -1492,14 +2882,202 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 	}
 
 	@Override
-	public Set<String> smembers(String key) {
+	public long scan(String pattern, int count, ScanCallback<String> callback) {
+		if(this.jedisPool == null)
+			return 0L;
+
+		return drain(this.newScanIterator(pattern, count), callback);
+	}
+
+	/**
+	 * 只执行一次不带MATCH的SCAN，在客户端按各pattern过滤：每个pattern单独SCAN都要遍历整个keyspace；
+	 * 只有一个游标，parallelism被忽略
+	 */
+	@Override
+	public long scan(final String[] patterns, int count, int parallelism, final ScanCallback<String> callback) {
+		if(this.jedisPool == null || patterns == null || patterns.length == 0)
+			return 0L;
+
+		if(patterns.length == 1)
+			return this.scan(patterns[0], count, callback);
+
+		final long[] matched = new long[1];
+		long scanned = drain(this.newScanIterator(null, count), new ScanCallback<String>() {
+			@Override
+			public boolean onBatch(List<String> batch) {
+				List<String> keys = new ArrayList<String>(batch.size());
+				for(String key : batch) {
+					for(String pattern : patterns) {
+						if(RedisScanIterator.globMatch(pattern, 0, key, 0)) {
+							keys.add(key);
+							break;
+						}
+					}
+				}
+
+				if(keys.isEmpty())
+					return true;
+
+				matched[0] += keys.size();
+				return callback.onBatch(keys);
+			}
+		});
+
+		return scanned < 0L ? -1L : matched[0];
+	}
+
+	@Override
+	public Iterator<String> scanIterator(String pattern, int count) {
+		return this.newScanIterator(pattern, count);
+	}
+
+	@Override
+	public long hscan(final String key, int count, ScanCallback<Map.Entry<String, String>> callback) {
+		if(this.jedisPool == null)
+			return 0L;
+
+		return drain(new RedisScanIterator<Map.Entry<String, String>>(this.jedisPool, null, count) {
+			@Override
+			protected ScanResult<Map.Entry<String, String>> scan(Jedis jedis, String cursor) {
+				return jedis.hscan(key, cursor, this.params);
+			}
+		}, callback);
+	}
+
+	@Override
+	public long hscan(String[] keys, final int count, int parallelism, final ScanCallback<Map.Entry<String, String>> callback) {
+		if(this.jedisPool == null || keys == null || keys.length == 0)
+			return 0L;
+
+		return scanParallel(keys, parallelism, new ScanTask() {
+			@Override
+			public long scan(String key) {
+				return hscan(key, count, callback);
+			}
+		});
+	}
+
+	/**
+	 * 一个游标的扫描任务
+	 */
+	private interface ScanTask {
+		long scan(String target);
+	}
+
+	/**
+	 * 多个游标并行扫描：最多parallelism个任务（其中一个在调用线程执行）依次领取下一个游标，线程取自共用的scanExecutor
+	 * @return 各游标扫描数量之和，任一游标因连接异常没有扫描完时返回-1
+	 */
+	private long scanParallel(String[] targets, int parallelism, ScanTask task) {
+		ScanWorker worker = new ScanWorker(targets, task);
+		ExecutorService executor = this.scanExecutor;
+		int workers = executor == null ? 1 : Math.min(Math.max(1, parallelism), targets.length);
+		List<Future<Long>> futures = new ArrayList<Future<Long>>(workers - 1);
+		try {
+			for(int i = 1; i < workers; ++i) {
+				futures.add(executor.submit(worker));
+			}
+		} catch(RejectedExecutionException ex) {
+			// 客户端已关闭，剩余的游标在调用线程扫描
+		}
+
+		long scanned = worker.call().longValue();
+		try {
+			for(Future<Long> future : futures) {
+				try {
+					scanned += future.get().longValue();
+				} catch(ExecutionException ex) {
+					worker.failed.set(true);
+//					logger.error("failed to scan redis: " + ex.getMessage(), ex);
+				}
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			worker.failed.set(true);
+		}
+
+		return worker.failed.get() ? -1L : scanned;
+	}
+
+	/**
+	 * 依次领取下一个游标扫描，直到全部游标都已被领取
+	 */
+	private static class ScanWorker implements Callable<Long> {
+		private final String[] targets;
+		private final ScanTask task;
+		private final AtomicInteger nextTarget = new AtomicInteger();
+		private final AtomicBoolean failed = new AtomicBoolean();
+
+		ScanWorker(String[] targets, ScanTask task) {
+			this.targets = targets;
+			this.task = task;
+		}
+
+		@Override
+		public Long call() {
+			long scanned = 0L;
+			int i;
+			while((i = this.nextTarget.getAndIncrement()) < this.targets.length) {
+				long count = this.task.scan(this.targets[i]);
+				if(count < 0L) {
+					this.failed.set(true);
+				} else {
+					scanned += count;
+				}
+			}
+			return Long.valueOf(scanned);
+		}
+	}
+
+	/**
+	 * 逐批回调直到扫描完成或callback返回false
+	 * @return 回调的数量，因连接异常没有扫描完时返回-1
+	 */
+	private static <T> long drain(RedisScanIterator<T> iterator, ScanCallback<T> callback) {
+		long scanned = 0L;
+		List<T> batch;
+		while((batch = iterator.nextBatch()) != null) {
+			scanned += batch.size();
+			if(!callback.onBatch(batch)) {
+				return scanned;
+			}
+		}
+
+		return iterator.isFailed() ? -1L : scanned;
+	}
+
+	private RedisScanIterator<String> newScanIterator(String pattern, int count) {
+		return new RedisScanIterator<String>(this.jedisPool, pattern, count) {
+			@Override
+			protected ScanResult<String> scan(Jedis jedis, String cursor) {
+				return jedis.scan(cursor, this.params);
+			}
+		};
+	}
+
+	@Override
+	public Set<String> smembers(final String key) {
+		if(this.jedisPool == null)
+			return null;
+
+		return this.read(RedisCommand.SMEMBERS, this.readPool(key), new ReadCommand<Set<String>>() {
+			@Override
+			public Set<String> execute(Jedis jedis) {
+				return jedis.smembers(key);
+			}
+		});
+	}
+
+	@Deprecated
+	@Override
+	public Pipeline pipelined() {
 		if(this.jedisPool == null)
 			return null;
 
 		Jedis jedis = null;
 		try {
 			jedis = jedisPool.getResource();
-			return jedis.smembers(key);
+			return jedis.pipelined();
 		} catch(Throwable ex) {
 //			logger.error("failed to keys for redis: " + ex.getMessage(), ex);
 		} finally {
@@ -1516,16 +3094,27 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 	}
 
 	@Override
-	public Pipeline pipelined() {
+	public <T> T executePipelined(PipelineCallback<T> callback) {
+		return this.executePipelined(this.pipelineFlushSize, callback);
+	}
+
+	@Override
+	public <T> T executePipelined(int flushSize, PipelineCallback<T> callback) {
 		if(this.jedisPool == null)
 			return null;
 
 		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();
-			return jedis.pipelined();
+			jedis = this.getResource(RedisCommand.PIPELINE);
+			long startTime = System.nanoTime();
+			RedisPipeline pipeline = new JedisRedisPipeline(jedis.pipelined(), flushSize, this.compressor);
+			T result = callback.doInPipeline(pipeline);
+			pipeline.sync();
+			this.recordExecute(RedisCommand.PIPELINE, startTime);
+			return result;
 		} catch(Throwable ex) {
-//			logger.error("failed to keys for redis: " + ex.getMessage(), ex);
+			this.recordError(RedisCommand.PIPELINE);
+//			logger.error("failed to execute pipeline on redis: " + ex.getMessage(), ex);
 		} finally {
 			if(jedis != null) {
 				try {
@@ -1541,6 +3130,57 @@ public class JedisPoolRedisClientImpl implements RedisClient {
 
 	public void destroy() {
 //		logger.info("destroying redis client ...");
+		RedisCounterAggregator counterAggregator = this.counterAggregator;
+		if(counterAggregator != null) {
+			// 写入剩余的计数器后才能关闭连接池；之后的incrByDeferred由aggregator同步写入或直接调用incrBy
+			this.counterAggregator = null;
+			if(!counterAggregator.shutdown()) {
+//				logger.error("failed to write " + counterAggregator.getDroppedKeys() + " pending counters to redis");
+			}
+		}
+		
+		RedisHyperLogLogAggregator hllAggregator = this.hllAggregator;
+		if(hllAggregator != null) {
+			this.hllAggregator = null;
+			if(!hllAggregator.shutdown()) {
+//				logger.error("failed to write " + hllAggregator.getDroppedKeys() + " pending hyperloglogs to redis");
+			}
+		}
+		
+		if(this.readCoalescer != null) {
+			this.readCoalescer.shutdown();
+			this.readCoalescer = null;
+		}
+		
+		if(this.poolWarmer != null) {
+			this.poolWarmer.shutdown();
+			this.poolWarmer = null;
+		}
+		
+		if(this.hedgedReader != null) {
+			this.hedgedReader.shutdown();
+			this.hedgedReader = null;
+		}
+		
+		if(this.scanExecutor != null) {
+			this.scanExecutor.shutdownNow();
+			this.scanExecutor = null;
+		}
+		
+		if(this.stats != null) {
+			this.stats.shutdown();
+			this.stats = null;
+		}
+		
+		if(this.metrics != null) {
+			this.metrics.shutdown();
+		}
+		
+		if(this.replicaRouter != null) {
+			this.replicaRouter.shutdown();
+			this.replicaRouter = null;
+		}
+		
 		if(this.jedisPool != null) {
 			this.jedisPool.destroy();
 		}
@@ -0,0 +1,292 @@
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.Test;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * JedisPoolRedisClientImpl连接本地的RESP桩服务：SCAN/HSCAN的游标续传、多pattern只扫描一次、扫描中断时返回-1，
+ * 带过期时间的复合命令（Lua脚本与关闭脚本时的MULTI/EXEC），以及拆分后pipeline发送的MGET保持key顺序
+ */
+public class JedisPoolRedisClientImplTest {
+
+    private static JedisPoolRedisClientImpl newClient(RedisStubServer server) {
+        JedisPoolRedisClientImpl client = new JedisPoolRedisClientImpl();
+        client.setPoolConfig(new GenericObjectPoolConfig());
+        client.setHost("127.0.0.1");
+        client.setPort(server.port());
+        client.setTimeout(2000);
+        client.setStatsEnabled(false);
+        client.init();
+        return client;
+    }
+
+    private static RedisStubServer newServer() throws Exception {
+        RedisStubServer server = new RedisStubServer();
+        JedisPoolRedisClientImpl client = newClient(server);
+        try {
+            for (int i = 0; i < 25; ++i) {
+                client.set("a:" + i, "v");
+                client.set("b:" + i, "v");
+            }
+            for (int h = 0; h < 3; ++h) {
+                for (int i = 0; i < 30; ++i) {
+                    client.hset("h" + h, "f" + i, "v" + i);
+                }
+            }
+        } finally {
+            client.destroy();
+        }
+        return server;
+    }
+
+    /**
+     * 记录回调的元素，可能被并发调用
+     */
+    private static class Collector<T> implements ScanCallback<T> {
+        final List<T> values = Collections.synchronizedList(new ArrayList<T>());
+        final List<Integer> batches = Collections.synchronizedList(new ArrayList<Integer>());
+
+        @Override
+        public boolean onBatch(List<T> batch) {
+            values.addAll(batch);
+            batches.add(batch.size());
+            return true;
+        }
+    }
+
+    @Test
+    public void testScanFollowsCursor() throws Exception {
+        RedisStubServer server = newServer();
+        JedisPoolRedisClientImpl client = newClient(server);
+        try {
+            Collector<String> collector = new Collector<String>();
+            assertEquals(25L, client.scan("a:*", 3, collector));
+            assertEquals(25, new HashSet<String>(collector.values).size());
+            for (String key : collector.values) {
+                assertTrue(key.startsWith("a:"));
+            }
+            // 50个key每次3个，直到游标回到0
+            assertEquals(17, server.commands("SCAN").size());
+            assertTrue(collector.batches.size() > 1);
+
+            Set<String> keys = new HashSet<String>();
+            Iterator<String> iterator = client.scanIterator("b:1*", 4);
+            while (iterator.hasNext()) {
+                keys.add(iterator.next());
+            }
+            assertEquals(11, keys.size());
+            assertTrue(keys.contains("b:1") && keys.contains("b:19"));
+        } finally {
+            client.destroy();
+            server.close();
+        }
+    }
+
+    @Test
+    public void testScanPatternsOnce() throws Exception {
+        RedisStubServer server = newServer();
+        JedisPoolRedisClientImpl client = newClient(server);
+        try {
+            Collector<String> collector = new Collector<String>();
+            // a:1*包含于a:*，匹配多个pattern的key只回调一次
+            assertEquals(26L, client.scan(new String[] { "a:*", "a:1*", "b:1" }, 5, 4, collector));
+            assertEquals(26, collector.values.size());
+            assertEquals(26, new HashSet<String>(collector.values).size());
+            assertTrue(collector.values.contains("b:1"));
+
+            // 只有一个游标遍历整个keyspace，不带MATCH
+            List<List<String>> scans = server.commands("SCAN");
+            assertEquals(10, scans.size());
+            for (List<String> args : scans) {
+                assertFalse(args.contains("MATCH"));
+            }
+        } finally {
+            client.destroy();
+            server.close();
+        }
+    }
+
+    @Test
+    public void testHscanFollowsCursor() throws Exception {
+        RedisStubServer server = newServer();
+        JedisPoolRedisClientImpl client = newClient(server);
+        try {
+            Collector<Map.Entry<String, String>> collector = new Collector<Map.Entry<String, String>>();
+            assertEquals(30L, client.hscan("h0", 7, collector));
+            Set<String> fields = new HashSet<String>();
+            for (Map.Entry<String, String> e : collector.values) {
+                assertEquals("v" + e.getKey().substring(1), e.getValue());
+                fields.add(e.getKey());
+            }
+            assertEquals(30, fields.size());
+            assertEquals(5, server.commands("HSCAN").size());
+
+            collector = new Collector<Map.Entry<String, String>>();
+            assertEquals(90L, client.hscan(new String[] { "h0", "h1", "h2" }, 7, 2, collector));
+            assertEquals(90, collector.values.size());
+            assertEquals(0L, client.hscan("missing", 7, collector));
+        } finally {
+            client.destroy();
+            server.close();
+        }
+    }
+
+    @Test
+    public void testScanFailure() throws Exception {
+        RedisStubServer server = newServer();
+        JedisPoolRedisClientImpl client = newClient(server);
+        try {
+            // 扫描中途断开：返回-1，而不是已回调的部分数量
+            server.disconnectAt("SCAN", 2);
+            Collector<String> collector = new Collector<String>();
+            assertEquals(-1L, client.scan("a:*", 3, collector));
+            assertTrue(collector.values.size() > 0);
+
+            server.disconnectAt("SCAN", 2);
+            assertEquals(-1L, client.scan(new String[] { "a:*", "b:*" }, 5, 2, new Collector<String>()));
+
+            server.disconnectAt("HSCAN", 3);
+            assertEquals(-1L, client.hscan(new String[] { "h0", "h1", "h2" }, 7, 2, new Collector<Map.Entry<String, String>>()));
+
+            server.disconnectAt("SCAN", 2);
+            Iterator<String> iterator = client.scanIterator("*", 3);
+            try {
+                while (iterator.hasNext()) {
+                    iterator.next();
+                }
+                fail();
+            } catch (JedisException ex) {
+                // 迭代器不会把没有扫描完当作扫描完成
+            }
+
+            // 断开的连接已被丢弃，之后的扫描正常
+            assertEquals(25L, client.scan("b:*", 3, new Collector<String>()));
+        } finally {
+            client.destroy();
+            server.close();
+        }
+    }
+
+    @Test
+    public void testCompoundWithMultiExec() throws Exception {
+        RedisStubServer server = new RedisStubServer();
+        JedisPoolRedisClientImpl client = new JedisPoolRedisClientImpl();
+        client.setPoolConfig(new GenericObjectPoolConfig());
+        client.setHost("127.0.0.1");
+        client.setPort(server.port());
+        client.setStatsEnabled(false);
+        client.setScriptingEnabled(false);
+        client.init();
+        try {
+            assertEquals(3L, client.incrByWithTtl("c", 3L, 60));
+            assertEquals(5L, client.incrByWithTtl("c", 2L, 60));
+            assertEquals(Long.valueOf(1L), client.hsetWithTtl("h", "f", "v", 60));
+            assertEquals(Long.valueOf(1L), client.pfAddWithTtl("p", 60, "a", "b"));
+            assertEquals(Long.valueOf(0L), client.pfAddWithTtl("p", 60, "a"));
+            client.msetWithTtl(60, "m1", "v1", "m2", "v2");
+            assertEquals("v1", client.get("m1"));
+            for (String key : new String[] { "c", "h", "p", "m1", "m2" }) {
+                assertEquals(Integer.valueOf(60), server.ttl(key));
+            }
+
+            // 每个复合命令一个MULTI/EXEC，不发送脚本
+            assertEquals(6, server.commands("MULTI").size());
+            assertEquals(6, server.commands("EXEC").size());
+            assertEquals(0, server.commands("EVALSHA").size());
+
+            // 没有元素时与PFADD key相同，不抛出NullPointerException
+            assertEquals(Long.valueOf(1L), client.pfAddWithTtl("p2", 60, (String[]) null));
+            assertEquals(Integer.valueOf(60), server.ttl("p2"));
+            assertEquals(Long.valueOf(1L), client.pfAddWithTtl("p3", 0, (String[]) null));
+            assertNull(server.ttl("p3"));
+        } finally {
+            client.destroy();
+            server.close();
+        }
+    }
+
+    @Test
+    public void testCompoundWithScript() throws Exception {
+        RedisStubServer server = new RedisStubServer();
+        JedisPoolRedisClientImpl client = newClient(server);
+        try {
+            // 桩服务总是返回NOSCRIPT，之后改用EVAL
+            assertEquals(1L, client.incrByWithTtl("c", 3L, 60));
+            assertEquals(Long.valueOf(1L), client.pfAddWithTtl("p", 60, (String[]) null));
+            assertEquals(Long.valueOf(1L), client.pfAddWithTtl("p", 60, "a", "b"));
+
+            List<List<String>> evalshas = server.commands("EVALSHA");
+            List<List<String>> evals = server.commands("EVAL");
+            assertEquals(3, evalshas.size());
+            assertEquals(3, evals.size());
+            assertEquals(Arrays.asList("1", "c", "3", "60"), evalshas.get(0).subList(1, 5));
+            assertEquals(Arrays.asList("1", "p", "60"), evalshas.get(1).subList(1, 4));
+            assertEquals(Arrays.asList("1", "p", "60", "a", "b"), evalshas.get(2).subList(1, 6));
+            assertEquals(evalshas.get(2).subList(1, 6), evals.get(2).subList(1, 6));
+            assertEquals(0, server.commands("MULTI").size());
+        } finally {
+            client.destroy();
+            server.close();
+        }
+    }
+
+    @Test
+    public void testChunkedMgetKeepsOrder() throws Exception {
+        RedisStubServer server = new RedisStubServer();
+        JedisPoolRedisClientImpl client = new JedisPoolRedisClientImpl();
+        client.setPoolConfig(new GenericObjectPoolConfig());
+        client.setHost("127.0.0.1");
+        client.setPort(server.port());
+        client.setStatsEnabled(false);
+        // 每批3个key，每2批sync一次：20个key共7批，跨越3次sync
+        client.setMgetBatchSize(3);
+        client.setMaxChunksInFlight(2);
+        client.init();
+        try {
+            String[] keys = new String[20];
+            byte[][] binaryKeys = new byte[keys.length][];
+            for (int i = 0; i < keys.length; ++i) {
+                // 与桩服务的有序存储顺序相反，每3个key一个不存在
+                keys[i] = "k" + (100 - i);
+                binaryKeys[i] = SafeEncoder.encode(keys[i]);
+                if (i % 3 != 1) {
+                    client.set(keys[i], "v" + i);
+                }
+            }
+
+            List<String> values = client.mget(keys);
+            List<byte[]> binaryValues = client.mget(binaryKeys);
+            assertEquals(keys.length, values.size());
+            assertEquals(keys.length, binaryValues.size());
+            for (int i = 0; i < keys.length; ++i) {
+                if (i % 3 == 1) {
+                    assertNull(values.get(i));
+                    assertNull(binaryValues.get(i));
+                } else {
+                    assertEquals("v" + i, values.get(i));
+                    assertEquals("v" + i, SafeEncoder.encode(binaryValues.get(i)));
+                }
+            }
+
+            List<List<String>> mgets = server.commands("MGET");
+            assertEquals(14, mgets.size());
+            for (int i = 0; i < 7; ++i) {
+                assertEquals(Arrays.asList(keys).subList(i * 3, Math.min(i * 3 + 3, keys.length)), mgets.get(i));
+            }
+        } finally {
+            client.destroy();
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import redis.clients.jedis.BuilderFactory;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 基于Jedis Pipeline的{@link RedisPipeline}实现，每写入flushSize条命令自动sync一次。
+ * byte[]的值与客户端的同步调用使用相同的压缩：写入时经由客户端的compressor压缩，读取的结果在get()时解压。
+ *
+ * @author BurningIce
+ *
+ */
+class JedisRedisPipeline implements RedisPipeline {
+	private final Pipeline pipeline;
+	private final int flushSize;
+	private final RedisValueCompressor compressor;
+	private int pendingCommands;
+
+	/**
+	 * @param compressor 客户端的compressor，未开启压缩时为null
+	 */
+	JedisRedisPipeline(Pipeline pipeline, int flushSize, RedisValueCompressor compressor) {
+		this.pipeline = pipeline;
+		this.flushSize = Math.max(1, flushSize);
+		this.compressor = compressor;
+	}
+
+	@Override
+	public Response<String> get(String key) {
+		return this.written(this.pipeline.get(key));
+	}
+
+	@Override
+	public Response<byte[]> get(byte[] key) {
+		return new DecompressedResponse(this.written(this.pipeline.get(key)));
+	}
+
+	@Override
+	public Response<List<String>> mget(String... key) {
+		return this.written(this.pipeline.mget(key));
+	}
+
+	@Override
+	public Response<List<byte[]>> mget(byte[]... key) {
+		return new DecompressedListResponse(this.written(this.pipeline.mget(key)));
+	}
+
+	@Override
+	public Response<String> set(String key, String value) {
+		return this.written(this.pipeline.set(key, value));
+	}
+
+	@Override
+	public Response<String> set(byte[] key, byte[] value) {
+		return this.written(this.pipeline.set(key, this.compress(value)));
+	}
+
+	@Override
+	public Response<String> set(String key, String value, int expirationInSeconds) {
+		if(expirationInSeconds <= 0) {
+			// 0 for never expiring
+			return this.set(key, value);
+		}
+		return this.written(this.pipeline.setex(key, expirationInSeconds, value));
+	}
+
+	@Override
+	public Response<String> set(byte[] key, byte[] value, int expirationInSeconds) {
+		if(expirationInSeconds <= 0) {
+			// 0 for never expiring
+			return this.set(key, value);
+		}
+		return this.written(this.pipeline.setex(key, expirationInSeconds, this.compress(value)));
+	}
+
+	@Override
+	public Response<String> mset(String... keyValues) {
+		return this.written(this.pipeline.mset(keyValues));
+	}
+
+	@Override
+	public Response<Long> del(String key) {
+		return this.written(this.pipeline.del(key));
+	}
+
+	@Override
+	public Response<Long> del(byte[] key) {
+		return this.written(this.pipeline.del(key));
+	}
+
+	@Override
+	public Response<Long> expire(String key, int expirationInSeconds) {
+		return this.written(this.pipeline.expire(key, expirationInSeconds));
+	}
+
+	@Override
+	public Response<Long> expire(byte[] key, int expirationInSeconds) {
+		return this.written(this.pipeline.expire(key, expirationInSeconds));
+	}
+
+	@Override
+	public Response<Long> incr(String key) {
+		return this.written(this.pipeline.incr(key));
+	}
+
+	@Override
+	public Response<Long> incrBy(String key, long increment) {
+		return this.written(this.pipeline.incrBy(key, increment));
+	}
+
+	@Override
+	public Response<Long> decrBy(String key, long decrement) {
+		return this.written(this.pipeline.decrBy(key, decrement));
+	}
+
+	@Override
+	public Response<String> hget(String key, String field) {
+		return this.written(this.pipeline.hget(key, field));
+	}
+
+	@Override
+	public Response<byte[]> hget(byte[] key, byte[] field) {
+		return new DecompressedResponse(this.written(this.pipeline.hget(key, field)));
+	}
+
+	@Override
+	public Response<List<String>> hmget(String key, String... field) {
+		return this.written(this.pipeline.hmget(key, field));
+	}
+
+	@Override
+	public Response<Long> hset(String key, String field, String value) {
+		return this.written(this.pipeline.hset(key, field, value));
+	}
+
+	@Override
+	public Response<Long> hset(byte[] key, byte[] field, byte[] value) {
+		return this.written(this.pipeline.hset(key, field, this.compress(value)));
+	}
+
+	@Override
+	public Response<String> hmset(String key, Map<String, String> fieldAndValues) {
+		return this.written(this.pipeline.hmset(key, fieldAndValues));
+	}
+
+	@Override
+	public Response<String> hmset(byte[] key, Map<byte[], byte[]> fieldAndValues) {
+		return this.written(this.pipeline.hmset(key, this.compressValues(fieldAndValues)));
+	}
+
+	@Override
+	public Response<Map<String, String>> hgetAll(String key) {
+		return this.written(this.pipeline.hgetAll(key));
+	}
+
+	@Override
+	public Response<Long> hincrBy(String key, String field, long increment) {
+		return this.written(this.pipeline.hincrBy(key, field, increment));
+	}
+
+	@Override
+	public Response<Long> hincrBy(byte[] key, byte[] field, long increment) {
+		return this.written(this.pipeline.hincrBy(key, field, increment));
+	}
+
+	@Override
+	public Response<Long> pfAdd(String key, String... elements) {
+		return this.written(this.pipeline.pfadd(key, elements));
+	}
+
+	@Override
+	public Response<Long> pfCount(String key) {
+		return this.written(this.pipeline.pfcount(key));
+	}
+
+	@Override
+	public Response<String> pfmerge(String destkey, String... sourcekeys) {
+		return this.written(this.pipeline.pfmerge(destkey, sourcekeys));
+	}
+
+	@Override
+	public Response<Long> sadd(String key, String... members) {
+		return this.written(this.pipeline.sadd(key, members));
+	}
+
+	@Override
+	public Response<Set<String>> smembers(String key) {
+		return this.written(this.pipeline.smembers(key));
+	}
+
+	@Override
+	public void sync() {
+		this.pendingCommands = 0;
+		this.pipeline.sync();
+	}
+
+	private <T> Response<T> written(Response<T> response) {
+		if(++this.pendingCommands >= this.flushSize) {
+			this.sync();
+		}
+		return response;
+	}
+
+	private byte[] compress(byte[] value) {
+		return this.compressor == null ? value : this.compressor.compress(value);
+	}
+
+	private Map<byte[], byte[]> compressValues(Map<byte[], byte[]> fieldAndValues) {
+		if(this.compressor == null || fieldAndValues == null)
+			return fieldAndValues;
+
+		Map<byte[], byte[]> storedFieldAndValues = new HashMap<byte[], byte[]>(fieldAndValues.size() * 4 / 3 + 1);
+		for(Map.Entry<byte[], byte[]> e : fieldAndValues.entrySet()) {
+			storedFieldAndValues.put(e.getKey(), this.compressor.compress(e.getValue()));
+		}
+		return storedFieldAndValues;
+	}
+
+	/**
+	 * sync之后第一次get()时解压；开启压缩前写入的值以及未压缩的值原样返回
+	 */
+	private final static class DecompressedResponse extends Response<byte[]> {
+		private final Response<byte[]> raw;
+		private boolean decompressed;
+
+		DecompressedResponse(Response<byte[]> raw) {
+			super(BuilderFactory.BYTE_ARRAY);
+			this.raw = raw;
+		}
+
+		@Override
+		public byte[] get() {
+			if(!this.decompressed) {
+				this.response = RedisValueCompressor.decompress(this.raw.get());
+				this.decompressed = true;
+			}
+			return this.response;
+		}
+	}
+
+	private final static class DecompressedListResponse extends Response<List<byte[]>> {
+		private final Response<List<byte[]>> raw;
+		private boolean decompressed;
+
+		DecompressedListResponse(Response<List<byte[]>> raw) {
+			super(BuilderFactory.BYTE_ARRAY_LIST);
+			this.raw = raw;
+		}
+
+		@Override
+		public List<byte[]> get() {
+			if(!this.decompressed) {
+				List<byte[]> values = this.raw.get();
+				if(values != null) {
+					List<byte[]> decompressedValues = new ArrayList<byte[]>(values.size());
+					for(byte[] value : values) {
+						decompressedValues.add(RedisValueCompressor.decompress(value));
+					}
+					values = decompressedValues;
+				}
+				this.response = values;
+				this.decompressed = true;
+			}
+			return this.response;
+		}
+	}
+}
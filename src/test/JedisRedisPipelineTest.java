@@ -0,0 +1,172 @@
+import org.junit.Test;
+import redis.clients.jedis.BuilderFactory;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * JedisRedisPipeline的压缩测试：Pipeline换成写入内存Map的实现，检查写入的值已压缩、读取时解压
+ */
+public class JedisRedisPipelineTest {
+
+    /**
+     * 命令直接作用于内存Map，返回的Response已有结果
+     */
+    private static class MapPipeline extends Pipeline {
+        final Map<String, byte[]> values = new HashMap<String, byte[]>();
+
+        private static String key(byte[]... parts) {
+            StringBuilder sb = new StringBuilder();
+            for (byte[] part : parts) {
+                sb.append(new String(part)).append('\u0000');
+            }
+            return sb.toString();
+        }
+
+        private static <T> Response<T> done(Response<T> response, Object data) {
+            response.set(data);
+            return response;
+        }
+
+        @Override
+        public Response<String> set(byte[] key, byte[] value) {
+            this.values.put(key(key), value);
+            return done(new Response<String>(BuilderFactory.STRING), "OK".getBytes());
+        }
+
+        @Override
+        public Response<String> setex(byte[] key, int seconds, byte[] value) {
+            return this.set(key, value);
+        }
+
+        @Override
+        public Response<byte[]> get(byte[] key) {
+            return done(new Response<byte[]>(BuilderFactory.BYTE_ARRAY), this.values.get(key(key)));
+        }
+
+        @Override
+        public Response<List<byte[]>> mget(byte[]... keys) {
+            List<byte[]> values = new ArrayList<byte[]>();
+            for (byte[] key : keys) {
+                values.add(this.values.get(key(key)));
+            }
+            return done(new Response<List<byte[]>>(BuilderFactory.BYTE_ARRAY_LIST), values);
+        }
+
+        @Override
+        public Response<Long> hset(byte[] key, byte[] field, byte[] value) {
+            this.values.put(key(key, field), value);
+            return done(new Response<Long>(BuilderFactory.LONG), 1L);
+        }
+
+        @Override
+        public Response<byte[]> hget(byte[] key, byte[] field) {
+            return done(new Response<byte[]>(BuilderFactory.BYTE_ARRAY), this.values.get(key(key, field)));
+        }
+
+        @Override
+        public Response<String> hmset(byte[] key, Map<byte[], byte[]> fieldAndValues) {
+            for (Map.Entry<byte[], byte[]> e : fieldAndValues.entrySet()) {
+                this.values.put(key(key, e.getKey()), e.getValue());
+            }
+            return done(new Response<String>(BuilderFactory.STRING), "OK".getBytes());
+        }
+
+        @Override
+        public void sync() {
+        }
+    }
+
+    private static byte[] json(int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < length; ++i) {
+            sb.append("{\"metric\":\"mem.used\",\"host\":\"db-").append(i % 7).append("\",\"value\":").append(i).append("},");
+        }
+        return sb.toString().getBytes();
+    }
+
+    @Test
+    public void testSetReadBack() {
+        MapPipeline store = new MapPipeline();
+        RedisValueCompressor compressor = new RedisValueCompressor(1024, 1);
+        JedisRedisPipeline pipeline = new JedisRedisPipeline(store, 100, compressor);
+        byte[] value = json(20000);
+        byte[] small = json(100);
+
+        pipeline.set("k1".getBytes(), value);
+        pipeline.set("k2".getBytes(), small, 60);
+        pipeline.sync();
+
+        assertTrue(RedisValueCompressor.isCompressed(store.values.get("k1\u0000")));
+        assertSame(small, store.values.get("k2\u0000"));
+
+        Response<byte[]> get = pipeline.get("k1".getBytes());
+        Response<List<byte[]>> mget = pipeline.mget("k1".getBytes(), "k2".getBytes(), "k3".getBytes());
+        pipeline.sync();
+
+        assertArrayEquals(value, get.get());
+        assertArrayEquals(value, mget.get().get(0));
+        assertArrayEquals(small, mget.get().get(1));
+        assertNull(mget.get().get(2));
+    }
+
+    @Test
+    public void testHashReadBack() {
+        MapPipeline store = new MapPipeline();
+        RedisValueCompressor compressor = new RedisValueCompressor(1024, 1);
+        JedisRedisPipeline pipeline = new JedisRedisPipeline(store, 100, compressor);
+        byte[] value = json(20000);
+
+        Map<byte[], byte[]> fieldAndValues = new HashMap<byte[], byte[]>();
+        fieldAndValues.put("f2".getBytes(), value);
+        pipeline.hset("h".getBytes(), "f1".getBytes(), value);
+        pipeline.hmset("h".getBytes(), fieldAndValues);
+
+        assertTrue(RedisValueCompressor.isCompressed(store.values.get("h\u0000f1\u0000")));
+        assertTrue(RedisValueCompressor.isCompressed(store.values.get("h\u0000f2\u0000")));
+        // 调用方传入的Map不被修改
+        assertSame(value, fieldAndValues.values().iterator().next());
+
+        assertArrayEquals(value, pipeline.hget("h".getBytes(), "f1".getBytes()).get());
+        assertArrayEquals(value, pipeline.hget("h".getBytes(), "f2".getBytes()).get());
+    }
+
+    @Test
+    public void testHyperLogLogNotCompressed() {
+        // RedisHyperLogLogAggregator/ShardedRedisClient.pfmerge通过SET写入HyperLogLog后PFMERGE，写入的值必须保持原样
+        MapPipeline store = new MapPipeline();
+        JedisRedisPipeline pipeline = new JedisRedisPipeline(store, 100, new RedisValueCompressor(1024, 1));
+        HyperLogLogSketch sketch = new HyperLogLogSketch();
+        for (int i = 0; i < 300; ++i) {
+            sketch.add("u" + i);
+        }
+        byte[] dense = sketch.toRedisDense();
+
+        pipeline.set("hll".getBytes(), dense, 60);
+        pipeline.sync();
+        assertSame(dense, store.values.get("hll\u0000"));
+        assertEquals(sketch.count(), HyperLogLogSketch.fromRedisDense(pipeline.get("hll".getBytes()).get()).count());
+    }
+
+    @Test
+    public void testCompressionDisabled() {
+        // 未开启压缩时原样写入，但仍能读取其他客户端写入的压缩值
+        MapPipeline store = new MapPipeline();
+        JedisRedisPipeline pipeline = new JedisRedisPipeline(store, 100, null);
+        byte[] value = json(20000);
+
+        pipeline.set("k1".getBytes(), value);
+        assertSame(value, store.values.get("k1\u0000"));
+
+        store.values.put("k2\u0000", new RedisValueCompressor(1024, 1).compress(value));
+        assertArrayEquals(value, pipeline.get("k2".getBytes()).get());
+        assertTrue(Arrays.equals(value, pipeline.mget("k2".getBytes()).get().get(0)));
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * HDR风格的对数-线性分桶直方图：每个2的幂区间再等分为16个子桶，相对误差不超过1/16（约6%）。
+ * 记录时只有一次下标计算和两次原子自增，不分配对象；值域为[0, 2^40)，超出部分计入最大桶。
+ * 可用于记录延迟（纳秒）与数据大小（字节）。
+ *
+ * @author BurningIce
+ *
+ */
+class LogLinearHistogram {
+	private final static int SUB_BUCKET_BITS = 4;
+	private final static int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;	// 16
+	private final static int MAX_VALUE_BITS = 40;
+	private final static long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+	private final static int BUCKET_COUNT = bucketIndex(MAX_VALUE) + 1;
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	void record(long value) {
+		if(value < 0L) {
+			value = 0L;
+		} else if(value > MAX_VALUE) {
+			value = MAX_VALUE;
+		}
+
+		this.counts.incrementAndGet(bucketIndex(value));
+		this.total.addAndGet(value);
+
+		long currentMax = this.max.get();
+		while(value > currentMax && !this.max.compareAndSet(currentMax, value)) {
+			currentMax = this.max.get();
+		}
+	}
+
+	/**
+	 * @return 自创建以来的累计快照
+	 */
+	Snapshot snapshot() {
+		long[] bucketCounts = new long[BUCKET_COUNT];
+		long count = 0L;
+		for(int i = 0; i < BUCKET_COUNT; ++i) {
+			bucketCounts[i] = this.counts.get(i);
+			count += bucketCounts[i];
+		}
+		return new Snapshot(bucketCounts, count, this.total.get(), this.max.get());
+	}
+
+	static int bucketIndex(long value) {
+		if(value < (SUB_BUCKET_COUNT << 1)) {
+			return (int)value;
+		}
+
+		// value >>> shift 落在 [16, 31] 区间
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return (shift << SUB_BUCKET_BITS) + (int)(value >>> shift);
+	}
+
+	/**
+	 * @return 桶的上界（包含）
+	 */
+	static long bucketUpperBound(int index) {
+		if(index < (SUB_BUCKET_COUNT << 1)) {
+			return index;
+		}
+
+		int shift = (index >>> SUB_BUCKET_BITS) - 1;
+		long subBucket = (index & (SUB_BUCKET_COUNT - 1)) + SUB_BUCKET_COUNT;
+		return ((subBucket + 1) << shift) - 1;
+	}
+
+	/**
+	 * 直方图快照，不随后续记录变化
+	 */
+	static class Snapshot {
+		private final long[] bucketCounts;
+		private final long count;
+		private final long total;
+		private final long max;
+
+		Snapshot(long[] bucketCounts, long count, long total, long max) {
+			this.bucketCounts = bucketCounts;
+			this.count = count;
+			this.total = total;
+			this.max = max;
+		}
+
+		public long getCount() {
+			return this.count;
+		}
+
+		public long getTotal() {
+			return this.total;
+		}
+
+		/**
+		 * @return 最大值（累计值，区间快照中同样为累计最大值）
+		 */
+		public long getMax() {
+			return this.max;
+		}
+
+		public double getMean() {
+			return this.count == 0L ? 0.0 : (double)this.total / this.count;
+		}
+
+		/**
+		 * @param percentile 0~100，如99.9
+		 * @return 对应分位数所在桶的上界
+		 */
+		public long getValueAtPercentile(double percentile) {
+			if(this.count == 0L) {
+				return 0L;
+			}
+
+			long threshold = (long)Math.ceil(this.count * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+			threshold = Math.max(1L, threshold);
+			long seen = 0L;
+			for(int i = 0; i < this.bucketCounts.length; ++i) {
+				seen += this.bucketCounts[i];
+				if(seen >= threshold) {
+					return Math.min(bucketUpperBound(i), this.max);
+				}
+			}
+			return this.max;
+		}
+
+		/**
+		 * @return 当前快照减去之前的快照，即两次快照之间的区间直方图
+		 */
+		public Snapshot minus(Snapshot previous) {
+			if(previous == null) {
+				return this;
+			}
+
+			long[] bucketCounts = new long[this.bucketCounts.length];
+			for(int i = 0; i < bucketCounts.length; ++i) {
+				bucketCounts[i] = this.bucketCounts[i] - previous.bucketCounts[i];
+			}
+			return new Snapshot(bucketCounts, this.count - previous.count, this.total - previous.total, this.max);
+		}
+
+		@Override
+		public String toString() {
+			return "count=" + this.count + ", mean=" + (long)this.getMean()
+					+ ", p50=" + this.getValueAtPercentile(50.0)
+					+ ", p99=" + this.getValueAtPercentile(99.0)
+					+ ", p999=" + this.getValueAtPercentile(99.9)
+					+ ", max=" + this.max;
+		}
+	}
+}
@@ -0,0 +1,83 @@
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * LogLinearHistogram的分桶边界、分位数误差（不超过1/16）与区间快照
+ */
+public class LogLinearHistogramTest {
+
+    /**
+     * 返回的是桶的上界：不小于精确值，且误差不超过精确值的1/16
+     */
+    private static void assertWithinBucket(long exact, long estimate) {
+        assertTrue(estimate + " < " + exact, estimate >= exact);
+        assertTrue(estimate + " > " + exact + " + 1/16", estimate <= exact + exact / 16);
+    }
+
+    @Test
+    public void testBucketsAreContiguous() {
+        int lastIndex = LogLinearHistogram.bucketIndex((1L << 40) - 1);
+        for (int i = 0; i < lastIndex; ++i) {
+            long upperBound = LogLinearHistogram.bucketUpperBound(i);
+            assertEquals(i, LogLinearHistogram.bucketIndex(upperBound));
+            assertEquals(i + 1, LogLinearHistogram.bucketIndex(upperBound + 1));
+        }
+        assertEquals((1L << 40) - 1, LogLinearHistogram.bucketUpperBound(lastIndex));
+
+        // 2的幂两侧落在相邻的桶
+        for (int bits = 1; bits < 40; ++bits) {
+            long power = 1L << bits;
+            assertEquals(LogLinearHistogram.bucketIndex(power - 1) + 1, LogLinearHistogram.bucketIndex(power));
+            assertEquals(power - 1, LogLinearHistogram.bucketUpperBound(LogLinearHistogram.bucketIndex(power - 1)));
+        }
+    }
+
+    @Test
+    public void testPercentileError() {
+        Random random = new Random(42L);
+        long[] values = new long[100000];
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        for (int i = 0; i < values.length; ++i) {
+            // 对数均匀分布，覆盖1ns到约1s
+            values[i] = (long) Math.exp(random.nextDouble() * Math.log(1e9));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        LogLinearHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(values.length, snapshot.getCount());
+        assertEquals(values[values.length - 1], snapshot.getMax());
+        for (double percentile : new double[] { 1.0, 10.0, 50.0, 90.0, 99.0, 99.9, 100.0 }) {
+            long exact = values[(int) Math.ceil(values.length * percentile / 100.0) - 1];
+            long estimate = snapshot.getValueAtPercentile(percentile);
+            assertWithinBucket(exact, estimate);
+        }
+    }
+
+    @Test
+    public void testIntervalSnapshot() {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        for (int i = 0; i < 1000; ++i) {
+            histogram.record(1000000L);
+        }
+        LogLinearHistogram.Snapshot previous = histogram.snapshot();
+        for (int i = 1; i <= 100; ++i) {
+            histogram.record(i);
+        }
+
+        LogLinearHistogram.Snapshot interval = histogram.snapshot().minus(previous);
+        assertEquals(100L, interval.getCount());
+        assertEquals(5050L, interval.getTotal());
+        assertEquals(50.5, interval.getMean(), 1e-9);
+        // 区间内只有1~100，分位数不受之前记录的大值影响
+        assertWithinBucket(50L, interval.getValueAtPercentile(50.0));
+        assertWithinBucket(99L, interval.getValueAtPercentile(99.0));
+        assertSame(previous, previous.minus(null));
+        assertEquals(0L, previous.minus(previous).getCount());
+        assertEquals(0L, previous.minus(previous).getValueAtPercentile(99.0));
+    }
+}
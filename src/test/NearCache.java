@@ -0,0 +1,366 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 进程内L1缓存，供{@link NearCacheRedisClient}使用：
+ * <ul>
+ * <li>按Redis key分段加锁，同一个Redis key的所有缓存项（get/hget/hgetAll）位于同一分段，失效时一次清除；</li>
+ * <li>每个分段为SLRU（segmented LRU）：新写入的项进入probation区，再次命中后晋升到protected区，
+ * protected区满时最久未访问的项降级回probation区，probation区满时淘汰，可避免偶发的大批量读取冲掉热点；</li>
+ * <li>每项有独立的过期时间；通过本客户端写入时设置了过期时间的key，缓存项不晚于Redis中的过期时间过期；</li>
+ * <li>读取Redis期间如果该分段发生过失效，则丢弃读到的旧值，避免并发写入后缓存旧值。</li>
+ * </ul>
+ *
+ * @author BurningIce
+ *
+ */
+class NearCache {
+	final static Object MISS = new Object();
+	final static Object NULL_VALUE = new Object();
+	/**
+	 * {@link #invalidate(String, long)}：写入后Redis中的过期时间不变
+	 */
+	final static long KEEP_TTL = -1L;
+	/**
+	 * {@link #invalidate(String, long)}：写入后Redis中的key不再过期（SET/DEL等）
+	 */
+	final static long NO_TTL = 0L;
+	private final static float PROTECTED_RATIO = 0.8f;
+	private final Segment[] segments;
+	private final int segmentMask;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder expirations = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+
+	/**
+	 * @param maxSize 最多缓存项数量
+	 * @param concurrencyLevel 分段数量，向上取整为2的幂
+	 */
+	NearCache(int maxSize, int concurrencyLevel) {
+		int segmentCount = 1;
+		while(segmentCount < concurrencyLevel) {
+			segmentCount <<= 1;
+		}
+
+		int segmentSize = Math.max(2, (maxSize + segmentCount - 1) / segmentCount);
+		this.segments = new Segment[segmentCount];
+		for(int i = 0; i < segmentCount; ++i) {
+			this.segments[i] = new Segment(segmentSize);
+		}
+		this.segmentMask = segmentCount - 1;
+	}
+
+	/**
+	 * @return 缓存的值（null值以NULL_VALUE表示），未命中或已过期时返回MISS
+	 */
+	Object get(CacheKey cacheKey) {
+		Object value = this.segmentFor(cacheKey.key).get(cacheKey, System.currentTimeMillis());
+		if(value == MISS) {
+			this.misses.increment();
+		} else {
+			this.hits.increment();
+		}
+		return value;
+	}
+
+	/**
+	 * 读取Redis之前获取分段的失效版本号，读取之后以此版本号写入缓存
+	 */
+	long stamp(String key) {
+		return this.segmentFor(key).invalidationCount;
+	}
+
+	/**
+	 * 写入缓存，如果stamp之后该分段发生过失效则放弃写入
+	 */
+	void put(CacheKey cacheKey, Object value, long ttlMillis, long stamp) {
+		if(ttlMillis <= 0L) {
+			return;
+		}
+
+		this.segmentFor(cacheKey.key).put(cacheKey, value == null ? NULL_VALUE : value,
+				System.currentTimeMillis(), ttlMillis, stamp);
+	}
+
+	/**
+	 * 清除一个Redis key对应的全部缓存项，Redis中的过期时间不变
+	 */
+	void invalidate(String key) {
+		this.invalidate(key, KEEP_TTL);
+	}
+
+	/**
+	 * 清除一个Redis key对应的全部缓存项，并记录写入后Redis中该key的过期时间，之后写入的缓存项不晚于该时间过期
+	 * @param expireAt 过期时间（绝对时间，单位：毫秒），或KEEP_TTL/NO_TTL
+	 */
+	void invalidate(String key, long expireAt) {
+		this.segmentFor(key).invalidate(key, expireAt);
+		this.invalidations.increment();
+	}
+
+	void invalidateAll() {
+		for(Segment segment : this.segments) {
+			segment.clear();
+		}
+		this.invalidations.increment();
+	}
+
+	long getHitCount() {
+		return this.hits.sum();
+	}
+
+	long getMissCount() {
+		return this.misses.sum();
+	}
+
+	long getEvictionCount() {
+		return this.evictions.sum();
+	}
+
+	long getExpirationCount() {
+		return this.expirations.sum();
+	}
+
+	long getInvalidationCount() {
+		return this.invalidations.sum();
+	}
+
+	int size() {
+		int size = 0;
+		for(Segment segment : this.segments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	private Segment segmentFor(String key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return this.segments[h & this.segmentMask];
+	}
+
+	/**
+	 * 缓存项的key：type区分get/hget/hgetAll
+	 */
+	static final class CacheKey {
+		final static byte STRING = 0;
+		final static byte HASH_FIELD = 1;
+		final static byte HASH_ALL = 2;
+		private final byte type;
+		private final String key;
+		private final String field;
+		private final int hash;
+
+		CacheKey(byte type, String key, String field) {
+			this.type = type;
+			this.key = key;
+			this.field = field;
+			this.hash = 31 * (31 * type + key.hashCode()) + (field == null ? 0 : field.hashCode());
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(this == obj)
+				return true;
+			if(!(obj instanceof CacheKey))
+				return false;
+
+			CacheKey other = (CacheKey)obj;
+			return this.type == other.type && this.key.equals(other.key)
+					&& (this.field == null ? other.field == null : this.field.equals(other.field));
+		}
+	}
+
+	private static final class Entry {
+		private final Object value;
+		private final long expireAt;
+
+		Entry(Object value, long expireAt) {
+			this.value = value;
+			this.expireAt = expireAt;
+		}
+	}
+
+	private final class Segment {
+		private final ReentrantLock lock = new ReentrantLock();
+		private final int protectedCapacity;
+		private final int probationCapacity;
+		private final LinkedHashMap<CacheKey, Entry> probation = new LinkedHashMap<CacheKey, Entry>(16, 0.75f, true);
+		private final LinkedHashMap<CacheKey, Entry> protectedArea = new LinkedHashMap<CacheKey, Entry>(16, 0.75f, true);
+		// Redis key -> 该key下的全部缓存项，用于整体失效
+		private final HashMap<String, Set<CacheKey>> keyIndex = new HashMap<String, Set<CacheKey>>();
+		// Redis key -> 通过本客户端写入时设置的过期时间；按写入顺序保留最近的maxExpireHints个，更早的按defaultTtl缓存
+		private final LinkedHashMap<String, Long> expireHints = new LinkedHashMap<String, Long>();
+		private final int maxExpireHints;
+		private volatile long invalidationCount;
+
+		Segment(int capacity) {
+			this.protectedCapacity = Math.max(1, (int)(capacity * PROTECTED_RATIO));
+			this.probationCapacity = Math.max(1, capacity - this.protectedCapacity);
+			this.maxExpireHints = 2 * capacity;
+		}
+
+		Object get(CacheKey cacheKey, long now) {
+			this.lock.lock();
+			try {
+				Entry entry = this.protectedArea.get(cacheKey);
+				if(entry == null) {
+					entry = this.probation.remove(cacheKey);
+					if(entry == null) {
+						return MISS;
+					}
+
+					if(entry.expireAt > now) {
+						// probation区再次命中，晋升到protected区
+						this.promote(cacheKey, entry);
+					} else {
+						this.unindex(cacheKey);
+					}
+				}
+
+				if(entry.expireAt <= now) {
+					this.protectedArea.remove(cacheKey);
+					this.unindex(cacheKey);
+					expirations.increment();
+					return MISS;
+				}
+
+				return entry.value;
+			} finally {
+				this.lock.unlock();
+			}
+		}
+
+		void put(CacheKey cacheKey, Object value, long now, long ttlMillis, long stamp) {
+			this.lock.lock();
+			try {
+				if(stamp != this.invalidationCount) {
+					// 读取期间发生过失效，读到的值可能已过时
+					return;
+				}
+
+				long expireAt = now + ttlMillis;
+				Long expireHint = this.expireHints.get(cacheKey.key);
+				if(expireHint != null) {
+					if(expireHint.longValue() <= now) {
+						// Redis中已过期，之后按defaultTtl缓存
+						this.expireHints.remove(cacheKey.key);
+					} else if(expireHint.longValue() < expireAt) {
+						expireAt = expireHint.longValue();
+					}
+				}
+
+				Entry entry = new Entry(value, expireAt);
+				if(this.protectedArea.containsKey(cacheKey)) {
+					this.protectedArea.put(cacheKey, entry);
+					return;
+				}
+
+				if(this.probation.put(cacheKey, entry) == null) {
+					Set<CacheKey> cacheKeys = this.keyIndex.get(cacheKey.key);
+					if(cacheKeys == null) {
+						cacheKeys = new HashSet<CacheKey>(4);
+						this.keyIndex.put(cacheKey.key, cacheKeys);
+					}
+					cacheKeys.add(cacheKey);
+				}
+
+				this.evictProbation();
+			} finally {
+				this.lock.unlock();
+			}
+		}
+
+		void invalidate(String key, long expireAt) {
+			this.lock.lock();
+			try {
+				if(expireAt == NO_TTL) {
+					this.expireHints.remove(key);
+				} else if(expireAt != KEEP_TTL) {
+					this.expireHints.remove(key);
+					this.expireHints.put(key, Long.valueOf(expireAt));
+					if(this.expireHints.size() > this.maxExpireHints) {
+						Iterator<String> it = this.expireHints.keySet().iterator();
+						it.next();
+						it.remove();
+					}
+				}
+
+				this.invalidationCount++;
+				Set<CacheKey> cacheKeys = this.keyIndex.remove(key);
+				if(cacheKeys != null) {
+					for(CacheKey cacheKey : cacheKeys) {
+						if(this.probation.remove(cacheKey) == null) {
+							this.protectedArea.remove(cacheKey);
+						}
+					}
+				}
+			} finally {
+				this.lock.unlock();
+			}
+		}
+
+		void clear() {
+			this.lock.lock();
+			try {
+				this.invalidationCount++;
+				this.probation.clear();
+				this.protectedArea.clear();
+				this.keyIndex.clear();
+				// 保留expireHints：Redis中的过期时间不因清空本地缓存而改变
+			} finally {
+				this.lock.unlock();
+			}
+		}
+
+		int size() {
+			this.lock.lock();
+			try {
+				return this.probation.size() + this.protectedArea.size();
+			} finally {
+				this.lock.unlock();
+			}
+		}
+
+		private void promote(CacheKey cacheKey, Entry entry) {
+			this.protectedArea.put(cacheKey, entry);
+			if(this.protectedArea.size() > this.protectedCapacity) {
+				// protected区满，最久未访问的项降级回probation区
+				Iterator<Map.Entry<CacheKey, Entry>> it = this.protectedArea.entrySet().iterator();
+				Map.Entry<CacheKey, Entry> eldest = it.next();
+				it.remove();
+				this.probation.put(eldest.getKey(), eldest.getValue());
+				this.evictProbation();
+			}
+		}
+
+		private void evictProbation() {
+			while(this.probation.size() > this.probationCapacity) {
+				Iterator<Map.Entry<CacheKey, Entry>> it = this.probation.entrySet().iterator();
+				CacheKey eldest = it.next().getKey();
+				it.remove();
+				this.unindex(eldest);
+				evictions.increment();
+			}
+		}
+
+		private void unindex(CacheKey cacheKey) {
+			Set<CacheKey> cacheKeys = this.keyIndex.get(cacheKey.key);
+			if(cacheKeys != null && cacheKeys.remove(cacheKey) && cacheKeys.isEmpty()) {
+				this.keyIndex.remove(cacheKey.key);
+			}
+		}
+	}
+}
@@ -0,0 +1,828 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 带进程内L1缓存的RedisClient装饰器：
+ * get(String)/hget(String, String)/hgetAll(String)优先读本地缓存，未命中时读Redis并写入缓存；
+ * 通过本客户端的写操作（set/del/hset/incr/expire...，包括executePipelined中的写命令）会在写入Redis后清除对应key的本地缓存。
+ * 其他进程的写入只能等待缓存过期，因此defaultTtlSeconds应不大于业务可接受的不一致时间。
+ *
+ * @author BurningIce
+ *
+ */
+public class NearCacheRedisClient implements RedisClient {
+	private final static int DEFAULT_MAX_SIZE = 10000;
+	private final static int DEFAULT_TTL_SECONDS = 60;
+	private final static int DEFAULT_CONCURRENCY_LEVEL = 16;
+	private RedisClient redisClient;
+	private int maxSize = DEFAULT_MAX_SIZE;
+	private int defaultTtlSeconds = DEFAULT_TTL_SECONDS;
+	private int concurrencyLevel = DEFAULT_CONCURRENCY_LEVEL;
+	private NearCache cache;
+
+	/**
+	 * @param redisClient 被装饰的RedisClient
+	 */
+	public void setRedisClient(RedisClient redisClient) {
+		this.redisClient = redisClient;
+	}
+
+	/**
+	 * @param maxSize 最多缓存项数量
+	 */
+	public void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @param defaultTtlSeconds 读取时写入缓存的过期时间（单位：秒）；通过本客户端写入时带过期时间的，不晚于Redis中的过期时间
+	 */
+	public void setDefaultTtlSeconds(int defaultTtlSeconds) {
+		this.defaultTtlSeconds = defaultTtlSeconds;
+	}
+
+	/**
+	 * @param concurrencyLevel 缓存分段数量
+	 */
+	public void setConcurrencyLevel(int concurrencyLevel) {
+		this.concurrencyLevel = concurrencyLevel;
+	}
+
+	public void init() {
+		this.cache = new NearCache(this.maxSize, this.concurrencyLevel);
+	}
+
+	public long getHitCount() {
+		return this.cache.getHitCount();
+	}
+
+	public long getMissCount() {
+		return this.cache.getMissCount();
+	}
+
+	public long getEvictionCount() {
+		return this.cache.getEvictionCount();
+	}
+
+	public long getExpirationCount() {
+		return this.cache.getExpirationCount();
+	}
+
+	public long getInvalidationCount() {
+		return this.cache.getInvalidationCount();
+	}
+
+	/**
+	 * @return 命中率，即减少的Redis读请求比例
+	 */
+	public double getHitRate() {
+		long hits = this.cache.getHitCount();
+		long total = hits + this.cache.getMissCount();
+		return total == 0L ? 0.0 : (double)hits / total;
+	}
+
+	public int getSize() {
+		return this.cache.size();
+	}
+
+	/**
+	 * 清空本地缓存
+	 */
+	public void invalidateAll() {
+		this.cache.invalidateAll();
+	}
+
+	@Override
+	public String get(String key) {
+		NearCache.CacheKey cacheKey = new NearCache.CacheKey(NearCache.CacheKey.STRING, key, null);
+		Object cached = this.cache.get(cacheKey);
+		if(cached != NearCache.MISS) {
+			return cached == NearCache.NULL_VALUE ? null : (String)cached;
+		}
+
+		long stamp = this.cache.stamp(key);
+		String value = this.redisClient.get(key);
+		this.cache.put(cacheKey, value, this.ttlMillis(), stamp);
+		return value;
+	}
+
+	@Override
+	public byte[] get(byte[] key) {
+		return this.redisClient.get(key);
+	}
+
+	@Override
+	public int get(byte[] key, ByteBuffer target) {
+		return this.redisClient.get(key, target);
+	}
+
+	@Override
+	public List<String> mget(String... key) {
+		return this.redisClient.mget(key);
+	}
+
+	@Override
+	public List<byte[]> mget(byte[]... key) {
+		return this.redisClient.mget(key);
+	}
+
+	@Override
+	public long del(String key) {
+		long flag = this.redisClient.del(key);
+		this.cache.invalidate(key, NearCache.NO_TTL);
+		return flag;
+	}
+
+	@Override
+	public long del(String... keys) {
+		long deleted = this.redisClient.del(keys);
+		this.invalidate(keys, NearCache.NO_TTL);
+		return deleted;
+	}
+
+	@Override
+	public long del(byte[]... keys) {
+		long deleted = this.redisClient.del(keys);
+		if(keys != null) {
+			for(byte[] key : keys) {
+				this.invalidate(key, NearCache.NO_TTL);
+			}
+		}
+		return deleted;
+	}
+
+	@Override
+	public long unlink(String... keys) {
+		long deleted = this.redisClient.unlink(keys);
+		this.invalidate(keys, NearCache.NO_TTL);
+		return deleted;
+	}
+
+	@Override
+	public long expire(String[] keys, int expirationInSeconds) {
+		long expired = this.redisClient.expire(keys, expirationInSeconds);
+		// 过期时间小于等于0时Redis删除该key
+		this.invalidate(keys, expireAt(expirationInSeconds, NearCache.NO_TTL));
+		return expired;
+	}
+
+	/**
+	 * 通过本客户端的scan和unlink执行，删除的key同时从本地缓存中移除
+	 */
+	@Override
+	public long delByPattern(String pattern, int count, int maxKeysPerSecond) {
+		return new RedisKeyCleaner(this, count, maxKeysPerSecond).delete(pattern);
+	}
+
+	/**
+	 * 通过本客户端的scan和expire执行，处理的key同时从本地缓存中移除
+	 */
+	@Override
+	public long expireByPattern(String pattern, int expirationInSeconds, int count, int maxKeysPerSecond) {
+		return new RedisKeyCleaner(this, count, maxKeysPerSecond).expire(pattern, expirationInSeconds);
+	}
+
+	private void invalidate(String[] keys, long expireAt) {
+		if(keys != null) {
+			for(String key : keys) {
+				this.cache.invalidate(key, expireAt);
+			}
+		}
+	}
+
+	@Override
+	public long del(byte[] key) {
+		long flag = this.redisClient.del(key);
+		this.invalidate(key, NearCache.NO_TTL);
+		return flag;
+	}
+
+	@Override
+	public void set(String key, String value) {
+		this.redisClient.set(key, value);
+		this.cache.invalidate(key, NearCache.NO_TTL);
+	}
+
+	@Override
+	public void set(byte[] key, byte[] value) {
+		this.redisClient.set(key, value);
+		this.invalidate(key, NearCache.NO_TTL);
+	}
+
+	@Override
+	public void set(String key, String value, int expirationInSeconds) {
+		this.redisClient.set(key, value, expirationInSeconds);
+		this.cache.invalidate(key, expireAt(expirationInSeconds, NearCache.NO_TTL));
+	}
+
+	@Override
+	public void set(byte[] key, byte[] value, int expirationInSeconds) {
+		this.redisClient.set(key, value, expirationInSeconds);
+		this.invalidate(key, expireAt(expirationInSeconds, NearCache.NO_TTL));
+	}
+
+	@Override
+	public void set(byte[] key, ByteBuffer value, int expirationInSeconds) {
+		this.redisClient.set(key, value, expirationInSeconds);
+		this.invalidate(key, expireAt(expirationInSeconds, NearCache.NO_TTL));
+	}
+
+	@Override
+	public void mset(String... keyValues) {
+		this.redisClient.mset(keyValues);
+		if(keyValues != null) {
+			for(int i = 0; i < keyValues.length; i += 2) {
+				this.cache.invalidate(keyValues[i], NearCache.NO_TTL);
+			}
+		}
+	}
+
+	@Override
+	public void mset(byte[]... keyValues) {
+		this.redisClient.mset(keyValues);
+		if(keyValues != null) {
+			for(int i = 0; i < keyValues.length; i += 2) {
+				this.invalidate(keyValues[i], NearCache.NO_TTL);
+			}
+		}
+	}
+
+	@Override
+	public void msetWithTtl(int expirationInSeconds, String... keyValues) {
+		this.redisClient.msetWithTtl(expirationInSeconds, keyValues);
+		if(keyValues != null) {
+			long expireAt = expireAt(expirationInSeconds, NearCache.NO_TTL);
+			for(int i = 0; i < keyValues.length; i += 2) {
+				this.cache.invalidate(keyValues[i], expireAt);
+			}
+		}
+	}
+
+	@Override
+	public void expire(String key, int expirationInSeconds) {
+		this.redisClient.expire(key, expirationInSeconds);
+		this.cache.invalidate(key, expireAt(expirationInSeconds, NearCache.NO_TTL));
+	}
+
+	@Override
+	public void expire(byte[] key, int expirationInSeconds) {
+		this.redisClient.expire(key, expirationInSeconds);
+		this.invalidate(key, expireAt(expirationInSeconds, NearCache.NO_TTL));
+	}
+
+	@Override
+	public long incr(String key) {
+		long value = this.redisClient.incr(key);
+		this.cache.invalidate(key);
+		return value;
+	}
+
+	@Override
+	public long incr(byte[] key) {
+		long value = this.redisClient.incr(key);
+		this.invalidate(key);
+		return value;
+	}
+
+	@Override
+	public long incrBy(String key, long increment) {
+		long value = this.redisClient.incrBy(key, increment);
+		this.cache.invalidate(key);
+		return value;
+	}
+
+	@Override
+	public long incrBy(byte[] key, long increment) {
+		long value = this.redisClient.incrBy(key, increment);
+		this.invalidate(key);
+		return value;
+	}
+
+	@Override
+	public long incrByWithTtl(String key, long increment, int expirationInSeconds) {
+		long value = this.redisClient.incrByWithTtl(key, increment, expirationInSeconds);
+		this.cache.invalidate(key, expireAt(expirationInSeconds, NearCache.KEEP_TTL));
+		return value;
+	}
+
+	@Override
+	public long decr(String key) {
+		long value = this.redisClient.decr(key);
+		this.cache.invalidate(key);
+		return value;
+	}
+
+	@Override
+	public long decr(byte[] key) {
+		long value = this.redisClient.decr(key);
+		this.invalidate(key);
+		return value;
+	}
+
+	@Override
+	public long decrBy(String key, long decrement) {
+		long value = this.redisClient.decrBy(key, decrement);
+		this.cache.invalidate(key);
+		return value;
+	}
+
+	@Override
+	public long decrBy(byte[] key, long decrement) {
+		long value = this.redisClient.decrBy(key, decrement);
+		this.invalidate(key);
+		return value;
+	}
+
+	@Override
+	public String hget(String key, String field) {
+		NearCache.CacheKey cacheKey = new NearCache.CacheKey(NearCache.CacheKey.HASH_FIELD, key, field);
+		Object cached = this.cache.get(cacheKey);
+		if(cached != NearCache.MISS) {
+			return cached == NearCache.NULL_VALUE ? null : (String)cached;
+		}
+
+		long stamp = this.cache.stamp(key);
+		String value = this.redisClient.hget(key, field);
+		this.cache.put(cacheKey, value, this.ttlMillis(), stamp);
+		return value;
+	}
+
+	@Override
+	public byte[] hget(byte[] key, byte[] field) {
+		return this.redisClient.hget(key, field);
+	}
+
+	@Override
+	public int hget(byte[] key, byte[] field, ByteBuffer target) {
+		return this.redisClient.hget(key, field, target);
+	}
+
+	@Override
+	public List<String> hmget(String key, String... field) {
+		return this.redisClient.hmget(key, field);
+	}
+
+	@Override
+	public List<byte[]> hmget(byte[] key, byte[]... field) {
+		return this.redisClient.hmget(key, field);
+	}
+
+	@Override
+	public void hset(String key, String field, String value) {
+		this.redisClient.hset(key, field, value);
+		this.cache.invalidate(key);
+	}
+
+	@Override
+	public void hset(byte[] key, byte[] field, byte[] value) {
+		this.redisClient.hset(key, field, value);
+		this.invalidate(key);
+	}
+
+	@Override
+	public Long hsetWithTtl(String key, String field, String value, int expirationInSeconds) {
+		Long added = this.redisClient.hsetWithTtl(key, field, value, expirationInSeconds);
+		this.cache.invalidate(key, expireAt(expirationInSeconds, NearCache.KEEP_TTL));
+		return added;
+	}
+
+	@Override
+	public void hmset(String key, Map<String, String> fieldAndValues) {
+		this.redisClient.hmset(key, fieldAndValues);
+		this.cache.invalidate(key);
+	}
+
+	@Override
+	public void hmset(byte[] key, Map<byte[], byte[]> fieldAndValues) {
+		this.redisClient.hmset(key, fieldAndValues);
+		this.invalidate(key);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public Map<String, String> hgetAll(String key) {
+		NearCache.CacheKey cacheKey = new NearCache.CacheKey(NearCache.CacheKey.HASH_ALL, key, null);
+		Object cached = this.cache.get(cacheKey);
+		if(cached != NearCache.MISS) {
+			return cached == NearCache.NULL_VALUE ? null : new HashMap<String, String>((Map<String, String>)cached);
+		}
+
+		long stamp = this.cache.stamp(key);
+		Map<String, String> value = this.redisClient.hgetAll(key);
+		// 缓存不可变副本，返回给调用方的是可修改的副本
+		this.cache.put(cacheKey, value == null ? null : Collections.unmodifiableMap(new HashMap<String, String>(value)),
+				this.ttlMillis(), stamp);
+		return value;
+	}
+
+	@Override
+	public long hincrBy(String key, String field, long increment) {
+		long value = this.redisClient.hincrBy(key, field, increment);
+		this.cache.invalidate(key);
+		return value;
+	}
+
+	@Override
+	public long hincrBy(byte[] key, byte[] field, long increment) {
+		long value = this.redisClient.hincrBy(key, field, increment);
+		this.invalidate(key);
+		return value;
+	}
+
+	/**
+	 * 累加值延迟写入Redis，写入前读到的仍是旧值；此处只清除本地缓存
+	 */
+	@Override
+	public void incrByDeferred(String key, long increment) {
+		this.redisClient.incrByDeferred(key, increment);
+		this.cache.invalidate(key);
+	}
+
+	@Override
+	public void hincrByDeferred(String key, String field, long increment) {
+		this.redisClient.hincrByDeferred(key, field, increment);
+		this.cache.invalidate(key);
+	}
+
+	@Override
+	public Long pfAdd(String key, String... elements) {
+		Long value = this.redisClient.pfAdd(key, elements);
+		this.cache.invalidate(key);
+		return value;
+	}
+
+	@Override
+	public Long pfAdd(String key, int expirationInSeconds, String... elements) {
+		Long value = this.redisClient.pfAdd(key, expirationInSeconds, elements);
+		this.cache.invalidate(key, expireAt(expirationInSeconds, NearCache.KEEP_TTL));
+		return value;
+	}
+
+	@Override
+	public Long pfAddWithTtl(String key, int expirationInSeconds, String... elements) {
+		Long value = this.redisClient.pfAddWithTtl(key, expirationInSeconds, elements);
+		this.cache.invalidate(key, expireAt(expirationInSeconds, NearCache.KEEP_TTL));
+		return value;
+	}
+
+	/**
+	 * 元素延迟写入Redis；此处只清除本地缓存
+	 */
+	@Override
+	public void pfAddDeferred(String key, int expirationInSeconds, String... elements) {
+		this.redisClient.pfAddDeferred(key, expirationInSeconds, elements);
+		this.cache.invalidate(key, expireAt(expirationInSeconds, NearCache.KEEP_TTL));
+	}
+
+	@Override
+	public long pfCount(String key) {
+		return this.redisClient.pfCount(key);
+	}
+
+	@Override
+	public String pfmerge(String destkey, String... sourcekeys) {
+		String value = this.redisClient.pfmerge(destkey, sourcekeys);
+		this.cache.invalidate(destkey);
+		return value;
+	}
+
+	@Override
+	public Long sadd(String key, String... members) {
+		Long value = this.redisClient.sadd(key, members);
+		this.cache.invalidate(key);
+		return value;
+	}
+
+	@Override
+	public Set<String> keys(String pattern) {
+		return this.redisClient.keys(pattern);
+	}
+
+	@Override
+	public long scan(String pattern, int count, ScanCallback<String> callback) {
+		return this.redisClient.scan(pattern, count, callback);
+	}
+
+	@Override
+	public long scan(String[] patterns, int count, int parallelism, ScanCallback<String> callback) {
+		return this.redisClient.scan(patterns, count, parallelism, callback);
+	}
+
+	@Override
+	public Iterator<String> scanIterator(String pattern, int count) {
+		return this.redisClient.scanIterator(pattern, count);
+	}
+
+	@Override
+	public long hscan(String key, int count, ScanCallback<Map.Entry<String, String>> callback) {
+		return this.redisClient.hscan(key, count, callback);
+	}
+
+	@Override
+	public long hscan(String[] keys, int count, int parallelism, ScanCallback<Map.Entry<String, String>> callback) {
+		return this.redisClient.hscan(keys, count, parallelism, callback);
+	}
+
+	@Override
+	public Set<String> smembers(String key) {
+		return this.redisClient.smembers(key);
+	}
+
+	/**
+	 * 通过此Pipeline的写入不会清除本地缓存，请使用{@link #executePipelined(PipelineCallback)}
+	 */
+	@Deprecated
+	@Override
+	public Pipeline pipelined() {
+		return this.redisClient.pipelined();
+	}
+
+	@Override
+	public boolean isReady() {
+		return this.redisClient.isReady();
+	}
+
+	@Override
+	public <T> T executePipelined(PipelineCallback<T> callback) {
+		InvalidatingPipelineCallback<T> invalidatingCallback = new InvalidatingPipelineCallback<T>(callback);
+		try {
+			return this.redisClient.executePipelined(invalidatingCallback);
+		} finally {
+			invalidatingCallback.invalidateWrittenKeys();
+		}
+	}
+
+	@Override
+	public <T> T executePipelined(int flushSize, PipelineCallback<T> callback) {
+		InvalidatingPipelineCallback<T> invalidatingCallback = new InvalidatingPipelineCallback<T>(callback);
+		try {
+			return this.redisClient.executePipelined(flushSize, invalidatingCallback);
+		} finally {
+			invalidatingCallback.invalidateWrittenKeys();
+		}
+	}
+
+	/**
+	 * 通过本客户端写入时带过期时间的key，NearCache将其缓存项的过期时间限制为不晚于Redis中的过期时间
+	 */
+	private long ttlMillis() {
+		return this.defaultTtlSeconds * 1000L;
+	}
+
+	/**
+	 * @return 写入后Redis中该key的过期时间（绝对时间，单位：毫秒），expirationInSeconds小于等于0时返回otherwise
+	 */
+	private static long expireAt(int expirationInSeconds, long otherwise) {
+		return expirationInSeconds > 0 ? System.currentTimeMillis() + expirationInSeconds * 1000L : otherwise;
+	}
+
+	private void invalidate(byte[] key) {
+		this.invalidate(key, NearCache.KEEP_TTL);
+	}
+
+	private void invalidate(byte[] key, long expireAt) {
+		if(key != null) {
+			// Jedis以UTF-8编码String key，与byte[] key对应
+			this.cache.invalidate(new String(key, StandardCharsets.UTF_8), expireAt);
+		}
+	}
+
+	/**
+	 * 记录pipeline中写入的key及写入后的过期时间，执行完成后统一清除本地缓存
+	 */
+	private class InvalidatingPipelineCallback<T> implements PipelineCallback<T> {
+		private final PipelineCallback<T> callback;
+		private final Map<String, Long> writtenKeys = new HashMap<String, Long>();
+
+		InvalidatingPipelineCallback(PipelineCallback<T> callback) {
+			this.callback = callback;
+		}
+
+		@Override
+		public T doInPipeline(RedisPipeline pipeline) {
+			return this.callback.doInPipeline(new InvalidatingPipeline(pipeline, this.writtenKeys));
+		}
+
+		void invalidateWrittenKeys() {
+			for(Map.Entry<String, Long> e : this.writtenKeys.entrySet()) {
+				cache.invalidate(e.getKey(), e.getValue().longValue());
+			}
+		}
+	}
+
+	private static class InvalidatingPipeline implements RedisPipeline {
+		private final RedisPipeline pipeline;
+		private final Map<String, Long> writtenKeys;
+
+		InvalidatingPipeline(RedisPipeline pipeline, Map<String, Long> writtenKeys) {
+			this.pipeline = pipeline;
+			this.writtenKeys = writtenKeys;
+		}
+
+		@Override
+		public Response<String> get(String key) {
+			return this.pipeline.get(key);
+		}
+
+		@Override
+		public Response<byte[]> get(byte[] key) {
+			return this.pipeline.get(key);
+		}
+
+		@Override
+		public Response<List<String>> mget(String... key) {
+			return this.pipeline.mget(key);
+		}
+
+		@Override
+		public Response<List<byte[]>> mget(byte[]... key) {
+			return this.pipeline.mget(key);
+		}
+
+		@Override
+		public Response<String> set(String key, String value) {
+			this.written(key, NearCache.NO_TTL);
+			return this.pipeline.set(key, value);
+		}
+
+		@Override
+		public Response<String> set(byte[] key, byte[] value) {
+			this.written(key, NearCache.NO_TTL);
+			return this.pipeline.set(key, value);
+		}
+
+		@Override
+		public Response<String> set(String key, String value, int expirationInSeconds) {
+			this.written(key, expireAt(expirationInSeconds, NearCache.NO_TTL));
+			return this.pipeline.set(key, value, expirationInSeconds);
+		}
+
+		@Override
+		public Response<String> set(byte[] key, byte[] value, int expirationInSeconds) {
+			this.written(key, expireAt(expirationInSeconds, NearCache.NO_TTL));
+			return this.pipeline.set(key, value, expirationInSeconds);
+		}
+
+		@Override
+		public Response<String> mset(String... keyValues) {
+			for(int i = 0; i < keyValues.length; i += 2) {
+				this.written(keyValues[i], NearCache.NO_TTL);
+			}
+			return this.pipeline.mset(keyValues);
+		}
+
+		@Override
+		public Response<Long> del(String key) {
+			this.written(key, NearCache.NO_TTL);
+			return this.pipeline.del(key);
+		}
+
+		@Override
+		public Response<Long> del(byte[] key) {
+			this.written(key, NearCache.NO_TTL);
+			return this.pipeline.del(key);
+		}
+
+		@Override
+		public Response<Long> expire(String key, int expirationInSeconds) {
+			this.written(key, expireAt(expirationInSeconds, NearCache.NO_TTL));
+			return this.pipeline.expire(key, expirationInSeconds);
+		}
+
+		@Override
+		public Response<Long> expire(byte[] key, int expirationInSeconds) {
+			this.written(key, expireAt(expirationInSeconds, NearCache.NO_TTL));
+			return this.pipeline.expire(key, expirationInSeconds);
+		}
+
+		@Override
+		public Response<Long> incr(String key) {
+			this.written(key, NearCache.KEEP_TTL);
+			return this.pipeline.incr(key);
+		}
+
+		@Override
+		public Response<Long> incrBy(String key, long increment) {
+			this.written(key, NearCache.KEEP_TTL);
+			return this.pipeline.incrBy(key, increment);
+		}
+
+		@Override
+		public Response<Long> decrBy(String key, long decrement) {
+			this.written(key, NearCache.KEEP_TTL);
+			return this.pipeline.decrBy(key, decrement);
+		}
+
+		@Override
+		public Response<String> hget(String key, String field) {
+			return this.pipeline.hget(key, field);
+		}
+
+		@Override
+		public Response<byte[]> hget(byte[] key, byte[] field) {
+			return this.pipeline.hget(key, field);
+		}
+
+		@Override
+		public Response<List<String>> hmget(String key, String... field) {
+			return this.pipeline.hmget(key, field);
+		}
+
+		@Override
+		public Response<Long> hset(String key, String field, String value) {
+			this.written(key, NearCache.KEEP_TTL);
+			return this.pipeline.hset(key, field, value);
+		}
+
+		@Override
+		public Response<Long> hset(byte[] key, byte[] field, byte[] value) {
+			this.written(key, NearCache.KEEP_TTL);
+			return this.pipeline.hset(key, field, value);
+		}
+
+		@Override
+		public Response<String> hmset(String key, Map<String, String> fieldAndValues) {
+			this.written(key, NearCache.KEEP_TTL);
+			return this.pipeline.hmset(key, fieldAndValues);
+		}
+
+		@Override
+		public Response<String> hmset(byte[] key, Map<byte[], byte[]> fieldAndValues) {
+			this.written(key, NearCache.KEEP_TTL);
+			return this.pipeline.hmset(key, fieldAndValues);
+		}
+
+		@Override
+		public Response<Map<String, String>> hgetAll(String key) {
+			return this.pipeline.hgetAll(key);
+		}
+
+		@Override
+		public Response<Long> hincrBy(String key, String field, long increment) {
+			this.written(key, NearCache.KEEP_TTL);
+			return this.pipeline.hincrBy(key, field, increment);
+		}
+
+		@Override
+		public Response<Long> hincrBy(byte[] key, byte[] field, long increment) {
+			this.written(key, NearCache.KEEP_TTL);
+			return this.pipeline.hincrBy(key, field, increment);
+		}
+
+		@Override
+		public Response<Long> pfAdd(String key, String... elements) {
+			this.written(key, NearCache.KEEP_TTL);
+			return this.pipeline.pfAdd(key, elements);
+		}
+
+		@Override
+		public Response<Long> pfCount(String key) {
+			return this.pipeline.pfCount(key);
+		}
+
+		@Override
+		public Response<String> pfmerge(String destkey, String... sourcekeys) {
+			this.written(destkey, NearCache.KEEP_TTL);
+			return this.pipeline.pfmerge(destkey, sourcekeys);
+		}
+
+		@Override
+		public Response<Long> sadd(String key, String... members) {
+			this.written(key, NearCache.KEEP_TTL);
+			return this.pipeline.sadd(key, members);
+		}
+
+		@Override
+		public Response<Set<String>> smembers(String key) {
+			return this.pipeline.smembers(key);
+		}
+
+		@Override
+		public void sync() {
+			this.pipeline.sync();
+		}
+
+		/**
+		 * @param expireAt 写入后的过期时间，KEEP_TTL时不覆盖同一pipeline中之前的写入设置的过期时间
+		 */
+		private void written(String key, long expireAt) {
+			if(expireAt != NearCache.KEEP_TTL || !this.writtenKeys.containsKey(key)) {
+				this.writtenKeys.put(key, Long.valueOf(expireAt));
+			}
+		}
+
+		private void written(byte[] key, long expireAt) {
+			if(key != null) {
+				this.written(new String(key, StandardCharsets.UTF_8), expireAt);
+			}
+		}
+	}
+}
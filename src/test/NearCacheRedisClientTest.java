@@ -0,0 +1,111 @@
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * NearCacheRedisClient装饰InMemoryRedisClient：写入后清除本地缓存、缓存项不晚于Redis中的过期时间过期、pipeline中写入的key
+ */
+public class NearCacheRedisClientTest {
+
+    private static NearCacheRedisClient newClient(RedisClient redis) {
+        NearCacheRedisClient client = new NearCacheRedisClient();
+        client.setRedisClient(redis);
+        client.setDefaultTtlSeconds(60);
+        client.init();
+        return client;
+    }
+
+    private static InMemoryRedisClient newRedis() {
+        InMemoryRedisClient redis = new InMemoryRedisClient();
+        redis.init();
+        return redis;
+    }
+
+    @Test
+    public void testInvalidateOnWrite() {
+        InMemoryRedisClient redis = newRedis();
+        NearCacheRedisClient client = newClient(redis);
+        client.set("k", "v1");
+        client.hset("h", "f", "v1");
+        assertEquals("v1", client.get("k"));
+        assertEquals("v1", client.hget("h", "f"));
+
+        // 绕过装饰器的写入只能等缓存过期
+        redis.set("k", "v2");
+        redis.hset("h", "f", "v2");
+        assertEquals("v1", client.get("k"));
+        assertEquals("v1", client.hget("h", "f"));
+        assertEquals(2L, client.getHitCount());
+
+        // 通过装饰器的写入清除该key下的全部缓存项
+        client.set("k", "v3");
+        client.hset("h", "f2", "v3");
+        assertEquals("v3", client.get("k"));
+        assertEquals("v2", client.hget("h", "f"));
+        client.del("k");
+        assertNull(client.get("k"));
+    }
+
+    @Test
+    public void testTtlCappedByWrite() throws InterruptedException {
+        InMemoryRedisClient redis = newRedis();
+        NearCacheRedisClient client = newClient(redis);
+        client.set("k", "v", 1);
+        client.hsetWithTtl("h", "f", "v", 1);
+        client.msetWithTtl(1, "m", "v");
+        assertEquals("v", client.get("k"));
+        assertEquals("v", client.hget("h", "f"));
+        assertEquals("v", client.get("m"));
+
+        // 不再按defaultTtlSeconds（60秒）缓存Redis中已过期的值
+        Thread.sleep(1100L);
+        assertNull(client.get("k"));
+        assertNull(client.hget("h", "f"));
+        assertNull(client.get("m"));
+    }
+
+    @Test
+    public void testTtlClearedBySet() throws InterruptedException {
+        InMemoryRedisClient redis = newRedis();
+        NearCacheRedisClient client = newClient(redis);
+        client.set("k", "v1", 1);
+        client.set("k", "v2");
+        assertEquals("v2", client.get("k"));
+
+        // SET去掉了过期时间，缓存项按defaultTtlSeconds过期
+        Thread.sleep(1100L);
+        redis.set("k", "v3");
+        assertEquals("v2", client.get("k"));
+    }
+
+    @Test
+    public void testPipelineWrites() throws InterruptedException {
+        InMemoryRedisClient redis = newRedis();
+        final NearCacheRedisClient client = newClient(redis);
+        client.set("k1", "v1");
+        client.set("k2", "v1");
+        assertEquals("v1", client.get("k1"));
+        assertEquals("v1", client.get("k2"));
+
+        client.executePipelined(new PipelineCallback<Void>() {
+            @Override
+            public Void doInPipeline(RedisPipeline pipeline) {
+                pipeline.set("k1", "v2");
+                pipeline.set("k2", "v2", 1);
+                // 同一pipeline中之后的写入不改变过期时间，不覆盖之前记录的过期时间
+                pipeline.incr("k3");
+                pipeline.expire("k3", 1);
+                pipeline.incrBy("k3", 1L);
+                return null;
+            }
+        });
+        assertEquals("v2", client.get("k1"));
+        assertEquals("v2", client.get("k2"));
+        assertEquals("2", client.get("k3"));
+
+        Thread.sleep(1100L);
+        assertNull(client.get("k2"));
+        assertNull(client.get("k3"));
+        assertEquals("v2", client.get("k1"));
+    }
+}
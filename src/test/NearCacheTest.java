@@ -0,0 +1,91 @@
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * NearCache的读写与失效、过期的put被忽略、SLRU淘汰与过期
+ */
+public class NearCacheTest {
+
+    @Test
+    public void testGetPutInvalidate() {
+        NearCache cache = new NearCache(100, 4);
+        NearCache.CacheKey value = new NearCache.CacheKey(NearCache.CacheKey.STRING, "k1", null);
+        NearCache.CacheKey field = new NearCache.CacheKey(NearCache.CacheKey.HASH_FIELD, "k1", "f1");
+
+        assertTrue(cache.get(value) == NearCache.MISS);
+        cache.put(value, "v1", 60000L, cache.stamp("k1"));
+        cache.put(field, null, 60000L, cache.stamp("k1"));
+        assertEquals("v1", cache.get(value));
+        assertTrue(cache.get(field) == NearCache.NULL_VALUE);
+
+        // 同一个key下的全部缓存项一起失效
+        cache.invalidate("k1");
+        assertTrue(cache.get(value) == NearCache.MISS);
+        assertTrue(cache.get(field) == NearCache.MISS);
+        assertEquals(2L, cache.getHitCount());
+        assertEquals(3L, cache.getMissCount());
+    }
+
+    @Test
+    public void testStalePutIgnored() {
+        NearCache cache = new NearCache(100, 1);
+        NearCache.CacheKey key = new NearCache.CacheKey(NearCache.CacheKey.STRING, "k1", null);
+
+        long stamp = cache.stamp("k1");
+        cache.invalidate("k1");             // 读取Redis期间发生写入
+        cache.put(key, "old", 60000L, stamp);
+        assertTrue(cache.get(key) == NearCache.MISS);
+    }
+
+    @Test
+    public void testExpireHint() throws InterruptedException {
+        NearCache cache = new NearCache(100, 1);
+        NearCache.CacheKey key = new NearCache.CacheKey(NearCache.CacheKey.STRING, "k1", null);
+
+        // 写入时Redis中的过期时间早于缓存的ttl
+        cache.invalidate("k1", System.currentTimeMillis() + 5L);
+        cache.put(key, "v1", 60000L, cache.stamp("k1"));
+        assertEquals("v1", cache.get(key));
+        Thread.sleep(10L);
+        assertTrue(cache.get(key) == NearCache.MISS);
+
+        // 已过期的记录被丢弃，之后按ttl缓存
+        cache.put(key, "v2", 60000L, cache.stamp("k1"));
+        Thread.sleep(10L);
+        assertEquals("v2", cache.get(key));
+
+        // KEEP_TTL不改变记录的过期时间，NO_TTL清除
+        cache.invalidate("k1", System.currentTimeMillis() + 5L);
+        cache.invalidate("k1");
+        cache.put(key, "v3", 60000L, cache.stamp("k1"));
+        Thread.sleep(10L);
+        assertTrue(cache.get(key) == NearCache.MISS);
+        cache.invalidate("k1", System.currentTimeMillis() + 5L);
+        cache.invalidate("k1", NearCache.NO_TTL);
+        cache.put(key, "v4", 60000L, cache.stamp("k1"));
+        Thread.sleep(10L);
+        assertEquals("v4", cache.get(key));
+    }
+
+    @Test
+    public void testEviction() {
+        NearCache cache = new NearCache(10, 1);
+        for(int i = 0; i < 100; i++) {
+            String k = "k" + i;
+            cache.put(new NearCache.CacheKey(NearCache.CacheKey.STRING, k, null), k, 60000L, cache.stamp(k));
+        }
+        assertTrue(cache.size() <= 10);
+        assertEquals(100L - cache.size(), cache.getEvictionCount());
+    }
+
+    @Test
+    public void testExpiration() throws InterruptedException {
+        NearCache cache = new NearCache(10, 1);
+        NearCache.CacheKey key = new NearCache.CacheKey(NearCache.CacheKey.STRING, "k1", null);
+        cache.put(key, "v1", 1L, cache.stamp("k1"));
+        Thread.sleep(5L);
+        assertTrue(cache.get(key) == NearCache.MISS);
+        assertEquals(1L, cache.getExpirationCount());
+    }
+}
@@ -0,0 +1,18 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+/**
+ * pipeline批量操作回调，见{@link RedisClient#executePipelined(PipelineCallback)}
+ *
+ * @author BurningIce
+ *
+ */
+public interface PipelineCallback<T> {
+	/**
+	 * 在pipeline中写入命令，回调期间独占同一个连接
+	 * @param pipeline
+	 * @return 回调结果，原样作为executePipelined的返回值
+	 */
+	public T doInPipeline(RedisPipeline pipeline);
+}
@@ -0,0 +1,116 @@
+import redis.clients.jedis.BuilderFactory;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 测试用的InMemoryRedisClient：记录executePipelined中执行的命令及参数，并可以让之后的若干次executePipelined失败（返回null，与连接出错时相同）
+ */
+class RecordingRedisClient extends InMemoryRedisClient {
+    final List<String> commands = new ArrayList<String>();
+    final List<Object[]> arguments = new ArrayList<Object[]>();
+    private int failures;
+    private String failedCommand;
+    private int pipelines;
+    private int lastFlushSize;
+
+    RecordingRedisClient() {
+        init();
+    }
+
+    /**
+     * @param failures 之后失败的executePipelined次数
+     */
+    synchronized void failPipelines(int failures) {
+        this.failures = failures;
+    }
+
+    /**
+     * pipeline中下一条名为name的命令不执行，返回的Response在get()时抛出JedisDataException（与Redis返回错误时相同）
+     */
+    synchronized void failNextCommand(String name) {
+        this.failedCommand = name;
+    }
+
+    /**
+     * @return 调用executePipelined的次数（包括失败的）
+     */
+    synchronized int getPipelines() {
+        return pipelines;
+    }
+
+    synchronized int getLastFlushSize() {
+        return lastFlushSize;
+    }
+
+    /**
+     * @return 最后一条名为name的命令的参数
+     */
+    synchronized Object[] lastArguments(String name) {
+        for (int i = commands.size() - 1; i >= 0; --i) {
+            if (commands.get(i).equals(name)) {
+                return arguments.get(i);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public <T> T executePipelined(int flushSize, PipelineCallback<T> callback) {
+        synchronized (this) {
+            lastFlushSize = flushSize;
+        }
+        return super.executePipelined(flushSize, callback);
+    }
+
+    @Override
+    public <T> T executePipelined(final PipelineCallback<T> callback) {
+        synchronized (this) {
+            pipelines++;
+            if (failures > 0) {
+                failures--;
+                return null;
+            }
+        }
+
+        return super.executePipelined(new PipelineCallback<T>() {
+            @Override
+            public T doInPipeline(RedisPipeline pipeline) {
+                return callback.doInPipeline(recording(pipeline));
+            }
+        });
+    }
+
+    private RedisPipeline recording(final RedisPipeline pipeline) {
+        return (RedisPipeline) Proxy.newProxyInstance(RedisPipeline.class.getClassLoader(), new Class<?>[] { RedisPipeline.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (!method.getName().equals("sync")) {
+                            synchronized (RecordingRedisClient.this) {
+                                commands.add(method.getName());
+                                arguments.add(args);
+                                if (method.getName().equals(failedCommand)) {
+                                    failedCommand = null;
+                                    Response<String> failed = new Response<String>(BuilderFactory.STRING);
+                                    failed.set(new JedisDataException("ERR " + method.getName() + " failed"));
+                                    return failed;
+                                }
+                            }
+                        }
+
+                        try {
+                            return method.invoke(pipeline, args);
+                        } catch (InvocationTargetException ex) {
+                            throw ex.getCause();
+                        }
+                    }
+                });
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import java.lang.ref.WeakReference;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 线程亲和的连接池：线程第一次获取连接后将该连接租借（lease）给该线程，jedis.close()时不归还连接池，
+ * 同一线程之后的getResource直接取回该连接，省去连接池借出/归还时的加锁与testOnBorrow/testOnReturn。
+ * 调用方的用法与JedisPool完全相同（getResource/close）。
+ *
+ * 租借中的连接正在使用时（如pipeline回调中再次调用客户端）按普通方式从连接池借出另一个连接；
+ * 同时租借的连接最多maxLeases个，超出后其他线程按普通方式借出/归还，不会占满连接池。
+ * 后台线程每idleMillis/2毫秒检查一次：空闲超过idleMillis的租借、所属线程已结束的租借都归还连接池；
+ * 连接损坏（close时isBroken）时解除租借并按损坏的连接归还。
+ *
+ * @author BurningIce
+ *
+ */
+class RedisAffinityPool extends JedisPool {
+	private final static int IDLE = 0;
+	private final static int IN_USE = 1;
+	private final static int RECLAIMED = 2;
+	private final ThreadLocal<Lease> leases = new ThreadLocal<Lease>();
+	private final Set<Lease> activeLeases = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger leaseCount = new AtomicInteger();
+	private final int maxLeases;
+	private final long idleNanos;
+	private volatile boolean closed;
+	private ScheduledExecutorService reaper;
+
+	/**
+	 * @param maxLeases 同时租借的最多连接数量，应小于连接池的maxTotal
+	 * @param idleMillis 租借的连接空闲超过该时间（单位：毫秒）后归还连接池
+	 */
+	RedisAffinityPool(GenericObjectPoolConfig poolConfig, String host, int port, int timeout, String password, int database,
+			int maxLeases, long idleMillis) {
+		super(poolConfig, host, port, timeout, password, database);
+		this.maxLeases = Math.max(1, maxLeases);
+		this.idleNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, idleMillis));
+	}
+
+	void start() {
+		long intervalMillis = Math.max(1L, TimeUnit.NANOSECONDS.toMillis(this.idleNanos) / 2);
+		this.reaper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "redis-lease-reaper");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.reaper.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				reclaim(System.nanoTime());
+			}
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public Jedis getResource() {
+		Lease lease = this.leases.get();
+		if(lease != null) {
+			if(lease.state.compareAndSet(IDLE, IN_USE))
+				return lease.jedis;
+
+			if(lease.state.get() == IN_USE)
+				return super.getResource();
+
+			// 已被后台回收，重新租借
+			this.leases.remove();
+		}
+
+		Jedis jedis = super.getResource();
+		if(this.closed)
+			return jedis;
+
+		if(this.leaseCount.incrementAndGet() > this.maxLeases) {
+			this.leaseCount.decrementAndGet();
+			return jedis;
+		}
+
+		lease = new Lease(Thread.currentThread(), jedis);
+		this.leases.set(lease);
+		this.activeLeases.add(lease);
+		return jedis;
+	}
+
+	/**
+	 * Jedis 2.8中归还连接的方法都已标记为deprecated（推荐调用jedis.close()），但jedis.close()本身仍通过该方法归还，
+	 * 租借只能在这里接管
+	 */
+	@Override
+	@Deprecated
+	public void returnResource(Jedis jedis) {
+		Lease lease = this.leases.get();
+		if(lease == null || lease.jedis != jedis || lease.state.get() != IN_USE) {
+			this.returnToPool(jedis);
+			return;
+		}
+
+		if(this.closed) {
+			this.release(lease);
+			this.returnToPool(jedis);
+			return;
+		}
+
+		try {
+			// 与归还连接池时相同，清除未完成的pipeline/transaction状态
+			jedis.resetState();
+		} catch(Throwable t) {
+			this.release(lease);
+			this.returnBrokenToPool(jedis);
+			return;
+		}
+
+		lease.lastUsedNanos = System.nanoTime();
+		lease.state.set(IDLE);
+	}
+
+	@Override
+	@Deprecated
+	public void returnBrokenResource(Jedis jedis) {
+		Lease lease = this.leases.get();
+		if(lease != null && lease.jedis == jedis) {
+			this.release(lease);
+		}
+		this.returnBrokenToPool(jedis);
+	}
+
+	/**
+	 * 停止后台回收，归还所有空闲的租借后关闭连接池
+	 */
+	@Override
+	public void destroy() {
+		this.closed = true;
+		if(this.reaper != null) {
+			this.reaper.shutdownNow();
+			this.reaper = null;
+		}
+
+		for(Lease lease : this.activeLeases) {
+			if(lease.state.compareAndSet(IDLE, RECLAIMED)) {
+				this.release(lease);
+				this.returnToPool(lease.jedis);
+			}
+		}
+		super.destroy();
+	}
+
+	int getLeaseCount() {
+		return this.leaseCount.get();
+	}
+
+	/**
+	 * 归还空闲超时的租借，以及所属线程已结束的租借
+	 */
+	void reclaim(long now) {
+		for(Lease lease : this.activeLeases) {
+			Thread owner = lease.owner.get();
+			if(owner == null || !owner.isAlive()) {
+				if(lease.state.compareAndSet(IDLE, RECLAIMED)) {
+					this.release(lease);
+					this.returnToPool(lease.jedis);
+				} else if(lease.state.compareAndSet(IN_USE, RECLAIMED)) {
+					// 线程在使用连接的过程中结束，连接状态未知
+					this.release(lease);
+					this.returnBrokenToPool(lease.jedis);
+				}
+			} else if(now - lease.lastUsedNanos > this.idleNanos && lease.state.compareAndSet(IDLE, RECLAIMED)) {
+				this.release(lease);
+				this.returnToPool(lease.jedis);
+			}
+		}
+	}
+
+	/**
+	 * 真正归还连接池（见{@link #returnResource(Jedis)}中关于deprecated的说明）
+	 */
+	@SuppressWarnings("deprecation")
+	private void returnToPool(Jedis jedis) {
+		super.returnResource(jedis);
+	}
+
+	@SuppressWarnings("deprecation")
+	private void returnBrokenToPool(Jedis jedis) {
+		super.returnBrokenResource(jedis);
+	}
+
+	private void release(Lease lease) {
+		lease.state.set(RECLAIMED);
+		if(this.activeLeases.remove(lease)) {
+			this.leaseCount.decrementAndGet();
+		}
+	}
+
+	private final static class Lease {
+		final WeakReference<Thread> owner;
+		final Jedis jedis;
+		final AtomicInteger state = new AtomicInteger(IN_USE);
+		volatile long lastUsedNanos;
+
+		Lease(Thread owner, Jedis jedis) {
+			this.owner = new WeakReference<Thread>(owner);
+			this.jedis = jedis;
+			this.lastUsedNanos = System.nanoTime();
+		}
+	}
+}
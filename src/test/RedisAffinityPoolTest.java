@@ -0,0 +1,129 @@
+import org.apache.commons.pool2.BasePooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * RedisAffinityPool测试：连接池中换成创建未连接Jedis的factory，只验证租借、回收与归还，不访问Redis
+ */
+public class RedisAffinityPoolTest {
+
+    private static RedisAffinityPool newPool(int maxLeases) {
+        return newPool(maxLeases, new AtomicInteger());
+    }
+
+    /**
+     * @param destroyed 连接池关闭时销毁的连接数量
+     */
+    private static RedisAffinityPool newPool(int maxLeases, final AtomicInteger destroyed) {
+        GenericObjectPoolConfig poolConfig = new GenericObjectPoolConfig();
+        RedisAffinityPool pool = new RedisAffinityPool(poolConfig, "127.0.0.1", 6379, 2000, null, 0, maxLeases, 60000L);
+        // 替换JedisFactory，getResource时不建立连接
+        pool.initPool(poolConfig, new BasePooledObjectFactory<Jedis>() {
+            @Override
+            public Jedis create() {
+                return new Jedis("127.0.0.1", 6379);
+            }
+
+            @Override
+            public PooledObject<Jedis> wrap(Jedis jedis) {
+                return new DefaultPooledObject<Jedis>(jedis);
+            }
+
+            @Override
+            public void destroyObject(PooledObject<Jedis> p) {
+                destroyed.incrementAndGet();
+            }
+        });
+        return pool;
+    }
+
+    @Test
+    public void testSameThreadReusesConnection() {
+        RedisAffinityPool pool = newPool(2);
+        Jedis first = pool.getResource();
+        first.close();
+        Jedis second = pool.getResource();
+        assertSame(first, second);
+
+        // 租借的连接正在使用时借出另一个连接，归还后不影响租借
+        Jedis nested = pool.getResource();
+        assertNotSame(first, nested);
+        nested.close();
+        second.close();
+        assertSame(first, pool.getResource());
+        // 租借的连接对连接池而言一直是借出状态
+        assertEquals(1, pool.getLeaseCount());
+        assertEquals(1, pool.getNumActive());
+        assertEquals(1, pool.getNumIdle());
+        pool.destroy();
+    }
+
+    @Test
+    public void testIdleAndDeadThreadLeasesReclaimed() throws Exception {
+        final RedisAffinityPool pool = newPool(4);
+        pool.getResource().close();
+
+        final AtomicReference<Jedis> leased = new AtomicReference<Jedis>();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Jedis jedis = pool.getResource();
+                leased.set(jedis);
+                jedis.close();
+            }
+        });
+        thread.start();
+        thread.join();
+        assertEquals(2, pool.getLeaseCount());
+        assertEquals(2, pool.getNumActive());
+
+        // 线程已结束的租借立即归还，当前线程的租借未空闲超时
+        pool.reclaim(System.nanoTime());
+        assertEquals(1, pool.getLeaseCount());
+        assertEquals(1, pool.getNumActive());
+
+        // 空闲超时后归还，之后重新租借
+        pool.reclaim(System.nanoTime() + 120000L * 1000000L);
+        assertEquals(0, pool.getLeaseCount());
+        assertEquals(0, pool.getNumActive());
+        pool.getResource().close();
+        assertEquals(1, pool.getLeaseCount());
+        pool.destroy();
+    }
+
+    @Test
+    public void testMaxLeases() throws Exception {
+        AtomicInteger destroyed = new AtomicInteger();
+        final RedisAffinityPool pool = newPool(1, destroyed);
+        pool.getResource().close();
+
+        final int[] leases = new int[1];
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                pool.getResource().close();
+                leases[0] = pool.getLeaseCount();
+            }
+        });
+        thread.start();
+        thread.join();
+
+        // 超出maxLeases的线程按普通方式归还
+        assertEquals(1, leases[0]);
+        assertEquals(1, pool.getNumActive());
+        assertEquals(1, pool.getNumIdle());
+
+        // 关闭前归还空闲的租借，连同空闲连接一起销毁
+        pool.destroy();
+        assertEquals(0, pool.getLeaseCount());
+        assertEquals(2, destroyed.get());
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 可复用的ByteBuffer池，配合{@link RedisClient#get(byte[], ByteBuffer)}等ByteBuffer接口使用：
+ * 按2的幂分级（minCapacity ~ maxCapacity），每级最多缓存maxBuffersPerClass个；
+ * 超过maxCapacity的请求直接分配，归还时丢弃。稳定状态下读写二进制值几乎不再分配缓冲区。
+ *
+ * <pre>
+ * ByteBuffer buffer = pool.acquire(8192);
+ * try {
+ *     int length = redisClient.get(key, buffer);
+ *     ...
+ * } finally {
+ *     pool.release(buffer);
+ * }
+ * </pre>
+ *
+ * @author BurningIce
+ *
+ */
+public class RedisBufferPool {
+	private final static int DEFAULT_MIN_CAPACITY = 1024;
+	private final static int DEFAULT_MAX_CAPACITY = 1024 * 1024;
+	private final static int DEFAULT_MAX_BUFFERS_PER_CLASS = 64;
+	private final boolean direct;
+	private final int minShift;
+	private final int maxCapacity;
+	private final int maxBuffersPerClass;
+	private final ConcurrentLinkedQueue<ByteBuffer>[] freeBuffers;
+	private final AtomicInteger[] freeCounts;
+
+	public RedisBufferPool() {
+		this(false, DEFAULT_MIN_CAPACITY, DEFAULT_MAX_CAPACITY, DEFAULT_MAX_BUFFERS_PER_CLASS);
+	}
+
+	/**
+	 * @param direct 是否使用direct buffer（堆外内存）；heap buffer读取压缩值时可直接解压到其数组中
+	 * @param minCapacity 最小缓冲区大小，向上取2的幂
+	 * @param maxCapacity 缓存的最大缓冲区大小，向上取2的幂
+	 * @param maxBuffersPerClass 每个大小级别最多缓存的缓冲区数量
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public RedisBufferPool(boolean direct, int minCapacity, int maxCapacity, int maxBuffersPerClass) {
+		this.direct = direct;
+		this.minShift = shiftFor(Math.max(1, minCapacity));
+		int maxShift = Math.max(this.minShift, shiftFor(Math.max(1, maxCapacity)));
+		this.maxCapacity = 1 << maxShift;
+		this.maxBuffersPerClass = maxBuffersPerClass;
+		int classes = maxShift - this.minShift + 1;
+		this.freeBuffers = new ConcurrentLinkedQueue[classes];
+		this.freeCounts = new AtomicInteger[classes];
+		for(int i = 0; i < classes; ++i) {
+			this.freeBuffers[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+			this.freeCounts[i] = new AtomicInteger();
+		}
+	}
+
+	/**
+	 * @return 容量不小于capacity、已clear的缓冲区
+	 */
+	public ByteBuffer acquire(int capacity) {
+		if(capacity > this.maxCapacity)
+			return this.allocate(capacity);
+
+		int index = Math.max(0, shiftFor(capacity) - this.minShift);
+		ByteBuffer buffer = this.freeBuffers[index].poll();
+		if(buffer == null)
+			return this.allocate(1 << (index + this.minShift));
+
+		this.freeCounts[index].decrementAndGet();
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * 归还缓冲区，归还后调用方不能再使用该缓冲区（包括由其slice/duplicate得到的缓冲区）
+	 */
+	public void release(ByteBuffer buffer) {
+		if(buffer == null || buffer.isDirect() != this.direct)
+			return;
+
+		int capacity = buffer.capacity();
+		if(capacity > this.maxCapacity || Integer.bitCount(capacity) != 1)
+			return;
+
+		int index = shiftFor(capacity) - this.minShift;
+		if(index < 0)
+			return;
+
+		if(this.freeCounts[index].incrementAndGet() > this.maxBuffersPerClass) {
+			this.freeCounts[index].decrementAndGet();
+			return;
+		}
+		this.freeBuffers[index].offer(buffer);
+	}
+
+	private ByteBuffer allocate(int capacity) {
+		return this.direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+	}
+
+	/**
+	 * @return 不小于value的最小2的幂的指数
+	 */
+	private static int shiftFor(int value) {
+		return value <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(value - 1);
+	}
+}
@@ -0,0 +1,43 @@
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * RedisBufferPool按大小分级借出/归还，以及每级缓存数量上限
+ */
+public class RedisBufferPoolTest {
+
+    @Test
+    public void testBufferPool() {
+        RedisBufferPool pool = new RedisBufferPool(false, 1024, 65536, 2);
+        ByteBuffer buffer = pool.acquire(3000);
+        assertEquals(4096, buffer.capacity());
+        buffer.put((byte) 1);
+        pool.release(buffer);
+
+        ByteBuffer reused = pool.acquire(4000);
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(1024, pool.acquire(10).capacity());
+
+        // 超过maxCapacity的不缓存
+        ByteBuffer large = pool.acquire(100000);
+        pool.release(large);
+        assertNotSame(large, pool.acquire(100000));
+    }
+
+    @Test
+    public void testMaxBuffersPerClass() {
+        RedisBufferPool pool = new RedisBufferPool(true, 1024, 65536, 1);
+        ByteBuffer a = pool.acquire(1024);
+        ByteBuffer b = pool.acquire(1024);
+        assertTrue(a.isDirect());
+        pool.release(a);
+        pool.release(b);
+
+        assertSame(a, pool.acquire(1024));
+        assertNotSame(b, pool.acquire(1024));
+    }
+}
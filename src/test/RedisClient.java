@@ -4,6 +4,8 @@
 
 import redis.clients.jedis.Pipeline;
 
+import java.nio.ByteBuffer;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -28,6 +30,15 @@ public interface RedisClient {
 	 * @return
 	 */
 	public byte[] get(byte[] key);
+
+	/**
+	 * get到调用方提供的缓冲区（可使用{@link RedisBufferPool}复用），value写入target的position处并移动position；
+	 * 压缩的值直接解压到target中，不分配中间数组
+	 * @param key
+	 * @param target
+	 * @return value的长度，key不存在或失败时返回-1；target剩余空间不足时不写入（position不变），可按返回值准备足够大的缓冲区后重试
+	 */
+	public int get(byte[] key, ByteBuffer target);
 	
 	/**
 	 * get
@@ -87,9 +98,26 @@ public interface RedisClient {
 	 */
 	public void set(byte[] key, byte[] value, int expirationInSeconds);
 
+	/**
+	 * set value中position到limit之间的数据，写入后position移动到limit；
+	 * value为完整的heap buffer（position为0、limit等于数组长度）时直接使用其数组，不复制
+	 * @param key
+	 * @param value
+	 * @param expirationInSeconds expiration in seconds，小于等于0时不过期
+	 */
+	public void set(byte[] key, ByteBuffer value, int expirationInSeconds);
+
 	public void mset(String... keyValues);
 
 	public void mset(byte[]... keyValues);
+
+	/**
+	 * mset并为每个key设置相同的过期时间，在一次往返中完成（见{@link #incrByWithTtl(String, long, int)}）；
+	 * key数量超过mset批次大小时拆分为多批，与mset一样各批之间不是原子的
+	 * @param expirationInSeconds 过期时间（单位：秒），小于等于0时等同于mset
+	 * @param keyValues
+	 */
+	public void msetWithTtl(int expirationInSeconds, String... keyValues);
 	
 	/**
 	 * 设置过期时间
@@ -104,6 +132,56 @@ public interface RedisClient {
 	 * @param expirationInSeconds 过期时间（单位：秒）
 	 */
 	public void expire(byte[] key, int expirationInSeconds);	
+
+	/**
+	 * 批量删除，key数量超过mget批次大小时拆分为多批，在同一个连接上pipeline发送
+	 * @param keys
+	 * @return 删除的key数量
+	 */
+	public long del(String... keys);
+
+	/**
+	 * 批量删除，key数量超过mget批次大小时拆分为多批，在同一个连接上pipeline发送
+	 * @param keys
+	 * @return 删除的key数量
+	 */
+	public long del(byte[]... keys);
+
+	/**
+	 * 同{@link #del(String...)}，但使用UNLINK：value的内存由Redis在后台线程中释放，删除大key时不阻塞Redis；
+	 * Redis 4.0之前不支持UNLINK，此时使用DEL
+	 * @param keys
+	 * @return 删除的key数量
+	 */
+	public long unlink(String... keys);
+
+	/**
+	 * 为多个key设置相同的过期时间，在同一个连接上pipeline发送
+	 * @param keys
+	 * @param expirationInSeconds 过期时间（单位：秒），与EXPIRE相同，小于等于0时删除key
+	 * @return 设置成功（key存在）的数量
+	 */
+	public long expire(String[] keys, int expirationInSeconds);
+
+	/**
+	 * 基于SCAN删除匹配pattern的key，代替KEYS + DEL：每批（约count个）key以一次UNLINK删除，
+	 * 并按maxKeysPerSecond限速，大量删除时不会长时间阻塞Redis，也不会产生大量往返
+	 * @param pattern MATCH参数
+	 * @param count COUNT参数（每批大约删除的数量），应不大于maxKeysPerSecond
+	 * @param maxKeysPerSecond 每秒最多删除的key数量，小于等于0时不限速
+	 * @return 删除的key数量
+	 */
+	public long delByPattern(String pattern, int count, int maxKeysPerSecond);
+
+	/**
+	 * 基于SCAN为匹配pattern的key设置过期时间，分批pipeline发送并按maxKeysPerSecond限速（见{@link #delByPattern(String, int, int)}）
+	 * @param pattern MATCH参数
+	 * @param expirationInSeconds 过期时间（单位：秒）
+	 * @param count COUNT参数
+	 * @param maxKeysPerSecond 每秒最多处理的key数量，小于等于0时不限速
+	 * @return 设置成功的key数量
+	 */
+	public long expireByPattern(String pattern, int expirationInSeconds, int count, int maxKeysPerSecond);
 	
 	/**
 	 * 指定Key自增
@@ -168,6 +246,15 @@ public interface RedisClient {
 	 * @return
 	 */
 	public byte[] hget(byte[] key, byte[] field);
+
+	/**
+	 * hget到调用方提供的缓冲区，见{@link #get(byte[], ByteBuffer)}
+	 * @param key
+	 * @param field
+	 * @param target
+	 * @return value的长度，不存在或失败时返回-1；target剩余空间不足时不写入
+	 */
+	public int hget(byte[] key, byte[] field, ByteBuffer target);
 	
 	/**
 	 * hget
@@ -199,6 +286,16 @@ public interface RedisClient {
 
 
 	public void hmset(String key, Map<String, String> fieldAndValues);
+
+	/**
+	 * hset并设置整个hash的过期时间，在一次往返中完成（见{@link #incrByWithTtl(String, long, int)}）
+	 * @param key
+	 * @param field
+	 * @param value
+	 * @param expirationInSeconds 过期时间（单位：秒），小于等于0时不设置
+	 * @return 新增field时返回1，覆盖已有field时返回0
+	 */
+	public Long hsetWithTtl(String key, String field, String value, int expirationInSeconds);
 	
 
 	public void hmset(byte[] key, Map<byte[], byte[]> fieldAndValues);
@@ -217,18 +314,62 @@ public interface RedisClient {
 	 * @return
 	 */
 	public long hincrBy(byte[] key, byte[] field, long increment);
+
+	/**
+	 * 延迟累加：先在本地合并同一key的多次累加，周期性地批量写入Redis，不返回累加后的值；
+	 * 需要累加后的值时请使用{@link #incrBy(String, long)}。未开启计数器聚合时等同于同步incrBy
+	 * @param key
+	 * @param increment
+	 */
+	public void incrByDeferred(String key, long increment);
+
+	/**
+	 * incrBy并设置过期时间，在一次往返中原子完成（服务端缓存的Lua脚本，关闭脚本时使用pipeline中的MULTI/EXEC），
+	 * 每次调用都会重新设置过期时间
+	 * @param key
+	 * @param increment
+	 * @param expirationInSeconds 过期时间（单位：秒），小于等于0时不设置
+	 * @return 累加后的值
+	 */
+	public long incrByWithTtl(String key, long increment, int expirationInSeconds);
+
+	/**
+	 * 延迟累加hash field，见{@link #incrByDeferred(String, long)}
+	 * @param key
+	 * @param field
+	 * @param increment
+	 */
+	public void hincrByDeferred(String key, String field, long increment);
 	
 
 	public Long pfAdd(String key, String... elements);
 	
 	/**
-	 * 
+	 * 同{@link #pfAddWithTtl(String, int, String...)}
 	 * @param key
 	 * @param elements
 	 * @param expirationInSeconds 过期时间（单位：秒）
 	 * @return
 	 */
 	public Long pfAdd(String key, int expirationInSeconds, String... elements);
+
+	/**
+	 * pfAdd并设置过期时间，在一次往返中完成（见{@link #incrByWithTtl(String, long, int)}）
+	 * @param key
+	 * @param expirationInSeconds 过期时间（单位：秒），小于等于0时不设置
+	 * @param elements
+	 * @return 寄存器是否发生变化（1/0）
+	 */
+	public Long pfAddWithTtl(String key, int expirationInSeconds, String... elements);
+
+	/**
+	 * 延迟pfAdd：元素先在本地预聚合（去重，元素较多时累积为HyperLogLog寄存器），周期性地批量写入Redis并设置过期时间，
+	 * 不返回寄存器是否变化。未开启HyperLogLog聚合时等同于同步pfAdd
+	 * @param key
+	 * @param expirationInSeconds 过期时间（单位：秒），小于等于0时不设置
+	 * @param elements
+	 */
+	public void pfAddDeferred(String key, int expirationInSeconds, String... elements);
 	
 	/**
 	 * 
@@ -255,11 +396,59 @@ public interface RedisClient {
 	
 	/**
 	 * key查询
+	 * 注意：KEYS命令会阻塞Redis并一次性返回全部结果，key较多时请使用{@link #scan(String, int, ScanCallback)}
 	 * @param pattern
 	 * @return
 	 */
 	public Set<String> keys(final String pattern);
 
+	/**
+	 * 基于SCAN的key查询，分批回调，内存占用与count相当
+	 * @param pattern MATCH参数
+	 * @param count COUNT参数（每批大约返回的数量）
+	 * @param callback
+	 * @return 回调的key总数，因连接异常没有扫描完时返回-1
+	 */
+	public long scan(String pattern, int count, ScanCallback<String> callback);
+
+	/**
+	 * 基于SCAN的key查询，匹配任一pattern的key只回调一次；多个节点时各节点并行扫描，callback可能被并发调用，需自行保证线程安全
+	 * @param patterns MATCH参数
+	 * @param count COUNT参数
+	 * @param parallelism 最多同时扫描的游标数量
+	 * @param callback
+	 * @return 回调的key总数，因连接异常没有扫描完时返回-1
+	 */
+	public long scan(String[] patterns, int count, int parallelism, ScanCallback<String> callback);
+
+	/**
+	 * 基于SCAN的key迭代器，迭代时按需分批获取；连接异常时hasNext抛出JedisException
+	 * @param pattern MATCH参数
+	 * @param count COUNT参数
+	 * @return
+	 */
+	public Iterator<String> scanIterator(String pattern, int count);
+
+	/**
+	 * 基于HSCAN分批读取hash的field/value，内存占用与count相当；
+	 * 与HGETALL不同，大hash不会一次性阻塞Redis，也不会在客户端产生一个巨大的Map
+	 * @param key
+	 * @param count COUNT参数（每批大约返回的数量）
+	 * @param callback 返回false时停止读取
+	 * @return 回调的field总数，因连接异常没有读取完时返回-1
+	 */
+	public long hscan(String key, int count, ScanCallback<Map.Entry<String, String>> callback);
+
+	/**
+	 * 基于HSCAN读取多个hash，多个key并行读取（每个key一个游标、一个连接），callback可能被并发调用，需自行保证线程安全
+	 * @param keys
+	 * @param count COUNT参数
+	 * @param parallelism 最多同时读取的key数量
+	 * @param callback
+	 * @return 回调的field总数，任一key因连接异常没有读取完时返回-1
+	 */
+	public long hscan(String[] keys, int count, int parallelism, ScanCallback<Map.Entry<String, String>> callback);
+
 	/**
 	 * 返回key集合所有的元素.
 	 * @param key
@@ -267,5 +456,30 @@ public interface RedisClient {
      */
 	public Set<String> smembers(String key);
 
+	/**
+	 * 注意：返回Pipeline之前连接已经归还给连接池，之后使用该Pipeline会与其他借用者共用同一个连接，
+	 * 批量操作请使用{@link #executePipelined(PipelineCallback)}
+	 */
+	@Deprecated
 	public Pipeline pipelined();
+
+	/**
+	 * 在同一个连接上执行pipeline批量操作，回调期间独占该连接，回调返回后flush剩余命令并归还连接
+	 * @param callback
+	 * @return 回调的返回值，失败时返回null
+	 */
+	public <T> T executePipelined(PipelineCallback<T> callback);
+
+	/**
+	 * 在同一个连接上执行pipeline批量操作
+	 * @param flushSize 每写入flushSize条命令自动flush一次
+	 * @param callback
+	 * @return 回调的返回值，失败时返回null
+	 */
+	public <T> T executePipelined(int flushSize, PipelineCallback<T> callback);
+
+	/**
+	 * @return 是否已就绪（连接池已预热、连接已验证），可用于启动时的readiness检查
+	 */
+	public boolean isReady();
 }
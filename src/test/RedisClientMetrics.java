@@ -0,0 +1,209 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按命令统计的Redis客户端指标：
+ * 从连接池获取连接的等待时间、命令执行时间（纳秒）、数据大小（字节）直方图，以及调用次数、错误次数。
+ * 可随时通过{@link #snapshot()}获取累计快照，也可注册{@link RedisMetricsListener}定时接收区间快照。
+ *
+ * @author BurningIce
+ *
+ */
+public class RedisClientMetrics {
+	private final CommandMetrics[] commandMetrics;
+	private RedisMetricsListener listener;
+	private ScheduledExecutorService reporter;
+	private Map<RedisCommand, CommandSnapshot> lastReported;
+	private long lastReportTime;
+
+	RedisClientMetrics() {
+		RedisCommand[] commands = RedisCommand.values();
+		this.commandMetrics = new CommandMetrics[commands.length];
+		for(RedisCommand command : commands) {
+			this.commandMetrics[command.ordinal()] = new CommandMetrics();
+		}
+	}
+
+	void recordAcquire(RedisCommand command, long nanos) {
+		this.commandMetrics[command.ordinal()].acquireNanos.record(nanos);
+	}
+
+	void recordExecute(RedisCommand command, long nanos) {
+		CommandMetrics metrics = this.commandMetrics[command.ordinal()];
+		metrics.executeNanos.record(nanos);
+		metrics.calls.increment();
+	}
+
+	void recordPayload(RedisCommand command, long bytes) {
+		this.commandMetrics[command.ordinal()].payloadBytes.record(bytes);
+	}
+
+	void recordError(RedisCommand command) {
+		this.commandMetrics[command.ordinal()].errors.increment();
+	}
+
+	/**
+	 * @return 单个命令执行时间的累计快照
+	 */
+	LogLinearHistogram.Snapshot executeSnapshot(RedisCommand command) {
+		return this.commandMetrics[command.ordinal()].executeNanos.snapshot();
+	}
+
+	/**
+	 * @return 自启动以来各命令的累计指标（只包含有调用的命令）
+	 */
+	public Map<RedisCommand, CommandSnapshot> snapshot() {
+		Map<RedisCommand, CommandSnapshot> snapshot = new EnumMap<RedisCommand, CommandSnapshot>(RedisCommand.class);
+		for(RedisCommand command : RedisCommand.values()) {
+			CommandMetrics metrics = this.commandMetrics[command.ordinal()];
+			long calls = metrics.calls.sum();
+			long errors = metrics.errors.sum();
+			if(calls > 0L || errors > 0L) {
+				snapshot.put(command, new CommandSnapshot(calls, errors, metrics.acquireNanos.snapshot(),
+						metrics.executeNanos.snapshot(), metrics.payloadBytes.snapshot()));
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * 定时回调listener
+	 * @param listener
+	 * @param intervalMillis
+	 */
+	synchronized void startReporting(RedisMetricsListener listener, long intervalMillis) {
+		this.listener = listener;
+		this.lastReported = this.snapshot();
+		this.lastReportTime = System.currentTimeMillis();
+		this.reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "redis-metrics-reporter");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.reporter.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				report();
+			}
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	synchronized void shutdown() {
+		if(this.reporter != null) {
+			this.reporter.shutdownNow();
+			this.reporter = null;
+		}
+	}
+
+	private synchronized void report() {
+		Map<RedisCommand, CommandSnapshot> current = this.snapshot();
+		long now = System.currentTimeMillis();
+		Map<RedisCommand, CommandSnapshot> interval = new EnumMap<RedisCommand, CommandSnapshot>(RedisCommand.class);
+		for(Map.Entry<RedisCommand, CommandSnapshot> e : current.entrySet()) {
+			CommandSnapshot delta = e.getValue().minus(this.lastReported.get(e.getKey()));
+			if(delta.getCalls() > 0L || delta.getErrors() > 0L) {
+				interval.put(e.getKey(), delta);
+			}
+		}
+
+		long intervalMillis = now - this.lastReportTime;
+		this.lastReported = current;
+		this.lastReportTime = now;
+		try {
+			this.listener.onMetrics(interval, intervalMillis);
+		} catch(Throwable t) {
+			// ignore
+		}
+	}
+
+	private static class CommandMetrics {
+		private final LogLinearHistogram acquireNanos = new LogLinearHistogram();
+		private final LogLinearHistogram executeNanos = new LogLinearHistogram();
+		private final LogLinearHistogram payloadBytes = new LogLinearHistogram();
+		private final LongAdder calls = new LongAdder();
+		private final LongAdder errors = new LongAdder();
+	}
+
+	/**
+	 * 单个命令的指标快照
+	 */
+	public static class CommandSnapshot {
+		private final long calls;
+		private final long errors;
+		private final LogLinearHistogram.Snapshot acquireNanos;
+		private final LogLinearHistogram.Snapshot executeNanos;
+		private final LogLinearHistogram.Snapshot payloadBytes;
+
+		CommandSnapshot(long calls, long errors, LogLinearHistogram.Snapshot acquireNanos,
+				LogLinearHistogram.Snapshot executeNanos, LogLinearHistogram.Snapshot payloadBytes) {
+			this.calls = calls;
+			this.errors = errors;
+			this.acquireNanos = acquireNanos;
+			this.executeNanos = executeNanos;
+			this.payloadBytes = payloadBytes;
+		}
+
+		/**
+		 * @return 成功执行次数
+		 */
+		public long getCalls() {
+			return this.calls;
+		}
+
+		/**
+		 * @return 失败次数（包括获取连接失败）
+		 */
+		public long getErrors() {
+			return this.errors;
+		}
+
+		/**
+		 * @return 从连接池获取连接的等待时间（纳秒）
+		 */
+		public LogLinearHistogram.Snapshot getAcquireNanos() {
+			return this.acquireNanos;
+		}
+
+		/**
+		 * @return 命令执行时间，即网络往返+Redis处理时间（纳秒）
+		 */
+		public LogLinearHistogram.Snapshot getExecuteNanos() {
+			return this.executeNanos;
+		}
+
+		/**
+		 * @return 写入或读取的数据大小（字节），只有单值命令记录
+		 */
+		public LogLinearHistogram.Snapshot getPayloadBytes() {
+			return this.payloadBytes;
+		}
+
+		CommandSnapshot minus(CommandSnapshot previous) {
+			if(previous == null) {
+				return this;
+			}
+			return new CommandSnapshot(this.calls - previous.calls, this.errors - previous.errors,
+					this.acquireNanos.minus(previous.acquireNanos), this.executeNanos.minus(previous.executeNanos),
+					this.payloadBytes.minus(previous.payloadBytes));
+		}
+
+		@Override
+		public String toString() {
+			return "calls=" + this.calls + ", errors=" + this.errors
+					+ ", acquire[" + this.acquireNanos + "], execute[" + this.executeNanos
+					+ "], payload[" + this.payloadBytes + "]";
+		}
+	}
+}
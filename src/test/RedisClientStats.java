@@ -0,0 +1,210 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Redis客户端读写统计：按key首字符与操作类型预先分配LongAdder计数槽，统计路径上无锁、无对象分配；
+ * 计数只增不减，后台线程定时计算与上次同步值的差量，通过一次pipeline INCRBY同步到Redis，
+ * 同步失败时差量保留到下一次，不会丢失也不会阻塞业务线程。
+ * 基线按每条INCRBY的结果推进，单条命令出错时只有该key的差量留到下一次；
+ * 连接在命令发出后断开时无法确认哪些命令已执行，全部差量留到下一次，已执行的会被重复计入（至少一次）。
+ *
+ * 同步到Redis的key与原实现保持一致：getsof#、setsof#、sizeof#，以及加上key首字符的getsof#x等；
+ * 另外storedsizeof#为实际写入Redis的大小（开启压缩时为压缩后的大小），与sizeof#对比即为压缩节省的字节数。
+ *
+ * @author BurningIce
+ *
+ */
+class RedisClientStats {
+	final static int OP_GET = 0;
+	final static int OP_SET = 1;
+	final static int OP_SIZE = 2;
+	final static int OP_STORED_SIZE = 3;
+	private final static String[] OP_NAMES = { "getsof#", "setsof#", "sizeof#", "storedsizeof#" };
+	private final static int PREFIX_SLOTS = 256;			// 首字符为0~255时直接按字符下标定位
+	private final static int TOTAL_SLOT = PREFIX_SLOTS;		// 不区分首字符的总计
+	private final LongAdder[][] counters = new LongAdder[OP_NAMES.length][PREFIX_SLOTS + 1];
+	// 首字符大于255（如中文）时的计数，很少出现
+	private final ConcurrentHashMap<Character, LongAdder[]> extendedCounters = new ConcurrentHashMap<Character, LongAdder[]>();
+	// 上次成功同步到Redis时的累计值，仅在flush中访问
+	private final Map<String, Long> flushedValues = new HashMap<String, Long>();
+	private final JedisPool jedisPool;
+	private final long syncIntervalMillis;
+	private ScheduledExecutorService flusher;
+
+	RedisClientStats(JedisPool jedisPool, long syncIntervalMillis) {
+		this.jedisPool = jedisPool;
+		this.syncIntervalMillis = syncIntervalMillis;
+		for(int op = 0; op < OP_NAMES.length; ++op) {
+			for(int slot = 0; slot <= PREFIX_SLOTS; ++slot) {
+				this.counters[op][slot] = new LongAdder();
+			}
+		}
+	}
+
+	void start() {
+		this.flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "redis-stats-flusher");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.flusher.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				flush();
+			}
+		}, this.syncIntervalMillis, this.syncIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 停止后台同步，并同步最后一次
+	 */
+	void shutdown() {
+		if(this.flusher != null) {
+			this.flusher.shutdown();
+			try {
+				this.flusher.awaitTermination(this.syncIntervalMillis, TimeUnit.MILLISECONDS);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			this.flusher = null;
+		}
+
+		this.flush();
+	}
+
+	void recordGet(char prefix) {
+		this.increment(OP_GET, prefix, 1L);
+	}
+
+	/**
+	 * @param size 原始大小
+	 * @param storedSize 实际写入Redis的大小
+	 */
+	void recordSet(char prefix, int size, int storedSize) {
+		this.increment(OP_SET, prefix, 1L);
+		this.increment(OP_SIZE, prefix, size);
+		this.increment(OP_STORED_SIZE, prefix, storedSize);
+	}
+
+	/**
+	 * @return 当前各统计项的累计值（自客户端启动以来），key与同步到Redis的key相同
+	 */
+	Map<String, Long> snapshot() {
+		Map<String, Long> snapshot = new TreeMap<String, Long>();
+		for(int op = 0; op < OP_NAMES.length; ++op) {
+			for(int slot = 0; slot < PREFIX_SLOTS; ++slot) {
+				long value = this.counters[op][slot].sum();
+				if(value != 0L) {
+					snapshot.put(OP_NAMES[op] + (char)slot, Long.valueOf(value));
+				}
+			}
+			snapshot.put(OP_NAMES[op], Long.valueOf(this.counters[op][TOTAL_SLOT].sum()));
+
+			for(Map.Entry<Character, LongAdder[]> e : this.extendedCounters.entrySet()) {
+				long value = e.getValue()[op].sum();
+				if(value != 0L) {
+					snapshot.put(OP_NAMES[op] + e.getKey().charValue(), Long.valueOf(value));
+				}
+			}
+		}
+
+		return snapshot;
+	}
+
+	private void increment(int op, char prefix, long value) {
+		if(prefix < PREFIX_SLOTS) {
+			this.counters[op][prefix].add(value);
+		} else {
+			this.extendedCounters(prefix)[op].add(value);
+		}
+		this.counters[op][TOTAL_SLOT].add(value);
+	}
+
+	private LongAdder[] extendedCounters(char prefix) {
+		Character key = Character.valueOf(prefix);
+		LongAdder[] adders = this.extendedCounters.get(key);
+		if(adders == null) {
+			adders = new LongAdder[OP_NAMES.length];
+			for(int op = 0; op < adders.length; ++op) {
+				adders[op] = new LongAdder();
+			}
+
+			LongAdder[] oldValue = this.extendedCounters.putIfAbsent(key, adders);
+			if(oldValue != null) {
+				adders = oldValue;
+			}
+		}
+		return adders;
+	}
+
+	/**
+	 * 将自上次同步以来的差量一次性pipeline INCRBY到Redis
+	 */
+	synchronized void flush() {
+		if(this.jedisPool == null)
+			return;
+
+		Map<String, Long> current = this.snapshot();
+		Map<String, Long> deltas = new HashMap<String, Long>();
+		for(Map.Entry<String, Long> e : current.entrySet()) {
+			Long flushed = this.flushedValues.get(e.getKey());
+			long delta = e.getValue().longValue() - (flushed == null ? 0L : flushed.longValue());
+			if(delta != 0L) {
+				deltas.put(e.getKey(), Long.valueOf(delta));
+			}
+		}
+
+		if(deltas.isEmpty()) {
+			return;
+		}
+
+		Jedis jedis = null;
+		try {
+			jedis = jedisPool.getResource();
+			Pipeline pipeline = jedis.pipelined();
+			Map<String, Response<Long>> responses = new HashMap<String, Response<Long>>(deltas.size() * 2);
+			for(Map.Entry<String, Long> e : deltas.entrySet()) {
+				responses.put(e.getKey(), pipeline.incrBy(e.getKey(), e.getValue().longValue()));
+			}
+			pipeline.sync();
+
+			// 命令成功后才推进基线，出错的（如key的值不是整数）差量留到下一次
+			for(Map.Entry<String, Response<Long>> e : responses.entrySet()) {
+				try {
+					e.getValue().get();
+					this.flushedValues.put(e.getKey(), current.get(e.getKey()));
+				} catch(JedisDataException ex) {
+//					logger.error("failed to sync stats " + e.getKey() + " to redis: " + ex.getMessage(), ex);
+				}
+			}
+		} catch(Throwable ex) {
+//			logger.error("failed to sync stats to redis: " + ex.getMessage(), ex);
+		} finally {
+			if(jedis != null) {
+				try {
+					jedis.close();
+				} catch(Throwable t) {
+//					logger.error("error to return redis resource to pool: " + t.getMessage(), t);
+				}
+			}
+		}
+	}
+}
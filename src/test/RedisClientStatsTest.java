@@ -0,0 +1,50 @@
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * RedisClientStats连接本地的RESP桩服务：同步差量，以及单条INCRBY出错时只重发该key的差量
+ */
+public class RedisClientStatsTest {
+
+    @Test
+    public void testFailedIncrementRetriedAlone() throws Exception {
+        RedisStubServer server = new RedisStubServer();
+        JedisPool pool = new JedisPool(new GenericObjectPoolConfig(), "127.0.0.1", server.port());
+        try {
+            Jedis jedis = pool.getResource();
+            try {
+                // 值不是整数，INCRBY返回错误
+                jedis.set("getsof#a", "x");
+            } finally {
+                jedis.close();
+            }
+
+            RedisClientStats stats = new RedisClientStats(pool, 60000L);
+            stats.recordGet('a');
+            stats.recordGet('b');
+            stats.flush();
+            assertEquals(3, server.commands("INCRBY").size());
+
+            jedis = pool.getResource();
+            try {
+                jedis.set("getsof#a", "0");
+                stats.recordGet('b');
+                stats.flush();
+                // 上次成功的getsof#与getsof#b只发送新增的差量，失败的getsof#a重发
+                assertEquals("1", jedis.get("getsof#a"));
+                assertEquals("2", jedis.get("getsof#b"));
+                assertEquals("3", jedis.get("getsof#"));
+            } finally {
+                jedis.close();
+            }
+            assertEquals(6, server.commands("INCRBY").size());
+        } finally {
+            pool.destroy();
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+/**
+ * 对象与Redis value（byte[]）之间的二进制编解码，见{@link TypedRedisClient}。
+ * 编码格式应保持向后兼容：新增字段只能追加在末尾，解码时通过{@link CodecReader#hasRemaining()}判断旧数据中是否存在该字段。
+ *
+ * @author BurningIce
+ *
+ */
+public interface RedisCodec<T> {
+	/**
+	 * @param value 非null
+	 * @param writer 已复位的writer，由调用方复用
+	 */
+	public void encode(T value, CodecWriter writer);
+
+	/**
+	 * @param reader
+	 * @return 解码后的对象
+	 * @throws IllegalArgumentException 数据不完整或格式错误
+	 */
+	public T decode(CodecReader reader);
+}
@@ -0,0 +1,86 @@
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * CodecWriter/CodecReader的varint与字符串编码、截断数据，以及AgentServerValueCodec的往返
+ */
+public class RedisCodecTest {
+
+    @Test
+    public void testVarints() {
+        int[] ints = { 0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1, Integer.MIN_VALUE };
+        long[] longs = { 0L, 1L, 1529000000000L, Long.MAX_VALUE, -1L, Long.MIN_VALUE };
+
+        CodecWriter writer = CodecWriter.get();
+        for (int value : ints) {
+            writer.writeVarInt(value).writeSignedVarInt(value);
+        }
+        for (long value : longs) {
+            writer.writeVarLong(value).writeSignedVarLong(value);
+        }
+
+        CodecReader reader = new CodecReader(writer.toByteArray());
+        for (int value : ints) {
+            assertEquals(value, reader.readVarInt());
+            assertEquals(value, reader.readSignedVarInt());
+        }
+        for (long value : longs) {
+            assertEquals(value, reader.readVarLong());
+            assertEquals(value, reader.readSignedVarLong());
+        }
+        assertFalse(reader.hasRemaining());
+
+        assertEquals(1, CodecWriter.get().writeVarInt(127).size());
+        assertEquals(1, CodecWriter.get().writeSignedVarInt(-64).size());
+    }
+
+    @Test
+    public void testStrings() {
+        CodecWriter writer = CodecWriter.get();
+        writer.writeString("host-1").writeString(null).writeString("").writeString("主机-1").writeBytes(new byte[] { 1, 2 });
+
+        CodecReader reader = new CodecReader(writer.toByteArray());
+        assertEquals("host-1", reader.readString());
+        assertNull(reader.readString());
+        assertEquals("", reader.readString());
+        assertEquals("主机-1", reader.readString());
+        assertArrayEquals(new byte[] { 1, 2 }, reader.readBytes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncated() {
+        byte[] data = CodecWriter.get().writeString("host-1").toByteArray();
+        new CodecReader(data, 0, data.length - 1).readString();
+    }
+
+    @Test
+    public void testAgentServerValue() throws Exception {
+        AgentServerValue value = new AgentServerValue("app-server-01.example.com", 1529000000000L, 1529000360000L, 300000);
+        value.setInstanceId(12345);
+        value.setServerId(678);
+        value.setCtime(1528999990000L);
+        value.setApplicationId(42);
+
+        TypedRedisClient<AgentServerValue> client = new TypedRedisClient<AgentServerValue>(null, AgentServerValueCodec.INSTANCE);
+        byte[] encoded = client.encode(value);
+        AgentServerValue decoded = client.decode(encoded);
+        assertEquals(value, decoded);
+        assertEquals(value.getInitAgentTime(), decoded.getInitAgentTime());
+        assertEquals(value.getLatestActivity(), decoded.getLatestActivity());
+        assertEquals(value.getMinDelayTime(), decoded.getMinDelayTime());
+        assertEquals(value.getCtime(), decoded.getCtime());
+        assertEquals(value.getApplicationId(), decoded.getApplicationId());
+
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(serialized);
+        out.writeObject(value);
+        out.close();
+        assertTrue(encoded.length * 4 < serialized.size());
+
+        assertNull(client.decode(new byte[] { 9 }));
+    }
+}
@@ -0,0 +1,19 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+/**
+ * RedisClient发出的命令，用于按命令分别统计
+ *
+ * @author BurningIce
+ *
+ */
+public enum RedisCommand {
+	GET, MGET, SET, SETEX, MSET, EXPIRE, DEL, UNLINK,
+	INCR, INCRBY, DECR, DECRBY,
+	HGET, HMGET, HSET, HMSET, HGETALL, HINCRBY,
+	PFADD, PFCOUNT, PFMERGE,
+	SADD, SMEMBERS, KEYS,
+	INCRBY_EXPIRE, HSET_EXPIRE, PFADD_EXPIRE, MSET_EXPIRE,
+	PIPELINE, COALESCED_READ
+}
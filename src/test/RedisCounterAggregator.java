@@ -0,0 +1,109 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import java.util.*;
+
+/**
+ * 计数器写缓冲（write-behind）：incrBy/hincrBy先在本地按key分段累加，
+ * 后台线程每flushIntervalMillis毫秒（或待写入的key数量达到maxPendingKeys时立即）将累加值通过一次pipeline INCRBY/HINCRBY写入Redis。
+ * 同一个key在一个周期内的多次累加只产生一条命令。
+ * 分段、flush、写入失败时合并回本地以及shutdown见{@link RedisWriteBehindAggregator}；
+ * 连接在命令发出后断开时，重试可能导致重复计入。
+ *
+ * @author BurningIce
+ *
+ */
+class RedisCounterAggregator extends RedisWriteBehindAggregator<RedisCounterAggregator.CounterKey, long[], Long> {
+	/**
+	 * @param redisClient 用于写入的客户端（通过executePipelined）
+	 * @param flushIntervalMillis 最长写入延迟
+	 * @param maxPendingKeys 待写入的key数量达到该值时立即写入
+	 */
+	RedisCounterAggregator(RedisClient redisClient, long flushIntervalMillis, int maxPendingKeys) {
+		super(redisClient, "counter", flushIntervalMillis, maxPendingKeys);
+	}
+
+	void incrBy(String key, long increment) {
+		this.add(new CounterKey(key, null), Long.valueOf(increment));
+	}
+
+	void hincrBy(String key, String field, long increment) {
+		this.add(new CounterKey(key, field), Long.valueOf(increment));
+	}
+
+	@Override
+	protected long[] accumulate(long[] pending, Long increment) {
+		if(pending == null)
+			return new long[] { increment.longValue() };
+
+		pending[0] += increment.longValue();
+		return pending;
+	}
+
+	@Override
+	protected long[] merge(long[] pending, long[] failed) {
+		pending[0] += failed[0];
+		return pending;
+	}
+
+	@Override
+	protected void writeDirectly(CounterKey counterKey, Long increment) {
+		if(counterKey.field == null) {
+			this.redisClient.incrBy(counterKey.key, increment.longValue());
+		} else {
+			this.redisClient.hincrBy(counterKey.key, counterKey.field, increment.longValue());
+		}
+	}
+
+	@Override
+	protected boolean write(final Map<CounterKey, long[]> pending) {
+		Boolean written = this.redisClient.executePipelined(pending.size() + 1, new PipelineCallback<Boolean>() {
+			@Override
+			public Boolean doInPipeline(RedisPipeline pipeline) {
+				for(Map.Entry<CounterKey, long[]> e : pending.entrySet()) {
+					CounterKey counterKey = e.getKey();
+					long increment = e.getValue()[0];
+					if(increment == 0L)
+						continue;
+
+					if(counterKey.field == null) {
+						pipeline.incrBy(counterKey.key, increment);
+					} else {
+						pipeline.hincrBy(counterKey.key, counterKey.field, increment);
+					}
+				}
+				return Boolean.TRUE;
+			}
+		});
+		return written != null;
+	}
+
+	static final class CounterKey {
+		private final String key;
+		private final String field;
+		private final int hash;
+
+		CounterKey(String key, String field) {
+			this.key = key;
+			this.field = field;
+			this.hash = 31 * key.hashCode() + (field == null ? 0 : field.hashCode());
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(this == obj)
+				return true;
+			if(!(obj instanceof CounterKey))
+				return false;
+
+			CounterKey other = (CounterKey)obj;
+			return this.key.equals(other.key) && (this.field == null ? other.field == null : this.field.equals(other.field));
+		}
+	}
+}
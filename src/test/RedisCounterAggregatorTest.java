@@ -0,0 +1,91 @@
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * RedisCounterAggregator：多线程累加后写入InMemoryRedisClient的结果、写入失败后的重试以及shutdown之后的行为
+ */
+public class RedisCounterAggregatorTest {
+
+    @Test
+    public void testConcurrentIncrements() throws Exception {
+        RecordingRedisClient redis = new RecordingRedisClient();
+        final RedisCounterAggregator aggregator = new RedisCounterAggregator(redis, 60000L, 100000);
+        final int threads = 8;
+        final int increments = 10000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; ++t) {
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < increments; ++i) {
+                        aggregator.incrBy("counter:" + (i % 10), 1L);
+                        aggregator.hincrBy("hash", "f" + (i % 3), 2L);
+                        if (i % 1000 == 0) {
+                            aggregator.flush();
+                        }
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        done.await();
+        assertTrue(aggregator.flush());
+
+        for (int i = 0; i < 10; ++i) {
+            assertEquals(String.valueOf(threads * increments / 10), redis.get("counter:" + i));
+        }
+        long hashTotal = Long.parseLong(redis.hget("hash", "f0")) + Long.parseLong(redis.hget("hash", "f1")) + Long.parseLong(redis.hget("hash", "f2"));
+        assertEquals(2L * threads * increments, hashTotal);
+        assertEquals(0, aggregator.getPendingKeys());
+    }
+
+    @Test
+    public void testFailedFlushIsRetried() {
+        RecordingRedisClient redis = new RecordingRedisClient();
+        redis.failPipelines(1);
+        RedisCounterAggregator aggregator = new RedisCounterAggregator(redis, 60000L, 100000);
+        aggregator.incrBy("a", 5L);
+        aggregator.incrBy("a", 7L);
+
+        assertFalse(aggregator.flush());
+        assertEquals(1, aggregator.getPendingKeys());
+        aggregator.incrBy("a", 1L);
+
+        // shutdown时写入剩余的累加值
+        aggregator.shutdown();
+        assertEquals("13", redis.get("a"));
+        assertEquals(2, redis.getPipelines());
+    }
+
+    @Test
+    public void testIncrementAfterShutdown() {
+        RecordingRedisClient redis = new RecordingRedisClient();
+        RedisCounterAggregator aggregator = new RedisCounterAggregator(redis, 60000L, 100000);
+        aggregator.incrBy("a", 1L);
+        assertTrue(aggregator.shutdown());
+
+        // shutdown之后直接写入，不再留在本地
+        aggregator.incrBy("a", 2L);
+        aggregator.hincrBy("h", "f", 3L);
+        assertEquals("3", redis.get("a"));
+        assertEquals("3", redis.hget("h", "f"));
+        assertEquals(0, aggregator.getPendingKeys());
+        assertEquals(1, redis.getPipelines());
+    }
+
+    @Test
+    public void testFailedShutdownReported() {
+        RecordingRedisClient redis = new RecordingRedisClient();
+        redis.failPipelines(1);
+        RedisCounterAggregator aggregator = new RedisCounterAggregator(redis, 60000L, 100000);
+        aggregator.incrBy("a", 1L);
+        aggregator.hincrBy("h", "f", 1L);
+
+        assertFalse(aggregator.shutdown());
+        assertEquals(2, aggregator.getDroppedKeys());
+        assertEquals(0, aggregator.getPendingKeys());
+    }
+}
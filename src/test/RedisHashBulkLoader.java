@@ -0,0 +1,223 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 超大hash批量写入：将field拆分为按数量（maxFieldsPerChunk）和大小（maxBytesPerChunk）限制的多批HMSET，
+ * 在同一个连接上pipeline发送（通过{@link RedisClient#executePipelined(int, PipelineCallback)}，每chunksInFlight批flush一次），
+ * 避免单条HMSET过大阻塞Redis或超出client query buffer。可选在写入后设置过期时间。
+ * 各批次不是原子写入：写入过程中读取到的是部分field，写入失败时已发送的批次不会回滚。
+ *
+ * <pre>
+ * RedisHashBulkLoader loader = new RedisHashBulkLoader(redisClient);
+ * RedisHashBulkLoader.LoadResult result = loader.load("BIG_DATA", fields, 3600);
+ * </pre>
+ *
+ * @author BurningIce
+ *
+ */
+public class RedisHashBulkLoader {
+	private final static int DEFAULT_MAX_FIELDS_PER_CHUNK = 1000;
+	private final static int DEFAULT_MAX_BYTES_PER_CHUNK = 1024 * 1024;
+	private final static int DEFAULT_CHUNKS_IN_FLIGHT = 16;
+	private final RedisClient redisClient;
+	private int maxFieldsPerChunk = DEFAULT_MAX_FIELDS_PER_CHUNK;
+	private int maxBytesPerChunk = DEFAULT_MAX_BYTES_PER_CHUNK;
+	private int chunksInFlight = DEFAULT_CHUNKS_IN_FLIGHT;
+
+	public RedisHashBulkLoader(RedisClient redisClient) {
+		this.redisClient = redisClient;
+	}
+
+	/**
+	 * @param maxFieldsPerChunk 单条HMSET最多field数量
+	 */
+	public void setMaxFieldsPerChunk(int maxFieldsPerChunk) {
+		this.maxFieldsPerChunk = Math.max(1, maxFieldsPerChunk);
+	}
+
+	/**
+	 * @param maxBytesPerChunk 单条HMSET中field和value的最大总长度（String按字符数估算），单个field超出时独立成一批
+	 */
+	public void setMaxBytesPerChunk(int maxBytesPerChunk) {
+		this.maxBytesPerChunk = Math.max(1, maxBytesPerChunk);
+	}
+
+	/**
+	 * @param chunksInFlight 同时在途（已发送未响应）的最多批次数量
+	 */
+	public void setChunksInFlight(int chunksInFlight) {
+		this.chunksInFlight = Math.max(1, chunksInFlight);
+	}
+
+	/**
+	 * @param expirationInSeconds 写入全部field后设置的过期时间（单位：秒），小于等于0时不设置
+	 */
+	public LoadResult load(String key, Map<String, String> fieldAndValues, int expirationInSeconds) {
+		return this.load(key, fieldAndValues.entrySet().iterator(), expirationInSeconds);
+	}
+
+	/**
+	 * 逐个读取fieldAndValues写入，不需要一次性在内存中构造整个hash
+	 * @param expirationInSeconds 写入全部field后设置的过期时间（单位：秒），小于等于0时不设置
+	 */
+	public LoadResult load(final String key, final Iterator<Map.Entry<String, String>> fieldAndValues, final int expirationInSeconds) {
+		final LoadResult result = new LoadResult();
+		long startTime = System.nanoTime();
+		Boolean loaded = this.redisClient.executePipelined(this.chunksInFlight, new PipelineCallback<Boolean>() {
+			@Override
+			public Boolean doInPipeline(RedisPipeline pipeline) {
+				Map<String, String> chunk = new HashMap<String, String>();
+				long chunkBytes = 0L;
+				while(fieldAndValues.hasNext()) {
+					Map.Entry<String, String> e = fieldAndValues.next();
+					int bytes = e.getKey().length() + e.getValue().length();
+					if(!chunk.isEmpty() && (chunk.size() >= maxFieldsPerChunk || chunkBytes + bytes > maxBytesPerChunk)) {
+						pipeline.hmset(key, chunk);
+						result.addChunk(chunk.size(), chunkBytes);
+						chunk = new HashMap<String, String>();
+						chunkBytes = 0L;
+					}
+
+					chunk.put(e.getKey(), e.getValue());
+					chunkBytes += bytes;
+				}
+
+				if(!chunk.isEmpty()) {
+					pipeline.hmset(key, chunk);
+					result.addChunk(chunk.size(), chunkBytes);
+				}
+
+				if(expirationInSeconds > 0) {
+					pipeline.expire(key, expirationInSeconds);
+				}
+				return Boolean.TRUE;
+			}
+		});
+
+		result.finish(loaded != null, System.nanoTime() - startTime);
+		return result;
+	}
+
+	/**
+	 * byte[]版本，见{@link #load(String, Iterator, int)}
+	 */
+	public LoadResult load(byte[] key, Map<byte[], byte[]> fieldAndValues, int expirationInSeconds) {
+		return this.load(key, fieldAndValues.entrySet().iterator(), expirationInSeconds);
+	}
+
+	/**
+	 * byte[]版本，见{@link #load(String, Iterator, int)}
+	 */
+	public LoadResult load(final byte[] key, final Iterator<Map.Entry<byte[], byte[]>> fieldAndValues, final int expirationInSeconds) {
+		final LoadResult result = new LoadResult();
+		long startTime = System.nanoTime();
+		Boolean loaded = this.redisClient.executePipelined(this.chunksInFlight, new PipelineCallback<Boolean>() {
+			@Override
+			public Boolean doInPipeline(RedisPipeline pipeline) {
+				Map<byte[], byte[]> chunk = new HashMap<byte[], byte[]>();
+				long chunkBytes = 0L;
+				while(fieldAndValues.hasNext()) {
+					Map.Entry<byte[], byte[]> e = fieldAndValues.next();
+					int bytes = e.getKey().length + e.getValue().length;
+					if(!chunk.isEmpty() && (chunk.size() >= maxFieldsPerChunk || chunkBytes + bytes > maxBytesPerChunk)) {
+						pipeline.hmset(key, chunk);
+						result.addChunk(chunk.size(), chunkBytes);
+						chunk = new HashMap<byte[], byte[]>();
+						chunkBytes = 0L;
+					}
+
+					chunk.put(e.getKey(), e.getValue());
+					chunkBytes += bytes;
+				}
+
+				if(!chunk.isEmpty()) {
+					pipeline.hmset(key, chunk);
+					result.addChunk(chunk.size(), chunkBytes);
+				}
+
+				if(expirationInSeconds > 0) {
+					pipeline.expire(key, expirationInSeconds);
+				}
+				return Boolean.TRUE;
+			}
+		});
+
+		result.finish(loaded != null, System.nanoTime() - startTime);
+		return result;
+	}
+
+	/**
+	 * 一次批量写入的结果与吞吐量
+	 */
+	public static class LoadResult {
+		private boolean succeeded;
+		private long fields;
+		private long bytes;
+		private int chunks;
+		private long elapsedNanos;
+
+		void addChunk(int fields, long bytes) {
+			this.fields += fields;
+			this.bytes += bytes;
+			this.chunks++;
+		}
+
+		void finish(boolean succeeded, long elapsedNanos) {
+			this.succeeded = succeeded;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		/**
+		 * @return 所有批次是否都已发送并收到响应
+		 */
+		public boolean isSucceeded() {
+			return this.succeeded;
+		}
+
+		/**
+		 * @return 已发送的field数量
+		 */
+		public long getFields() {
+			return this.fields;
+		}
+
+		/**
+		 * @return 已发送的field和value总长度
+		 */
+		public long getBytes() {
+			return this.bytes;
+		}
+
+		/**
+		 * @return 已发送的HMSET批次数量
+		 */
+		public int getChunks() {
+			return this.chunks;
+		}
+
+		public long getElapsedMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(this.elapsedNanos);
+		}
+
+		public double getFieldsPerSecond() {
+			return this.elapsedNanos <= 0L ? 0.0 : this.fields * 1e9 / this.elapsedNanos;
+		}
+
+		public double getBytesPerSecond() {
+			return this.elapsedNanos <= 0L ? 0.0 : this.bytes * 1e9 / this.elapsedNanos;
+		}
+
+		@Override
+		public String toString() {
+			return (this.succeeded ? "loaded " : "failed after ") + this.fields + " fields (" + this.bytes + " bytes) in "
+					+ this.chunks + " chunks, " + this.getElapsedMillis() + "ms, "
+					+ Math.round(this.getFieldsPerSecond()) + " fields/s, " + Math.round(this.getBytesPerSecond() / 1024.0) + " KB/s";
+		}
+	}
+}
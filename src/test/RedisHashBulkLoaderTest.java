@@ -0,0 +1,82 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * RedisHashBulkLoader的分批规则：写入InMemoryRedisClient，按记录下的HMSET检查每批的field数量
+ */
+public class RedisHashBulkLoaderTest {
+
+    @SuppressWarnings("unchecked")
+    private static List<Integer> chunkSizes(RecordingRedisClient redis) {
+        List<Integer> chunkSizes = new ArrayList<Integer>();
+        for (int i = 0; i < redis.commands.size(); ++i) {
+            if (redis.commands.get(i).equals("hmset")) {
+                chunkSizes.add(((Map<String, String>) redis.arguments.get(i)[1]).size());
+            }
+        }
+        return chunkSizes;
+    }
+
+    @Test
+    public void testChunkByFieldCount() {
+        Map<String, String> fields = new LinkedHashMap<String, String>();
+        for (int i = 0; i < 10500; ++i) {
+            fields.put("f" + i, "v" + i);
+        }
+
+        RecordingRedisClient redis = new RecordingRedisClient();
+        RedisHashBulkLoader loader = new RedisHashBulkLoader(redis);
+        RedisHashBulkLoader.LoadResult result = loader.load("BIG_DATA", fields, 3600);
+
+        assertTrue(result.isSucceeded());
+        assertEquals(10500L, result.getFields());
+        assertEquals(11, result.getChunks());
+        assertEquals(Integer.valueOf(500), chunkSizes(redis).get(10));
+        assertEquals(fields, redis.hgetAll("BIG_DATA"));
+        assertEquals(3600, redis.lastArguments("expire")[1]);
+        assertEquals(16, redis.getLastFlushSize());
+        redis.destroy();
+    }
+
+    @Test
+    public void testChunkByBytes() {
+        Map<String, String> fields = new LinkedHashMap<String, String>();
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 400; ++i) {
+            big.append('x');
+        }
+        for (int i = 0; i < 10; ++i) {
+            fields.put("f" + i, big.toString());
+        }
+
+        RecordingRedisClient redis = new RecordingRedisClient();
+        RedisHashBulkLoader loader = new RedisHashBulkLoader(redis);
+        loader.setMaxBytesPerChunk(1000);
+        RedisHashBulkLoader.LoadResult result = loader.load("k", fields, 0);
+
+        // 每个field约402字节，每批最多2个
+        assertEquals(5, result.getChunks());
+        assertEquals(10, redis.hgetAll("k").size());
+        assertNull(redis.lastArguments("expire"));
+        assertTrue(result.toString().startsWith("loaded 10 fields"));
+        redis.destroy();
+    }
+
+    @Test
+    public void testFailedLoad() {
+        RecordingRedisClient redis = new RecordingRedisClient();
+        redis.failPipelines(1);
+        Map<String, String> fields = new LinkedHashMap<String, String>();
+        fields.put("f", "v");
+
+        assertFalse(new RedisHashBulkLoader(redis).load("k", fields, 0).isSucceeded());
+        assertTrue(redis.hgetAll("k").isEmpty());
+        redis.destroy();
+    }
+}
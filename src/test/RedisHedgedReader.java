@@ -0,0 +1,186 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 只读命令的截止时间与对冲请求（hedged request）：
+ * 读请求在独立的线程中执行，调用方最多等待deadlineMillis毫秒（与socket timeout无关），超时后放弃该请求；
+ * 开启对冲时，如果第一次请求在该命令最近的p95执行时间内没有返回（或已失败），在另一个连接上再发送一次，取先返回的结果。
+ * 返回、超时或调用方线程被中断时取消（cancel(true)）其余未完成的请求：还在等待连接的请求不再发送，
+ * 已在socket上阻塞的请求不响应中断，在后台继续执行直到返回或socket超时，之后自行归还连接。
+ * p95每隔REFRESH_INTERVAL根据该区间内的执行时间重新计算，样本不足MIN_SAMPLES时沿用上一次的值，还没有值时不对冲。
+ * 执行线程已满时在调用方线程中直接执行（没有截止时间和对冲）。
+ *
+ * @author BurningIce
+ *
+ */
+class RedisHedgedReader {
+	private final static long REFRESH_INTERVAL = TimeUnit.SECONDS.toNanos(1L);
+	private final static long MIN_SAMPLES = 100L;
+	private final static double HEDGE_PERCENTILE = 95.0;
+	private final RedisClientMetrics metrics;
+	private final long deadlineNanos;
+	private final boolean hedgingEnabled;
+	private final long minHedgeDelayNanos;
+	private final ThreadPoolExecutor executor;
+	private final HedgeDelay[] hedgeDelays;
+	private final LongAdder hedgedReads = new LongAdder();
+	private final LongAdder deadlineExceeded = new LongAdder();
+
+	/**
+	 * @param metrics 用于计算p95，为null时不对冲
+	 * @param deadlineMillis 单次读的最长等待时间，小于等于0时不限制
+	 * @param hedgingEnabled 是否开启对冲请求
+	 * @param minHedgeDelayMicros 对冲延迟的下限，避免p95很低时成倍增加请求
+	 * @param maxThreads 执行读请求的最多线程数量
+	 */
+	RedisHedgedReader(RedisClientMetrics metrics, long deadlineMillis, boolean hedgingEnabled, long minHedgeDelayMicros, int maxThreads) {
+		this.metrics = metrics;
+		this.deadlineNanos = deadlineMillis > 0L ? TimeUnit.MILLISECONDS.toNanos(deadlineMillis) : Long.MAX_VALUE;
+		this.hedgingEnabled = hedgingEnabled && metrics != null;
+		this.minHedgeDelayNanos = TimeUnit.MICROSECONDS.toNanos(minHedgeDelayMicros);
+		this.hedgeDelays = new HedgeDelay[RedisCommand.values().length];
+		for(int i = 0; i < this.hedgeDelays.length; ++i) {
+			this.hedgeDelays[i] = new HedgeDelay();
+		}
+
+		final AtomicInteger threadIndex = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(0, Math.max(1, maxThreads), 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "redis-hedged-read-" + threadIndex.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	void shutdown() {
+		this.executor.shutdown();
+	}
+
+	/**
+	 * @return 发出了对冲请求的读次数
+	 */
+	long getHedgedReads() {
+		return this.hedgedReads.sum();
+	}
+
+	/**
+	 * @return 超过截止时间而放弃的读次数
+	 */
+	long getDeadlineExceeded() {
+		return this.deadlineExceeded.sum();
+	}
+
+	/**
+	 * @param primary 第一次请求
+	 * @param hedge 对冲请求，应使用另一个连接
+	 * @throws TimeoutException 超过截止时间
+	 * @throws Exception 所有请求都失败时，最后一次失败的异常
+	 */
+	<T> T read(RedisCommand command, Callable<T> primary, Callable<T> hedge) throws Exception {
+		long startTime = System.nanoTime();
+		ExecutorCompletionService<T> completionService = new ExecutorCompletionService<T>(this.executor);
+		List<Future<T>> futures = new ArrayList<Future<T>>(2);
+		try {
+			futures.add(completionService.submit(primary));
+		} catch(RejectedExecutionException ex) {
+			return primary.call();
+		}
+
+		try {
+			long hedgeDelay = this.hedgingEnabled ? this.hedgeDelayNanos(command) : 0L;
+			boolean hedged = hedgeDelay <= 0L;
+			int inFlight = 1;
+			Throwable failure = null;
+			while(true) {
+				long waitNanos = this.deadlineNanos - (System.nanoTime() - startTime);
+				if(!hedged) {
+					waitNanos = Math.min(waitNanos, hedgeDelay - (System.nanoTime() - startTime));
+				}
+
+				Future<T> done;
+				try {
+					done = waitNanos > 0L ? completionService.poll(waitNanos, TimeUnit.NANOSECONDS) : completionService.poll();
+				} catch(InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw ex;
+				}
+
+				if(done != null) {
+					inFlight--;
+					try {
+						return done.get();
+					} catch(ExecutionException ex) {
+						failure = ex.getCause();
+					}
+				} else if(System.nanoTime() - startTime >= this.deadlineNanos) {
+					this.deadlineExceeded.increment();
+					throw new TimeoutException("redis " + command + " exceeded deadline of " + TimeUnit.NANOSECONDS.toMillis(this.deadlineNanos) + "ms");
+				}
+
+				// 到达对冲延迟或第一次请求已失败时发送对冲请求
+				if(!hedged && (done == null || inFlight == 0)) {
+					hedged = true;
+					try {
+						futures.add(completionService.submit(hedge));
+						inFlight++;
+						this.hedgedReads.increment();
+					} catch(RejectedExecutionException ex) {
+						// 线程已满，只等待第一次请求
+					}
+				}
+
+				if(inFlight == 0) {
+					throw failure instanceof Exception ? (Exception)failure : new ExecutionException(failure);
+				}
+			}
+		} finally {
+			// 已完成的请求cancel不起作用
+			for(Future<T> future : futures) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	private long hedgeDelayNanos(RedisCommand command) {
+		HedgeDelay hedgeDelay = this.hedgeDelays[command.ordinal()];
+		long now = System.nanoTime();
+		if(now - hedgeDelay.refreshTime >= REFRESH_INTERVAL) {
+			synchronized(hedgeDelay) {
+				if(now - hedgeDelay.refreshTime >= REFRESH_INTERVAL) {
+					LogLinearHistogram.Snapshot snapshot = this.metrics.executeSnapshot(command);
+					LogLinearHistogram.Snapshot interval = snapshot.minus(hedgeDelay.lastSnapshot);
+					if(interval.getCount() >= MIN_SAMPLES) {
+						hedgeDelay.delayNanos = Math.max(this.minHedgeDelayNanos, interval.getValueAtPercentile(HEDGE_PERCENTILE));
+						hedgeDelay.lastSnapshot = snapshot;
+					}
+					hedgeDelay.refreshTime = now;
+				}
+			}
+		}
+		return hedgeDelay.delayNanos;
+	}
+
+	private static final class HedgeDelay {
+		private volatile long refreshTime = System.nanoTime() - REFRESH_INTERVAL;
+		private volatile long delayNanos;
+		private LogLinearHistogram.Snapshot lastSnapshot;
+	}
+}
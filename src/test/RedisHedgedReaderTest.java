@@ -0,0 +1,145 @@
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+/**
+ * RedisHedgedReader：以sleep模拟卡住的连接，检查对冲读取的时机、截止时间与取消
+ */
+public class RedisHedgedReaderTest {
+
+    private static Callable<String> answer(final String value, final long delayMillis) {
+        return new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                Thread.sleep(delayMillis);
+                return value;
+            }
+        };
+    }
+
+    /**
+     * 阻塞直到被中断，中断时countDown
+     */
+    private static Callable<String> stalled(final CountDownLatch interrupted) {
+        return new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                try {
+                    Thread.sleep(10000L);
+                } catch (InterruptedException ex) {
+                    interrupted.countDown();
+                    throw ex;
+                }
+                return "stalled";
+            }
+        };
+    }
+
+    private static RedisClientMetrics metricsWithP95(long nanos) {
+        RedisClientMetrics metrics = new RedisClientMetrics();
+        for (int i = 0; i < 200; ++i) {
+            metrics.recordExecute(RedisCommand.GET, nanos);
+        }
+        return metrics;
+    }
+
+    @Test
+    public void testHedgeAfterP95() throws Exception {
+        RedisHedgedReader reader = new RedisHedgedReader(metricsWithP95(2000000L), 0L, true, 1000L, 4);
+        long startTime = System.nanoTime();
+        String value = reader.read(RedisCommand.GET, answer("stalled", 2000L), answer("hedge", 0L));
+        long elapsedMillis = (System.nanoTime() - startTime) / 1000000L;
+
+        assertEquals("hedge", value);
+        assertTrue("elapsed " + elapsedMillis + "ms", elapsedMillis < 1000L);
+        assertEquals(1L, reader.getHedgedReads());
+        reader.shutdown();
+    }
+
+    @Test
+    public void testNoHedgeWhenFastEnough() throws Exception {
+        RedisHedgedReader reader = new RedisHedgedReader(metricsWithP95(200000000L), 0L, true, 1000L, 4);
+        assertEquals("primary", reader.read(RedisCommand.GET, answer("primary", 10L), answer("hedge", 0L)));
+        assertEquals(0L, reader.getHedgedReads());
+        reader.shutdown();
+    }
+
+    @Test
+    public void testHedgeImmediatelyOnFailure() throws Exception {
+        RedisHedgedReader reader = new RedisHedgedReader(metricsWithP95(200000000L), 0L, true, 1000L, 4);
+        Callable<String> failing = new Callable<String>() {
+            @Override
+            public String call() {
+                throw new IllegalStateException("connection reset");
+            }
+        };
+        long startTime = System.nanoTime();
+        assertEquals("hedge", reader.read(RedisCommand.GET, failing, answer("hedge", 0L)));
+        assertTrue((System.nanoTime() - startTime) / 1000000L < 150L);
+        reader.shutdown();
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void testDeadline() throws Exception {
+        RedisHedgedReader reader = new RedisHedgedReader(null, 100L, false, 1000L, 4);
+        try {
+            reader.read(RedisCommand.GET, answer("stalled", 2000L), answer("hedge", 2000L));
+        } finally {
+            assertEquals(1L, reader.getDeadlineExceeded());
+            reader.shutdown();
+        }
+    }
+
+    @Test
+    public void testLoserCancelled() throws Exception {
+        RedisHedgedReader reader = new RedisHedgedReader(metricsWithP95(2000000L), 0L, true, 1000L, 4);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        assertEquals("hedge", reader.read(RedisCommand.GET, stalled(interrupted), answer("hedge", 0L)));
+        assertTrue(interrupted.await(1L, TimeUnit.SECONDS));
+        reader.shutdown();
+    }
+
+    @Test
+    public void testCallerInterrupted() throws Exception {
+        RedisHedgedReader reader = new RedisHedgedReader(null, 0L, false, 1000L, 4);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        final Thread caller = Thread.currentThread();
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50L);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                caller.interrupt();
+            }
+        }.start();
+        try {
+            reader.read(RedisCommand.GET, stalled(interrupted), answer("hedge", 0L));
+            fail();
+        } catch (InterruptedException ex) {
+            // 中断状态保留给调用方
+            assertTrue(Thread.interrupted());
+        }
+        assertTrue(interrupted.await(1L, TimeUnit.SECONDS));
+        reader.shutdown();
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void testDeadlineCancels() throws Exception {
+        RedisHedgedReader reader = new RedisHedgedReader(null, 50L, false, 1000L, 4);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        try {
+            reader.read(RedisCommand.GET, stalled(interrupted), answer("hedge", 0L));
+        } finally {
+            assertTrue(interrupted.await(1L, TimeUnit.SECONDS));
+            reader.shutdown();
+        }
+    }
+}
@@ -0,0 +1,282 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 热点key与大value统计：按1/sampleRate的概率采样读写的key，计入count-min sketch（4行×2048列，约32KB，内存固定），
+ * 估计次数超过当前第K名时进入热点key的Top-K小顶堆；每采样{@link #DECAY_SAMPLES}次将所有计数减半，
+ * 使统计结果反映最近的访问而不是自启动以来的累计。
+ * 大value不采样：值的长度大于等于bigValueThreshold且大于当前第K名时才进入大value的Top-K。
+ *
+ * 未采样的调用只有一次ThreadLocalRandom和两次比较，不加锁、不分配对象；
+ * 采样到时更新sketch无锁（conservative update，只增加等于最小值的计数），只有进入Top-K时才对堆加锁。
+ * count-min sketch只会高估，不会低估：热点key不会漏掉，次数较少的key可能因冲突被高估。
+ *
+ * @author BurningIce
+ *
+ */
+class RedisHotKeyTracker {
+	private final static int DEPTH = 4;
+	private final static int WIDTH = 2048;				// 必须为2的幂
+	final static int DECAY_SAMPLES = WIDTH * 8;
+	private final AtomicIntegerArray counters = new AtomicIntegerArray(DEPTH * WIDTH);
+	private final AtomicLong samples = new AtomicLong();
+	private final int sampleRate;
+	private final int sampleMask;
+	private final int bigValueThreshold;
+	private final TopK hotKeys;
+	private final TopK bigValues;
+
+	/**
+	 * @param topK 保留的热点key与大value数量
+	 * @param sampleRate 每sampleRate次读写采样一次，向上取整为2的幂
+	 * @param bigValueThreshold 大于等于该长度（字节）的值才统计为大value
+	 */
+	RedisHotKeyTracker(int topK, int sampleRate, int bigValueThreshold) {
+		this.sampleRate = sampleRate <= 1 ? 1 : Integer.highestOneBit(sampleRate - 1) << 1;
+		this.sampleMask = this.sampleRate - 1;
+		this.bigValueThreshold = Math.max(1, bigValueThreshold);
+		this.hotKeys = new TopK(Math.max(1, topK));
+		this.bigValues = new TopK(Math.max(1, topK));
+	}
+
+	/**
+	 * @param size 读取或写入的值的长度，未知或不存在时为0
+	 */
+	void record(String key, int size) {
+		if(size >= this.bigValueThreshold && size > this.bigValues.floor) {
+			this.bigValues.offerMax(key, size);
+		}
+
+		if((ThreadLocalRandom.current().nextInt() & this.sampleMask) == 0) {
+			this.sample(key);
+		}
+	}
+
+	void record(byte[] key, int size) {
+		// 只在需要时才转换为String
+		if(size >= this.bigValueThreshold && size > this.bigValues.floor) {
+			this.bigValues.offerMax(new String(key, StandardCharsets.UTF_8), size);
+		}
+
+		if((ThreadLocalRandom.current().nextInt() & this.sampleMask) == 0) {
+			this.sample(new String(key, StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * @return 当前的热点key及其估计访问次数（已按采样率换算），按次数从高到低排序
+	 */
+	Map<String, Long> hotKeys() {
+		Map<String, Long> hotKeys = this.hotKeys.snapshot();
+		for(Map.Entry<String, Long> e : hotKeys.entrySet()) {
+			e.setValue(Long.valueOf(e.getValue().longValue() * this.sampleRate));
+		}
+		return hotKeys;
+	}
+
+	/**
+	 * @return 读写过的最大的值及其长度（字节），按长度从大到小排序
+	 */
+	Map<String, Long> bigValues() {
+		return this.bigValues.snapshot();
+	}
+
+	private void sample(String key) {
+		long hash = mix(key.hashCode());
+		int h1 = (int)hash;
+		int h2 = (int)(hash >>> 32) | 1;
+
+		int min = Integer.MAX_VALUE;
+		for(int row = 0; row < DEPTH; ++row) {
+			min = Math.min(min, this.counters.get(index(row, h1, h2)));
+		}
+
+		for(int row = 0; row < DEPTH; ++row) {
+			int index = index(row, h1, h2);
+			// 并发更新时可能已被其他线程增加，此时不再重复增加
+			this.counters.compareAndSet(index, min, min + 1);
+		}
+
+		long estimate = min + 1L;
+		if(estimate > this.hotKeys.floor) {
+			this.hotKeys.offer(key, estimate);
+		}
+
+		if(this.samples.incrementAndGet() % DECAY_SAMPLES == 0) {
+			this.decay();
+		}
+	}
+
+	/**
+	 * 所有计数减半；与并发的更新之间没有同步，可能丢失少量计数，对近似统计没有影响
+	 */
+	private void decay() {
+		for(int i = 0; i < this.counters.length(); ++i) {
+			this.counters.set(i, this.counters.get(i) >>> 1);
+		}
+		this.hotKeys.halve();
+	}
+
+	private static int index(int row, int h1, int h2) {
+		return row * WIDTH + ((h1 + row * h2) & (WIDTH - 1));
+	}
+
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * 按value排序的小顶堆，堆顶为第K名；floor为堆满后的第K名，堆未满时为0，供调用方在加锁前过滤
+	 */
+	private final static class TopK {
+		private final Node[] heap;
+		private final Map<String, Node> nodes;
+		private int size;
+		volatile long floor;
+
+		TopK(int capacity) {
+			this.heap = new Node[capacity];
+			this.nodes = new HashMap<String, Node>(capacity * 2);
+		}
+
+		/**
+		 * 更新为新的估计次数
+		 */
+		synchronized void offer(String key, long value) {
+			Node node = this.nodes.get(key);
+			if(node != null) {
+				long previous = node.value;
+				node.value = value;
+				// 减半与并发的采样交错时估计次数可能变小
+				if(value < previous) {
+					this.siftUp(node.index);
+				} else {
+					this.siftDown(node.index);
+				}
+			} else {
+				this.insert(key, value);
+			}
+			this.updateFloor();
+		}
+
+		/**
+		 * 保留该key出现过的最大值
+		 */
+		synchronized void offerMax(String key, long value) {
+			Node node = this.nodes.get(key);
+			if(node != null) {
+				if(value > node.value) {
+					node.value = value;
+					this.siftDown(node.index);
+				}
+			} else {
+				this.insert(key, value);
+			}
+			this.updateFloor();
+		}
+
+		synchronized void halve() {
+			// 所有值减半不改变堆中的相对顺序
+			for(int i = 0; i < this.size; ++i) {
+				this.heap[i].value >>>= 1;
+			}
+			this.updateFloor();
+		}
+
+		synchronized Map<String, Long> snapshot() {
+			Node[] nodes = Arrays.copyOf(this.heap, this.size);
+			Arrays.sort(nodes, new Comparator<Node>() {
+				@Override
+				public int compare(Node n1, Node n2) {
+					return Long.compare(n2.value, n1.value);
+				}
+			});
+
+			Map<String, Long> snapshot = new LinkedHashMap<String, Long>(nodes.length * 2);
+			for(Node node : nodes) {
+				snapshot.put(node.key, Long.valueOf(node.value));
+			}
+			return snapshot;
+		}
+
+		private void insert(String key, long value) {
+			if(this.size < this.heap.length) {
+				Node node = new Node(key, value, this.size);
+				this.heap[this.size++] = node;
+				this.nodes.put(key, node);
+				this.siftUp(node.index);
+			} else if(value > this.heap[0].value) {
+				// 替换第K名
+				Node node = this.heap[0];
+				this.nodes.remove(node.key);
+				node.key = key;
+				node.value = value;
+				this.nodes.put(key, node);
+				this.siftDown(0);
+			}
+		}
+
+		private void updateFloor() {
+			this.floor = this.size < this.heap.length ? 0L : this.heap[0].value;
+		}
+
+		private void siftUp(int index) {
+			Node node = this.heap[index];
+			while(index > 0) {
+				int parent = (index - 1) >>> 1;
+				if(this.heap[parent].value <= node.value)
+					break;
+
+				this.move(this.heap[parent], index);
+				index = parent;
+			}
+			this.move(node, index);
+		}
+
+		private void siftDown(int index) {
+			Node node = this.heap[index];
+			int half = this.size >>> 1;
+			while(index < half) {
+				int child = 2 * index + 1;
+				if(child + 1 < this.size && this.heap[child + 1].value < this.heap[child].value) {
+					child++;
+				}
+				if(node.value <= this.heap[child].value)
+					break;
+
+				this.move(this.heap[child], index);
+				index = child;
+			}
+			this.move(node, index);
+		}
+
+		private void move(Node node, int index) {
+			this.heap[index] = node;
+			node.index = index;
+		}
+	}
+
+	private final static class Node {
+		String key;
+		long value;
+		int index;
+
+		Node(String key, long value, int index) {
+			this.key = key;
+			this.value = value;
+			this.index = index;
+		}
+	}
+}
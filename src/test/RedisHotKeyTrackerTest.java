@@ -0,0 +1,72 @@
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * RedisHotKeyTracker的热点key与大value统计，以及计数衰减
+ */
+public class RedisHotKeyTrackerTest {
+
+    @Test
+    public void testHotKeys() {
+        RedisHotKeyTracker tracker = new RedisHotKeyTracker(3, 1, 1024);
+        for (int i = 0; i < 2000; ++i) {
+            tracker.record("hot", 10);
+            if (i % 2 == 0) {
+                tracker.record("warm".getBytes(StandardCharsets.UTF_8), 10);
+            }
+            tracker.record("cold:" + i, 10);
+        }
+
+        List<String> keys = new ArrayList<String>(tracker.hotKeys().keySet());
+        assertEquals(3, keys.size());
+        assertEquals("hot", keys.get(0));
+        assertEquals("warm", keys.get(1));
+
+        // count-min sketch只会高估；总采样5000次，中间未减半
+        Map<String, Long> hotKeys = tracker.hotKeys();
+        assertTrue(hotKeys.get("hot") >= 2000L);
+        assertTrue(hotKeys.get("warm") >= 1000L && hotKeys.get("warm") < 1100L);
+    }
+
+    @Test
+    public void testDecay() {
+        RedisHotKeyTracker tracker = new RedisHotKeyTracker(2, 1, 1024);
+        for (int i = 0; i < RedisHotKeyTracker.DECAY_SAMPLES / 2; ++i) {
+            tracker.record("old", 0);
+        }
+        // 热点转移后，旧的热点随着减半被新的热点超过
+        for (int i = 0; i < RedisHotKeyTracker.DECAY_SAMPLES * 3; ++i) {
+            tracker.record(i % 2 == 0 ? "new" : "other:" + i, 0);
+        }
+
+        assertEquals("new", tracker.hotKeys().keySet().iterator().next());
+    }
+
+    @Test
+    public void testBigValues() {
+        RedisHotKeyTracker tracker = new RedisHotKeyTracker(2, 1024, 1024);
+        tracker.record("small", 1023);
+        tracker.record("a", 2048);
+        tracker.record("b", 4096);
+        tracker.record("a", 1024);
+        tracker.record("c".getBytes(StandardCharsets.UTF_8), 3000);
+
+        Map<String, Long> bigValues = tracker.bigValues();
+        assertEquals(2, bigValues.size());
+        List<String> keys = new ArrayList<String>(bigValues.keySet());
+        assertEquals("b", keys.get(0));
+        assertEquals("c", keys.get(1));
+        assertEquals(Long.valueOf(4096L), bigValues.get("b"));
+
+        // 同一个key保留最大值
+        tracker.record("c", 8192);
+        assertEquals("c", tracker.bigValues().keySet().iterator().next());
+        assertEquals(2, tracker.bigValues().size());
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import redis.clients.jedis.Response;
+import redis.clients.util.SafeEncoder;
+
+import java.util.*;
+
+/**
+ * HyperLogLog本地预聚合：pfAdd的元素先在本地按key去重，
+ * 后台线程每flushIntervalMillis毫秒（或待写入的key数量达到maxPendingKeys时立即）通过一次pipeline写入Redis。
+ * 一个周期内元素较少的key直接PFADD去重后的元素；元素超过SKETCH_THRESHOLD个的key改为在本地{@link HyperLogLogSketch}中累积，
+ * 写入时SET临时key（Redis dense编码）、PFMERGE到目标key、DEL临时key，
+ * 网络流量只与key的数量有关而与元素数量无关。每个key写入后按最近一次的过期时间EXPIRE。
+ * 分段、flush、写入失败时合并回本地以及shutdown见{@link RedisWriteBehindAggregator}；
+ * PFADD/PFMERGE是幂等的，写入失败后重试不会重复计数。
+ *
+ * @author BurningIce
+ *
+ */
+class RedisHyperLogLogAggregator extends RedisWriteBehindAggregator<String, RedisHyperLogLogAggregator.PendingHll, RedisHyperLogLogAggregator.PfAdd> {
+	/**
+	 * 去重后的元素超过该数量时转为sketch（dense编码12KB，约等于256个短元素的PFADD命令大小）
+	 */
+	final static int SKETCH_THRESHOLD = 256;
+	private final static int TEMP_KEY_EXPIRATION = 60;
+	private final String tempKeySuffix = ":pfmerge:" + UUID.randomUUID().toString();
+
+	/**
+	 * @param redisClient 用于写入的客户端（通过executePipelined）
+	 * @param flushIntervalMillis 最长写入延迟
+	 * @param maxPendingKeys 待写入的key数量达到该值时立即写入
+	 */
+	RedisHyperLogLogAggregator(RedisClient redisClient, long flushIntervalMillis, int maxPendingKeys) {
+		super(redisClient, "hll", flushIntervalMillis, maxPendingKeys);
+	}
+
+	/**
+	 * @param expirationInSeconds 写入后设置的过期时间，小于等于0时不设置
+	 */
+	void pfAdd(String key, int expirationInSeconds, String... elements) {
+		this.add(key, new PfAdd(expirationInSeconds, elements));
+	}
+
+	@Override
+	protected PendingHll accumulate(PendingHll pending, PfAdd pfAdd) {
+		if(pending == null) {
+			pending = new PendingHll();
+		}
+
+		pending.expirationInSeconds = pfAdd.expirationInSeconds;
+		for(String element : pfAdd.elements) {
+			pending.add(element);
+		}
+		return pending;
+	}
+
+	/**
+	 * 过期时间以本地较新的为准
+	 */
+	@Override
+	protected PendingHll merge(PendingHll pending, PendingHll failed) {
+		pending.merge(failed);
+		return pending;
+	}
+
+	@Override
+	protected void writeDirectly(String key, PfAdd pfAdd) {
+		if(pfAdd.expirationInSeconds > 0) {
+			this.redisClient.pfAdd(key, pfAdd.expirationInSeconds, pfAdd.elements);
+		} else {
+			this.redisClient.pfAdd(key, pfAdd.elements);
+		}
+	}
+
+	@Override
+	protected boolean write(final Map<String, PendingHll> pending) {
+		Boolean written = this.redisClient.executePipelined(4 * pending.size() + 1, new PipelineCallback<Boolean>() {
+			@Override
+			public Boolean doInPipeline(RedisPipeline pipeline) {
+				List<Response<String>> merges = new ArrayList<Response<String>>();
+				for(Map.Entry<String, PendingHll> e : pending.entrySet()) {
+					String key = e.getKey();
+					PendingHll hll = e.getValue();
+					if(hll.sketch == null) {
+						pipeline.pfAdd(key, hll.elements.toArray(new String[hll.elements.size()]));
+					} else {
+						String tempKey = key + tempKeySuffix;
+						byte[] rawTempKey = SafeEncoder.encode(tempKey);
+						// 临时key设置过期时间，避免DEL未执行时残留
+						pipeline.set(rawTempKey, hll.sketch.toRedisDense(), TEMP_KEY_EXPIRATION);
+						merges.add(pipeline.pfmerge(key, tempKey));
+						pipeline.del(rawTempKey);
+					}
+
+					if(hll.expirationInSeconds > 0) {
+						pipeline.expire(key, hll.expirationInSeconds);
+					}
+				}
+
+				// pipeline不检查单条命令的错误：PFMERGE失败（如临时key不是合法的HyperLogLog）时按写入失败处理，
+				// 重新合并是幂等的，整批重试不会重复计数
+				pipeline.sync();
+				for(Response<String> merge : merges) {
+					merge.get();
+				}
+				return Boolean.TRUE;
+			}
+		});
+		return written != null;
+	}
+
+	static final class PfAdd {
+		private final int expirationInSeconds;
+		private final String[] elements;
+
+		PfAdd(int expirationInSeconds, String[] elements) {
+			this.expirationInSeconds = expirationInSeconds;
+			this.elements = elements;
+		}
+	}
+
+	static final class PendingHll {
+		private int expirationInSeconds;
+		private HashSet<String> elements = new HashSet<String>();
+		private HyperLogLogSketch sketch;
+
+		void add(String element) {
+			if(this.sketch != null) {
+				this.sketch.add(element);
+				return;
+			}
+
+			if(this.elements.add(element) && this.elements.size() > SKETCH_THRESHOLD) {
+				this.sketch = new HyperLogLogSketch();
+				for(String e : this.elements) {
+					this.sketch.add(e);
+				}
+				this.elements = null;
+			}
+		}
+
+		void merge(PendingHll other) {
+			if(other.sketch == null) {
+				for(String element : other.elements) {
+					this.add(element);
+				}
+				return;
+			}
+
+			if(this.sketch == null) {
+				HashSet<String> elements = this.elements;
+				this.sketch = other.sketch;
+				this.elements = null;
+				for(String element : elements) {
+					this.sketch.add(element);
+				}
+			} else {
+				this.sketch.merge(other.sketch);
+			}
+		}
+	}
+}
@@ -0,0 +1,98 @@
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * RedisHyperLogLogAggregator：小key按PFADD写入、大key按dense寄存器SET+PFMERGE合并，写入InMemoryRedisClient后检查寄存器
+ */
+public class RedisHyperLogLogAggregatorTest {
+
+    @Test
+    public void testSmallKeysUsePfAdd() {
+        RecordingRedisClient redis = new RecordingRedisClient();
+        RedisHyperLogLogAggregator aggregator = new RedisHyperLogLogAggregator(redis, 60000L, 1000);
+        for (int i = 0; i < 1000; ++i) {
+            aggregator.pfAdd("uv", 3600, "u" + (i % 10));
+        }
+        assertEquals(1, aggregator.getPendingKeys());
+        assertTrue(aggregator.flush());
+
+        assertEquals(2, redis.commands.size());
+        assertEquals("pfAdd", redis.commands.get(0));
+        assertArrayEquals(new Object[] { "uv", Integer.valueOf(3600) }, redis.lastArguments("expire"));
+        assertEquals(10L, redis.pfCount("uv"));
+    }
+
+    @Test
+    public void testLargeKeysAreMergedAsSketch() {
+        RecordingRedisClient redis = new RecordingRedisClient();
+        redis.failPipelines(1);
+        RedisHyperLogLogAggregator aggregator = new RedisHyperLogLogAggregator(redis, 60000L, 1000);
+        HyperLogLogSketch expected = new HyperLogLogSketch();
+        for (int i = 0; i < 20000; ++i) {
+            aggregator.pfAdd("uv", 0, "u" + i);
+            expected.add("u" + i);
+        }
+
+        // 写入失败后合并回本地，再次写入的寄存器与直接PFADD所有元素相同
+        assertFalse(aggregator.flush());
+        aggregator.pfAdd("uv", 0, "u-last");
+        expected.add("u-last");
+        assertTrue(aggregator.flush());
+        assertEquals(0, aggregator.getPendingKeys());
+
+        assertEquals("[set, pfmerge, del]", redis.commands.toString());
+        assertTrue(redis.keys("*:pfmerge:*").isEmpty());
+        assertNull(redis.lastArguments("expire"));
+        HyperLogLogSketch merged = HyperLogLogSketch.fromRedisDense(redis.get("uv".getBytes()));
+        for (int i = 0; i < HyperLogLogSketch.REGISTERS; ++i) {
+            assertEquals(expected.getRegister(i), merged.getRegister(i));
+        }
+    }
+
+    @Test
+    public void testFailedMergeIsRetried() {
+        RecordingRedisClient redis = new RecordingRedisClient();
+        redis.failNextCommand("pfmerge");
+        RedisHyperLogLogAggregator aggregator = new RedisHyperLogLogAggregator(redis, 60000L, 1000);
+        for (int i = 0; i < 20000; ++i) {
+            aggregator.pfAdd("uv", 0, "u" + i);
+        }
+
+        // pipeline本身成功，但PFMERGE返回错误，寄存器合并回本地
+        assertFalse(aggregator.flush());
+        assertEquals(1, aggregator.getPendingKeys());
+        assertTrue(aggregator.flush());
+        assertEquals(0, aggregator.getPendingKeys());
+        assertEquals(20000L, redis.pfCount("uv"), 20000L * 0.02);
+    }
+
+    @Test
+    public void testPfAddAfterShutdown() {
+        RecordingRedisClient redis = new RecordingRedisClient();
+        RedisHyperLogLogAggregator aggregator = new RedisHyperLogLogAggregator(redis, 60000L, 1000);
+        aggregator.pfAdd("uv", 0, "u1");
+        assertTrue(aggregator.shutdown());
+
+        aggregator.pfAdd("uv", 0, "u2");
+        aggregator.pfAdd("uv", 60, "u3");
+        // 只有shutdown时的一次pipeline，之后的pfAdd不经过pipeline
+        assertEquals("[pfAdd]", redis.commands.toString());
+        assertEquals(1, redis.getPipelines());
+        assertEquals(3L, redis.pfCount("uv"));
+        assertEquals(0, aggregator.getPendingKeys());
+    }
+
+    @Test
+    public void testFailedShutdownReported() {
+        RecordingRedisClient redis = new RecordingRedisClient();
+        redis.failPipelines(1);
+        RedisHyperLogLogAggregator aggregator = new RedisHyperLogLogAggregator(redis, 60000L, 1000);
+        aggregator.pfAdd("uv", 0, "u1");
+        aggregator.pfAdd("pv", 0, "p1");
+
+        assertFalse(aggregator.shutdown());
+        assertEquals(2, aggregator.getDroppedKeys());
+        assertEquals(0, aggregator.getPendingKeys());
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于SCAN的批量删除与设置过期时间：每扫描到一批key立即通过redisClient的批量命令（一次pipeline）处理，
+ * 内存中只保留一批key；按maxKeysPerSecond匀速处理，处理完processed个key后，
+ * 下一批最早在开始后processed / maxKeysPerSecond秒处理，避免大量清理时占满Redis。
+ * 线程被中断时停止扫描。
+ *
+ * @author BurningIce
+ *
+ */
+class RedisKeyCleaner {
+	private final RedisClient redisClient;
+	private final int count;
+	private final int maxKeysPerSecond;
+
+	/**
+	 * @param redisClient 用于SCAN和批量删除/设置过期时间的客户端
+	 * @param count SCAN的COUNT参数
+	 * @param maxKeysPerSecond 每秒最多处理的key数量，小于等于0时不限速
+	 */
+	RedisKeyCleaner(RedisClient redisClient, int count, int maxKeysPerSecond) {
+		this.redisClient = redisClient;
+		this.count = count;
+		this.maxKeysPerSecond = maxKeysPerSecond;
+	}
+
+	/**
+	 * @return 删除的key数量
+	 */
+	long delete(String pattern) {
+		return this.clean(pattern, new BatchOperation() {
+			@Override
+			public long execute(String[] keys) {
+				return redisClient.unlink(keys);
+			}
+		});
+	}
+
+	/**
+	 * @return 设置成功的key数量
+	 */
+	long expire(String pattern, final int expirationInSeconds) {
+		return this.clean(pattern, new BatchOperation() {
+			@Override
+			public long execute(String[] keys) {
+				return redisClient.expire(keys, expirationInSeconds);
+			}
+		});
+	}
+
+	private long clean(String pattern, final BatchOperation operation) {
+		final long startTime = System.nanoTime();
+		final long[] counters = new long[2];	// 已处理的key数量、删除（设置成功）的key数量
+		this.redisClient.scan(pattern, this.count, new ScanCallback<String>() {
+			@Override
+			public boolean onBatch(List<String> batch) {
+				if(!pace(startTime, counters[0]))
+					return false;
+
+				counters[1] += operation.execute(batch.toArray(new String[batch.size()]));
+				counters[0] += batch.size();
+				return true;
+			}
+		});
+		return counters[1];
+	}
+
+	/**
+	 * 等待到处理下一批的时间
+	 * @return 线程被中断时返回false
+	 */
+	private boolean pace(long startTime, long processed) {
+		if(this.maxKeysPerSecond <= 0)
+			return true;
+
+		long delay = startTime + processed * TimeUnit.SECONDS.toNanos(1L) / this.maxKeysPerSecond - System.nanoTime();
+		if(delay > 0L) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(delay);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return !Thread.currentThread().isInterrupted();
+	}
+
+	private interface BatchOperation {
+		long execute(String[] keys);
+	}
+}
@@ -0,0 +1,71 @@
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * RedisKeyCleaner在InMemoryRedisClient上批量删除/设置过期，以及按模式扫描和限速
+ */
+public class RedisKeyCleanerTest {
+
+    private static InMemoryRedisClient newClient(int keys) {
+        InMemoryRedisClient client = new InMemoryRedisClient();
+        client.init();
+        for (int i = 0; i < keys; ++i) {
+            client.set("metric:" + i, "v");
+        }
+        client.set("other", "v");
+        return client;
+    }
+
+    @Test
+    public void testBulkDelAndExpire() {
+        InMemoryRedisClient client = newClient(10);
+        try {
+            assertEquals(2L, client.del("metric:0", "metric:1", "none"));
+            assertEquals(2L, client.unlink("metric:2", "metric:3"));
+            assertEquals(2L, client.expire(new String[] { "metric:4", "metric:5", "none" }, 60));
+            assertEquals(7, client.size());
+        } finally {
+            client.destroy();
+        }
+    }
+
+    @Test
+    public void testDeleteByPattern() {
+        InMemoryRedisClient client = newClient(1000);
+        try {
+            assertEquals(1000L, client.delByPattern("metric:*", 100, 0));
+            assertNull(client.get("metric:1"));
+            assertEquals("v", client.get("other"));
+            assertEquals(0L, client.delByPattern("metric:*", 100, 0));
+        } finally {
+            client.destroy();
+        }
+    }
+
+    @Test
+    public void testExpireByPattern() throws Exception {
+        InMemoryRedisClient client = newClient(100);
+        try {
+            assertEquals(100L, client.expireByPattern("metric:*", 1, 30, 0));
+            Thread.sleep(1200L);
+            assertNull(client.get("metric:1"));
+            assertEquals("v", client.get("other"));
+        } finally {
+            client.destroy();
+        }
+    }
+
+    @Test
+    public void testRateLimit() {
+        InMemoryRedisClient client = newClient(100);
+        try {
+            // 每批20个，每秒200个：第5批最早在400ms之后处理
+            long startTime = System.nanoTime();
+            assertEquals(100L, new RedisKeyCleaner(client, 20, 200).delete("metric:*"));
+            assertTrue(System.nanoTime() - startTime >= 380L * 1000000L);
+        } finally {
+            client.destroy();
+        }
+    }
+}
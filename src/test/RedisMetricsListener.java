@@ -0,0 +1,19 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import java.util.Map;
+
+/**
+ * Redis客户端指标输出接口，由客户端定时回调，可对接监控/告警系统
+ *
+ * @author BurningIce
+ *
+ */
+public interface RedisMetricsListener {
+	/**
+	 * @param intervalMetrics 上次回调以来各命令的区间指标（只包含有调用的命令）
+	 * @param intervalMillis 区间长度（单位：毫秒）
+	 */
+	public void onMetrics(Map<RedisCommand, RedisClientMetrics.CommandSnapshot> intervalMetrics, long intervalMillis);
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import redis.clients.jedis.Response;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * pipeline批量操作，仅在{@link PipelineCallback#doInPipeline(RedisPipeline)}回调期间有效。
+ * 每写入一定数量的命令自动flush一次；返回的Response在flush之后（最迟在executePipelined返回之后）可以get。
+ *
+ * @author BurningIce
+ *
+ */
+public interface RedisPipeline {
+	public Response<String> get(String key);
+
+	public Response<byte[]> get(byte[] key);
+
+	public Response<List<String>> mget(String... key);
+
+	public Response<List<byte[]>> mget(byte[]... key);
+
+	public Response<String> set(String key, String value);
+
+	public Response<String> set(byte[] key, byte[] value);
+
+	/**
+	 * set and expire (setex)
+	 * @param key
+	 * @param value
+	 * @param expirationInSeconds expiration in seconds，小于等于0时不过期
+	 */
+	public Response<String> set(String key, String value, int expirationInSeconds);
+
+	/**
+	 * set and expire (setex)
+	 * @param key
+	 * @param value
+	 * @param expirationInSeconds expiration in seconds，小于等于0时不过期
+	 */
+	public Response<String> set(byte[] key, byte[] value, int expirationInSeconds);
+
+	public Response<String> mset(String... keyValues);
+
+	public Response<Long> del(String key);
+
+	public Response<Long> del(byte[] key);
+
+	/**
+	 * 设置过期时间
+	 * @param key
+	 * @param expirationInSeconds 过期时间（单位：秒）
+	 */
+	public Response<Long> expire(String key, int expirationInSeconds);
+
+	/**
+	 * 设置过期时间
+	 * @param key
+	 * @param expirationInSeconds 过期时间（单位：秒）
+	 */
+	public Response<Long> expire(byte[] key, int expirationInSeconds);
+
+	public Response<Long> incr(String key);
+
+	public Response<Long> incrBy(String key, long increment);
+
+	public Response<Long> decrBy(String key, long decrement);
+
+	public Response<String> hget(String key, String field);
+
+	public Response<byte[]> hget(byte[] key, byte[] field);
+
+	public Response<List<String>> hmget(String key, String... field);
+
+	public Response<Long> hset(String key, String field, String value);
+
+	public Response<Long> hset(byte[] key, byte[] field, byte[] value);
+
+	public Response<String> hmset(String key, Map<String, String> fieldAndValues);
+
+	public Response<String> hmset(byte[] key, Map<byte[], byte[]> fieldAndValues);
+
+	public Response<Map<String, String>> hgetAll(String key);
+
+	public Response<Long> hincrBy(String key, String field, long increment);
+
+	public Response<Long> hincrBy(byte[] key, byte[] field, long increment);
+
+	public Response<Long> pfAdd(String key, String... elements);
+
+	public Response<Long> pfCount(String key);
+
+	/**
+	 * @param destkey 将其他key的值merge到此key
+	 * @param sourcekeys
+	 */
+	public Response<String> pfmerge(String destkey, String... sourcekeys);
+
+	public Response<Long> sadd(String key, String... members);
+
+	public Response<Set<String>> smembers(String key);
+
+	/**
+	 * 立即flush已写入的命令并读取响应
+	 */
+	public void sync();
+}
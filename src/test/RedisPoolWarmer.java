@@ -0,0 +1,169 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 连接池预热：并行建立connections个连接并以PING验证，全部验证后一起归还连接池成为空闲连接，
+ * 避免启动后的第一批请求在业务线程中建立连接和AUTH。
+ * 预热未完成（Redis不可用、超时）时后台每retryIntervalMillis毫秒重试，直到成功或{@link #shutdown()}。
+ * 预热成功后空闲连接的持续验证由连接池的testWhileIdle负责。
+ *
+ * @author BurningIce
+ *
+ */
+class RedisPoolWarmer {
+	private final static int MAX_WARMUP_THREADS = 16;
+	private final JedisPool jedisPool;
+	private final int connections;
+	private final long timeoutMillis;
+	private final long retryIntervalMillis;
+	private volatile boolean ready;
+	private ScheduledExecutorService retrier;
+
+	/**
+	 * @param connections 预热的连接数量
+	 * @param timeoutMillis 单次预热的最长等待时间
+	 * @param retryIntervalMillis 预热失败后的重试间隔
+	 */
+	RedisPoolWarmer(JedisPool jedisPool, int connections, long timeoutMillis, long retryIntervalMillis) {
+		this.jedisPool = jedisPool;
+		this.connections = Math.max(1, connections);
+		this.timeoutMillis = timeoutMillis;
+		this.retryIntervalMillis = retryIntervalMillis;
+	}
+
+	/**
+	 * 同步预热一次，未成功时启动后台重试
+	 * @return 是否预热成功
+	 */
+	boolean start() {
+		if(this.warmUp())
+			return true;
+
+		this.retrier = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "redis-pool-warmer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.retrier.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				if(warmUp()) {
+					retrier.shutdown();
+				}
+			}
+		}, this.retryIntervalMillis, this.retryIntervalMillis, TimeUnit.MILLISECONDS);
+		return false;
+	}
+
+	void shutdown() {
+		if(this.retrier != null) {
+			this.retrier.shutdownNow();
+			this.retrier = null;
+		}
+	}
+
+	boolean isReady() {
+		return this.ready;
+	}
+
+	/**
+	 * 同时持有connections个连接（否则连接池会反复借出同一个连接），全部PING成功才算预热成功
+	 */
+	boolean warmUp() {
+		int threads = Math.min(this.connections, MAX_WARMUP_THREADS);
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "redis-pool-warmup");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		List<Future<Jedis>> futures = new ArrayList<Future<Jedis>>(this.connections);
+		boolean warmed = true;
+		try {
+			for(int i = 0; i < this.connections; ++i) {
+				futures.add(executor.submit(new Callable<Jedis>() {
+					@Override
+					public Jedis call() throws Exception {
+						Jedis jedis = jedisPool.getResource();
+						try {
+							jedis.ping();
+							return jedis;
+						} catch(Throwable t) {
+							jedis.close();
+							throw t instanceof Exception ? (Exception)t : new RuntimeException(t);
+						}
+					}
+				}));
+			}
+
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.timeoutMillis);
+			for(Future<Jedis> future : futures) {
+				try {
+					future.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+				} catch(Throwable t) {
+					warmed = false;
+				}
+			}
+		} finally {
+			executor.shutdown();
+			for(Future<Jedis> future : futures) {
+				closeWhenDone(future);
+			}
+		}
+
+		if(warmed) {
+			this.ready = true;
+		}
+		return warmed;
+	}
+
+	/**
+	 * 归还已借出的连接；超时未完成的任务由临时线程等待其完成后归还
+	 */
+	private static void closeWhenDone(final Future<Jedis> future) {
+		if(future.isDone()) {
+			close(future);
+			return;
+		}
+
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				close(future);
+			}
+		}, "redis-pool-warmup-release");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private static void close(Future<Jedis> future) {
+		try {
+			Jedis jedis = future.get();
+			if(jedis != null) {
+				jedis.close();
+			}
+		} catch(Throwable t) {
+//			logger.error("error to return redis resource to pool: " + t.getMessage(), t);
+		}
+	}
+}
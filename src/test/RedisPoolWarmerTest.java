@@ -0,0 +1,110 @@
+import org.apache.commons.pool2.BasePooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * RedisPoolWarmer测试：连接池中换成创建未连接Jedis的factory，PING按开关成功或抛出连接异常，不访问Redis
+ */
+public class RedisPoolWarmerTest {
+
+    /**
+     * @param available PING是否成功
+     * @param pings PING次数
+     */
+    private static JedisPool newPool(final AtomicBoolean available, final AtomicInteger pings) {
+        GenericObjectPoolConfig poolConfig = new GenericObjectPoolConfig();
+        JedisPool pool = new JedisPool(poolConfig, "127.0.0.1", 6379);
+        // 替换JedisFactory，getResource时不建立连接
+        pool.initPool(poolConfig, new BasePooledObjectFactory<Jedis>() {
+            @Override
+            public Jedis create() {
+                return new Jedis("127.0.0.1", 6379) {
+                    @Override
+                    public String ping() {
+                        pings.incrementAndGet();
+                        if (!available.get()) {
+                            throw new JedisConnectionException("connection refused");
+                        }
+                        return "PONG";
+                    }
+                };
+            }
+
+            @Override
+            public PooledObject<Jedis> wrap(Jedis jedis) {
+                return new DefaultPooledObject<Jedis>(jedis);
+            }
+        });
+        return pool;
+    }
+
+    @Test
+    public void testWarmUpFillsPool() {
+        JedisPool pool = newPool(new AtomicBoolean(true), new AtomicInteger());
+        RedisPoolWarmer warmer = new RedisPoolWarmer(pool, 4, 1000L, 1000L);
+        try {
+            assertTrue(warmer.start());
+            assertTrue(warmer.isReady());
+            // 同时持有4个连接，归还后全部成为空闲连接
+            assertEquals(4, pool.getNumIdle());
+            assertEquals(0, pool.getNumActive());
+        } finally {
+            warmer.shutdown();
+            pool.destroy();
+        }
+    }
+
+    @Test
+    public void testRetryInterval() throws InterruptedException {
+        AtomicBoolean available = new AtomicBoolean(false);
+        JedisPool pool = newPool(available, new AtomicInteger());
+        // 重试间隔与超时时间无关：超时10秒，每50毫秒重试一次
+        RedisPoolWarmer warmer = new RedisPoolWarmer(pool, 2, 10000L, 50L);
+        try {
+            assertFalse(warmer.start());
+            assertFalse(warmer.isReady());
+            assertEquals(0, pool.getNumActive());
+
+            available.set(true);
+            long deadline = System.currentTimeMillis() + 2000L;
+            while (!warmer.isReady() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10L);
+            }
+            assertTrue(warmer.isReady());
+        } finally {
+            warmer.shutdown();
+            pool.destroy();
+        }
+    }
+
+    @Test
+    public void testShutdownStopsRetries() throws InterruptedException {
+        AtomicInteger pings = new AtomicInteger();
+        JedisPool pool = newPool(new AtomicBoolean(false), pings);
+        RedisPoolWarmer warmer = new RedisPoolWarmer(pool, 1, 1000L, 20L);
+        try {
+            assertFalse(warmer.start());
+            Thread.sleep(200L);
+            assertTrue(pings.get() > 2);
+
+            warmer.shutdown();
+            Thread.sleep(50L);
+            int stopped = pings.get();
+            Thread.sleep(200L);
+            assertEquals(stopped, pings.get());
+            assertFalse(warmer.isReady());
+        } finally {
+            pool.destroy();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 并发单key读请求合并：
+ * 在一个很短的时间窗口内（或达到数量上限时）收集并发的get/hget请求，
+ * 合并为一次MGET以及按key分组的HMGET，通过一次pipeline发送，再分别完成各调用方的结果。
+ * 合并后的读取由{@link Reader}执行，与单独的读取使用相同的连接池选择、截止时间与统计。
+ *
+ * @author BurningIce
+ *
+ */
+class RedisReadCoalescer {
+	private final Reader reader;
+	private final long windowNanos;
+	private final int maxBatchSize;
+	private final long waitTimeoutNanos;
+	private final BlockingQueue<ReadRequest> queue;
+	private final Thread[] dispatchers;
+	private volatile boolean running = true;
+
+	/**
+	 * @param reader
+	 * @param windowMicros 合并窗口（单位：微秒）
+	 * @param maxBatchSize 单批最多合并的请求数量
+	 * @param dispatcherThreads 合并发送线程数量
+	 * @param timeoutMillis 调用方最长等待时间（单位：毫秒），一般为socket超时时间
+	 */
+	RedisReadCoalescer(Reader reader, long windowMicros, int maxBatchSize, int dispatcherThreads, int timeoutMillis) {
+		this.reader = reader;
+		this.windowNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0L, windowMicros));
+		this.maxBatchSize = Math.max(1, maxBatchSize);
+		this.waitTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, timeoutMillis)) + this.windowNanos;
+		this.queue = new LinkedBlockingQueue<ReadRequest>(this.maxBatchSize * 64);
+		this.dispatchers = new Thread[Math.max(1, dispatcherThreads)];
+		for(int i = 0; i < this.dispatchers.length; ++i) {
+			this.dispatchers[i] = new Thread(new Dispatcher(), "redis-read-coalescer-" + i);
+			this.dispatchers[i].setDaemon(true);
+		}
+	}
+
+	void start() {
+		for(Thread dispatcher : this.dispatchers) {
+			dispatcher.start();
+		}
+	}
+
+	void shutdown() {
+		this.running = false;
+		for(Thread dispatcher : this.dispatchers) {
+			dispatcher.interrupt();
+		}
+
+		// 未处理的请求直接返回null，与连接异常时的行为一致
+		List<ReadRequest> remained = new ArrayList<ReadRequest>();
+		this.queue.drainTo(remained);
+		for(ReadRequest request : remained) {
+			request.future.complete(null);
+		}
+	}
+
+	/**
+	 * 等价于GET key
+	 */
+	String get(String key) {
+		return this.await(new ReadRequest(key, null));
+	}
+
+	/**
+	 * 等价于HGET key field
+	 */
+	String hget(String key, String field) {
+		return this.await(new ReadRequest(key, field));
+	}
+
+	private String await(ReadRequest request) {
+		if(!this.running || !this.queue.offer(request)) {
+			// 已关闭或积压过多时直接单独读取，不阻塞调用方
+			return this.readDirectly(request);
+		}
+
+		if(!this.running && this.queue.remove(request)) {
+			// 与shutdown并发：shutdown清空队列之后才放入的请求不会再有dispatcher处理
+			return this.readDirectly(request);
+		}
+
+		try {
+			return request.future.get(this.waitTimeoutNanos, TimeUnit.NANOSECONDS);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch(Throwable t) {
+//			logger.error("failed to get coalesced value from redis: " + t.getMessage(), t);
+		}
+
+		return null;
+	}
+
+	private String readDirectly(ReadRequest request) {
+		try {
+			return request.field == null ? this.reader.get(request.key) : this.reader.hget(request.key, request.field);
+		} catch(Throwable ex) {
+//			logger.error("failed to get value from redis: " + ex.getMessage(), ex);
+		}
+
+		return null;
+	}
+
+	private void execute(List<ReadRequest> batch) {
+		// 相同key（及field）的请求只读取一次
+		Map<String, List<ReadRequest>> gets = new LinkedHashMap<String, List<ReadRequest>>();
+		Map<String, Map<String, List<ReadRequest>>> hgets = new LinkedHashMap<String, Map<String, List<ReadRequest>>>();
+		for(ReadRequest request : batch) {
+			if(request.field == null) {
+				addRequest(gets, request.key, request);
+			} else {
+				Map<String, List<ReadRequest>> fields = hgets.get(request.key);
+				if(fields == null) {
+					fields = new LinkedHashMap<String, List<ReadRequest>>();
+					hgets.put(request.key, fields);
+				}
+				addRequest(fields, request.field, request);
+			}
+		}
+
+		try {
+			Map<String, String[]> fields = new LinkedHashMap<String, String[]>(hgets.size() * 2);
+			for(Map.Entry<String, Map<String, List<ReadRequest>>> e : hgets.entrySet()) {
+				Set<String> hashFields = e.getValue().keySet();
+				fields.put(e.getKey(), hashFields.toArray(new String[hashFields.size()]));
+			}
+
+			List<List<String>> values = this.reader.read(gets.keySet().toArray(new String[gets.size()]), fields);
+			if(values != null) {
+				if(!gets.isEmpty()) {
+					complete(gets, values.get(0));
+				}
+
+				int i = 1;
+				for(Map<String, List<ReadRequest>> hashFields : hgets.values()) {
+					complete(hashFields, values.get(i++));
+				}
+			}
+		} catch(Throwable ex) {
+//			logger.error("failed to get coalesced values from redis: " + ex.getMessage(), ex);
+		} finally {
+			// 失败或遗漏的请求统一返回null
+			for(ReadRequest request : batch) {
+				request.future.complete(null);
+			}
+		}
+	}
+
+	private static void addRequest(Map<String, List<ReadRequest>> requests, String name, ReadRequest request) {
+		List<ReadRequest> list = requests.get(name);
+		if(list == null) {
+			list = new ArrayList<ReadRequest>(1);
+			requests.put(name, list);
+		}
+		list.add(request);
+	}
+
+	private static void complete(Map<String, List<ReadRequest>> requests, List<String> values) {
+		if(values == null)
+			return;
+
+		int i = 0;
+		for(List<ReadRequest> list : requests.values()) {
+			String value = values.get(i++);
+			for(ReadRequest request : list) {
+				request.future.complete(value);
+			}
+		}
+	}
+
+	/**
+	 * 执行合并后的读取以及不合并的单独读取
+	 */
+	interface Reader {
+		/**
+		 * 通过一次pipeline发送keys的MGET（keys为空时不发送）以及fields中每个key的HMGET
+		 * @return 第一项为MGET的结果（keys为空时为null），之后按fields的顺序为各HMGET的结果；失败时返回null
+		 */
+		List<List<String>> read(String[] keys, Map<String, String[]> fields);
+
+		String get(String key);
+
+		String hget(String key, String field);
+	}
+
+	private static class ReadRequest {
+		private final String key;
+		private final String field;
+		private final CompletableFuture<String> future = new CompletableFuture<String>();
+
+		ReadRequest(String key, String field) {
+			this.key = key;
+			this.field = field;
+		}
+	}
+
+	private class Dispatcher implements Runnable {
+		@Override
+		public void run() {
+			List<ReadRequest> batch = new ArrayList<ReadRequest>(maxBatchSize);
+			while(running) {
+				try {
+					batch.add(queue.take());
+
+					// 在窗口期内继续收集，直到窗口结束或达到数量上限
+					long deadline = System.nanoTime() + windowNanos;
+					while(batch.size() < maxBatchSize) {
+						long remaining = deadline - System.nanoTime();
+						if(remaining <= 0L) {
+							queue.drainTo(batch, maxBatchSize - batch.size());
+							break;
+						}
+
+						ReadRequest request = queue.poll(remaining, TimeUnit.NANOSECONDS);
+						if(request == null) {
+							break;
+						}
+						batch.add(request);
+					}
+				} catch(InterruptedException e) {
+					if(batch.isEmpty()) {
+						break;
+					}
+				}
+
+				execute(batch);
+				batch.clear();
+			}
+		}
+	}
+}
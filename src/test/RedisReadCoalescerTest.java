@@ -0,0 +1,246 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * RedisReadCoalescer：以桩Reader代替Redis，检查合并为一次MGET/HMGET、结果与调用方的对应、队列满时的单独读取以及关闭
+ */
+public class RedisReadCoalescerTest {
+
+    /**
+     * GET key返回"v:key"，HGET key field返回"v:key/field"，"missing"开头的key返回null
+     */
+    private static class StubReader implements RedisReadCoalescer.Reader {
+        final List<String[]> batchKeys = new ArrayList<String[]>();
+        final List<Map<String, String[]>> batchFields = new ArrayList<Map<String, String[]>>();
+        final AtomicInteger directReads = new AtomicInteger();
+        volatile CountDownLatch blocked;
+
+        private static String value(String key, String field) {
+            if (key.startsWith("missing")) {
+                return null;
+            }
+            return field == null ? "v:" + key : "v:" + key + "/" + field;
+        }
+
+        @Override
+        public List<List<String>> read(String[] keys, Map<String, String[]> fields) {
+            synchronized (this) {
+                batchKeys.add(keys);
+                batchFields.add(new LinkedHashMap<String, String[]>(fields));
+            }
+            CountDownLatch blocked = this.blocked;
+            if (blocked != null) {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            List<List<String>> values = new ArrayList<List<String>>();
+            if (keys.length == 0) {
+                values.add(null);
+            } else {
+                List<String> gets = new ArrayList<String>();
+                for (String key : keys) {
+                    gets.add(value(key, null));
+                }
+                values.add(gets);
+            }
+            for (Map.Entry<String, String[]> e : fields.entrySet()) {
+                List<String> hgets = new ArrayList<String>();
+                for (String field : e.getValue()) {
+                    hgets.add(value(e.getKey(), field));
+                }
+                values.add(hgets);
+            }
+            return values;
+        }
+
+        @Override
+        public String get(String key) {
+            directReads.incrementAndGet();
+            return value(key, null);
+        }
+
+        @Override
+        public String hget(String key, String field) {
+            directReads.incrementAndGet();
+            return value(key, field);
+        }
+    }
+
+    private static Future<String> submit(ExecutorService executor, final CountDownLatch start, final RedisReadCoalescer coalescer,
+            final String key, final String field) {
+        return executor.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                start.await();
+                return field == null ? coalescer.get(key) : coalescer.hget(key, field);
+            }
+        });
+    }
+
+    @Test
+    public void testCoalescedIntoOneRead() throws Exception {
+        StubReader reader = new StubReader();
+        // 窗口足够长，保证所有请求进入同一批
+        RedisReadCoalescer coalescer = new RedisReadCoalescer(reader, 200000L, 100, 1, 5000);
+        coalescer.start();
+        ExecutorService executor = Executors.newFixedThreadPool(17);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<String>> gets = new ArrayList<Future<String>>();
+            List<Future<String>> hgets = new ArrayList<Future<String>>();
+            for (int i = 0; i < 8; ++i) {
+                gets.add(submit(executor, start, coalescer, "k" + (i % 4), null));
+                hgets.add(submit(executor, start, coalescer, "h" + (i % 2), "f" + (i % 3)));
+            }
+            Future<String> missing = submit(executor, start, coalescer, "missing", null);
+            start.countDown();
+
+            for (int i = 0; i < 8; ++i) {
+                assertEquals("v:k" + (i % 4), gets.get(i).get(5L, TimeUnit.SECONDS));
+                assertEquals("v:h" + (i % 2) + "/f" + (i % 3), hgets.get(i).get(5L, TimeUnit.SECONDS));
+            }
+            assertNull(missing.get(5L, TimeUnit.SECONDS));
+
+            // 一次MGET加每个hash一次HMGET，相同的key/field只读一次
+            assertEquals(1, reader.batchKeys.size());
+            assertEquals(5, reader.batchKeys.get(0).length);
+            Map<String, String[]> fields = reader.batchFields.get(0);
+            assertEquals(2, fields.size());
+            assertEquals(3, fields.get("h0").length);
+            assertEquals(3, fields.get("h1").length);
+            assertEquals(0, reader.directReads.get());
+        } finally {
+            executor.shutdownNow();
+            coalescer.shutdown();
+        }
+    }
+
+    @Test
+    public void testQueueFullReadsDirectly() throws Exception {
+        StubReader reader = new StubReader();
+        reader.blocked = new CountDownLatch(1);
+        // 每批1个请求，队列容量64
+        RedisReadCoalescer coalescer = new RedisReadCoalescer(reader, 0L, 1, 1, 5000);
+        coalescer.start();
+        ExecutorService executor = Executors.newFixedThreadPool(65);
+        try {
+            CountDownLatch start = new CountDownLatch(0);
+            List<Future<String>> queued = new ArrayList<Future<String>>();
+            queued.add(submit(executor, start, coalescer, "k0", null));
+            while (reader.batchKeys.isEmpty()) {
+                Thread.sleep(1L);
+            }
+            for (int i = 1; i <= 64; ++i) {
+                queued.add(submit(executor, start, coalescer, "k" + i, null));
+            }
+            Thread.sleep(200L);
+
+            // dispatcher阻塞、队列已满，调用方直接单独读取而不是等待
+            assertEquals("v:direct", coalescer.get("direct"));
+            assertEquals("v:h/f", coalescer.hget("h", "f"));
+            assertEquals(2, reader.directReads.get());
+
+            reader.blocked.countDown();
+            for (int i = 0; i < queued.size(); ++i) {
+                assertEquals("v:k" + i, queued.get(i).get(5L, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+            coalescer.shutdown();
+        }
+    }
+
+    @Test
+    public void testShutdownCompletesQueuedRequests() throws Exception {
+        StubReader reader = new StubReader();
+        reader.blocked = new CountDownLatch(1);
+        RedisReadCoalescer coalescer = new RedisReadCoalescer(reader, 0L, 1, 1, 30000);
+        coalescer.start();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch start = new CountDownLatch(0);
+            Future<String> inFlight = submit(executor, start, coalescer, "k0", null);
+            while (reader.batchKeys.isEmpty()) {
+                Thread.sleep(1L);
+            }
+            List<Future<String>> queued = new ArrayList<Future<String>>();
+            for (int i = 1; i < 8; ++i) {
+                queued.add(submit(executor, start, coalescer, "k" + i, null));
+            }
+            Thread.sleep(100L);
+
+            // 队列中的请求立即返回null，不等待30秒的超时
+            coalescer.shutdown();
+            for (Future<String> future : queued) {
+                assertNull(future.get(1L, TimeUnit.SECONDS));
+            }
+            reader.blocked.countDown();
+            assertEquals("v:k0", inFlight.get(5L, TimeUnit.SECONDS));
+
+            // 关闭后直接单独读取
+            assertEquals("v:k9", coalescer.get("k9"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testNoRequestLostDuringShutdown() throws Exception {
+        StubReader reader = new StubReader();
+        final RedisReadCoalescer coalescer = new RedisReadCoalescer(reader, 100L, 16, 2, 30000);
+        coalescer.start();
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicInteger slowReads = new AtomicInteger();
+        final AtomicInteger wrongValues = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; ++t) {
+            final String key = "k" + t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    while (!stop.get()) {
+                        long startTime = System.nanoTime();
+                        String value = coalescer.get(key);
+                        if (System.nanoTime() - startTime > TimeUnit.SECONDS.toNanos(5L)) {
+                            slowReads.incrementAndGet();
+                        }
+                        if (value != null && !value.equals("v:" + key)) {
+                            wrongValues.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+
+        Thread.sleep(50L);
+        coalescer.shutdown();
+        Thread.sleep(50L);
+        stop.set(true);
+        for (Thread thread : threads) {
+            thread.join(10000L);
+            assertFalse(thread.isAlive());
+        }
+        // 与shutdown并发放入的请求也会完成，不会等到30秒超时
+        assertEquals(0, slowReads.get());
+        assertEquals(0, wrongValues.get());
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 只读副本路由：后台每probeIntervalMillis毫秒对每个副本PING一次，以EWMA记录延迟，
+ * 读请求按延迟的倒数加权随机选择一个可用副本（延迟越低分到的读越多）；
+ * PING失败的副本在下一次PING成功前不参与选择，全部不可用时返回null，由调用方回退到master。
+ *
+ * @author BurningIce
+ *
+ */
+class RedisReplicaRouter {
+	private final static double EWMA_ALPHA = 0.3;
+	private final static double MIN_LATENCY_MICROS = 50.0;
+	private final Replica[] replicas;
+	private final long probeIntervalMillis;
+	private ScheduledExecutorService prober;
+
+	RedisReplicaRouter(JedisPool[] pools, String[] names, long probeIntervalMillis) {
+		this.replicas = new Replica[pools.length];
+		for(int i = 0; i < pools.length; ++i) {
+			this.replicas[i] = new Replica(names[i], pools[i]);
+		}
+		this.probeIntervalMillis = probeIntervalMillis;
+	}
+
+	/**
+	 * 同步PING一次所有副本后启动后台探测
+	 */
+	void start() {
+		this.probe();
+		this.prober = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "redis-replica-prober");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.prober.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				probe();
+			}
+		}, this.probeIntervalMillis, this.probeIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 停止探测并关闭所有副本的连接池
+	 */
+	void shutdown() {
+		if(this.prober != null) {
+			this.prober.shutdownNow();
+			this.prober = null;
+		}
+
+		for(Replica replica : this.replicas) {
+			replica.pool.destroy();
+		}
+	}
+
+	/**
+	 * @return 选中的副本连接池，没有可用副本时返回null
+	 */
+	JedisPool select() {
+		double totalWeight = 0.0;
+		for(Replica replica : this.replicas) {
+			if(replica.up) {
+				totalWeight += replica.weight();
+			}
+		}
+
+		if(totalWeight <= 0.0)
+			return null;
+
+		double r = ThreadLocalRandom.current().nextDouble(totalWeight);
+		Replica selected = null;
+		for(Replica replica : this.replicas) {
+			if(!replica.up)
+				continue;
+
+			selected = replica;
+			r -= replica.weight();
+			if(r < 0.0)
+				break;
+		}
+		return selected.pool;
+	}
+
+	/**
+	 * @return 各副本的状态，如"host1:6379 up 320us, host2:6379 down"
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for(Replica replica : this.replicas) {
+			if(sb.length() > 0) {
+				sb.append(", ");
+			}
+			sb.append(replica.name);
+			if(replica.up) {
+				sb.append(" up ").append(Math.round(replica.latencyMicros)).append("us");
+			} else {
+				sb.append(" down");
+			}
+		}
+		return sb.toString();
+	}
+
+	void probe() {
+		for(Replica replica : this.replicas) {
+			replica.probe();
+		}
+	}
+
+	private static final class Replica {
+		private final String name;
+		private final JedisPool pool;
+		private volatile boolean up;
+		private volatile double latencyMicros;
+
+		Replica(String name, JedisPool pool) {
+			this.name = name;
+			this.pool = pool;
+		}
+
+		double weight() {
+			return 1.0 / Math.max(MIN_LATENCY_MICROS, this.latencyMicros);
+		}
+
+		void probe() {
+			Jedis jedis = null;
+			try {
+				jedis = this.pool.getResource();
+				long startTime = System.nanoTime();
+				jedis.ping();
+				double micros = (System.nanoTime() - startTime) / 1000.0;
+				// 只有探测线程写入，不需要CAS
+				this.latencyMicros = this.up ? this.latencyMicros + EWMA_ALPHA * (micros - this.latencyMicros) : micros;
+				this.up = true;
+			} catch(Throwable t) {
+				this.up = false;
+//				logger.warn("redis replica " + this.name + " is down: " + t.getMessage());
+			} finally {
+				if(jedis != null) {
+					try {
+						jedis.close();
+					} catch(Throwable t) {
+//						logger.error("error to return redis resource to pool: " + t.getMessage(), t);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,213 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 基于游标的SCAN系列命令迭代器，内存中最多只保留一批结果；
+ * 每次取下一批时才从连接池借用连接，取完立即归还，迭代期间不独占连接。
+ * 连接异常时迭代结束：nextBatch返回null且{@link #isFailed()}为true，hasNext抛出异常，调用方不会把未扫描完当作扫描完成。
+ *
+ * @author BurningIce
+ *
+ */
+abstract class RedisScanIterator<T> implements Iterator<T> {
+	private final JedisPool jedisPool;
+	protected final ScanParams params;
+	private String cursor = ScanParams.SCAN_POINTER_START;
+	private boolean finished = false;
+	private Throwable failure;
+	private List<T> batch;
+	private int index;
+
+	RedisScanIterator(JedisPool jedisPool, String pattern, int count) {
+		this.jedisPool = jedisPool;
+		this.params = new ScanParams();
+		if(pattern != null) {
+			this.params.match(pattern);
+		}
+		if(count > 0) {
+			this.params.count(count);
+		}
+	}
+
+	/**
+	 * 执行一次SCAN/HSCAN/SSCAN
+	 * @param jedis
+	 * @param cursor
+	 * @return
+	 */
+	protected abstract ScanResult<T> scan(Jedis jedis, String cursor);
+
+	/**
+	 * 取下一批结果，已扫描完成时返回null
+	 */
+	List<T> nextBatch() {
+		while(!this.finished) {
+			ScanResult<T> result = this.scanOnce();
+			if(result == null) {
+				this.finished = true;
+				break;
+			}
+
+			this.cursor = result.getStringCursor();
+			if(ScanParams.SCAN_POINTER_START.equals(this.cursor)) {
+				this.finished = true;
+			}
+
+			List<T> values = result.getResult();
+			if(values != null && !values.isEmpty()) {
+				return values;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return 是否因连接异常而没有扫描完
+	 */
+	boolean isFailed() {
+		return this.failure != null;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while(this.batch == null || this.index >= this.batch.size()) {
+			this.batch = this.nextBatch();
+			this.index = 0;
+			if(this.batch == null) {
+				if(this.failure != null) {
+					throw this.failure instanceof JedisException ? (JedisException)this.failure : new JedisException(this.failure);
+				}
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	@Override
+	public T next() {
+		if(!this.hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		return this.batch.get(this.index++);
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	private ScanResult<T> scanOnce() {
+		if(this.jedisPool == null)
+			return null;
+
+		Jedis jedis = null;
+		try {
+			jedis = this.jedisPool.getResource();
+			return this.scan(jedis, this.cursor);
+		} catch(Throwable ex) {
+			this.failure = ex;
+//			logger.error("failed to scan redis: " + ex.getMessage(), ex);
+		} finally {
+			if(jedis != null) {
+				try {
+					jedis.close();
+				} catch(Throwable t) {
+//					logger.error("error to return redis resource to pool: " + t.getMessage(), t);
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Redis的glob匹配：*、?、[abc]、[^abc]、[a-z]以及\转义
+	 */
+	@SuppressWarnings("fallthrough")
+	static boolean globMatch(String pattern, int p, String string, int s) {
+		int patternLength = pattern.length();
+		int stringLength = string.length();
+		while(p < patternLength) {
+			char c = pattern.charAt(p);
+			switch(c) {
+			case '*':
+				while(p + 1 < patternLength && pattern.charAt(p + 1) == '*') {
+					p++;
+				}
+				if(p + 1 == patternLength)
+					return true;
+
+				for(int i = s; i <= stringLength; ++i) {
+					if(globMatch(pattern, p + 1, string, i))
+						return true;
+				}
+				return false;
+			case '?':
+				if(s >= stringLength)
+					return false;
+				s++;
+				break;
+			case '[': {
+				if(s >= stringLength)
+					return false;
+
+				char sc = string.charAt(s);
+				p++;
+				boolean not = p < patternLength && pattern.charAt(p) == '^';
+				if(not) {
+					p++;
+				}
+
+				boolean matched = false;
+				while(p < patternLength && pattern.charAt(p) != ']') {
+					char pc = pattern.charAt(p);
+					if(pc == '\\' && p + 1 < patternLength) {
+						p++;
+						matched |= pattern.charAt(p) == sc;
+					} else if(p + 2 < patternLength && pattern.charAt(p + 1) == '-' && pattern.charAt(p + 2) != ']') {
+						char start = (char)Math.min(pc, pattern.charAt(p + 2));
+						char end = (char)Math.max(pc, pattern.charAt(p + 2));
+						matched |= sc >= start && sc <= end;
+						p += 2;
+					} else {
+						matched |= pc == sc;
+					}
+					p++;
+				}
+
+				if(matched == not)
+					return false;
+				s++;
+				break;
+			}
+			case '\\':
+				if(p + 1 < patternLength) {
+					p++;
+					c = pattern.charAt(p);
+				}
+				// fall through
+			default:
+				if(s >= stringLength || string.charAt(s) != c)
+					return false;
+				s++;
+				break;
+			}
+			p++;
+		}
+		return s == stringLength;
+	}
+}
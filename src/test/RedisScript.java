@@ -0,0 +1,57 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * 缓存在服务端的Lua脚本：SHA1在本地计算，执行时先EVALSHA（只发送40字节的摘要），
+ * 服务端没有缓存该脚本（首次执行、重启或SCRIPT FLUSH之后）返回NOSCRIPT时改用EVAL发送脚本内容，
+ * EVAL同时会把脚本加入服务端缓存，之后的EVALSHA即可命中。
+ *
+ * @author BurningIce
+ *
+ */
+class RedisScript {
+	private final String source;
+	private final String sha1;
+
+	RedisScript(String source) {
+		this.source = source;
+		this.sha1 = sha1(source);
+	}
+
+	String getSha1() {
+		return this.sha1;
+	}
+
+	Object eval(Jedis jedis, List<String> keys, List<String> args) {
+		try {
+			return jedis.evalsha(this.sha1, keys, args);
+		} catch(JedisDataException ex) {
+			if(ex.getMessage() == null || !ex.getMessage().startsWith("NOSCRIPT"))
+				throw ex;
+
+			return jedis.eval(this.source, keys, args);
+		}
+	}
+
+	private static String sha1(String source) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(source.getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder(digest.length * 2);
+			for(byte b : digest) {
+				sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+			return sb.toString();
+		} catch(NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+}
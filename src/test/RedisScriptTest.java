@@ -0,0 +1,16 @@
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * RedisScript的SHA1与Redis SCRIPT LOAD返回值一致
+ */
+public class RedisScriptTest {
+
+    @Test
+    public void testSha1() {
+        // 与redis-cli SCRIPT LOAD "return 1"返回的摘要一致
+        assertEquals("e0e1f9fabfc9d4800c877a703b823ac0578ff8db", new RedisScript("return 1").getSha1());
+        assertEquals(40, new RedisScript("return redis.call('incrby', KEYS[1], ARGV[1])").getSha1().length());
+    }
+}
@@ -0,0 +1,296 @@
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * 测试用的本地RESP桩服务：只实现PING/QUIT/GET/SET/SETEX/MGET/MSET/INCRBY/EXPIRE/HSET/PFADD/SCAN/HSCAN以及MULTI/EXEC，
+ * EVALSHA总是返回NOSCRIPT，EVAL不执行脚本、总是返回1；记录收到的命令，并可以在收到指定命令时断开连接
+ */
+class RedisStubServer extends Thread {
+    private final ServerSocket serverSocket;
+    // 有序，SCAN/HSCAN的游标即为下一个元素的下标
+    private final TreeMap<String, String> values = new TreeMap<String, String>();
+    private final TreeMap<String, TreeMap<String, String>> hashes = new TreeMap<String, TreeMap<String, String>>();
+    // PFADD按集合保存元素
+    private final Map<String, Set<String>> hyperLogLogs = new TreeMap<String, Set<String>>();
+    private final Map<String, Integer> ttls = new TreeMap<String, Integer>();
+    private final List<List<String>> commands = new ArrayList<List<String>>();
+    private String disconnectCommand;
+    private int disconnectCountdown;
+
+    RedisStubServer() throws IOException {
+        super("redis-stub-server");
+        this.serverSocket = new ServerSocket(0);
+        setDaemon(true);
+        start();
+    }
+
+    int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    void close() throws IOException {
+        serverSocket.close();
+    }
+
+    /**
+     * 之后收到的第n条名为name的命令不回复，直接断开该连接
+     */
+    synchronized void disconnectAt(String name, int n) {
+        this.disconnectCommand = name.toUpperCase();
+        this.disconnectCountdown = n;
+    }
+
+    /**
+     * @return 最近一次EXPIRE/SETEX设置的过期时间（单位：秒），没有设置时返回null
+     */
+    synchronized Integer ttl(String key) {
+        return ttls.get(key);
+    }
+
+    /**
+     * @return 收到的名为name的命令的参数（不含命令名）
+     */
+    synchronized List<List<String>> commands(String name) {
+        List<List<String>> matched = new ArrayList<List<String>>();
+        for (List<String> command : commands) {
+            if (command.get(0).equalsIgnoreCase(name)) {
+                matched.add(command.subList(1, command.size()));
+            }
+        }
+        return matched;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                final Socket socket = serverSocket.accept();
+                Thread thread = new Thread() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                };
+                thread.setDaemon(true);
+                thread.start();
+            }
+        } catch (IOException ex) {
+            // 已关闭
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            // MULTI之后、EXEC之前排队的命令
+            List<List<String>> transaction = null;
+            while (true) {
+                List<String> args = readCommand(in);
+                if (args == null) {
+                    break;
+                }
+
+                String name = args.get(0).toUpperCase();
+                String reply;
+                if (name.equals("MULTI")) {
+                    record(args);
+                    transaction = new ArrayList<List<String>>();
+                    reply = "+OK\r\n";
+                } else if (name.equals("EXEC") && transaction != null) {
+                    record(args);
+                    StringBuilder replies = new StringBuilder("*").append(transaction.size()).append("\r\n");
+                    for (List<String> queued : transaction) {
+                        replies.append(execute(queued));
+                    }
+                    transaction = null;
+                    reply = replies.toString();
+                } else if (transaction != null) {
+                    transaction.add(args);
+                    reply = "+QUEUED\r\n";
+                } else {
+                    reply = execute(args);
+                }
+                if (reply == null) {
+                    break;
+                }
+                out.write(reply.getBytes(StandardCharsets.UTF_8));
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+            socket.close();
+        } catch (IOException ex) {
+            // 客户端断开
+        }
+    }
+
+    private synchronized void record(List<String> args) {
+        commands.add(args);
+    }
+
+    /**
+     * @return 回复，断开连接时返回null
+     */
+    private synchronized String execute(List<String> args) {
+        String name = args.get(0).toUpperCase();
+        commands.add(args);
+        if (name.equals(disconnectCommand) && --disconnectCountdown == 0) {
+            disconnectCommand = null;
+            return null;
+        }
+
+        if (name.equals("PING")) {
+            return "+PONG\r\n";
+        } else if (name.equals("QUIT")) {
+            return "+OK\r\n";
+        } else if (name.equals("GET")) {
+            return bulk(values.get(args.get(1)));
+        } else if (name.equals("SET")) {
+            values.put(args.get(1), args.get(2));
+            ttls.remove(args.get(1));
+            return "+OK\r\n";
+        } else if (name.equals("SETEX")) {
+            values.put(args.get(1), args.get(3));
+            ttls.put(args.get(1), Integer.valueOf(args.get(2)));
+            return "+OK\r\n";
+        } else if (name.equals("INCRBY")) {
+            String value = values.get(args.get(1));
+            long result;
+            try {
+                result = (value == null ? 0L : Long.parseLong(value)) + Long.parseLong(args.get(2));
+            } catch (NumberFormatException ex) {
+                return "-ERR value is not an integer or out of range\r\n";
+            }
+            values.put(args.get(1), String.valueOf(result));
+            return ":" + result + "\r\n";
+        } else if (name.equals("EXPIRE")) {
+            ttls.put(args.get(1), Integer.valueOf(args.get(2)));
+            return ":1\r\n";
+        } else if (name.equals("PFADD")) {
+            Set<String> elements = hyperLogLogs.get(args.get(1));
+            boolean changed = elements == null;
+            if (elements == null) {
+                elements = new TreeSet<String>();
+                hyperLogLogs.put(args.get(1), elements);
+            }
+            for (int i = 2; i < args.size(); ++i) {
+                changed |= elements.add(args.get(i));
+            }
+            return changed ? ":1\r\n" : ":0\r\n";
+        } else if (name.equals("EVALSHA")) {
+            return "-NOSCRIPT No matching script. Please use EVAL.\r\n";
+        } else if (name.equals("EVAL")) {
+            return ":1\r\n";
+        } else if (name.equals("MGET")) {
+            StringBuilder reply = new StringBuilder("*").append(args.size() - 1).append("\r\n");
+            for (int i = 1; i < args.size(); ++i) {
+                reply.append(bulk(values.get(args.get(i))));
+            }
+            return reply.toString();
+        } else if (name.equals("MSET")) {
+            for (int i = 1; i + 1 < args.size(); i += 2) {
+                values.put(args.get(i), args.get(i + 1));
+            }
+            return "+OK\r\n";
+        } else if (name.equals("HSET")) {
+            TreeMap<String, String> hash = hashes.get(args.get(1));
+            if (hash == null) {
+                hash = new TreeMap<String, String>();
+                hashes.put(args.get(1), hash);
+            }
+            return hash.put(args.get(2), args.get(3)) == null ? ":1\r\n" : ":0\r\n";
+        } else if (name.equals("SCAN")) {
+            return scan(values, args, 1, false);
+        } else if (name.equals("HSCAN")) {
+            TreeMap<String, String> hash = hashes.get(args.get(1));
+            return scan(hash == null ? new TreeMap<String, String>() : hash, args, 2, true);
+        }
+        return "-ERR unknown command '" + name + "'\r\n";
+    }
+
+    /**
+     * 从游标处取COUNT个元素（默认10），按MATCH过滤；取到末尾时返回的游标为0
+     */
+    private static String scan(TreeMap<String, String> map, List<String> args, int cursorIndex, boolean withValues) {
+        int cursor = Integer.parseInt(args.get(cursorIndex));
+        String pattern = null;
+        int count = 10;
+        for (int i = cursorIndex + 1; i + 1 < args.size(); i += 2) {
+            if (args.get(i).equalsIgnoreCase("MATCH")) {
+                pattern = args.get(i + 1);
+            } else if (args.get(i).equalsIgnoreCase("COUNT")) {
+                count = Integer.parseInt(args.get(i + 1));
+            }
+        }
+
+        List<String> entries = new ArrayList<String>();
+        int index = 0;
+        int end = cursor + count;
+        for (Map.Entry<String, String> e : map.entrySet()) {
+            if (index >= cursor && index < end && (pattern == null || RedisScanIterator.globMatch(pattern, 0, e.getKey(), 0))) {
+                entries.add(e.getKey());
+                if (withValues) {
+                    entries.add(e.getValue());
+                }
+            }
+            index++;
+        }
+
+        StringBuilder reply = new StringBuilder("*2\r\n").append(bulk(String.valueOf(end >= map.size() ? 0 : end)));
+        reply.append("*").append(entries.size()).append("\r\n");
+        for (String entry : entries) {
+            reply.append(bulk(entry));
+        }
+        return reply.toString();
+    }
+
+    private static String bulk(String value) {
+        return value == null ? "$-1\r\n" : "$" + value.getBytes(StandardCharsets.UTF_8).length + "\r\n" + value + "\r\n";
+    }
+
+    private static List<String> readCommand(InputStream in) throws IOException {
+        String line = readLine(in);
+        if (line == null) {
+            return null;
+        }
+
+        int count = Integer.parseInt(line.substring(1));
+        List<String> args = new ArrayList<String>(count);
+        for (int i = 0; i < count; ++i) {
+            int length = Integer.parseInt(readLine(in).substring(1));
+            byte[] arg = new byte[length];
+            for (int read = 0; read < length; ) {
+                read += in.read(arg, read, length - read);
+            }
+            in.read();
+            in.read();
+            args.add(new String(arg, StandardCharsets.UTF_8));
+        }
+        return args;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\r') {
+            if (b < 0) {
+                return null;
+            }
+            sb.append((char) b);
+        }
+        in.read();
+        return sb.toString();
+    }
+}
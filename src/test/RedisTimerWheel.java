@@ -0,0 +1,190 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 分层时间轮，用于过期数量很大、精度要求为tick级别的定时任务（如key过期）：
+ * 第0层256个槽，每槽一个tick；第1~3层各64个槽，每槽为下一层的一整圈，tick为10ms时覆盖约7.7天，
+ * 更远的到期时间先放在最高层，转到时重新计算。添加和到期都是O(1)，不随过期项数量增加而扫描。
+ * schedule可以被任意线程调用（写入无锁队列），槽位只由工作线程访问，不需要加锁。
+ *
+ * @author BurningIce
+ *
+ */
+class RedisTimerWheel<T> {
+	private final static int ROOT_BITS = 8;
+	private final static int LEVEL_BITS = 6;
+	private final static int LEVELS = 4;
+	private final static int ROOT_MASK = (1 << ROOT_BITS) - 1;
+	private final static int LEVEL_MASK = (1 << LEVEL_BITS) - 1;
+	private final static long MAX_TICKS = 1L << (ROOT_BITS + (LEVELS - 1) * LEVEL_BITS);
+	private final long tickNanos;
+	private final long startTime;
+	private final ExpiryListener<T> listener;
+	private final ConcurrentLinkedQueue<Timer<T>> pending = new ConcurrentLinkedQueue<Timer<T>>();
+	private final List<Timer<T>>[][] wheels;
+	private long nextTick;
+	private volatile boolean running;
+	private Thread worker;
+
+	/**
+	 * 到期回调，在工作线程中调用，不应阻塞
+	 */
+	interface ExpiryListener<T> {
+		void onExpire(T item);
+	}
+
+	RedisTimerWheel(long tickMillis, ExpiryListener<T> listener) {
+		this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, tickMillis));
+		this.startTime = System.nanoTime();
+		this.listener = listener;
+		this.wheels = newWheels(LEVELS);
+		for(int level = 0; level < LEVELS; ++level) {
+			int slots = level == 0 ? 1 << ROOT_BITS : 1 << LEVEL_BITS;
+			this.wheels[level] = newSlots(slots);
+			for(int i = 0; i < slots; ++i) {
+				this.wheels[level][i] = new ArrayList<Timer<T>>();
+			}
+		}
+	}
+
+	/**
+	 * 不能直接创建泛型数组；数组只在本类中使用，只放入Timer的List
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static <T> List<Timer<T>>[][] newWheels(int levels) {
+		return new List[levels][];
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static <T> List<Timer<T>>[] newSlots(int slots) {
+		return new List[slots];
+	}
+
+	/**
+	 * 启动工作线程，每个tick推进一次
+	 */
+	void start(String threadName) {
+		this.running = true;
+		this.worker = new Thread(threadName) {
+			@Override
+			public void run() {
+				while(running) {
+					try {
+						advance(System.nanoTime());
+					} catch(Throwable t) {
+//						logger.error("failed to expire timers: " + t.getMessage(), t);
+					}
+					LockSupport.parkNanos(tickNanos);
+				}
+			}
+		};
+		this.worker.setDaemon(true);
+		this.worker.start();
+	}
+
+	void shutdown() {
+		this.running = false;
+		if(this.worker != null) {
+			LockSupport.unpark(this.worker);
+			this.worker = null;
+		}
+	}
+
+	/**
+	 * @param deadline 到期时间（System.nanoTime()）
+	 */
+	void schedule(T item, long deadline) {
+		long ticks = (deadline - this.startTime + this.tickNanos - 1) / this.tickNanos;
+		this.pending.offer(new Timer<T>(item, Math.max(0L, ticks)));
+	}
+
+	/**
+	 * 推进到now，对所有到期项调用listener；只能由一个线程调用（启动工作线程后由工作线程调用）
+	 * @return 到期项数量
+	 */
+	int advance(long now) {
+		Timer<T> timer;
+		while((timer = this.pending.poll()) != null) {
+			this.add(timer);
+		}
+
+		long currentTick = (now - this.startTime) / this.tickNanos;
+		int expired = 0;
+		while(this.nextTick <= currentTick) {
+			int index = (int)(this.nextTick & ROOT_MASK);
+			if(index == 0) {
+				// 第0层转完一圈，把上一层当前槽的项分散到下层，依此类推
+				for(int level = 1; level < LEVELS && this.cascade(level) == 0; ++level) {
+				}
+			}
+
+			List<Timer<T>> slot = this.wheels[0][index];
+			if(!slot.isEmpty()) {
+				this.wheels[0][index] = new ArrayList<Timer<T>>();
+				for(Timer<T> t : slot) {
+					this.listener.onExpire(t.item);
+				}
+				expired += slot.size();
+			}
+			this.nextTick++;
+		}
+		return expired;
+	}
+
+	/**
+	 * @return 该层当前槽的下标
+	 */
+	private int cascade(int level) {
+		int index = (int)((this.nextTick >>> (ROOT_BITS + (level - 1) * LEVEL_BITS)) & LEVEL_MASK);
+		List<Timer<T>> slot = this.wheels[level][index];
+		if(!slot.isEmpty()) {
+			this.wheels[level][index] = new ArrayList<Timer<T>>();
+			for(Timer<T> timer : slot) {
+				this.add(timer);
+			}
+		}
+		return index;
+	}
+
+	private void add(Timer<T> timer) {
+		long delta = timer.tick - this.nextTick;
+		if(delta < 0L) {
+			// 已到期，下一个tick处理
+			this.wheels[0][(int)(this.nextTick & ROOT_MASK)].add(timer);
+			return;
+		}
+
+		// 超出时间轮范围的先放在最高层最远的槽，转到时重新计算
+		long tick = delta < MAX_TICKS ? timer.tick : this.nextTick + MAX_TICKS - 1;
+		delta = tick - this.nextTick;
+		if(delta < (1L << ROOT_BITS)) {
+			this.wheels[0][(int)(tick & ROOT_MASK)].add(timer);
+			return;
+		}
+
+		for(int level = 1; level < LEVELS; ++level) {
+			int shift = ROOT_BITS + level * LEVEL_BITS;
+			if(level == LEVELS - 1 || delta < (1L << shift)) {
+				this.wheels[level][(int)((tick >>> (shift - LEVEL_BITS)) & LEVEL_MASK)].add(timer);
+				return;
+			}
+		}
+	}
+
+	private static final class Timer<T> {
+		private final T item;
+		private final long tick;
+
+		Timer(T item, long tick) {
+			this.item = item;
+			this.tick = tick;
+		}
+	}
+}
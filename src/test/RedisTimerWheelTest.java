@@ -0,0 +1,68 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * RedisTimerWheel：手动推进时间，检查跨层级的到期与推进过程中的调度
+ */
+public class RedisTimerWheelTest {
+
+    @Test
+    public void testExpireOnTickAcrossLevels() {
+        final List<String> expired = new ArrayList<String>();
+        RedisTimerWheel<String> wheel = new RedisTimerWheel<String>(1L, new RedisTimerWheel.ExpiryListener<String>() {
+            @Override
+            public void onExpire(String item) {
+                expired.add(item);
+            }
+        });
+        long base = System.nanoTime();
+        long tick = TimeUnit.MILLISECONDS.toNanos(1L);
+
+        // 分别落在第0~3层，以及超出时间轮范围
+        long[] delays = new long[] {
+                TimeUnit.MILLISECONDS.toNanos(5L),
+                TimeUnit.MILLISECONDS.toNanos(300L),
+                TimeUnit.SECONDS.toNanos(20L),
+                TimeUnit.MINUTES.toNanos(30L),
+                TimeUnit.HOURS.toNanos(20L)
+        };
+        for (int i = delays.length - 1; i >= 0; --i) {
+            wheel.schedule("t" + i, base + delays[i]);
+        }
+
+        for (int i = 0; i < delays.length; ++i) {
+            wheel.advance(base + delays[i] - tick);
+            assertEquals("before t" + i, i, expired.size());
+            wheel.advance(base + delays[i] + tick);
+            assertEquals("after t" + i, i + 1, expired.size());
+            assertEquals("t" + i, expired.get(i));
+        }
+    }
+
+    @Test
+    public void testScheduleWhileAdvancing() {
+        final List<String> expired = new ArrayList<String>();
+        RedisTimerWheel<String> wheel = new RedisTimerWheel<String>(1L, new RedisTimerWheel.ExpiryListener<String>() {
+            @Override
+            public void onExpire(String item) {
+                expired.add(item);
+            }
+        });
+        long base = System.nanoTime();
+        wheel.advance(base + TimeUnit.SECONDS.toNanos(10L));
+
+        // 已经过去的到期时间在下一次推进时立即到期
+        wheel.schedule("past", base);
+        wheel.schedule("future", base + TimeUnit.SECONDS.toNanos(11L));
+        assertEquals(1, wheel.advance(base + TimeUnit.SECONDS.toNanos(10L) + TimeUnit.MILLISECONDS.toNanos(2L)));
+        assertEquals("past", expired.get(0));
+
+        assertEquals(1, wheel.advance(base + TimeUnit.SECONDS.toNanos(12L)));
+        assertEquals("future", expired.get(1));
+    }
+}
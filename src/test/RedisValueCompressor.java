@@ -0,0 +1,199 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Redis value压缩：超过阈值的值使用Deflater压缩，压缩后的值以7字节头标识：
+ * 0x00 'Z'（魔数）、格式（1为deflate）、原始长度（4字节，大端）。
+ * 压缩节省不足1/8时保留原始值；HyperLogLog（以"HYLL"开头）不压缩，否则PFMERGE/PFADD等命令会拒绝该值。
+ * 读取时只有以该头开始且能成功解压的值才解压，其余原样返回，
+ * 因此开启压缩前写入的值以及其他客户端写入的值都可以正常读取。
+ * 每个线程复用一个Deflater/Inflater和输出缓冲区。
+ *
+ * @author BurningIce
+ *
+ */
+class RedisValueCompressor {
+	private final static byte MAGIC_0 = 0x00;
+	private final static byte MAGIC_1 = 'Z';
+	private final static byte FORMAT_DEFLATE = 1;
+	final static int HEADER_LENGTH = 7;
+	private final static int MAX_RAW_LENGTH = 512 * 1024 * 1024;	// Redis单个value最大512MB
+	private final static int MAX_DEFLATE_RATIO = 1032;				// deflate的最大压缩比约为1032:1
+	private final static int MAX_RETAINED_BUFFER = 1024 * 1024;
+	private final int threshold;
+	private final ThreadLocal<Deflater> deflaters;
+	private final static ThreadLocal<Inflater> INFLATERS = new ThreadLocal<Inflater>() {
+		@Override
+		protected Inflater initialValue() {
+			return new Inflater();
+		}
+	};
+	private final static ThreadLocal<byte[]> BUFFERS = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[8192];
+		}
+	};
+
+	/**
+	 * @param threshold 大于等于该长度的值才压缩
+	 * @param level Deflater压缩级别，1（最快）~9（最小）
+	 */
+	RedisValueCompressor(int threshold, final int level) {
+		this.threshold = Math.max(HEADER_LENGTH + 1, threshold);
+		this.deflaters = new ThreadLocal<Deflater>() {
+			@Override
+			protected Deflater initialValue() {
+				return new Deflater(level);
+			}
+		};
+	}
+
+	/**
+	 * @return 压缩后的值；未达到阈值或压缩效果不明显时返回原值
+	 */
+	byte[] compress(byte[] value) {
+		if(value == null || value.length < this.threshold || isHyperLogLog(value))
+			return value;
+
+		int maxLength = value.length - (value.length >>> 3);
+		byte[] buffer = BUFFERS.get();
+		if(buffer.length < maxLength) {
+			buffer = new byte[maxLength];
+			if(maxLength <= MAX_RETAINED_BUFFER) {
+				BUFFERS.set(buffer);
+			}
+		}
+
+		Deflater deflater = this.deflaters.get();
+		deflater.reset();
+		deflater.setInput(value);
+		deflater.finish();
+		int length = HEADER_LENGTH;
+		while(!deflater.finished()) {
+			if(length >= maxLength)
+				return value;
+
+			length += deflater.deflate(buffer, length, maxLength - length);
+		}
+
+		buffer[0] = MAGIC_0;
+		buffer[1] = MAGIC_1;
+		buffer[2] = FORMAT_DEFLATE;
+		buffer[3] = (byte)(value.length >>> 24);
+		buffer[4] = (byte)(value.length >>> 16);
+		buffer[5] = (byte)(value.length >>> 8);
+		buffer[6] = (byte)value.length;
+		return Arrays.copyOf(buffer, length);
+	}
+
+	/**
+	 * @return 解压后的值；不是压缩格式时返回原值
+	 */
+	static byte[] decompress(byte[] value) {
+		int rawLength = rawLength(value);
+		if(rawLength < 0)
+			return value;
+
+		byte[] raw = new byte[rawLength];
+		return inflate(value, raw, 0, rawLength) ? raw : value;
+	}
+
+	/**
+	 * 解压到target：不是压缩格式时直接复制；target为heap buffer时直接解压到其数组中，否则经由线程复用的缓冲区，不分配新数组
+	 * @return 值（解压后）的长度；target剩余空间不足时不写入，position不变
+	 */
+	static int decompress(byte[] value, ByteBuffer target) {
+		int rawLength = rawLength(value);
+		if(rawLength >= 0) {
+			if(rawLength > target.remaining())
+				return rawLength;
+
+			if(target.hasArray()) {
+				if(inflate(value, target.array(), target.arrayOffset() + target.position(), rawLength)) {
+					target.position(target.position() + rawLength);
+					return rawLength;
+				}
+			} else {
+				byte[] buffer = BUFFERS.get();
+				if(buffer.length < rawLength) {
+					buffer = new byte[rawLength];
+					if(rawLength <= MAX_RETAINED_BUFFER) {
+						BUFFERS.set(buffer);
+					}
+				}
+
+				if(inflate(value, buffer, 0, rawLength)) {
+					target.put(buffer, 0, rawLength);
+					return rawLength;
+				}
+			}
+		}
+
+		// 不是压缩格式或解压失败，按原值处理
+		if(value.length <= target.remaining()) {
+			target.put(value);
+		}
+		return value.length;
+	}
+
+	/**
+	 * 头中的原始长度在解压前无法验证，分配前先排除不可能是压缩值的数据：
+	 * 原始长度超过压缩数据长度×deflate最大压缩比的，以及头后不是zlib头（CM为8、FCHECK校验通过）的，
+	 * 避免碰巧以魔数开头的值按头中的长度分配大数组
+	 * @return 压缩值头中记录的原始长度，不是压缩格式时返回-1
+	 */
+	private static int rawLength(byte[] value) {
+		if(!isCompressed(value) || value.length < HEADER_LENGTH + 2)
+			return -1;
+
+		int rawLength = ((value[3] & 0xFF) << 24) | ((value[4] & 0xFF) << 16) | ((value[5] & 0xFF) << 8) | (value[6] & 0xFF);
+		if(rawLength < 0 || rawLength > MAX_RAW_LENGTH || rawLength > (long)(value.length - HEADER_LENGTH) * MAX_DEFLATE_RATIO)
+			return -1;
+
+		int cmf = value[HEADER_LENGTH] & 0xFF;
+		int flg = value[HEADER_LENGTH + 1] & 0xFF;
+		return (cmf & 0x0F) != 8 || ((cmf << 8) | flg) % 31 != 0 ? -1 : rawLength;
+	}
+
+	/**
+	 * @return 是否恰好解压出rawLength字节
+	 */
+	private static boolean inflate(byte[] value, byte[] out, int offset, int rawLength) {
+		Inflater inflater = INFLATERS.get();
+		inflater.reset();
+		inflater.setInput(value, HEADER_LENGTH, value.length - HEADER_LENGTH);
+		try {
+			int length = 0;
+			while(length < rawLength && !inflater.finished()) {
+				int inflated = inflater.inflate(out, offset + length, rawLength - length);
+				if(inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+					return false;
+
+				length += inflated;
+			}
+
+			return length == rawLength;
+		} catch(DataFormatException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * Redis中HyperLogLog的值以"HYLL"开头（dense或sparse编码）
+	 */
+	static boolean isHyperLogLog(byte[] value) {
+		return value.length >= 4 && value[0] == 'H' && value[1] == 'Y' && value[2] == 'L' && value[3] == 'L';
+	}
+
+	static boolean isCompressed(byte[] value) {
+		return value != null && value.length > HEADER_LENGTH && value[0] == MAGIC_0 && value[1] == MAGIC_1 && value[2] == FORMAT_DEFLATE;
+	}
+}
@@ -0,0 +1,107 @@
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * RedisValueCompressor压缩/解压往返，未压缩值的识别，以及不信任头部中的长度
+ */
+public class RedisValueCompressorTest {
+
+    private static byte[] json(int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < length; ++i) {
+            sb.append("{\"metric\":\"cpu.usage\",\"host\":\"app-").append(i % 10).append("\",\"value\":").append(i).append("},");
+        }
+        return sb.toString().getBytes();
+    }
+
+    @Test
+    public void testRoundTrip() {
+        RedisValueCompressor compressor = new RedisValueCompressor(1024, 1);
+        byte[] value = json(50000);
+        byte[] compressed = compressor.compress(value);
+
+        assertTrue(RedisValueCompressor.isCompressed(compressed));
+        assertTrue(compressed.length < value.length / 4);
+        assertArrayEquals(value, RedisValueCompressor.decompress(compressed));
+    }
+
+    @Test
+    public void testNotCompressed() {
+        RedisValueCompressor compressor = new RedisValueCompressor(1024, 1);
+
+        // 小于阈值
+        byte[] small = json(100);
+        assertSame(small, compressor.compress(small));
+        assertSame(small, RedisValueCompressor.decompress(small));
+
+        // 无法压缩的随机数据保留原值
+        byte[] random = new byte[4096];
+        new Random(1L).nextBytes(random);
+        assertSame(random, compressor.compress(random));
+    }
+
+    @Test
+    public void testHyperLogLogNotCompressed() {
+        // dense编码的HyperLogLog（12304字节）压缩效果很好，但压缩后Redis不再将其识别为HyperLogLog
+        HyperLogLogSketch sketch = new HyperLogLogSketch();
+        for (int i = 0; i < 300; ++i) {
+            sketch.add("u" + i);
+        }
+        byte[] dense = sketch.toRedisDense();
+        assertSame(dense, new RedisValueCompressor(1024, 1).compress(dense));
+    }
+
+    @Test
+    public void testNotCompressedWithSameHeader() {
+        // 以相同魔数开头但不是压缩数据的值原样返回
+        byte[] value = new byte[] { 0x00, 'Z', 1, 0, 0, 0, 10, 1, 2, 3, 4 };
+        assertSame(value, RedisValueCompressor.decompress(value));
+    }
+
+    @Test
+    public void testRawLengthNotTrusted() {
+        // 头中的原始长度（256MB）远超压缩数据可能解压出的长度，不按该长度分配
+        byte[] value = new byte[] { 0x00, 'Z', 1, 0x10, 0, 0, 0, 0x78, 0x01, 1, 2, 3 };
+        assertSame(value, RedisValueCompressor.decompress(value));
+        assertEquals(value.length, RedisValueCompressor.decompress(value, ByteBuffer.allocate(64)));
+
+        // 头后不是zlib头
+        byte[] notZlib = new byte[] { 0x00, 'Z', 1, 0, 0, 0, 4, 0x12, 0x34, 1, 2, 3 };
+        assertSame(notZlib, RedisValueCompressor.decompress(notZlib));
+    }
+
+    @Test
+    public void testDecompressIntoBuffer() {
+        RedisValueCompressor compressor = new RedisValueCompressor(1024, 1);
+        byte[] value = json(50000);
+        byte[] compressed = compressor.compress(value);
+
+        for (ByteBuffer target : new ByteBuffer[] { ByteBuffer.allocate(65536), ByteBuffer.allocateDirect(65536) }) {
+            target.position(3);
+            assertEquals(value.length, RedisValueCompressor.decompress(compressed, target));
+            assertEquals(3 + value.length, target.position());
+
+            byte[] read = new byte[value.length];
+            target.flip();
+            target.position(3);
+            target.get(read);
+            assertArrayEquals(value, read);
+        }
+
+        // 剩余空间不足时不写入
+        ByteBuffer small = ByteBuffer.allocate(1024);
+        assertEquals(value.length, RedisValueCompressor.decompress(compressed, small));
+        assertEquals(0, small.position());
+
+        // 未压缩的值直接复制
+        byte[] raw = json(100);
+        ByteBuffer target = ByteBuffer.allocate(1024);
+        assertEquals(raw.length, RedisValueCompressor.decompress(raw, target));
+        assertArrayEquals(raw, Arrays.copyOf(target.array(), raw.length));
+    }
+}
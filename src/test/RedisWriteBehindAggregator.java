@@ -0,0 +1,269 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 写缓冲（write-behind）的公共部分：写入先在本地按key分段累积，
+ * 后台线程每flushIntervalMillis毫秒（或待写入的key数量达到maxPendingKeys时立即）将累积的值通过一次pipeline写入Redis。
+ * flush时整段交换出待写入的值，不会与并发的累积互相覆盖；写入失败时合并回本地，下个周期重试；
+ * {@link #shutdown()}时停止后台线程并同步写入剩余的值，之后的写入直接同步写入Redis；
+ * shutdown之后写入失败的值不再重试，计入{@link #getDroppedKeys()}。
+ *
+ * @param <K> key
+ * @param <V> 一个key待写入的累积值
+ * @param <U> 一次写入
+ *
+ * @author BurningIce
+ *
+ */
+abstract class RedisWriteBehindAggregator<K, V, U> {
+	private final static int STRIPES = 32;
+	protected final RedisClient redisClient;
+	private final String name;
+	private final long flushIntervalMillis;
+	private final int maxPendingKeys;
+	private final List<Stripe> stripes = new ArrayList<Stripe>(STRIPES);
+	private final AtomicInteger pendingKeys = new AtomicInteger();
+	private final AtomicBoolean flushRequested = new AtomicBoolean();
+	private final AtomicInteger droppedKeys = new AtomicInteger();
+	private volatile boolean closed;
+	private ScheduledExecutorService flusher;
+
+	/**
+	 * @param redisClient 用于写入的客户端（通过executePipelined）
+	 * @param name 用于线程名称
+	 * @param flushIntervalMillis 最长写入延迟
+	 * @param maxPendingKeys 待写入的key数量达到该值时立即写入
+	 */
+	RedisWriteBehindAggregator(RedisClient redisClient, String name, long flushIntervalMillis, int maxPendingKeys) {
+		this.redisClient = redisClient;
+		this.name = name;
+		this.flushIntervalMillis = flushIntervalMillis;
+		this.maxPendingKeys = maxPendingKeys;
+		for(int i = 0; i < STRIPES; ++i) {
+			this.stripes.add(new Stripe());
+		}
+	}
+
+	void start() {
+		this.flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "redis-" + name + "-flusher");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.flusher.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				flush();
+			}
+		}, this.flushIntervalMillis, this.flushIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 停止后台写入，并同步写入剩余的值
+	 * @return 剩余的值是否全部写入
+	 */
+	boolean shutdown() {
+		this.closed = true;
+		if(this.flusher != null) {
+			this.flusher.shutdown();
+			try {
+				this.flusher.awaitTermination(this.flushIntervalMillis, TimeUnit.MILLISECONDS);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			this.flusher = null;
+		}
+
+		return this.flush();
+	}
+
+	/**
+	 * @return 待写入的key数量
+	 */
+	int getPendingKeys() {
+		return this.pendingKeys.get();
+	}
+
+	/**
+	 * @return shutdown之后写入失败而丢弃的key数量
+	 */
+	int getDroppedKeys() {
+		return this.droppedKeys.get();
+	}
+
+	/**
+	 * 累积到key所在的分段；已shutdown时直接写入Redis
+	 */
+	protected final void add(K key, U update) {
+		if(this.closed) {
+			this.writeDirectly(key, update);
+			return;
+		}
+
+		if(this.stripeFor(key).add(key, update)
+				&& this.pendingKeys.incrementAndGet() >= this.maxPendingKeys) {
+			this.requestFlush();
+		}
+
+		if(this.closed) {
+			// 与shutdown并发：值可能在shutdown最后一次flush之后才加入，由本线程写入
+			this.flush();
+		}
+	}
+
+	/**
+	 * 在分段的锁内将一次写入累积到key当前待写入的值
+	 * @param pending 当前待写入的值，没有时为null
+	 * @return 累积后的值
+	 */
+	protected abstract V accumulate(V pending, U update);
+
+	/**
+	 * 在分段的锁内将写入失败的值合并到本地之后累积的值
+	 * @return 合并后的值
+	 */
+	protected abstract V merge(V pending, V failed);
+
+	/**
+	 * shutdown之后的写入不再累积，直接写入Redis
+	 */
+	protected abstract void writeDirectly(K key, U update);
+
+	/**
+	 * 通过一次pipeline写入全部待写入的值
+	 * @return 是否写入成功
+	 */
+	protected abstract boolean write(Map<K, V> pending);
+
+	private Stripe stripeFor(K key) {
+		return this.stripes.get((key.hashCode() & 0x7FFFFFFF) % STRIPES);
+	}
+
+	private void requestFlush() {
+		ScheduledExecutorService flusher = this.flusher;
+		if(flusher != null && this.flushRequested.compareAndSet(false, true)) {
+			try {
+				flusher.execute(new Runnable() {
+					@Override
+					public void run() {
+						flush();
+					}
+				});
+			} catch(Throwable t) {
+				// 已经shutdown
+				this.flushRequested.set(false);
+			}
+		}
+	}
+
+	/**
+	 * 将各分段的值一次性pipeline写入Redis
+	 * @return 是否写入成功（没有待写入的值时也返回true）
+	 */
+	synchronized boolean flush() {
+		this.flushRequested.set(false);
+		Map<K, V> pending = new HashMap<K, V>();
+		for(Stripe stripe : this.stripes) {
+			Map<K, V> values = stripe.drain();
+			if(values != null) {
+				pending.putAll(values);
+			}
+		}
+
+		if(pending.isEmpty())
+			return true;
+
+		this.pendingKeys.addAndGet(-pending.size());
+		boolean written = false;
+		try {
+			written = this.write(pending);
+		} catch(Throwable ex) {
+//			logger.error("failed to flush " + this.name + " to redis: " + ex.getMessage(), ex);
+		}
+
+		if(!written) {
+			if(this.closed) {
+//				logger.error("dropped " + pending.size() + " " + this.name + " keys after redis client shutdown");
+				this.droppedKeys.addAndGet(pending.size());
+				return false;
+			}
+
+			// 写入失败，合并回本地等待下一个周期，不立即重试
+			for(Map.Entry<K, V> e : pending.entrySet()) {
+				if(this.stripeFor(e.getKey()).putBack(e.getKey(), e.getValue())) {
+					this.pendingKeys.incrementAndGet();
+				}
+			}
+			return false;
+		}
+
+		return true;
+	}
+
+	private final class Stripe {
+		private final ReentrantLock lock = new ReentrantLock();
+		private HashMap<K, V> values = new HashMap<K, V>();
+
+		/**
+		 * @return 是否新增了key
+		 */
+		boolean add(K key, U update) {
+			this.lock.lock();
+			try {
+				V pending = this.values.get(key);
+				V accumulated = accumulate(pending, update);
+				if(accumulated != pending) {
+					this.values.put(key, accumulated);
+				}
+				return pending == null;
+			} finally {
+				this.lock.unlock();
+			}
+		}
+
+		/**
+		 * 合并写入失败的值
+		 * @return 是否新增了key
+		 */
+		boolean putBack(K key, V failed) {
+			this.lock.lock();
+			try {
+				V pending = this.values.get(key);
+				this.values.put(key, pending == null ? failed : merge(pending, failed));
+				return pending == null;
+			} finally {
+				this.lock.unlock();
+			}
+		}
+
+		/**
+		 * @return 交换出的值，没有时返回null
+		 */
+		Map<K, V> drain() {
+			this.lock.lock();
+			try {
+				if(this.values.isEmpty())
+					return null;
+
+				HashMap<K, V> drained = this.values;
+				this.values = new HashMap<K, V>();
+				return drained;
+			} finally {
+				this.lock.unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,20 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import java.util.List;
+
+/**
+ * SCAN系列命令的分批结果回调
+ *
+ * @author BurningIce
+ *
+ */
+public interface ScanCallback<T> {
+	/**
+	 * 处理一批结果，批次大小由COUNT参数决定，但Redis不保证每批的确切数量，也可能重复返回同一元素
+	 * @param batch
+	 * @return 返回false时停止扫描
+	 */
+	public boolean onBatch(List<T> batch);
+}
@@ -0,0 +1,1111 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Protocol;
+import redis.clients.util.Hashing;
+import redis.clients.util.SafeEncoder;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多节点RedisClient：按一致性哈希（每个节点默认160个虚拟节点）将key分布到多个Redis节点，
+ * 增删节点时只有约1/N的key需要迁移。
+ * <ul>
+ * <li>单key操作直接路由到key所在节点；</li>
+ * <li>key中包含{tag}时只按tag计算哈希（与Redis Cluster相同），需要在同一节点上的key可以使用相同的tag；</li>
+ * <li>mget/mset/del(String...)按节点拆分后并行执行，mget结果按原key顺序合并，任一节点失败时返回null；</li>
+ * <li>pfmerge：源key与目标key不在同一节点时，先将源HLL复制为目标节点上的临时key再合并；</li>
+ * <li>keys/scan：对所有节点执行并合并结果；</li>
+ * <li>executePipelined：命令按key路由到各节点的pipeline，sync时各节点并行执行；
+ * pipeline中的mget/mset要求所有key在同一节点。</li>
+ * </ul>
+ * 节点可以通过{@link #setNodes(Map)}传入已初始化的RedisClient（由调用方负责销毁），
+ * 或者通过{@link #setAddresses(String)}配置地址，由本客户端创建并在{@link #destroy()}时销毁。
+ *
+ * @author BurningIce
+ *
+ */
+public class ShardedRedisClient implements RedisClient {
+	private final static int DEFAULT_VIRTUAL_NODES = 160;
+	private final static int PFMERGE_TEMP_EXPIRATION = 60;		// pfmerge临时key的过期时间，防止删除失败时残留
+	private Map<String, RedisClient> nodes;
+	private String addresses;
+	private GenericObjectPoolConfig poolConfig;
+	private String password;
+	private int timeout = Protocol.DEFAULT_TIMEOUT;
+	private int database = Protocol.DEFAULT_DATABASE;
+	private int virtualNodes = DEFAULT_VIRTUAL_NODES;
+	private int threads;
+	private boolean warmUpEnabled = false;
+	private String[] shardNames;
+	private RedisClient[] shards;
+	private long[] ringHashes;
+	private int[] ringShards;
+	private List<JedisPoolRedisClientImpl> ownedClients = new ArrayList<JedisPoolRedisClientImpl>();
+	private ExecutorService executor;
+
+	/**
+	 * @param nodes 节点名称 -> 已初始化的RedisClient；节点名称参与哈希计算，应保持稳定（如host:port）
+	 */
+	public void setNodes(Map<String, RedisClient> nodes) {
+		this.nodes = nodes;
+	}
+
+	/**
+	 * @param addresses 节点地址，格式为host1:port1,host2:port2，每个地址创建一个JedisPoolRedisClientImpl
+	 */
+	public void setAddresses(String addresses) {
+		this.addresses = addresses;
+	}
+
+	/**
+	 * @param poolConfig 通过addresses创建节点时使用的连接池配置
+	 */
+	public void setPoolConfig(GenericObjectPoolConfig poolConfig) {
+		this.poolConfig = poolConfig;
+	}
+
+	/**
+	 * @param password 通过addresses创建节点时使用的密码
+	 */
+	public void setPassword(String password) {
+		this.password = password;
+	}
+
+	/**
+	 * @param timeout 通过addresses创建节点时使用的超时时间
+	 */
+	public void setTimeout(int timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @param database 通过addresses创建节点时使用的database
+	 */
+	public void setDatabase(int database) {
+		this.database = database;
+	}
+
+	/**
+	 * @param virtualNodes 每个节点的虚拟节点数量，越多分布越均匀
+	 */
+	public void setVirtualNodes(int virtualNodes) {
+		this.virtualNodes = Math.max(1, virtualNodes);
+	}
+
+	/**
+	 * @param threads 并行执行多节点操作的线程数量，默认为节点数量
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * @param warmUpEnabled 通过addresses创建的节点是否在init时预热连接池，见{@link JedisPoolRedisClientImpl#setWarmUpEnabled(boolean)}
+	 */
+	public void setWarmUpEnabled(boolean warmUpEnabled) {
+		this.warmUpEnabled = warmUpEnabled;
+	}
+
+	public void init() {
+		Map<String, RedisClient> allNodes = new LinkedHashMap<String, RedisClient>();
+		if(this.nodes != null) {
+			allNodes.putAll(this.nodes);
+		}
+
+		if(this.addresses != null) {
+			for(String address : this.addresses.split(",")) {
+				address = address.trim();
+				if(address.length() == 0)
+					continue;
+
+				int index = address.lastIndexOf(':');
+				JedisPoolRedisClientImpl client = new JedisPoolRedisClientImpl();
+				client.setPoolConfig(this.poolConfig);
+				client.setHost(index > 0 ? address.substring(0, index) : address);
+				if(index > 0) {
+					client.setPort(Integer.parseInt(address.substring(index + 1)));
+				}
+				client.setPassword(this.password);
+				client.setTimeout(this.timeout);
+				client.setDatabase(this.database);
+				client.setWarmUpEnabled(this.warmUpEnabled);
+				client.init();
+				this.ownedClients.add(client);
+				allNodes.put(address, client);
+			}
+		}
+
+		if(allNodes.isEmpty()) {
+			throw new IllegalStateException("no redis node configured");
+		}
+
+		this.shardNames = allNodes.keySet().toArray(new String[allNodes.size()]);
+		this.shards = allNodes.values().toArray(new RedisClient[allNodes.size()]);
+		this.buildRing();
+
+		if(this.shards.length > 1) {
+			final AtomicInteger threadIndex = new AtomicInteger();
+			this.executor = Executors.newFixedThreadPool(this.threads > 0 ? this.threads : this.shards.length, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "redis-shard-" + threadIndex.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	public void destroy() {
+		if(this.executor != null) {
+			this.executor.shutdownNow();
+			this.executor = null;
+		}
+
+		for(JedisPoolRedisClientImpl client : this.ownedClients) {
+			client.destroy();
+		}
+		this.ownedClients.clear();
+	}
+
+	private void buildRing() {
+		TreeMap<Long, Integer> ring = new TreeMap<Long, Integer>();
+		for(int shard = 0; shard < this.shards.length; ++shard) {
+			for(int n = 0; n < this.virtualNodes; ++n) {
+				ring.put(Long.valueOf(Hashing.MURMUR_HASH.hash("SHARD-" + this.shardNames[shard] + "-NODE-" + n)), Integer.valueOf(shard));
+			}
+		}
+
+		this.ringHashes = new long[ring.size()];
+		this.ringShards = new int[ring.size()];
+		int i = 0;
+		for(Map.Entry<Long, Integer> e : ring.entrySet()) {
+			this.ringHashes[i] = e.getKey().longValue();
+			this.ringShards[i] = e.getValue().intValue();
+			++i;
+		}
+	}
+
+	/**
+	 * @return key所在节点的名称
+	 */
+	public String getShardName(String key) {
+		return this.shardNames[this.shardIndex(key)];
+	}
+
+	/**
+	 * @return key所在节点的RedisClient
+	 */
+	public RedisClient getShard(String key) {
+		return this.shards[this.shardIndex(key)];
+	}
+
+	int shardIndex(String key) {
+		return this.shardIndex(SafeEncoder.encode(key));
+	}
+
+	int shardIndex(byte[] key) {
+		if(this.shards.length == 1)
+			return 0;
+
+		int i = Arrays.binarySearch(this.ringHashes, Hashing.MURMUR_HASH.hash(hashTag(key)));
+		if(i < 0) {
+			i = -i - 1;
+			if(i == this.ringHashes.length) {
+				i = 0;
+			}
+		}
+		return this.ringShards[i];
+	}
+
+	int shardCount() {
+		return this.shards.length;
+	}
+
+	RedisClient shardAt(int index) {
+		return this.shards[index];
+	}
+
+	String shardNameAt(int index) {
+		return this.shardNames[index];
+	}
+
+	/**
+	 * key中包含非空的{tag}时返回tag，否则返回key本身
+	 */
+	static byte[] hashTag(byte[] key) {
+		for(int start = 0; start < key.length; ++start) {
+			if(key[start] == '{') {
+				for(int end = start + 1; end < key.length; ++end) {
+					if(key[end] == '}') {
+						return end == start + 1 ? key : Arrays.copyOfRange(key, start + 1, end);
+					}
+				}
+				return key;
+			}
+		}
+		return key;
+	}
+
+	private RedisClient shard(String key) {
+		return this.shards[this.shardIndex(key)];
+	}
+
+	private RedisClient shard(byte[] key) {
+		return this.shards[this.shardIndex(key)];
+	}
+
+	/**
+	 * 并行执行各节点任务，第一个任务在调用线程执行；任一任务失败时抛出其异常
+	 */
+	<T> List<T> scatter(List<Callable<T>> tasks) throws Exception {
+		if(tasks.size() == 1) {
+			return Collections.singletonList(tasks.get(0).call());
+		}
+
+		List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size() - 1);
+		for(int i = 1; i < tasks.size(); ++i) {
+			futures.add(this.executor.submit(tasks.get(i)));
+		}
+
+		List<T> results = new ArrayList<T>(tasks.size());
+		results.add(tasks.get(0).call());
+		for(Future<T> future : futures) {
+			try {
+				results.add(future.get());
+			} catch(ExecutionException ex) {
+				Throwable cause = ex.getCause();
+				throw cause instanceof Exception ? (Exception)cause : ex;
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * @return 按节点分组的key下标，没有key的节点为null
+	 */
+	private int[][] groupByShard(int[] shardOfKeys) {
+		int[] counts = new int[this.shards.length];
+		for(int shard : shardOfKeys) {
+			counts[shard]++;
+		}
+
+		int[][] groups = new int[this.shards.length][];
+		for(int shard = 0; shard < groups.length; ++shard) {
+			if(counts[shard] > 0) {
+				groups[shard] = new int[counts[shard]];
+				counts[shard] = 0;
+			}
+		}
+
+		for(int i = 0; i < shardOfKeys.length; ++i) {
+			int shard = shardOfKeys[i];
+			groups[shard][counts[shard]++] = i;
+		}
+		return groups;
+	}
+
+	/**
+	 * @return 所有key都在同一节点时返回该节点下标，否则返回-1
+	 */
+	private static int singleShard(int[][] groups) {
+		int single = -1;
+		for(int shard = 0; shard < groups.length; ++shard) {
+			if(groups[shard] != null) {
+				if(single >= 0)
+					return -1;
+				single = shard;
+			}
+		}
+		return single;
+	}
+
+	private int[] shardIndexes(String[] keys, int step) {
+		int[] indexes = new int[keys.length / step];
+		for(int i = 0; i < indexes.length; ++i) {
+			indexes[i] = this.shardIndex(keys[i * step]);
+		}
+		return indexes;
+	}
+
+	private int[] shardIndexes(byte[][] keys, int step) {
+		int[] indexes = new int[keys.length / step];
+		for(int i = 0; i < indexes.length; ++i) {
+			indexes[i] = this.shardIndex(keys[i * step]);
+		}
+		return indexes;
+	}
+
+	private <K, V> List<V> scatterMget(final K[] key, int[] shardOfKeys, final MultiKeyOperation<K, List<V>> operation) {
+		int[][] groups = this.groupByShard(shardOfKeys);
+		int single = singleShard(groups);
+		if(single >= 0) {
+			return operation.execute(this.shards[single], key);
+		}
+
+		List<Callable<List<V>>> tasks = new ArrayList<Callable<List<V>>>(this.shards.length);
+		final List<int[]> taskGroups = new ArrayList<int[]>(this.shards.length);
+		for(int shard = 0; shard < groups.length; ++shard) {
+			if(groups[shard] == null)
+				continue;
+
+			final RedisClient client = this.shards[shard];
+			final K[] shardKeys = Arrays.copyOf(key, groups[shard].length);
+			for(int i = 0; i < shardKeys.length; ++i) {
+				shardKeys[i] = key[groups[shard][i]];
+			}
+			taskGroups.add(groups[shard]);
+			tasks.add(new Callable<List<V>>() {
+				@Override
+				public List<V> call() throws Exception {
+					return operation.execute(client, shardKeys);
+				}
+			});
+		}
+
+		try {
+			List<List<V>> results = this.scatter(tasks);
+			@SuppressWarnings("unchecked")
+			V[] values = (V[])new Object[key.length];
+			for(int t = 0; t < results.size(); ++t) {
+				List<V> shardValues = results.get(t);
+				if(shardValues == null)
+					return null;
+
+				int[] group = taskGroups.get(t);
+				for(int i = 0; i < group.length; ++i) {
+					values[group[i]] = shardValues.get(i);
+				}
+			}
+			return Arrays.asList(values);
+		} catch(Throwable ex) {
+//			logger.error("failed to mget value from redis: " + ex.getMessage(), ex);
+			return null;
+		}
+	}
+
+	/**
+	 * @param key 对于mset为键值对数组，shardOfKeys按键值对分组
+	 * @param step 每个key占用的数组元素数量（mset为2）
+	 */
+	private <K, V> List<V> scatterWrite(final K[] key, int step, int[] shardOfKeys, final MultiKeyOperation<K, V> operation) {
+		int[][] groups = this.groupByShard(shardOfKeys);
+		int single = singleShard(groups);
+		if(single >= 0) {
+			return Collections.singletonList(operation.execute(this.shards[single], key));
+		}
+
+		List<Callable<V>> tasks = new ArrayList<Callable<V>>(this.shards.length);
+		for(int shard = 0; shard < groups.length; ++shard) {
+			if(groups[shard] == null)
+				continue;
+
+			final RedisClient client = this.shards[shard];
+			final K[] shardKeys = Arrays.copyOf(key, groups[shard].length * step);
+			for(int i = 0; i < groups[shard].length; ++i) {
+				System.arraycopy(key, groups[shard][i] * step, shardKeys, i * step, step);
+			}
+			tasks.add(new Callable<V>() {
+				@Override
+				public V call() throws Exception {
+					return operation.execute(client, shardKeys);
+				}
+			});
+		}
+
+		try {
+			return this.scatter(tasks);
+		} catch(Throwable ex) {
+//			logger.error("failed to write value to redis: " + ex.getMessage(), ex);
+			return null;
+		}
+	}
+
+	/**
+	 * 在单个节点上执行的多key操作
+	 */
+	private interface MultiKeyOperation<K, V> {
+		V execute(RedisClient shard, K[] keys);
+	}
+
+	private final static MultiKeyOperation<String, List<String>> MGET = new MultiKeyOperation<String, List<String>>() {
+		@Override
+		public List<String> execute(RedisClient shard, String[] keys) {
+			return shard.mget(keys);
+		}
+	};
+
+	private final static MultiKeyOperation<byte[], List<byte[]>> MGET_BYTES = new MultiKeyOperation<byte[], List<byte[]>>() {
+		@Override
+		public List<byte[]> execute(RedisClient shard, byte[][] keys) {
+			return shard.mget(keys);
+		}
+	};
+
+	private final static MultiKeyOperation<String, Void> MSET = new MultiKeyOperation<String, Void>() {
+		@Override
+		public Void execute(RedisClient shard, String[] keyValues) {
+			shard.mset(keyValues);
+			return null;
+		}
+	};
+
+	private final static MultiKeyOperation<byte[], Void> MSET_BYTES = new MultiKeyOperation<byte[], Void>() {
+		@Override
+		public Void execute(RedisClient shard, byte[][] keyValues) {
+			shard.mset(keyValues);
+			return null;
+		}
+	};
+
+	private final static MultiKeyOperation<String, Long> DEL = new MultiKeyOperation<String, Long>() {
+		@Override
+		public Long execute(RedisClient shard, String[] keys) {
+			return Long.valueOf(keys.length == 1 ? shard.del(keys[0]) : shard.del(keys));
+		}
+	};
+
+	private final static MultiKeyOperation<byte[], Long> DEL_BYTES = new MultiKeyOperation<byte[], Long>() {
+		@Override
+		public Long execute(RedisClient shard, byte[][] keys) {
+			return Long.valueOf(keys.length == 1 ? shard.del(keys[0]) : shard.del(keys));
+		}
+	};
+
+	private final static MultiKeyOperation<String, Long> UNLINK = new MultiKeyOperation<String, Long>() {
+		@Override
+		public Long execute(RedisClient shard, String[] keys) {
+			return Long.valueOf(shard.unlink(keys));
+		}
+	};
+
+	@Override
+	public String get(String key) {
+		return this.shard(key).get(key);
+	}
+
+	@Override
+	public byte[] get(byte[] key) {
+		return this.shard(key).get(key);
+	}
+
+	@Override
+	public int get(byte[] key, ByteBuffer target) {
+		return this.shard(key).get(key, target);
+	}
+
+	@Override
+	public List<String> mget(String... key) {
+		if(key == null || key.length == 0)
+			return this.shards[0].mget(key);
+
+		return this.scatterMget(key, this.shardIndexes(key, 1), MGET);
+	}
+
+	@Override
+	public List<byte[]> mget(byte[]... key) {
+		if(key == null || key.length == 0)
+			return this.shards[0].mget(key);
+
+		return this.scatterMget(key, this.shardIndexes(key, 1), MGET_BYTES);
+	}
+
+	@Override
+	public long del(String key) {
+		return this.shard(key).del(key);
+	}
+
+	@Override
+	public long del(byte[] key) {
+		return this.shard(key).del(key);
+	}
+
+	/**
+	 * 按节点拆分后并行执行，失败的节点不计入
+	 */
+	@Override
+	public long del(String... keys) {
+		if(keys == null || keys.length == 0)
+			return 0L;
+
+		return sum(this.scatterWrite(keys, 1, this.shardIndexes(keys, 1), DEL));
+	}
+
+	/**
+	 * 按节点拆分后并行执行，失败的节点不计入
+	 */
+	@Override
+	public long del(byte[]... keys) {
+		if(keys == null || keys.length == 0)
+			return 0L;
+
+		return sum(this.scatterWrite(keys, 1, this.shardIndexes(keys, 1), DEL_BYTES));
+	}
+
+	/**
+	 * 按节点拆分后并行执行，失败的节点不计入
+	 */
+	@Override
+	public long unlink(String... keys) {
+		if(keys == null || keys.length == 0)
+			return 0L;
+
+		return sum(this.scatterWrite(keys, 1, this.shardIndexes(keys, 1), UNLINK));
+	}
+
+	/**
+	 * 按节点拆分后并行执行，失败的节点不计入
+	 */
+	@Override
+	public long expire(String[] keys, final int expirationInSeconds) {
+		if(keys == null || keys.length == 0)
+			return 0L;
+
+		return sum(this.scatterWrite(keys, 1, this.shardIndexes(keys, 1), new MultiKeyOperation<String, Long>() {
+			@Override
+			public Long execute(RedisClient shard, String[] keys) {
+				return Long.valueOf(shard.expire(keys, expirationInSeconds));
+			}
+		}));
+	}
+
+	/**
+	 * 依次清理各节点，每个节点上按maxKeysPerSecond限速，总速度不超过maxKeysPerSecond
+	 */
+	@Override
+	public long delByPattern(String pattern, int count, int maxKeysPerSecond) {
+		long deleted = 0L;
+		for(RedisClient shard : this.shards) {
+			deleted += shard.delByPattern(pattern, count, maxKeysPerSecond);
+		}
+		return deleted;
+	}
+
+	/**
+	 * 依次处理各节点，每个节点上按maxKeysPerSecond限速，总速度不超过maxKeysPerSecond
+	 */
+	@Override
+	public long expireByPattern(String pattern, int expirationInSeconds, int count, int maxKeysPerSecond) {
+		long expired = 0L;
+		for(RedisClient shard : this.shards) {
+			expired += shard.expireByPattern(pattern, expirationInSeconds, count, maxKeysPerSecond);
+		}
+		return expired;
+	}
+
+	private static long sum(List<Long> values) {
+		long sum = 0L;
+		if(values != null) {
+			for(Long value : values) {
+				if(value != null) {
+					sum += value.longValue();
+				}
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * @return 各节点扫描数量之和，任一节点没有扫描完（返回-1）时返回-1
+	 */
+	private static long scanned(List<Long> values) {
+		for(Long value : values) {
+			if(value.longValue() < 0L)
+				return -1L;
+		}
+		return sum(values);
+	}
+
+	@Override
+	public void set(String key, String value) {
+		this.shard(key).set(key, value);
+	}
+
+	@Override
+	public void set(byte[] key, byte[] value) {
+		this.shard(key).set(key, value);
+	}
+
+	@Override
+	public void set(String key, String value, int expirationInSeconds) {
+		this.shard(key).set(key, value, expirationInSeconds);
+	}
+
+	@Override
+	public void set(byte[] key, byte[] value, int expirationInSeconds) {
+		this.shard(key).set(key, value, expirationInSeconds);
+	}
+
+	@Override
+	public void set(byte[] key, ByteBuffer value, int expirationInSeconds) {
+		this.shard(key).set(key, value, expirationInSeconds);
+	}
+
+	@Override
+	public void mset(String... keyValues) {
+		if(keyValues == null || keyValues.length < 2)
+			return;
+
+		this.scatterWrite(keyValues, 2, this.shardIndexes(keyValues, 2), MSET);
+	}
+
+	@Override
+	public void mset(byte[]... keyValues) {
+		if(keyValues == null || keyValues.length < 2)
+			return;
+
+		this.scatterWrite(keyValues, 2, this.shardIndexes(keyValues, 2), MSET_BYTES);
+	}
+
+	/**
+	 * 按节点拆分后并行执行，每个节点上一次往返
+	 */
+	@Override
+	public void msetWithTtl(final int expirationInSeconds, String... keyValues) {
+		if(keyValues == null || keyValues.length < 2)
+			return;
+
+		this.scatterWrite(keyValues, 2, this.shardIndexes(keyValues, 2), new MultiKeyOperation<String, Void>() {
+			@Override
+			public Void execute(RedisClient shard, String[] keyValues) {
+				shard.msetWithTtl(expirationInSeconds, keyValues);
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public void expire(String key, int expirationInSeconds) {
+		this.shard(key).expire(key, expirationInSeconds);
+	}
+
+	@Override
+	public void expire(byte[] key, int expirationInSeconds) {
+		this.shard(key).expire(key, expirationInSeconds);
+	}
+
+	@Override
+	public long incr(String key) {
+		return this.shard(key).incr(key);
+	}
+
+	@Override
+	public long incr(byte[] key) {
+		return this.shard(key).incr(key);
+	}
+
+	@Override
+	public long incrBy(String key, long increment) {
+		return this.shard(key).incrBy(key, increment);
+	}
+
+	@Override
+	public long incrByWithTtl(String key, long increment, int expirationInSeconds) {
+		return this.shard(key).incrByWithTtl(key, increment, expirationInSeconds);
+	}
+
+	@Override
+	public long incrBy(byte[] key, long increment) {
+		return this.shard(key).incrBy(key, increment);
+	}
+
+	@Override
+	public long decr(String key) {
+		return this.shard(key).decr(key);
+	}
+
+	@Override
+	public long decr(byte[] key) {
+		return this.shard(key).decr(key);
+	}
+
+	@Override
+	public long decrBy(String key, long decrement) {
+		return this.shard(key).decrBy(key, decrement);
+	}
+
+	@Override
+	public long decrBy(byte[] key, long decrement) {
+		return this.shard(key).decrBy(key, decrement);
+	}
+
+	@Override
+	public String hget(String key, String field) {
+		return this.shard(key).hget(key, field);
+	}
+
+	@Override
+	public byte[] hget(byte[] key, byte[] field) {
+		return this.shard(key).hget(key, field);
+	}
+
+	@Override
+	public int hget(byte[] key, byte[] field, ByteBuffer target) {
+		return this.shard(key).hget(key, field, target);
+	}
+
+	@Override
+	public List<String> hmget(String key, String... field) {
+		return this.shard(key).hmget(key, field);
+	}
+
+	@Override
+	public List<byte[]> hmget(byte[] key, byte[]... field) {
+		return this.shard(key).hmget(key, field);
+	}
+
+	@Override
+	public void hset(String key, String field, String value) {
+		this.shard(key).hset(key, field, value);
+	}
+
+	@Override
+	public Long hsetWithTtl(String key, String field, String value, int expirationInSeconds) {
+		return this.shard(key).hsetWithTtl(key, field, value, expirationInSeconds);
+	}
+
+	@Override
+	public void hset(byte[] key, byte[] field, byte[] value) {
+		this.shard(key).hset(key, field, value);
+	}
+
+	@Override
+	public void hmset(String key, Map<String, String> fieldAndValues) {
+		this.shard(key).hmset(key, fieldAndValues);
+	}
+
+	@Override
+	public void hmset(byte[] key, Map<byte[], byte[]> fieldAndValues) {
+		this.shard(key).hmset(key, fieldAndValues);
+	}
+
+	@Override
+	public Map<String, String> hgetAll(String key) {
+		return this.shard(key).hgetAll(key);
+	}
+
+	@Override
+	public long hincrBy(String key, String field, long increment) {
+		return this.shard(key).hincrBy(key, field, increment);
+	}
+
+	@Override
+	public long hincrBy(byte[] key, byte[] field, long increment) {
+		return this.shard(key).hincrBy(key, field, increment);
+	}
+
+	@Override
+	public void incrByDeferred(String key, long increment) {
+		this.shard(key).incrByDeferred(key, increment);
+	}
+
+	@Override
+	public void hincrByDeferred(String key, String field, long increment) {
+		this.shard(key).hincrByDeferred(key, field, increment);
+	}
+
+	@Override
+	public Long pfAdd(String key, String... elements) {
+		return this.shard(key).pfAdd(key, elements);
+	}
+
+	@Override
+	public Long pfAdd(String key, int expirationInSeconds, String... elements) {
+		return this.shard(key).pfAdd(key, expirationInSeconds, elements);
+	}
+
+	@Override
+	public Long pfAddWithTtl(String key, int expirationInSeconds, String... elements) {
+		return this.shard(key).pfAddWithTtl(key, expirationInSeconds, elements);
+	}
+
+	@Override
+	public void pfAddDeferred(String key, int expirationInSeconds, String... elements) {
+		this.shard(key).pfAddDeferred(key, expirationInSeconds, elements);
+	}
+
+	@Override
+	public long pfCount(String key) {
+		return this.shard(key).pfCount(key);
+	}
+
+	/**
+	 * 与目标key不在同一节点的源key，先读取其HLL原始值，写入目标节点上的临时key，合并后删除临时key。
+	 * 不存在的源key视为空集合。源key与目标key使用相同的{tag}时不需要复制。
+	 */
+	@Override
+	public String pfmerge(String destkey, String... sourcekeys) {
+		int destShard = this.shardIndex(destkey);
+		RedisClient dest = this.shards[destShard];
+		List<String> mergeKeys = new ArrayList<String>(sourcekeys.length);
+		List<String> tempKeys = new ArrayList<String>();
+		try {
+			for(String sourcekey : sourcekeys) {
+				int sourceShard = this.shardIndex(sourcekey);
+				if(sourceShard == destShard) {
+					mergeKeys.add(sourcekey);
+					continue;
+				}
+
+				byte[] hll = this.shards[sourceShard].get(SafeEncoder.encode(sourcekey));
+				if(hll == null)
+					continue;
+
+				String tempKey = destkey + ":pfmerge:" + UUID.randomUUID().toString();
+				dest.set(SafeEncoder.encode(tempKey), hll, PFMERGE_TEMP_EXPIRATION);
+				tempKeys.add(tempKey);
+				mergeKeys.add(tempKey);
+			}
+
+			return dest.pfmerge(destkey, mergeKeys.toArray(new String[mergeKeys.size()]));
+		} finally {
+			for(String tempKey : tempKeys) {
+				dest.del(tempKey);
+			}
+		}
+	}
+
+	@Override
+	public Long sadd(String key, String... members) {
+		return this.shard(key).sadd(key, members);
+	}
+
+	/**
+	 * 对所有节点并行执行KEYS并合并结果，任一节点失败时返回null
+	 */
+	@Override
+	public Set<String> keys(final String pattern) {
+		List<Callable<Set<String>>> tasks = new ArrayList<Callable<Set<String>>>(this.shards.length);
+		for(final RedisClient shard : this.shards) {
+			tasks.add(new Callable<Set<String>>() {
+				@Override
+				public Set<String> call() throws Exception {
+					return shard.keys(pattern);
+				}
+			});
+		}
+
+		try {
+			Set<String> keys = new HashSet<String>();
+			for(Set<String> shardKeys : this.scatter(tasks)) {
+				if(shardKeys == null)
+					return null;
+
+				keys.addAll(shardKeys);
+			}
+			return keys;
+		} catch(Throwable ex) {
+//			logger.error("failed to keys for redis: " + ex.getMessage(), ex);
+			return null;
+		}
+	}
+
+	/**
+	 * 依次扫描各节点，callback返回false时停止；任一节点没有扫描完时返回-1
+	 */
+	@Override
+	public long scan(String pattern, int count, final ScanCallback<String> callback) {
+		final boolean[] stopped = new boolean[1];
+		ScanCallback<String> stoppable = new ScanCallback<String>() {
+			@Override
+			public boolean onBatch(List<String> batch) {
+				if(!callback.onBatch(batch)) {
+					stopped[0] = true;
+					return false;
+				}
+				return true;
+			}
+		};
+
+		long scanned = 0L;
+		boolean failed = false;
+		for(RedisClient shard : this.shards) {
+			long shardScanned = shard.scan(pattern, count, stoppable);
+			if(shardScanned < 0L) {
+				failed = true;
+			} else {
+				scanned += shardScanned;
+			}
+			if(stopped[0])
+				break;
+		}
+		return failed ? -1L : scanned;
+	}
+
+	/**
+	 * 各节点并行扫描，parallelism平均分配给各节点
+	 */
+	@Override
+	public long scan(final String[] patterns, final int count, int parallelism, final ScanCallback<String> callback) {
+		if(patterns == null || patterns.length == 0)
+			return 0L;
+
+		if(parallelism <= 1 || this.shards.length == 1) {
+			List<Long> scanned = new ArrayList<Long>(this.shards.length);
+			for(RedisClient shard : this.shards) {
+				scanned.add(Long.valueOf(shard.scan(patterns, count, parallelism, callback)));
+			}
+			return scanned(scanned);
+		}
+
+		final int shardParallelism = Math.max(1, parallelism / this.shards.length);
+		List<Callable<Long>> tasks = new ArrayList<Callable<Long>>(this.shards.length);
+		for(final RedisClient shard : this.shards) {
+			tasks.add(new Callable<Long>() {
+				@Override
+				public Long call() throws Exception {
+					return Long.valueOf(shard.scan(patterns, count, shardParallelism, callback));
+				}
+			});
+		}
+
+		try {
+			return scanned(this.scatter(tasks));
+		} catch(Throwable ex) {
+//			logger.error("failed to scan redis: " + ex.getMessage(), ex);
+			return -1L;
+		}
+	}
+
+	/**
+	 * 依次遍历各节点
+	 */
+	@Override
+	public Iterator<String> scanIterator(final String pattern, final int count) {
+		return new Iterator<String>() {
+			private int shard = 0;
+			private Iterator<String> current = shards[0].scanIterator(pattern, count);
+
+			@Override
+			public boolean hasNext() {
+				while(!this.current.hasNext()) {
+					if(++this.shard >= shards.length)
+						return false;
+
+					this.current = shards[this.shard].scanIterator(pattern, count);
+				}
+				return true;
+			}
+
+			@Override
+			public String next() {
+				if(!this.hasNext())
+					throw new NoSuchElementException();
+
+				return this.current.next();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	@Override
+	public long hscan(String key, int count, ScanCallback<Map.Entry<String, String>> callback) {
+		return this.shard(key).hscan(key, count, callback);
+	}
+
+	/**
+	 * key按节点分组，各节点并行读取，parallelism平均分配给各节点
+	 */
+	@Override
+	public long hscan(String[] keys, final int count, int parallelism, final ScanCallback<Map.Entry<String, String>> callback) {
+		if(keys == null || keys.length == 0)
+			return 0L;
+
+		int[][] groups = this.groupByShard(this.shardIndexes(keys, 1));
+		final int shardParallelism = Math.max(1, parallelism / this.shards.length);
+		List<Callable<Long>> tasks = new ArrayList<Callable<Long>>(this.shards.length);
+		for(int shard = 0; shard < groups.length; ++shard) {
+			if(groups[shard] == null)
+				continue;
+
+			final RedisClient client = this.shards[shard];
+			final String[] shardKeys = new String[groups[shard].length];
+			for(int i = 0; i < shardKeys.length; ++i) {
+				shardKeys[i] = keys[groups[shard][i]];
+			}
+			tasks.add(new Callable<Long>() {
+				@Override
+				public Long call() throws Exception {
+					return Long.valueOf(client.hscan(shardKeys, count, shardParallelism, callback));
+				}
+			});
+		}
+
+		try {
+			return scanned(this.scatter(tasks));
+		} catch(Throwable ex) {
+//			logger.error("failed to hscan redis: " + ex.getMessage(), ex);
+			return -1L;
+		}
+	}
+
+	@Override
+	public Set<String> smembers(String key) {
+		return this.shard(key).smembers(key);
+	}
+
+	/**
+	 * 只有一个节点时返回该节点的Pipeline（与{@link RedisClient#pipelined()}的限制相同）；
+	 * 多节点无法返回单个Pipeline，抛出UnsupportedOperationException，请使用{@link #executePipelined(PipelineCallback)}
+	 */
+	@Override
+	@Deprecated
+	public Pipeline pipelined() {
+		if(this.shards != null && this.shards.length == 1)
+			return this.shards[0].pipelined();
+
+		throw new UnsupportedOperationException("pipelined() is not supported by ShardedRedisClient with multiple nodes, use executePipelined() instead");
+	}
+
+	/**
+	 * @return 所有节点均已就绪
+	 */
+	@Override
+	public boolean isReady() {
+		if(this.shards == null)
+			return false;
+
+		for(RedisClient shard : this.shards) {
+			if(!shard.isReady())
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public <T> T executePipelined(PipelineCallback<T> callback) {
+		return this.executePipelined(ShardedRedisPipeline.DEFAULT_FLUSH_SIZE, callback);
+	}
+
+	@Override
+	public <T> T executePipelined(int flushSize, PipelineCallback<T> callback) {
+		if(this.shards.length == 1)
+			return this.shards[0].executePipelined(flushSize, callback);
+
+		try {
+			ShardedRedisPipeline pipeline = new ShardedRedisPipeline(this, flushSize);
+			T result = callback.doInPipeline(pipeline);
+			pipeline.sync();
+			return result;
+		} catch(Throwable ex) {
+//			logger.error("failed to execute pipeline on redis: " + ex.getMessage(), ex);
+			return null;
+		}
+	}
+}
@@ -0,0 +1,122 @@
+import org.junit.Test;
+import redis.clients.jedis.Pipeline;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * ShardedRedisClient一致性哈希测试：节点是只用于路由的代理，任何调用都会失败
+ */
+public class ShardedRedisClientTest {
+
+    private static RedisClient unusedNode(final String name) {
+        return (RedisClient) Proxy.newProxyInstance(RedisClient.class.getClassLoader(), new Class<?>[] { RedisClient.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("toString")) {
+                            return name;
+                        }
+                        throw new AssertionError("node " + name + " should not be called: " + method.getName());
+                    }
+                });
+    }
+
+    private static ShardedRedisClient newClient(int nodeCount) {
+        Map<String, RedisClient> nodes = new LinkedHashMap<String, RedisClient>();
+        for (int i = 0; i < nodeCount; ++i) {
+            String name = "10.0.0." + i + ":6379";
+            nodes.put(name, unusedNode(name));
+        }
+
+        ShardedRedisClient client = new ShardedRedisClient();
+        client.setNodes(nodes);
+        client.init();
+        return client;
+    }
+
+    @Test
+    public void testDistribution() {
+        ShardedRedisClient client = newClient(4);
+        int[] counts = new int[4];
+        for (int i = 0; i < 40000; ++i) {
+            counts[client.shardIndex("key:" + i)]++;
+        }
+
+        for (int count : counts) {
+            assertTrue("unbalanced shard: " + count, count > 7000 && count < 13000);
+        }
+        client.destroy();
+    }
+
+    @Test
+    public void testAddNodeMovesFewKeys() {
+        ShardedRedisClient four = newClient(4);
+        ShardedRedisClient five = newClient(5);
+        int moved = 0;
+        for (int i = 0; i < 40000; ++i) {
+            String key = "key:" + i;
+            if (!four.getShardName(key).equals(five.getShardName(key))) {
+                moved++;
+            }
+        }
+
+        // 理想情况下迁移1/5
+        assertTrue("moved: " + moved, moved > 5000 && moved < 12000);
+        four.destroy();
+        five.destroy();
+    }
+
+    @Test
+    public void testHashTag() {
+        ShardedRedisClient client = newClient(8);
+        for (int i = 0; i < 100; ++i) {
+            assertEquals(client.shardIndex("{user:" + i + "}:pv"), client.shardIndex("{user:" + i + "}:uv"));
+            assertEquals(client.shardIndex("{user:" + i + "}:pv"), client.shardIndex("user:" + i));
+        }
+
+        assertArrayEquals("a{}b".getBytes(), ShardedRedisClient.hashTag("a{}b".getBytes()));
+        assertArrayEquals("a{b".getBytes(), ShardedRedisClient.hashTag("a{b".getBytes()));
+        client.destroy();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    @SuppressWarnings("deprecation")
+    public void testPipelinedWithMultipleNodes() {
+        ShardedRedisClient client = newClient(2);
+        try {
+            client.pipelined();
+        } finally {
+            client.destroy();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testPipelinedWithSingleNode() {
+        final Pipeline pipeline = new Pipeline();
+        RedisClient node = (RedisClient) Proxy.newProxyInstance(RedisClient.class.getClassLoader(), new Class<?>[] { RedisClient.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("pipelined")) {
+                            return pipeline;
+                        }
+                        throw new AssertionError(method.getName());
+                    }
+                });
+        Map<String, RedisClient> nodes = new LinkedHashMap<String, RedisClient>();
+        nodes.put("10.0.0.1:6379", node);
+        ShardedRedisClient client = new ShardedRedisClient();
+        client.setNodes(nodes);
+        client.init();
+
+        assertSame(pipeline, client.pipelined());
+        client.destroy();
+    }
+}
@@ -0,0 +1,469 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import redis.clients.jedis.Builder;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/**
+ * {@link ShardedRedisClient}的pipeline：命令按key缓存到所在节点的队列，sync时各节点并行执行
+ * executePipelined，再将结果填入返回给调用方的Response。
+ * mget/mset的所有key必须在同一节点（可使用相同的{tag}），否则抛出IllegalArgumentException。
+ *
+ * @author BurningIce
+ *
+ */
+class ShardedRedisPipeline implements RedisPipeline {
+	final static int DEFAULT_FLUSH_SIZE = 1000;
+	private final static Builder<Object> PASS_THROUGH = new Builder<Object>() {
+		@Override
+		public Object build(Object data) {
+			return data;
+		}
+	};
+	private final ShardedRedisClient client;
+	private final int flushSize;
+	private final List<List<PipelineCommand<?>>> pendingCommands;
+	private int pendingCount;
+
+	ShardedRedisPipeline(ShardedRedisClient client, int flushSize) {
+		this.client = client;
+		this.flushSize = Math.max(1, flushSize);
+		this.pendingCommands = new ArrayList<List<PipelineCommand<?>>>(client.shardCount());
+		for(int shard = 0; shard < client.shardCount(); ++shard) {
+			this.pendingCommands.add(new ArrayList<PipelineCommand<?>>());
+		}
+	}
+
+	/**
+	 * 缓存在节点队列中的一条命令，节点执行完成后将结果转存到response
+	 */
+	private static abstract class PipelineCommand<T> {
+		@SuppressWarnings("unchecked")
+		final Response<T> response = new Response<T>((Builder<T>)(Builder<?>)PASS_THROUGH);
+
+		abstract Response<T> execute(RedisPipeline pipeline);
+
+		void complete(Response<T> shardResponse) {
+			try {
+				this.response.set(shardResponse.get());
+			} catch(JedisDataException ex) {
+				this.response.set(ex);
+			}
+		}
+	}
+
+	private <T> Response<T> route(int shard, PipelineCommand<T> command) {
+		this.pendingCommands.get(shard).add(command);
+		if(++this.pendingCount >= this.flushSize) {
+			this.sync();
+		}
+		return command.response;
+	}
+
+	private <T> Response<T> route(String key, PipelineCommand<T> command) {
+		return this.route(this.client.shardIndex(key), command);
+	}
+
+	private <T> Response<T> route(byte[] key, PipelineCommand<T> command) {
+		return this.route(this.client.shardIndex(key), command);
+	}
+
+	private int sameShard(String[] keys, int step) {
+		int shard = this.client.shardIndex(keys[0]);
+		for(int i = step; i < keys.length; i += step) {
+			if(this.client.shardIndex(keys[i]) != shard)
+				throw new IllegalArgumentException("keys in pipelined mget/mset/pfmerge must be on the same redis node, use {tag} in keys");
+		}
+		return shard;
+	}
+
+	private int sameShard(byte[][] keys) {
+		int shard = this.client.shardIndex(keys[0]);
+		for(int i = 1; i < keys.length; ++i) {
+			if(this.client.shardIndex(keys[i]) != shard)
+				throw new IllegalArgumentException("keys in pipelined mget must be on the same redis node, use {tag} in keys: " + SafeEncoder.encode(keys[i]));
+		}
+		return shard;
+	}
+
+	@Override
+	public Response<String> get(final String key) {
+		return this.route(key, new PipelineCommand<String>() {
+			@Override
+			Response<String> execute(RedisPipeline pipeline) {
+				return pipeline.get(key);
+			}
+		});
+	}
+
+	@Override
+	public Response<byte[]> get(final byte[] key) {
+		return this.route(key, new PipelineCommand<byte[]>() {
+			@Override
+			Response<byte[]> execute(RedisPipeline pipeline) {
+				return pipeline.get(key);
+			}
+		});
+	}
+
+	@Override
+	public Response<List<String>> mget(final String... key) {
+		return this.route(this.sameShard(key, 1), new PipelineCommand<List<String>>() {
+			@Override
+			Response<List<String>> execute(RedisPipeline pipeline) {
+				return pipeline.mget(key);
+			}
+		});
+	}
+
+	@Override
+	public Response<List<byte[]>> mget(final byte[]... key) {
+		return this.route(this.sameShard(key), new PipelineCommand<List<byte[]>>() {
+			@Override
+			Response<List<byte[]>> execute(RedisPipeline pipeline) {
+				return pipeline.mget(key);
+			}
+		});
+	}
+
+	@Override
+	public Response<String> set(final String key, final String value) {
+		return this.route(key, new PipelineCommand<String>() {
+			@Override
+			Response<String> execute(RedisPipeline pipeline) {
+				return pipeline.set(key, value);
+			}
+		});
+	}
+
+	@Override
+	public Response<String> set(final byte[] key, final byte[] value) {
+		return this.route(key, new PipelineCommand<String>() {
+			@Override
+			Response<String> execute(RedisPipeline pipeline) {
+				return pipeline.set(key, value);
+			}
+		});
+	}
+
+	@Override
+	public Response<String> set(final String key, final String value, final int expirationInSeconds) {
+		return this.route(key, new PipelineCommand<String>() {
+			@Override
+			Response<String> execute(RedisPipeline pipeline) {
+				return pipeline.set(key, value, expirationInSeconds);
+			}
+		});
+	}
+
+	@Override
+	public Response<String> set(final byte[] key, final byte[] value, final int expirationInSeconds) {
+		return this.route(key, new PipelineCommand<String>() {
+			@Override
+			Response<String> execute(RedisPipeline pipeline) {
+				return pipeline.set(key, value, expirationInSeconds);
+			}
+		});
+	}
+
+	@Override
+	public Response<String> mset(final String... keyValues) {
+		return this.route(this.sameShard(keyValues, 2), new PipelineCommand<String>() {
+			@Override
+			Response<String> execute(RedisPipeline pipeline) {
+				return pipeline.mset(keyValues);
+			}
+		});
+	}
+
+	@Override
+	public Response<Long> del(final String key) {
+		return this.route(key, new PipelineCommand<Long>() {
+			@Override
+			Response<Long> execute(RedisPipeline pipeline) {
+				return pipeline.del(key);
+			}
+		});
+	}
+
+	@Override
+	public Response<Long> del(final byte[] key) {
+		return this.route(key, new PipelineCommand<Long>() {
+			@Override
+			Response<Long> execute(RedisPipeline pipeline) {
+				return pipeline.del(key);
+			}
+		});
+	}
+
+	@Override
+	public Response<Long> expire(final String key, final int expirationInSeconds) {
+		return this.route(key, new PipelineCommand<Long>() {
+			@Override
+			Response<Long> execute(RedisPipeline pipeline) {
+				return pipeline.expire(key, expirationInSeconds);
+			}
+		});
+	}
+
+	@Override
+	public Response<Long> expire(final byte[] key, final int expirationInSeconds) {
+		return this.route(key, new PipelineCommand<Long>() {
+			@Override
+			Response<Long> execute(RedisPipeline pipeline) {
+				return pipeline.expire(key, expirationInSeconds);
+			}
+		});
+	}
+
+	@Override
+	public Response<Long> incr(final String key) {
+		return this.route(key, new PipelineCommand<Long>() {
+			@Override
+			Response<Long> execute(RedisPipeline pipeline) {
+				return pipeline.incr(key);
+			}
+		});
+	}
+
+	@Override
+	public Response<Long> incrBy(final String key, final long increment) {
+		return this.route(key, new PipelineCommand<Long>() {
+			@Override
+			Response<Long> execute(RedisPipeline pipeline) {
+				return pipeline.incrBy(key, increment);
+			}
+		});
+	}
+
+	@Override
+	public Response<Long> decrBy(final String key, final long decrement) {
+		return this.route(key, new PipelineCommand<Long>() {
+			@Override
+			Response<Long> execute(RedisPipeline pipeline) {
+				return pipeline.decrBy(key, decrement);
+			}
+		});
+	}
+
+	@Override
+	public Response<String> hget(final String key, final String field) {
+		return this.route(key, new PipelineCommand<String>() {
+			@Override
+			Response<String> execute(RedisPipeline pipeline) {
+				return pipeline.hget(key, field);
+			}
+		});
+	}
+
+	@Override
+	public Response<byte[]> hget(final byte[] key, final byte[] field) {
+		return this.route(key, new PipelineCommand<byte[]>() {
+			@Override
+			Response<byte[]> execute(RedisPipeline pipeline) {
+				return pipeline.hget(key, field);
+			}
+		});
+	}
+
+	@Override
+	public Response<List<String>> hmget(final String key, final String... field) {
+		return this.route(key, new PipelineCommand<List<String>>() {
+			@Override
+			Response<List<String>> execute(RedisPipeline pipeline) {
+				return pipeline.hmget(key, field);
+			}
+		});
+	}
+
+	@Override
+	public Response<Long> hset(final String key, final String field, final String value) {
+		return this.route(key, new PipelineCommand<Long>() {
+			@Override
+			Response<Long> execute(RedisPipeline pipeline) {
+				return pipeline.hset(key, field, value);
+			}
+		});
+	}
+
+	@Override
+	public Response<Long> hset(final byte[] key, final byte[] field, final byte[] value) {
+		return this.route(key, new PipelineCommand<Long>() {
+			@Override
+			Response<Long> execute(RedisPipeline pipeline) {
+				return pipeline.hset(key, field, value);
+			}
+		});
+	}
+
+	@Override
+	public Response<String> hmset(final String key, final Map<String, String> fieldAndValues) {
+		return this.route(key, new PipelineCommand<String>() {
+			@Override
+			Response<String> execute(RedisPipeline pipeline) {
+				return pipeline.hmset(key, fieldAndValues);
+			}
+		});
+	}
+
+	@Override
+	public Response<String> hmset(final byte[] key, final Map<byte[], byte[]> fieldAndValues) {
+		return this.route(key, new PipelineCommand<String>() {
+			@Override
+			Response<String> execute(RedisPipeline pipeline) {
+				return pipeline.hmset(key, fieldAndValues);
+			}
+		});
+	}
+
+	@Override
+	public Response<Map<String, String>> hgetAll(final String key) {
+		return this.route(key, new PipelineCommand<Map<String, String>>() {
+			@Override
+			Response<Map<String, String>> execute(RedisPipeline pipeline) {
+				return pipeline.hgetAll(key);
+			}
+		});
+	}
+
+	@Override
+	public Response<Long> hincrBy(final String key, final String field, final long increment) {
+		return this.route(key, new PipelineCommand<Long>() {
+			@Override
+			Response<Long> execute(RedisPipeline pipeline) {
+				return pipeline.hincrBy(key, field, increment);
+			}
+		});
+	}
+
+	@Override
+	public Response<Long> hincrBy(final byte[] key, final byte[] field, final long increment) {
+		return this.route(key, new PipelineCommand<Long>() {
+			@Override
+			Response<Long> execute(RedisPipeline pipeline) {
+				return pipeline.hincrBy(key, field, increment);
+			}
+		});
+	}
+
+	@Override
+	public Response<Long> pfAdd(final String key, final String... elements) {
+		return this.route(key, new PipelineCommand<Long>() {
+			@Override
+			Response<Long> execute(RedisPipeline pipeline) {
+				return pipeline.pfAdd(key, elements);
+			}
+		});
+	}
+
+	@Override
+	public Response<Long> pfCount(final String key) {
+		return this.route(key, new PipelineCommand<Long>() {
+			@Override
+			Response<Long> execute(RedisPipeline pipeline) {
+				return pipeline.pfCount(key);
+			}
+		});
+	}
+
+	@Override
+	public Response<String> pfmerge(final String destkey, final String... sourcekeys) {
+		String[] keys = new String[sourcekeys.length + 1];
+		keys[0] = destkey;
+		System.arraycopy(sourcekeys, 0, keys, 1, sourcekeys.length);
+		return this.route(this.sameShard(keys, 1), new PipelineCommand<String>() {
+			@Override
+			Response<String> execute(RedisPipeline pipeline) {
+				return pipeline.pfmerge(destkey, sourcekeys);
+			}
+		});
+	}
+
+	@Override
+	public Response<Long> sadd(final String key, final String... members) {
+		return this.route(key, new PipelineCommand<Long>() {
+			@Override
+			Response<Long> execute(RedisPipeline pipeline) {
+				return pipeline.sadd(key, members);
+			}
+		});
+	}
+
+	@Override
+	public Response<Set<String>> smembers(final String key) {
+		return this.route(key, new PipelineCommand<Set<String>>() {
+			@Override
+			Response<Set<String>> execute(RedisPipeline pipeline) {
+				return pipeline.smembers(key);
+			}
+		});
+	}
+
+	/**
+	 * 各节点并行执行已缓存的命令；节点执行失败时，该节点上命令的Response.get()抛出JedisDataException
+	 */
+	@Override
+	public void sync() {
+		if(this.pendingCount == 0)
+			return;
+
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(this.pendingCommands.size());
+		for(int shard = 0; shard < this.pendingCommands.size(); ++shard) {
+			final List<PipelineCommand<?>> commands = this.pendingCommands.get(shard);
+			if(commands.isEmpty())
+				continue;
+
+			this.pendingCommands.set(shard, new ArrayList<PipelineCommand<?>>());
+			final RedisClient shardClient = this.client.shardAt(shard);
+			final String shardName = this.client.shardNameAt(shard);
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					Boolean executed = shardClient.executePipelined(commands.size() + 1, new PipelineCallback<Boolean>() {
+						@Override
+						public Boolean doInPipeline(RedisPipeline pipeline) {
+							List<Response<?>> responses = new ArrayList<Response<?>>(commands.size());
+							for(PipelineCommand<?> command : commands) {
+								responses.add(command.execute(pipeline));
+							}
+							pipeline.sync();
+
+							for(int i = 0; i < commands.size(); ++i) {
+								complete(commands.get(i), responses.get(i));
+							}
+							return Boolean.TRUE;
+						}
+					});
+
+					if(executed == null) {
+						JedisDataException ex = new JedisDataException("failed to execute pipeline on redis node " + shardName);
+						for(PipelineCommand<?> command : commands) {
+							command.response.set(ex);
+						}
+					}
+					return null;
+				}
+			});
+		}
+		this.pendingCount = 0;
+
+		try {
+			this.client.scatter(tasks);
+		} catch(RuntimeException ex) {
+			throw ex;
+		} catch(Exception ex) {
+			throw new JedisDataException(ex);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> void complete(PipelineCommand<T> command, Response<?> shardResponse) {
+		command.complete((Response<T>)shardResponse);
+	}
+}
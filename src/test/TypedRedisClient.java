@@ -0,0 +1,93 @@
+/**
+ * Copyright 2007, NetworkBench Systems Corp.
+ */
+
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基于{@link RedisCodec}的类型化读写，使用RedisClient的byte[]接口，不经过Java序列化或字符串转换。
+ * 编码时复用当前线程的缓冲区；value为null时不写入，读取不到或解码失败时返回null。
+ *
+ * @author BurningIce
+ *
+ */
+public class TypedRedisClient<T> {
+	private final RedisClient redisClient;
+	private final RedisCodec<T> codec;
+
+	public TypedRedisClient(RedisClient redisClient, RedisCodec<T> codec) {
+		this.redisClient = redisClient;
+		this.codec = codec;
+	}
+
+	public T get(String key) {
+		return this.decode(this.redisClient.get(SafeEncoder.encode(key)));
+	}
+
+	/**
+	 * @return 与key顺序一致，不存在的key对应null；失败时返回null
+	 */
+	public List<T> mget(String... keys) {
+		List<byte[]> values = this.redisClient.mget(SafeEncoder.encodeMany(keys));
+		if(values == null)
+			return null;
+
+		List<T> result = new ArrayList<T>(values.size());
+		for(byte[] value : values) {
+			result.add(this.decode(value));
+		}
+		return result;
+	}
+
+	public void set(String key, T value) {
+		if(value == null)
+			return;
+
+		this.redisClient.set(SafeEncoder.encode(key), this.encode(value));
+	}
+
+	public void set(String key, T value, int expirationInSeconds) {
+		if(value == null)
+			return;
+
+		this.redisClient.set(SafeEncoder.encode(key), this.encode(value), expirationInSeconds);
+	}
+
+	public T hget(String key, String field) {
+		return this.decode(this.redisClient.hget(SafeEncoder.encode(key), SafeEncoder.encode(field)));
+	}
+
+	public void hset(String key, String field, T value) {
+		if(value == null)
+			return;
+
+		this.redisClient.hset(SafeEncoder.encode(key), SafeEncoder.encode(field), this.encode(value));
+	}
+
+	/**
+	 * 编码为byte[]，可用于pipeline等未封装的操作
+	 */
+	public byte[] encode(T value) {
+		CodecWriter writer = CodecWriter.get();
+		this.codec.encode(value, writer);
+		return writer.toByteArray();
+	}
+
+	/**
+	 * @return value为null或解码失败时返回null
+	 */
+	public T decode(byte[] value) {
+		if(value == null)
+			return null;
+
+		try {
+			return this.codec.decode(new CodecReader(value));
+		} catch(IllegalArgumentException ex) {
+//			logger.error("failed to decode redis value: " + ex.getMessage(), ex);
+			return null;
+		}
+	}
+}